@@ -1,20 +1,42 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
- * The Aggregation operator that computes an aggregate (e.g., sum, avg, max,
- * min). Note that we only support aggregates over a single column, grouped by a
- * single column.
+ * The Aggregation operator that computes aggregates (e.g., sum, avg, max,
+ * min). Any number of aggregates, each over a single column, are computed
+ * in one pass over the child, grouped by any number of columns.
+ * <p>
+ * At most memoryGroups groups are kept in memory. When the child has more,
+ * the partial state of every group held is written to one of
+ * {@link #PARTITIONS} {@link SpillFile}s, partitioned by group value, each
+ * time the table fills, and the partitions are combined one at a time when
+ * the results are read. A partition that still has too many groups is
+ * partitioned again with a different hash, up to {@link #MAX_DEPTH} times.
  */
-public class Aggregate extends Operator {
+public class Aggregate extends Operator implements BatchOpIterator {
 
     private static final long serialVersionUID = 1L;
     
     private OpIterator ch;
-    private int af, gf;
-    private Aggregator.Op op;
+    private final int[] afs, gfs;
+    private final Aggregator.Op[] ops;
+    /** the name of each aggregate column, or null to name it after its field */
+    private final String[] names;
     private OpIterator aggItr;
+    private transient TupleBatch out;
+
+    /** the groups held in memory at once, unless told otherwise */
+    public static final int DEFAULT_MEMORY_GROUPS = 50000;
+    /** the number of partitions the groups are split into at each level */
+    public static final int PARTITIONS = 16;
+    /** the most times a partition is split again */
+    public static final int MAX_DEPTH = 3;
+
+    private final int memoryGroups;
+    private transient int partitionsSpilled;
+    private transient long bytesSpilled;
     /**
      * Constructor.
      * 
@@ -32,13 +54,103 @@ public class Aggregate extends Operator {
      *            there is no grouping
      * @param aop
      *            The aggregation operator to use 
+     * @param memoryGroups
+     *            the most groups to hold in memory
      */
+    public Aggregate(OpIterator child, int afield, int gfield, Aggregator.Op aop,
+    		int memoryGroups) {
+		this(child, new int[] { afield }, gfield == -1 ? new int[0] : new int[] { gfield },
+				new Aggregator.Op[] { aop }, memoryGroups);
+    }
+
     public Aggregate(OpIterator child, int afield, int gfield, Aggregator.Op aop) {
+		this(child, afield, gfield, aop, DEFAULT_MEMORY_GROUPS);
+    }
+
+    /**
+     * Constructor for several aggregates over a composite group key. The
+     * output tuples are the group-by fields, in order, followed by the
+     * aggregates, in order.
+     *
+     * @param child
+     *            The OpIterator that is feeding us tuples.
+     * @param afields
+     *            The column over which each aggregate is computed.
+     * @param gfields
+     *            The columns over which we are grouping the result, none if
+     *            there is no grouping
+     * @param aops
+     *            The aggregation operator of each aggregate; only COUNT may
+     *            be computed over a STRING column
+     * @param memoryGroups
+     *            the most groups to hold in memory
+     */
+    public Aggregate(OpIterator child, int[] afields, int[] gfields, Aggregator.Op[] aops,
+    		int memoryGroups) {
+		this(child, afields, null, gfields, aops, memoryGroups);
+    }
+
+    /**
+     * Constructor for several aggregates over a composite group key, some of
+     * whose columns are named explicitly, such as COUNT(*), which counts
+     * tuples rather than values of its field.
+     *
+     * @param anames
+     *            The name of each aggregate column, or null, or null entries,
+     *            to name it after its operator and field
+     * @see #Aggregate(OpIterator, int[], int[], Aggregator.Op[], int)
+     */
+    public Aggregate(OpIterator child, int[] afields, String[] anames, int[] gfields,
+    		Aggregator.Op[] aops, int memoryGroups) {
+		if (memoryGroups < 1)
+			throw new IllegalArgumentException("an aggregate must hold at least one group");
+		checkAggregates(child.getTupleDesc(), afields, aops);
 		ch = child;
-		af = afield;
-		gf = gfield;
-		op = aop;
-	
+		afs = afields.clone();
+		gfs = gfields.clone();
+		ops = aops.clone();
+		names = aggregateNames(afields, anames);
+		this.memoryGroups = memoryGroups;
+    }
+
+    public Aggregate(OpIterator child, int[] afields, int[] gfields, Aggregator.Op[] aops) {
+		this(child, afields, gfields, aops, DEFAULT_MEMORY_GROUPS);
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             unless there is one aggregate of each field, and each can
+     *             be computed over its field of td
+     */
+    static void checkAggregates(TupleDesc td, int[] afields, Aggregator.Op[] aops) {
+		if (afields.length == 0 || afields.length != aops.length)
+			throw new IllegalArgumentException("need one aggregate for each aggregate field");
+		for (int i = 0; i < afields.length; i++)
+			if (td.getFieldType(afields[i]) != Type.INT_TYPE && aops[i] != Aggregator.Op.COUNT)
+				throw new IllegalArgumentException("only COUNT of a " + td.getFieldType(afields[i])
+						+ " field is supported");
+    }
+
+    /**
+     * @return a copy of anames, with an entry per aggregate, null to name it
+     *         after its field
+     * @throws IllegalArgumentException
+     *             if there is not one name for each aggregate field
+     */
+    static String[] aggregateNames(int[] afields, String[] anames) {
+		if (anames == null)
+			return new String[afields.length];
+		if (anames.length != afields.length)
+			throw new IllegalArgumentException("need one name for each aggregate field");
+		return anames.clone();
+    }
+
+    /** @return the types of the specified fields of td */
+    static Type[] fieldTypes(TupleDesc td, int[] fields) {
+		Type[] types = new Type[fields.length];
+		for (int i = 0; i < fields.length; i++)
+			types[i] = td.getFieldType(fields[i]);
+		return types;
     }
 
     /**
@@ -47,9 +159,17 @@ public class Aggregate extends Operator {
      *         {@link simpledb.Aggregator#NO_GROUPING}
      * */
     public int groupField() {
-		if (gf == -1)
+		if (gfs.length == 0)
 			return Aggregator.NO_GROUPING;
-		return gf;
+		return gfs[0];
+    }
+
+    /**
+     * @return the groupby field indexes in the <b>INPUT</b> tuples, in the
+     *         order they are output; none if there is no grouping
+     */
+    public int[] groupFields() {
+		return gfs.clone();
     }
 
     /**
@@ -58,59 +178,109 @@ public class Aggregate extends Operator {
      *         null;
      * */
     public String groupFieldName() {
-    	if (gf == -1)
+    	if (gfs.length == 0)
     		return null;
-    	return aggItr.getTupleDesc().getFieldName(0);
+    	return ch.getTupleDesc().getFieldName(gfs[0]);
     }
 
     /**
-     * @return the aggregate field
+     * @return the aggregate field, or the first one if there are several
      * */
     public int aggregateField() {
-    	return af;
+    	return afs[0];
+    }
+
+    /** @return the aggregate fields, in the order they are output */
+    public int[] aggregateFields() {
+    	return afs.clone();
     }
 
     /**
      * @return return the name of the aggregate field in the <b>OUTPUT</b>
-     *         tuples
+     *         tuples, or of the first one if there are several
      * */
     public String aggregateFieldName() {
-	    	return gf == -1 ? aggItr.getTupleDesc().getFieldName(0):
-	    					aggItr.getTupleDesc().getFieldName(1);
+	    	return ch.getTupleDesc().getFieldName(afs[0]);
     }
 
     /**
-     * @return return the aggregate operator
+     * @return return the aggregate operator, or the first one if there are
+     *         several
      * */
     public Aggregator.Op aggregateOp() {
-    	return op;
+    	return ops[0];
+    }
+
+    /** @return the aggregate operators, in the order they are output */
+    public Aggregator.Op[] aggregateOps() {
+    	return ops.clone();
+    }
+
+    /**
+     * @return the name given to each aggregate column, in the order they are
+     *         output, or null for those named after their field
+     */
+    public String[] aggregateNames() {
+    	return names.clone();
     }
 
     public static String nameOfAggregatorOp(Aggregator.Op aop) {
     	return aop.toString();
     }
 
+    /**
+     * @return the number of partitions written to disk since the aggregate
+     *         was opened, counting those written by repartitioning
+     */
+    public int getPartitionsSpilled() {
+    	return partitionsSpilled;
+    }
+
+    /**
+     * @return the number of bytes of partial state written to disk since the
+     *         aggregate was opened
+     */
+    public long getBytesSpilled() {
+    	return bytesSpilled;
+    }
+
     private boolean open;
     public void open() throws NoSuchElementException, DbException,
 	    TransactionAbortedException {
     	this.open = true;
     	
-    	// merge
+    	// merge, reading the child a batch at a time
 		ch.open();
-		if (ch.getTupleDesc().getFieldType(af) == Type.INT_TYPE) {
-			IntegerAggregator iagg = new IntegerAggregator(gf, Type.INT_TYPE, af, op);
-			while (ch.hasNext())
-				iagg.mergeTupleIntoGroup(ch.next());
-			aggItr = iagg.iterator();
-		} else {
-			StringAggregator sagg = new StringAggregator(gf, Type.STRING_TYPE, af, op);
-			while (ch.hasNext())
-				sagg.mergeTupleIntoGroup(ch.next());
-			aggItr = sagg.iterator();
+		AggregateTable table = new AggregateTable(gfs, fieldTypes(ch.getTupleDesc(), gfs), afs, ops);
+		partitionsSpilled = 0;
+		bytesSpilled = 0;
+		try {
+			SpillFile[] files = null;
+			BatchOpIterator in = BatchOpIterator.of(ch);
+			TupleBatch b;
+			while ((b = in.nextBatch()) != null) {
+				for (int i = 0; i < b.size(); i++) {
+					table.merge(b, i);
+					if (table.size() > memoryGroups) {
+						if (files == null)
+							files = newPartitions(table.getPartialTupleDesc());
+						table.spill(files, 0);
+					}
+				}
+			}
+			if (files == null) {
+				aggItr = table.iterator();
+			} else {
+				table.spill(files, 0);
+				SpilledGroups spilled = new SpilledGroups(table.emptyCopy());
+				spilled.add(files, 0);
+				aggItr = spilled;
+			}
+		} catch (IOException e) {
+			throw new DbException("cannot spill aggregate state: " + e);
 		}
 		ch.close();
-		
-		
+
     	aggItr.open();
     	next = null;
     }
@@ -131,6 +301,20 @@ public class Aggregate extends Operator {
     	return next;
     }
 
+    /** Returns the next groups' results. */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+    	if (this.open == false)
+    		throw new DbException("not open");
+    	if (!aggItr.hasNext())
+    		return null;
+    	// the results' own TupleDesc, whose COUNT of strings is an INT
+    	if (out == null)
+    		out = new TupleBatch(aggItr.getTupleDesc());
+    	out.clear();
+    	out.addAll(aggItr);
+    	return out.size() == 0 ? null : out;
+    }
+
     public void rewind() throws DbException, TransactionAbortedException {
     	aggItr.rewind();
     	next = null;
@@ -157,50 +341,190 @@ public class Aggregate extends Operator {
      * Returns the TupleDesc of this Aggregate. If there is no group by field,
      * this will have one field - the aggregate column. If there is a group by
      * field, the first field will be the group by field, and the second will be
-     * the aggregate value column.
+     * the aggregate value column. With several group by fields or aggregates,
+     * the group by fields come first, then the aggregate columns, each in
+     * the order given to the constructor.
      * 
      * The name of an aggregate column should be informative. For example:
      * "aggName(aop) (child_td.getFieldName(afield))" where aop and afield are
      * given in the constructor, and child_td is the TupleDesc of the child
-     * iterator.
+     * iterator. A column given a name in the constructor has that name.
      */
     public TupleDesc getTupleDesc() {
-    	String[] name;
-    	Type[] types;
-    	if (gf == -1)
-    	{
-
-    		name = new String[] {"aggName("+(op.toString())+")"+ch.getTupleDesc().getFieldName(af)};
-    		types = new Type[] {ch.getTupleDesc().getFieldType(af)};
-    	} else {
-    		name = new String[] {
-        			ch.getTupleDesc().getFieldName(gf),
-        			"aggName("+(op.toString())+")"+ch.getTupleDesc().getFieldName(af)
-        		};
-    		types = new Type[] {
-    			ch.getTupleDesc().getFieldType(gf),
-    			ch.getTupleDesc().getFieldType(af)
-    		};
-    	} 
-    	return new TupleDesc(types, name); 
-    	
+    	return getTupleDesc(ch.getTupleDesc(), afs, names, gfs, ops);
+    }
+
+    /**
+     * @return the TupleDesc of aggregates of afields, named anames where
+     *         they are not null, grouped by gfields, over tuples of td, as
+     *         described by {@link #getTupleDesc()}
+     */
+    static TupleDesc getTupleDesc(TupleDesc td, int[] afields, String[] anames,
+    		int[] gfields, Aggregator.Op[] aops) {
+    	int w = gfields.length;
+    	String[] name = new String[w + afields.length];
+    	Type[] types = new Type[w + afields.length];
+    	for (int i = 0; i < w; i++) {
+    		name[i] = td.getFieldName(gfields[i]);
+    		types[i] = td.getFieldType(gfields[i]);
+    	}
+    	// the type of all aggregate functions is INT
+    	for (int i = 0; i < afields.length; i++) {
+    		name[w + i] = anames[i] != null ? anames[i]
+    				: "aggName(" + aops[i] + ")" + td.getFieldName(afields[i]);
+    		types[w + i] = Type.INT_TYPE;
+    	}
+    	return new TupleDesc(types, name);
     }
 
     public void close() {
     	aggItr.close();
+    	if (aggItr instanceof SpilledGroups)
+    		((SpilledGroups) aggItr).delete();
     	next = null;
     	this.open = false;
     }
 
+    private static SpillFile[] newPartitions(TupleDesc td) throws IOException {
+    	SpillFile[] files = new SpillFile[PARTITIONS];
+    	for (int i = 0; i < PARTITIONS; i++)
+    		files[i] = new SpillFile(td);
+    	return files;
+    }
+
+    /** A partition of the groups' partial states, written to disk. */
+    private static class Partition {
+    	final SpillFile file;
+    	final int depth;
+
+    	Partition(SpillFile file, int depth) {
+    		this.file = file;
+    		this.depth = depth;
+    	}
+    }
+
+    /**
+     * The results of an aggregate whose groups were spilled: the partial
+     * states of each partition are combined in a table, and its groups
+     * returned, before the next partition is read.
+     */
+    private class SpilledGroups implements OpIterator {
+
+    	private static final long serialVersionUID = 1L;
+
+    	private final AggregateTable table;
+    	private final ArrayList<Partition> partitions = new ArrayList<Partition>();
+    	/** the next partition to read */
+    	private int next;
+    	/** the groups of the partition last read, or null */
+    	private OpIterator groups;
+
+    	SpilledGroups(AggregateTable table) {
+    		this.table = table;
+    	}
+
+    	/** Add the files written at the specified depth, deleting empty ones. */
+    	void add(SpillFile[] files, int depth) {
+    		for (SpillFile f : files) {
+    			if (f.size() == 0) {
+    				f.delete();
+    				continue;
+    			}
+    			partitions.add(new Partition(f, depth));
+    			partitionsSpilled++;
+    			bytesSpilled += f.bytes();
+    		}
+    	}
+
+    	/**
+    	 * Combine the partial states of the next partition. If it has too
+    	 * many groups, split it again instead, replacing it with its parts.
+    	 */
+    	private void load() throws DbException, TransactionAbortedException, IOException {
+    		Partition p = partitions.get(next++);
+    		table.clear();
+    		SpillFile[] files = null;
+    		DbFileIterator it = p.file.iterator();
+    		it.open();
+    		while (it.hasNext()) {
+    			table.mergePartial(it.next());
+    			if (table.size() > memoryGroups && p.depth < MAX_DEPTH) {
+    				if (files == null)
+    					files = newPartitions(table.getPartialTupleDesc());
+    				table.spill(files, p.depth + 1);
+    			}
+    		}
+    		it.close();
+    		if (files == null) {
+    			groups = table.iterator();
+    			groups.open();
+    			return;
+    		}
+    		table.spill(files, p.depth + 1);
+    		partitions.remove(--next);
+    		p.file.delete();
+    		add(files, p.depth + 1);
+    	}
+
+		@Override
+		public void open() throws DbException, TransactionAbortedException {
+			next = 0;
+			groups = null;
+		}
+
+		@Override
+		public boolean hasNext() throws DbException, TransactionAbortedException {
+			try {
+				while (groups == null || !groups.hasNext()) {
+					groups = null;
+					if (next == partitions.size())
+						return false;
+					load();
+				}
+				return true;
+			} catch (IOException e) {
+				throw new DbException("cannot read spilled aggregate state: " + e);
+			}
+		}
+
+		@Override
+		public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return groups.next();
+		}
+
+		@Override
+		public void rewind() throws DbException, TransactionAbortedException {
+			open();
+		}
+
+		@Override
+		public TupleDesc getTupleDesc() {
+			return table.getTupleDesc();
+		}
+
+		@Override
+		public void close() {
+			groups = null;
+		}
+
+		/** Delete every partition. */
+		void delete() {
+			for (Partition p : partitions)
+				p.file.delete();
+			partitions.clear();
+		}
+    }
+
     @Override
     public OpIterator[] getChildren() {
-	// some code goes here
-	return null;
+	return new OpIterator[] { ch };
     }
 
     @Override
     public void setChildren(OpIterator[] children) {
-	// some code goes here
+	ch = children[0];
     }
     
 }
@@ -0,0 +1,424 @@
+package simpledb;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * AggregateTable keeps the running state of any number of aggregates for
+ * each group of a GROUP BY on any number of fields. IntegerAggregator and
+ * StringAggregator each keep one aggregate over one group field in one of
+ * these; Aggregate and StreamingAggregate use them directly.
+ * <p>
+ * The group value of a tuple is encoded as one int per group field: the
+ * value itself for INT fields, and for STRING fields the number of the
+ * string in a dictionary of that field's values. Groups are found in an
+ * open addressing hash table over these codes, with linear probing, and are
+ * numbered in the order they are first seen. The codes and the state of
+ * each group are kept in flat arrays indexed by that number, so merging a
+ * tuple into a group it already has allocates nothing.
+ * <p>
+ * Each group keeps its number of tuples and, for each aggregate, one
+ * accumulator: the sum, for SUM and AVG, or the minimum or maximum seen.
+ * Results are ints, like the values they are computed from.
+ * <p>
+ * A table that has too many groups to keep can {@link #spill} the state of
+ * each group to one of several files, partitioned by group value, and be
+ * emptied; the partial states of a partition are later combined with
+ * {@link #mergePartial} in a table made by {@link #emptyCopy}.
+ */
+class AggregateTable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int EMPTY = -1;
+
+    /** Numbers the distinct values of a STRING group field. */
+    private static class Dictionary implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final HashMap<Field, Integer> codes = new HashMap<Field, Integer>();
+        final ArrayList<Field> values = new ArrayList<Field>();
+
+        int code(Field f) {
+            Integer c = codes.get(f);
+            if (c == null) {
+                c = values.size();
+                codes.put(f, c);
+                values.add(f);
+            }
+            return c;
+        }
+    }
+
+    private final int[] gbfields, afields;
+    private final Type[] gbfieldtypes;
+    private final Aggregator.Op[] ops;
+    /** the fields of a partial state that hold its group value */
+    private final int[] partialKey;
+
+    /** for each group field, the dictionary of its values, or null if INT */
+    private Dictionary[] dicts;
+    /** the codes of the tuple being merged */
+    private final int[] codes;
+    /** the codes of each group, gbfields.length ints per group */
+    private int[] keys;
+    private int[] hashes;
+    /** the hash table of group numbers, or EMPTY */
+    private int[] slots;
+    private int mask;
+    /** the accumulator of each aggregate of each group */
+    private long[] acc;
+    /** the number of tuples of each group */
+    private long[] count;
+    private int numGroups;
+    /** the TupleDesc of the results, from the first tuple merged */
+    private TupleDesc td;
+
+    /**
+     * Create an empty table.
+     *
+     * @param gbfields
+     *            the group-by fields in the input tuples, none if there is
+     *            no grouping
+     * @param gbfieldtypes
+     *            the types of the group-by fields; the results of an empty
+     *            table have these types
+     * @param afields
+     *            the aggregate fields in the input tuples, each of which
+     *            must be an IntField unless its aggregate is COUNT
+     * @param ops
+     *            the aggregate to compute over each aggregate field, each
+     *            one of MIN, MAX, SUM, AVG and COUNT
+     */
+    AggregateTable(int[] gbfields, Type[] gbfieldtypes, int[] afields, Aggregator.Op[] ops) {
+        if (afields.length == 0 || afields.length != ops.length)
+            throw new IllegalArgumentException("need one aggregate for each aggregate field");
+        for (Aggregator.Op what : ops) {
+            switch (what) {
+            case MIN: case MAX: case SUM: case AVG: case COUNT:
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported aggregate " + what);
+            }
+        }
+        this.gbfields = gbfields.clone();
+        this.gbfieldtypes = gbfieldtypes.clone();
+        this.afields = afields.clone();
+        this.ops = ops.clone();
+        partialKey = new int[gbfields.length];
+        for (int i = 0; i < partialKey.length; i++)
+            partialKey[i] = i;
+        codes = new int[gbfields.length];
+        keys = new int[16 * gbfields.length];
+        hashes = new int[16];
+        acc = new long[16 * ops.length];
+        count = new long[16];
+        slots = new int[32];
+        Arrays.fill(slots, EMPTY);
+        mask = slots.length - 1;
+    }
+
+    /**
+     * Create an empty table of one aggregate.
+     *
+     * @param gbfield
+     *            the group-by field in the input tuples, or NO_GROUPING
+     * @param gbfieldtype
+     *            the type of the group-by field, or null if there is no
+     *            grouping
+     * @param afield
+     *            the aggregate field in the input tuples
+     * @param what
+     *            the aggregate to compute
+     */
+    AggregateTable(int gbfield, Type gbfieldtype, int afield, Aggregator.Op what) {
+        this(gbfield == Aggregator.NO_GROUPING ? new int[0] : new int[] { gbfield },
+                gbfield == Aggregator.NO_GROUPING ? new Type[0] : new Type[] { gbfieldtype },
+                new int[] { afield }, new Aggregator.Op[] { what });
+    }
+
+    /** Find the results' TupleDesc, and the group fields' dictionaries, from td. */
+    private void init(TupleDesc in) {
+        int w = gbfields.length;
+        Type[] types = new Type[w + ops.length];
+        String[] names = new String[w + ops.length];
+        for (int i = 0; i < w; i++) {
+            types[i] = in.getFieldType(gbfields[i]);
+            names[i] = in.getFieldName(gbfields[i]);
+        }
+        for (int i = 0; i < ops.length; i++) {
+            types[w + i] = Type.INT_TYPE;
+            names[w + i] = in.getFieldName(afields[i]);
+        }
+        td = new TupleDesc(types, names);
+        newDictionaries();
+    }
+
+    private void newDictionaries() {
+        dicts = new Dictionary[gbfields.length];
+        for (int i = 0; i < dicts.length; i++)
+            if (td.getFieldType(i) != Type.INT_TYPE)
+                dicts[i] = new Dictionary();
+    }
+
+    /**
+     * @return an empty table computing the same aggregates, with the same
+     *         results' TupleDesc, to combine partial states in
+     */
+    AggregateTable emptyCopy() {
+        AggregateTable t = new AggregateTable(gbfields, gbfieldtypes, afields, ops);
+        t.td = td;
+        if (td != null)
+            t.newDictionaries();
+        return t;
+    }
+
+    /** Merge tup's aggregate fields into the state of its group. */
+    void merge(Tuple tup) {
+        if (td == null)
+            init(tup.getTupleDesc());
+        int g = group(tup, gbfields);
+        long n = ++count[g];
+        for (int i = 0; i < ops.length; i++)
+            if (ops[i] != Aggregator.Op.COUNT)
+                update(g, i, n, tup.getInt(afields[i]));
+    }
+
+    /**
+     * Merge the i'th selected row of b as {@link #merge(Tuple)} would,
+     * reading its values from the batch rather than making a Tuple of it.
+     */
+    void merge(TupleBatch b, int i) {
+        if (td == null)
+            init(b.getTupleDesc());
+        int row = b.row(i);
+        for (int k = 0; k < gbfields.length; k++)
+            codes[k] = dicts[k] == null ? b.getInt(gbfields[k], row)
+                    : dicts[k].code(b.getField(gbfields[k], row));
+        int g = find();
+        long n = ++count[g];
+        for (int k = 0; k < ops.length; k++)
+            if (ops[k] != Aggregator.Op.COUNT)
+                update(g, k, n, b.getInt(afields[k], row));
+    }
+
+    /** Fold the value v of aggregate i into group g, whose count is n. */
+    private void update(int g, int i, long n, long v) {
+        int j = g * ops.length + i;
+        switch (ops[i]) {
+        case MIN:
+            if (n == 1 || v < acc[j])
+                acc[j] = v;
+            break;
+        case MAX:
+            if (n == 1 || v > acc[j])
+                acc[j] = v;
+            break;
+        default:
+            acc[j] += v;
+        }
+    }
+
+    /**
+     * @return the number of the group whose value is tup's fields, adding
+     *         the group if it is new
+     */
+    private int group(Tuple tup, int[] fields) {
+        for (int i = 0; i < fields.length; i++)
+            codes[i] = dicts[i] == null ? tup.getInt(fields[i]) : dicts[i].code(tup.getField(fields[i]));
+        return find();
+    }
+
+    /** @return the number of the group whose key is codes, adding it if it is new */
+    private int find() {
+        int h = 0;
+        for (int c : codes)
+            h = (h ^ c) * 0x9e3779b9;
+        h ^= h >>> 16;
+        int s = h & mask;
+        for (int g; (g = slots[s]) != EMPTY; s = (s + 1) & mask)
+            if (hashes[g] == h && sameKey(g))
+                return g;
+        int g = addGroup(h);
+        slots[s] = g;
+        if (numGroups * 2 > slots.length)
+            rehash();
+        return g;
+    }
+
+    private boolean sameKey(int g) {
+        int w = codes.length;
+        for (int i = 0; i < w; i++)
+            if (keys[g * w + i] != codes[i])
+                return false;
+        return true;
+    }
+
+    private int addGroup(int hash) {
+        int w = codes.length;
+        if (numGroups == count.length) {
+            int n = numGroups * 2;
+            keys = Arrays.copyOf(keys, n * w);
+            hashes = Arrays.copyOf(hashes, n);
+            acc = Arrays.copyOf(acc, n * ops.length);
+            count = Arrays.copyOf(count, n);
+        }
+        int g = numGroups++;
+        System.arraycopy(codes, 0, keys, g * w, w);
+        hashes[g] = hash;
+        Arrays.fill(acc, g * ops.length, (g + 1) * ops.length, 0);
+        count[g] = 0;
+        return g;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, EMPTY);
+        mask = slots.length - 1;
+        for (int g = 0; g < numGroups; g++) {
+            int s = hashes[g] & mask;
+            while (slots[s] != EMPTY)
+                s = (s + 1) & mask;
+            slots[s] = g;
+        }
+    }
+
+    /** @return the value of group field i of group g */
+    private Field groupValue(int g, int i) {
+        int c = keys[g * codes.length + i];
+        return dicts[i] == null ? new IntField(c) : dicts[i].values.get(c);
+    }
+
+    /**
+     * @return the TupleDesc of the partial state of a group, as spilled: the
+     *         group fields, then the number of tuples and the accumulator of
+     *         each aggregate, each a long split into two INT fields
+     */
+    TupleDesc getPartialTupleDesc() {
+        int w = gbfields.length;
+        Type[] types = new Type[w + 2 + 2 * ops.length];
+        Arrays.fill(types, Type.INT_TYPE);
+        for (int i = 0; i < w; i++)
+            types[i] = getTupleDesc().getFieldType(i);
+        return new TupleDesc(types);
+    }
+
+    /**
+     * @return the partition, of n, of the group whose value is the first
+     *         width fields of t, at the specified level of partitioning
+     */
+    private static int partition(Tuple t, int width, int depth, int n) {
+        int h = depth * 0x9e3779b9;
+        for (int i = 0; i < width; i++)
+            h = (h ^ t.getField(i).hashCode()) * 0x85ebca6b;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % n;
+    }
+
+    private static void setLong(Tuple t, int i, long v) {
+        t.setField(i, new IntField((int) (v >>> 32)));
+        t.setField(i + 1, new IntField((int) v));
+    }
+
+    private static long getLong(Tuple t, int i) {
+        return ((long) t.getInt(i) << 32) | (t.getInt(i + 1) & 0xffffffffL);
+    }
+
+    /**
+     * Write the partial state of each group to the file of its partition,
+     * at the specified level of partitioning, and empty the table.
+     */
+    void spill(SpillFile[] files, int depth) throws IOException {
+        TupleDesc ptd = getPartialTupleDesc();
+        int w = gbfields.length;
+        for (int g = 0; g < numGroups; g++) {
+            Tuple t = new Tuple(ptd);
+            for (int i = 0; i < w; i++)
+                t.setField(i, groupValue(g, i));
+            setLong(t, w, count[g]);
+            for (int i = 0; i < ops.length; i++)
+                setLong(t, w + 2 + 2 * i, acc[g * ops.length + i]);
+            files[partition(t, w, depth, files.length)].add(t);
+        }
+        clear();
+    }
+
+    /** Combine a partial state written by spill into the state of its group. */
+    void mergePartial(Tuple t) {
+        int g = group(t, partialKey);
+        int w = gbfields.length;
+        boolean first = count[g] == 0;
+        count[g] += getLong(t, w);
+        for (int i = 0; i < ops.length; i++) {
+            long a = getLong(t, w + 2 + 2 * i);
+            int j = g * ops.length + i;
+            if (first)
+                acc[j] = a;
+            else if (ops[i] == Aggregator.Op.MIN)
+                acc[j] = Math.min(acc[j], a);
+            else if (ops[i] == Aggregator.Op.MAX)
+                acc[j] = Math.max(acc[j], a);
+            else
+                acc[j] += a;
+        }
+    }
+
+    /** Remove every group, keeping the results' TupleDesc. */
+    void clear() {
+        Arrays.fill(slots, EMPTY);
+        numGroups = 0;
+        if (td != null)
+            newDictionaries();
+    }
+
+    /** @return the number of groups */
+    int size() {
+        return numGroups;
+    }
+
+    /** @return the TupleDesc of the results */
+    TupleDesc getTupleDesc() {
+        if (td != null)
+            return td;
+        Type[] types = Arrays.copyOf(gbfieldtypes, gbfieldtypes.length + ops.length);
+        Arrays.fill(types, gbfieldtypes.length, types.length, Type.INT_TYPE);
+        return new TupleDesc(types);
+    }
+
+    /** @return the result of aggregate i of group g */
+    private int result(int g, int i) {
+        switch (ops[i]) {
+        case COUNT:
+            return (int) count[g];
+        case AVG:
+            return (int) (acc[g * ops.length + i] / count[g]);
+        default:
+            return (int) acc[g * ops.length + i];
+        }
+    }
+
+    /**
+     * @return an iterator over the groups in the order they were first seen,
+     *         each the group fields followed by the aggregates
+     */
+    OpIterator iterator() {
+        ArrayList<Tuple> results = new ArrayList<Tuple>(numGroups);
+        for (int g = 0; g < numGroups; g++)
+            results.add(resultTuple(g));
+        return new TupleIterator(getTupleDesc(), results);
+    }
+
+    /**
+     * @return the group fields of group g, which is numbered in the order
+     *         the groups were first seen, followed by its aggregates
+     */
+    Tuple resultTuple(int g) {
+        Tuple t = new Tuple(getTupleDesc());
+        int w = gbfields.length;
+        for (int i = 0; i < w; i++)
+            t.setField(i, groupValue(g, i));
+        for (int i = 0; i < ops.length; i++)
+            t.setField(w + i, new IntField(result(g, i)));
+        return t;
+    }
+}
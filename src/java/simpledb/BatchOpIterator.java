@@ -0,0 +1,34 @@
+package simpledb;
+
+/**
+ * BatchOpIterator is an OpIterator that can also return its tuples a
+ * TupleBatch at a time, which saves a call and a Tuple per row. Between
+ * open (or rewind) and close, a caller reads an operator either with
+ * hasNext/next or with nextBatch, not both.
+ * <p>
+ * {@link #of(OpIterator)} lets a batch operator read any child, and
+ * {@link BatchTupleIterator} lets a row operator read from a batch one.
+ */
+public interface BatchOpIterator extends OpIterator {
+
+    /**
+     * Returns the next batch of tuples. The batch belongs to the caller
+     * until the next call to nextBatch, rewind or close, which may reuse it;
+     * the caller may narrow its selection in the meantime.
+     *
+     * @return a batch of at least one tuple, or null if there are no more
+     *         tuples
+     * @throws IllegalStateException If the iterator has not been opened
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+
+    /**
+     * @return op if it is a BatchOpIterator, or else a BatchOpIterator that
+     *         reads its tuples one at a time into batches
+     */
+    public static BatchOpIterator of(OpIterator op) {
+        if (op instanceof BatchOpIterator)
+            return (BatchOpIterator) op;
+        return new BatchAdapter(op);
+    }
+}
@@ -1,9 +1,16 @@
 package simpledb;
 
 import java.io.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -25,18 +32,110 @@ public class BufferPool {
     /** hold pages */
     private Page[] pages;
     
+    /** maps the id of every resident page to the frame in pages[] holding it */
+    private final ConcurrentHashMap<PageId, Integer> pageTable;
+    
+    /** frames in pages[] that hold no page */
+    private final ArrayDeque<Integer> freeFrames;
+    
+    /** picks the frame to evict when no frame is free */
+    private final EvictionPolicy policy;
+    
+    /** if set, the id of every requested page is written here, one per line */
+    private volatile PrintWriter accessTrace;
+    
+    /** Number of frames in a scan's buffer ring. */
+    public static final int DEFAULT_RING_PAGES = 32;
+    
+    /** Scans of tables with more pages than this fraction of the pool use a buffer ring. */
+    public static final double DEFAULT_RING_THRESHOLD = 1.0;
+    
+    private volatile int ringPages = DEFAULT_RING_PAGES;
+    private volatile double ringThreshold = DEFAULT_RING_THRESHOLD;
+    
+    /** Largest number of pages a scan reads ahead of its position. */
+    public static final int DEFAULT_READ_AHEAD_PAGES = 64;
+    
+    private volatile int readAheadPages = DEFAULT_READ_AHEAD_PAGES;
+    
+    /** reads prefetched pages in the background, shared by all pools */
+    private static final ExecutorService ioExecutor = Executors.newFixedThreadPool(2,
+    		new ThreadFactory() {
+    			public Thread newThread(Runnable r) {
+    				Thread t = new Thread(r, "simpledb-io");
+    				t.setDaemon(true);
+    				return t;
+    			}
+    		});
+    
+    /** pages being read by ioExecutor; the future completes once the read is over */
+    private final ConcurrentHashMap<PageId, Future<?>> prefetching = new ConcurrentHashMap<PageId, Future<?>>();
+    
+    /**
+     * the page of each frame that was prefetched and has not been requested
+     * yet, or null; hits clear it without the pool's monitor, so it is only
+     * cleared for the very page that was hit
+     */
+    private final AtomicReferenceArray<Page> prefetched;
+    
+    /** Name of the system property that turns on off-heap frames. */
+    public static final String OFF_HEAP_PROPERTY = "simpledb.offheap";
+    
+    /** memory for the frames when heap pages live off-heap, or null */
+    private final PageArena arena;
+    
     /** Default number of pages passed to the constructor. This is used by
     other classes. BufferPool should use the numPages argument to the
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * Creates a BufferPool that caches up to numPages pages, using the
+     * eviction policy named by the {@value EvictionPolicy#PROPERTY} system
+     * property (LRU by default). Frames are off-heap if the
+     * {@value #OFF_HEAP_PROPERTY} system property is true.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+    	this(numPages, EvictionPolicy.forName(
+    			System.getProperty(EvictionPolicy.PROPERTY, EvictionPolicy.DEFAULT), numPages));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the eviction policy, sized for numPages frames
+     */
+    public BufferPool(int numPages, EvictionPolicy policy) {
+    	this(numPages, policy, Boolean.getBoolean(OFF_HEAP_PROPERTY));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     * <p>
+     * In off-heap mode each frame is a page of a {@link PageArena}. HeapFile
+     * pages are read straight into their frame and interpreted in place, so
+     * a cached page costs the Java heap a small HeapPage object rather than
+     * its decoded tuples, and tuples are only created as they are read.
+     * Pages of other DbFiles are cached on the heap as usual. When a page
+     * leaves the pool its contents are copied back to the heap, so anyone
+     * still holding it can keep using it.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the eviction policy, sized for numPages frames
+     * @param offHeap true to keep the cached pages off-heap
+     */
+    public BufferPool(int numPages, EvictionPolicy policy, boolean offHeap) {
+    	this.policy = policy;
+    	arena = offHeap ? new PageArena(numPages, pageSize) : null;
     	pages = new Page[numPages];
+    	prefetched = new AtomicReferenceArray<Page>(numPages);
+    	pageTable = new ConcurrentHashMap<PageId, Integer>(numPages * 2);
+    	freeFrames = new ArrayDeque<Integer>(numPages);
+    	for (int i = 0; i < numPages; i++)
+    		freeFrames.add(i);
     }
     
     public static int getPageSize() {
@@ -70,51 +169,313 @@ public class BufferPool {
      */
     public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
+    	return getPage(tid, pid, perm, null);
+    }
+
+    /**
+     * Retrieve the specified page like {@link #getPage(TransactionId, PageId, Permissions)},
+     * but if the page is not resident, read it into a frame of the specified
+     * buffer ring rather than a frame taken from the rest of the pool. Hits
+     * through a ring do not count as accesses for the eviction policy, so a
+     * scan does not make the pages it passes over look hot.
+     *
+     * @param ring the ring of the scan requesting the page, or null
+     * @see #newScanRing
+     */
+    public  Page getPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+        throws TransactionAbortedException, DbException {
     	
-    	/** aquire a lock to lock bufferpool */
+    	PrintWriter trace = accessTrace;
+    	if (trace != null)
+    		recordAccess(trace, pid);
     	
-    	for (int i = 0; i < pages.length; i++) {
-    		if (pages[i] == null)
-    			continue;
-    		if (pages[i].getId().equals(pid))
-    		{
-    			updateLRU(i);
-    			return pages[i];
+    	/** fast path: the page is resident, no need to lock the pool */
+    	Integer frame = pageTable.get(pid);
+    	if (frame != null) {
+    		Page page = pages[frame];
+    		if (page != null && page.getId().equals(pid)) {
+    			accessed(frame, page, ring);
+    			return page;
     		}
     	}
     	
-    	if (perm == Permissions.READ_ONLY) {
-			/** read file from disk */
-			DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
-			Page newPage = file.readPage(pid);
-			
-			for (int i = 0; i < pages.length; i++) {
-				if (pages[i] != null)
-					continue;
-				pages[i] = newPage;
-				ll.add(i);
-				
-				return pages[i];
-			}
-			
-	                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                 		evictPage();
-			ll.addLast(evicted);
-			
-			pages[evicted] = newPage;
-			return pages[evicted];
+    	/** the page is on its way in: wait for the read rather than issue another */
+    	Future<?> read = prefetching.get(pid);
+    	if (read != null) {
+    		awaitPrefetch(read);
+    		frame = pageTable.get(pid);
+    		if (frame != null) {
+    			Page page = pages[frame];
+    			if (page != null && page.getId().equals(pid)) {
+    				accessed(frame, page, ring);
+    				return page;
+    			}
+    		}
+    	}
     	
-    	} else if (perm == Permissions.READ_WRITE) {
-    		// TODO
+    	return loadPage(pid, ring);
+    }
+
+    /**
+     * Reads the page from its DbFile and installs it in a frame, evicting
+     * a page if there is no free frame. Rechecks the page table first since
+     * another thread may have loaded the page while we were waiting.
+     */
+    private synchronized Page loadPage(PageId pid, BufferRing ring) throws DbException {
+    	Integer frame = pageTable.get(pid);
+    	if (frame != null) {
+    		accessed(frame, pages[frame], ring);
+    		return pages[frame];
     	}
     	
-    	/** there aren't not enough space to add new page */
-    	/** execute eviction policy */
-    	// TODO eviction policy
+    	/** read file from disk */
+    	DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+    	if (!offHeap()) {
+    		Page newPage = file.readPage(pid);
+    		int free = ring == null ? allocateFrame() : allocateRingFrame(ring, pid);
+    		installPage(free, newPage);
+    		return newPage;
+    	}
     	
-    	/** operation here has done, unlock the bufferpool*/
-		// TODO unlock
+    	/** read straight into the frame */
+    	int free = ring == null ? allocateFrame() : allocateRingFrame(ring, pid);
+    	Page newPage;
+    	try {
+    		newPage = file.readPage(pid, arena.frame(free));
+    	} catch (RuntimeException e) {
+    		// the ring recorded the frame when it handed it out
+    		if (ring != null)
+    			ring.remove(free);
+    		freeFrames.add(free);
+    		throw e;
+    	}
+    	installPage(free, newPage);
+    	return newPage;
+    }
+
+    /** @return true if pages are kept in the arena */
+    private boolean offHeap() {
+    	// the page size only changes in tests, which leaves the arena unusable
+    	return arena != null && arena.pageSize() == pageSize;
+    }
+
+    /**
+     * Tell the eviction policy about a hit on frame, unless it came through
+     * a ring or is the first request for a prefetched page, which stands in
+     * for the read the prefetch saved. Called without the pool's monitor
+     * on the fast path, so another thread may have given the frame to a
+     * different page since page was found in it: the prefetch flag is only
+     * cleared for page itself, and the hit is dropped if the frame no
+     * longer holds page.
+     */
+    private void accessed(int frame, Page page, BufferRing ring) {
+    	if (prefetched.compareAndSet(frame, page, null))
+    		return;
+    	if (ring == null && pages[frame] == page)
+    		policy.accessed(frame);
+    }
+
+    /**
+     * Start reading the specified page in the background, unless it is
+     * resident or already being read. The page is installed in the pool
+     * (through ring, if not null) when the read completes, so a later
+     * getPage finds it without waiting for the disk.
+     *
+     * @param pid the page to read
+     * @param ring the ring of the scan the page is read for, or null
+     */
+    public void prefetch(final PageId pid, final BufferRing ring) {
+    	if (pageTable.containsKey(pid) || prefetching.containsKey(pid))
+    		return;
+    	FutureTask<Void> read = new FutureTask<Void>(new Runnable() {
+    		public void run() {
+    			try {
+    				DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+    				installPrefetched(file.readPage(pid), ring);
+    			} catch (RuntimeException | DbException e) {
+    				// prefetching is only a hint; the reader will try again and see the error
+    			} finally {
+    				prefetching.remove(pid);
+    			}
+    		}
+    	}, null);
+    	if (prefetching.putIfAbsent(pid, read) == null)
+    		ioExecutor.execute(read);
+    }
+
+    private synchronized void installPrefetched(Page page, BufferRing ring) throws DbException {
+    	if (pageTable.containsKey(page.getId()))
+    		return;
+    	int frame = ring == null ? allocateFrame() : allocateRingFrame(ring, page.getId());
+    	// flag the page before lookups can find it
+    	prefetched.set(frame, page);
+    	installPage(frame, page);
+    }
+
+    private static void awaitPrefetch(Future<?> read) {
+    	try {
+    		read.get();
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    	} catch (ExecutionException e) {
+    		// the reader falls back to a synchronous read
+    	}
+    }
+
+    /** @return true if the specified page is in the pool */
+    public boolean isResident(PageId pid) {
+    	return pageTable.containsKey(pid);
+    }
+
+    /** @return true if the specified page is being prefetched */
+    public boolean isPrefetching(PageId pid) {
+    	return prefetching.containsKey(pid);
+    }
+
+    /**
+     * @return the largest number of pages a scan through ring (or no ring,
+     *         if null) should read ahead. Leaves room in the ring, or the
+     *         pool, for the pages being consumed.
+     */
+    public int maxReadAhead(BufferRing ring) {
+    	int limit = ring != null ? ring.capacity() / 2 : pages.length / 4;
+    	return Math.min(readAheadPages, limit);
+    }
+
+    /**
+     * Set the largest number of pages a scan reads ahead; 0 turns
+     * read-ahead off.
+     */
+    public void setReadAhead(int maxPages) {
+    	readAheadPages = maxPages;
+    }
+
+    /**
+     * Create a buffer ring for a sequential scan of a table with the
+     * specified number of pages.
+     *
+     * @return a ring, or null if the table is small enough relative to the
+     *         pool that the scan should just use the pool
+     */
+    public BufferRing newScanRing(int tablePages) {
+    	int ringSize = Math.min(ringPages, pages.length / 4);
+    	if (ringSize < 1 || tablePages <= ringThreshold * pages.length)
+    		return null;
+    	return new BufferRing(ringSize);
+    }
+
+    /**
+     * Configure when scans use a buffer ring and how large it is.
+     *
+     * @param threshold scans of tables with more pages than this fraction
+     *        of the pool use a ring
+     * @param ringPages the number of frames in a ring; capped at a quarter
+     *        of the pool
+     */
+    public void setScanRing(double threshold, int ringPages) {
+    	this.ringThreshold = threshold;
+    	this.ringPages = ringPages;
+    }
+
+    /**
+     * @return a frame for the ring to read pid into: a fresh frame while the
+     *         ring is filling up, then the frame of the page the ring read
+     *         longest ago, after evicting that page.
+     */
+    private synchronized int allocateRingFrame(BufferRing ring, PageId pid) throws DbException {
+    	if (!ring.isFull()) {
+    		int frame = allocateFrame();
+    		ring.add(frame, pid);
+    		return frame;
+    	}
     	
-        return null;
+    	int frame = ring.nextFrame();
+    	Page old = pages[frame];
+    	if (old != null && old.getId().equals(ring.nextPageId())) {
+    		try {
+    			flushPage(old.getId());
+    		} catch (IOException e) {
+    			throw new DbException("flush error");
+    		}
+    		// the ring recycles its own frame: not an eviction the policy chose
+    		clearFrame(frame, false);
+    	} else {
+    		// the pool evicted our page and may have given the frame to someone else
+    		frame = allocateFrame();
+    	}
+    	ring.replaceNext(frame, pid);
+    	return frame;
+    }
+
+    /**
+     * @return the index of a frame holding no page, evicting a page if
+     *         every frame is in use.
+     */
+    private synchronized int allocateFrame() throws DbException {
+    	if (freeFrames.isEmpty())
+    		evictPage();
+    	return freeFrames.poll();
+    }
+
+    /** Put page into frame and make it visible to lookups. */
+    private synchronized void installPage(int frame, Page page) {
+    	if (offHeap() && page instanceof HeapPage)
+    		((HeapPage) page).attach(arena.frame(frame));
+    	pages[frame] = page;
+    	pageTable.put(page.getId(), frame);
+    	policy.loaded(frame, page.getId());
+    }
+
+    /**
+     * Makes page the cached version of its page id, replacing any version
+     * already resident, so that future requests see it.
+     */
+    private synchronized void cachePage(Page page) throws DbException {
+    	Integer frame = pageTable.get(page.getId());
+    	if (frame != null) {
+    		Page old = pages[frame];
+    		if (old != page) {
+    			prefetched.set(frame, null);
+    			detach(old);
+    			if (offHeap() && page instanceof HeapPage)
+    				((HeapPage) page).attach(arena.frame(frame));
+    			pages[frame] = page;
+    		}
+    		return;
+    	}
+    	installPage(allocateFrame(), page);
+    }
+
+    /**
+     * Remove the page held by frame from the pool and return the frame to the free list.
+     * @param evicted true if the page is evicted to make room, false if it is discarded
+     */
+    private synchronized void releaseFrame(int frame, boolean evicted) {
+    	if (clearFrame(frame, evicted))
+    		freeFrames.add(frame);
+    }
+
+    /**
+     * Remove the page held by frame from the pool, leaving the frame to the caller.
+     * @param evicted true if the page is evicted to make room, false if it is discarded
+     * @return false if the frame held no page
+     */
+    private synchronized boolean clearFrame(int frame, boolean evicted) {
+    	Page page = pages[frame];
+    	if (page == null)
+    		return false;
+    	pageTable.remove(page.getId());
+    	pages[frame] = null;
+    	detach(page);
+    	prefetched.set(frame, null);
+    	policy.removed(frame, evicted);
+    	return true;
+    }
+
+    /** Move page out of the arena, so its frame can be reused. */
+    private void detach(Page page) {
+    	if (arena != null && page instanceof HeapPage)
+    		((HeapPage) page).detach();
     }
 
     /**
@@ -179,23 +540,13 @@ public class BufferPool {
     public void insertTuple(TransactionId tid, int tableId, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
     	//write lock
-    	HeapFile file = (HeapFile) Database.getCatalog().getDatabaseFile(tableId);
+    	DbFile file = Database.getCatalog().getDatabaseFile(tableId);
     	ArrayList<Page> pagelist = file.insertTuple(tid, t);
 
-    	int begin;
-    	for (begin = 0; begin < pages.length; begin++) {
-    		if (pages[begin] != null && pages[begin].equals(pagelist.get(0)))
-    			return;
-    		if (pages[begin] == null)
-    			break;
-    	}
-    	
     	for (Page pg : pagelist) {
-    		pages[begin++] = pg;
     		pg.markDirty(true, tid);
+    		cachePage(pg);
     	}
-    	
-    	// operate pages
     }
 
     /**
@@ -212,22 +563,38 @@ public class BufferPool {
      * @param t the tuple to delete
      */
     public  void deleteTuple(TransactionId tid, Tuple t)
+        throws DbException, IOException, TransactionAbortedException {
+    	// write lock; the file goes straight to the tuple's RecordId
+    	DbFile file = Database.getCatalog().getDatabaseFile(t.getRecordId().getPageId().getTableId());
+    	ArrayList<Page> pagelist = file.deleteTuple(tid, t);
+
+    	for (Page pg : pagelist) {
+    		pg.markDirty(true, tid);
+    		cachePage(pg);
+    	}
+    }
+
+    /**
+     * Replace the tuple at t's RecordId with the contents of t.
+     * Will acquire a write lock on the page the tuple is stored on and any
+     * other pages that are updated. May block if the lock(s) cannot be acquired.
+     *
+     * Marks any pages that were dirtied by the operation as dirty, and adds
+     * them to the cache, as for {@link #insertTuple}.
+     *
+     * @param tid the transaction updating the tuple.
+     * @param t the new contents of the tuple
+     */
+    public void updateTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
     	// write lock
-    	for (int i = 0; i < pages.length; i++) {
-    		if (pages[i] == null)
-    			continue;
-    		if (pages[i].getId().equals(t.getRecordId().getPageId()))
-    		{
-    			((HeapPage)pages[i]).deleteTuple(t);
-    			return;
-    		}
+    	DbFile file = Database.getCatalog().getDatabaseFile(t.getRecordId().getPageId().getTableId());
+    	ArrayList<Page> pagelist = file.updateTuple(tid, t);
+
+    	for (Page pg : pagelist) {
+    		pg.markDirty(true, tid);
+    		cachePage(pg);
     	}
-    	
-    	HeapPage p = (HeapPage) getPage(tid, t.getRecordId().getPageId(), Permissions.READ_ONLY);
-    	p.deleteTuple(t);
-    	p.markDirty(true, tid);
-    	// operate pages
     }
 
     /**
@@ -236,9 +603,9 @@ public class BufferPool {
      *     break simpledb if running in NO STEAL mode.
      */
     public synchronized void flushAllPages() throws IOException {
-        // some code goes here
-        // not necessary for lab1
-
+    	for (int i = 0; i < pages.length; i++)
+    		if (pages[i] != null)
+    			flushPage(pages[i].getId());
     }
 
     /** Remove the specific page id from the buffer pool.
@@ -250,16 +617,9 @@ public class BufferPool {
         are removed from the cache so they can be reused safely
     */
     public synchronized void discardPage(PageId pid) {
-        for (int i = 0; i < pageSize; i++) {
-        	if (pages[i] == null)
-        		continue;
-        	if (pages[i].getId().equals(pid))
-        	{
-        		pages[i] = null;
-        		return;
-        	}
-        }
-        		
+    	Integer frame = pageTable.get(pid);
+    	if (frame != null)
+    		releaseFrame(frame, false);
     }
 
     /**
@@ -267,20 +627,15 @@ public class BufferPool {
      * @param pid an ID indicating the page to flush
      */
     private synchronized  void flushPage(PageId pid) throws IOException {
-    	for (int i = 0; i < pageSize; i++) {
-        	if (pages[i] == null)
-        		continue;
-        	if (pages[i].getId().equals(pid))
-        	{
-        		if (pages[i].isDirty() != null)
-        		{
-        			DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
-            		file.writePage(pages[i]);
-        		}
-        		pages[i] = null;
-        		return;
-        	}
-        }
+    	Integer frame = pageTable.get(pid);
+    	if (frame == null)
+    		return;
+    	Page page = pages[frame];
+    	if (page.isDirty() != null) {
+    		DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+    		file.writePage(page);
+    		page.markDirty(false, null);
+    	}
     }
 
     /** Write all pages of the specified transaction to disk.
@@ -290,33 +645,38 @@ public class BufferPool {
         // not necessary for lab1|lab2
     }
 
+    /**
+     * Start writing the id of every page requested through getPage to out,
+     * one page per line as the integers of {@link PageId#serialize}, or stop
+     * if out is null. Used to record traces for replaying against the
+     * different eviction policies.
+     */
+    public void setAccessTrace(PrintWriter out) {
+    	accessTrace = out;
+    }
+
+    private static void recordAccess(PrintWriter trace, PageId pid) {
+    	StringBuilder sb = new StringBuilder();
+    	for (int i : pid.serialize())
+    		sb.append(sb.length() == 0 ? "" : " ").append(i);
+    	synchronized (trace) {
+    		trace.println(sb);
+    	}
+    }
+
     /**
      * Discards a page from the buffer pool.
      * Flushes the page to disk to ensure dirty pages are updated on disk.
      */
-    LinkedList<Integer> ll = new  LinkedList<Integer>();
-    int evicted;
     private synchronized  void evictPage() throws DbException {
-        evicted = ll.getFirst();
+        int evicted = policy.victim();
+        if (evicted < 0)
+        	throw new DbException("no page to evict");
         try {
 			flushPage(pages[evicted].getId());
 		} catch (IOException e) {
 			throw new DbException("flush error");
 		}
-        ll.remove(0);
-    }
-
-    private synchronized void updateLRU(int i) {
-    	System.out.println(i);
-		if (ll.size() == pageSize)
-		{
-			System.out.println(i);
-			for (int index : ll)
-				if (index == i) {
-					ll.remove(index);
-					ll.addLast(index);
-					break;
-				}
-		}
+        releaseFrame(evicted, true);
     }
 }
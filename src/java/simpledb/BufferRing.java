@@ -0,0 +1,73 @@
+package simpledb;
+
+/**
+ * A BufferRing is a small, private set of buffer pool frames that a large
+ * sequential scan recycles for the pages it reads, instead of taking frames
+ * from the rest of the pool. Once the ring is full, the page read longest ago
+ * by the scan is evicted and its frame reused, so a scan of a table much
+ * larger than the pool only ever occupies a handful of frames and leaves the
+ * pages cached for everybody else alone.
+ * <p>
+ * Rings are obtained from {@link BufferPool#newScanRing} and passed to
+ * {@link BufferPool#getPage(TransactionId, PageId, Permissions, BufferRing)}.
+ * A ring belongs to a single scan and is only modified by the pool, under
+ * the pool's monitor. Frames of a ring that is dropped simply remain
+ * ordinary frames of the pool.
+ */
+public class BufferRing {
+
+    private final int[] frames;
+    /** the page this ring read into each of its frames */
+    private final PageId[] pids;
+    private int size;
+    private int next;
+
+    BufferRing(int numFrames) {
+        frames = new int[numFrames];
+        pids = new PageId[numFrames];
+    }
+
+    /** @return the number of frames this ring may use */
+    public int capacity() {
+        return frames.length;
+    }
+
+    boolean isFull() {
+        return size == frames.length;
+    }
+
+    /** Remember that the ring read pid into frame, in a slot not used yet. */
+    void add(int frame, PageId pid) {
+        frames[size] = frame;
+        pids[size] = pid;
+        size++;
+    }
+
+    /** @return the frame of the slot to recycle next */
+    int nextFrame() {
+        return frames[next];
+    }
+
+    /** @return the page the ring read into the slot to recycle next */
+    PageId nextPageId() {
+        return pids[next];
+    }
+
+    /**
+     * Forget that the ring read a page into frame, because the read failed
+     * and the frame has gone back to the pool. The slot is recycled as if
+     * the pool had evicted its page.
+     */
+    void remove(int frame) {
+        for (int i = 0; i < size; i++)
+            if (frames[i] == frame)
+                pids[i] = null;
+    }
+
+    /** Record that the slot to recycle next now holds pid in frame, and advance. */
+    void replaceNext(int frame, PageId pid) {
+        frames[next] = frame;
+        pids[next] = pid;
+        next = (next + 1) % frames.length;
+    }
+}
@@ -197,15 +197,29 @@ public class Catalog {
         throw new NoSuchElementException();
     }
     
-    /** Delete all tables from the catalog */
+    /** Delete all tables from the catalog, closing their files */
     public void clear() {
         // some code goes here
+    	for (Tables t : tables) {
+    		try {
+    			t.file.close();
+    		} catch (IOException e) {
+    			e.printStackTrace();
+    		}
+    	}
     	tables.clear();
     	id = 0; //?
     }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line describes one table as <tt>name (field type [pk], ...)</tt>,
+     * optionally followed by a storage keyword: <tt>mapped</tt> reads the
+     * table through a {@link MappedHeapFile}, <tt>slotted</tt> stores it in
+     * a {@link SlottedHeapFile}, and <tt>columnar</tt> stores each column
+     * in its own file, through a {@link ColumnarFile}. A field type is <tt>int</tt>,
+     * <tt>string</tt>, or <tt>varchar</tt>, optionally with a maximum length
+     * no more than Type.STRING_LEN: <tt>varchar(32)</tt>.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -215,10 +229,10 @@ public class Catalog {
             BufferedReader br = new BufferedReader(new FileReader(new File(catalogFile)));
             
             while ((line = br.readLine()) != null) {
-                //assume line is of the format name (field type, field type, ...)
+                //assume line is of the format name (field type, field type, ...) [storage]
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
-                String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
+                String fields = line.substring(line.indexOf("(") + 1, line.lastIndexOf(")")).trim();
                 String[] els = fields.split(",");
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
@@ -226,10 +240,14 @@ public class Catalog {
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
-                    if (els2[1].trim().toLowerCase().equals("int"))
+                    String type = els2[1].trim().toLowerCase();
+                    if (type.equals("int"))
                         types.add(Type.INT_TYPE);
-                    else if (els2[1].trim().toLowerCase().equals("string"))
+                    else if (type.equals("string"))
                         types.add(Type.STRING_TYPE);
+                    else if (type.equals("varchar") || (type.matches("varchar\\(\\d+\\)")
+                            && Integer.parseInt(type.substring(8, type.length() - 1)) <= Type.STRING_LEN))
+                        types.add(Type.VARCHAR_TYPE);
                     else {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
@@ -246,7 +264,22 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                String storage = line.substring(line.lastIndexOf(")") + 1).trim().toLowerCase();
+                File tabFile = new File(baseFolder+"/"+name + ".dat");
+                DbFile tabHf;
+                if (storage.equals(""))
+                    tabHf = new HeapFile(tabFile, t);
+                else if (storage.equals("mapped"))
+                    tabHf = new MappedHeapFile(tabFile, t);
+                else if (storage.equals("slotted"))
+                    tabHf = new SlottedHeapFile(tabFile, t);
+                else if (storage.equals("columnar"))
+                    tabHf = new ColumnarFile(tabFile, t);
+                else {
+                    System.out.println("Unknown storage " + storage);
+                    System.exit(0);
+                    return;
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
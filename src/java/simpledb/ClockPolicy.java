@@ -0,0 +1,46 @@
+package simpledb;
+
+/**
+ * CLOCK (second chance) replacement. Each frame has a reference bit that is
+ * set on access; the clock hand sweeps the frames, clearing set bits and
+ * evicting the first frame whose bit is already clear. Hits only write a
+ * byte, so they never contend on a lock.
+ */
+public class ClockPolicy implements EvictionPolicy {
+
+    private static final byte EMPTY = 0, UNREFERENCED = 1, REFERENCED = 2;
+
+    private final byte[] state;
+    private int hand;
+
+    public ClockPolicy(int numPages) {
+        state = new byte[numPages];
+    }
+
+    public synchronized void loaded(int frame, PageId pid) {
+        state[frame] = UNREFERENCED;
+    }
+
+    public void accessed(int frame) {
+        // racing with the sweep only costs a page a second chance
+        if (state[frame] != EMPTY)
+            state[frame] = REFERENCED;
+    }
+
+    public synchronized void removed(int frame, boolean evicted) {
+        state[frame] = EMPTY;
+    }
+
+    public synchronized int victim() {
+        // two full turns clear every reference bit, so this terminates
+        for (int i = 0; i < 2 * state.length + 1; i++) {
+            int frame = hand;
+            hand = (hand + 1) % state.length;
+            if (state[frame] == UNREFERENCED)
+                return frame;
+            if (state[frame] == REFERENCED)
+                state[frame] = UNREFERENCED;
+        }
+        return -1;
+    }
+}
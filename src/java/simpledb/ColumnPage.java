@@ -0,0 +1,192 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * Each instance of ColumnPage stores the values of one column for a run of
+ * consecutive rows of a ColumnarFile, and implements the Page interface
+ * that is used by BufferPool. The format of a ColumnPage is:
+ * <ul>
+ * <li> an int, the number of row slots of the page that have been filled;
+ * <li> two ints, the least and greatest value stored on the page, for an
+ *      INT column with values on it;
+ * <li> a header of one bit per row slot, set if the row is live;
+ * <li> the values, each taking the column type's getLen() bytes.
+ * </ul>
+ * The minimum and maximum only grow as values are stored: deleting a row
+ * leaves them as they were, so they bound the page's values, which is all
+ * a scan needs to skip the page.
+ *
+ * @see ColumnarFile
+ * @see BufferPool
+ */
+public class ColumnPage implements Page {
+
+    /** The size of the count, minimum and maximum at the start of the page */
+    static final int SUMMARY_SIZE = 12;
+
+    private volatile boolean dirty = false;
+    private volatile TransactionId dirtier = null;
+
+    final ColumnPageId pid;
+    final Type type;
+    final int numSlots;
+    private final int headerSize;
+    private final ByteBuffer buf;
+
+    byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    /**
+     * Create a ColumnPage from a set of bytes of data read from disk, in
+     * the format described above. The type of the page's values is looked
+     * up in the catalog.
+     */
+    public ColumnPage(ColumnPageId id, byte[] data) throws IOException {
+        this(id, Database.getCatalog().getTupleDesc(id.getTableId()).getFieldType(id.getColumn()), data);
+    }
+
+    /**
+     * Create a ColumnPage holding values of the specified type from a set of
+     * bytes of data read from disk. The bytes are copied.
+     */
+    public ColumnPage(ColumnPageId id, Type type, byte[] data) throws IOException {
+        this.pid = id;
+        this.type = type;
+        this.numSlots = rowsPerPage(type);
+        this.headerSize = (numSlots + 7) / 8;
+        this.buf = ByteBuffer.wrap(Arrays.copyOf(data, BufferPool.getPageSize()));
+        setBeforeImage();
+    }
+
+    /** @return the number of values of the specified type a page holds */
+    public static int rowsPerPage(Type type) {
+        return (BufferPool.getPageSize() - SUMMARY_SIZE) * 8 / (type.getLen() * 8 + 1);
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public ColumnPage getBeforeImage() {
+        try {
+            byte[] oldDataRef = null;
+            synchronized (oldDataLock) {
+                oldDataRef = oldData;
+            }
+            return new ColumnPage(pid, type, oldDataRef);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = getPageData();
+        }
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public ColumnPageId getId() {
+        return pid;
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page.
+     * Used to serialize this page to disk.
+     */
+    public byte[] getPageData() {
+        return buf.array().clone();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirty = dirty;
+        if (dirty)
+            this.dirtier = tid;
+    }
+
+    public TransactionId isDirty() {
+        return dirty ? dirtier : null;
+    }
+
+    /** @return the number of row slots of this page that have been filled */
+    public int numRows() {
+        return buf.getInt(0);
+    }
+
+    /** @return true if the row in the specified slot is live */
+    public boolean isRowUsed(int slot) {
+        return slot >= 0 && slot < numSlots
+                && (buf.get(SUMMARY_SIZE + slot / 8) & (1 << (slot % 8))) != 0;
+    }
+
+    private void markRowUsed(int slot, boolean used) {
+        int off = SUMMARY_SIZE + slot / 8;
+        byte b = buf.get(off);
+        buf.put(off, (byte) (used ? b | (1 << (slot % 8)) : b & ~(1 << (slot % 8))));
+    }
+
+    private int valueOffset(int slot) {
+        return SUMMARY_SIZE + headerSize + slot * type.getLen();
+    }
+
+    /** @return the value stored in the specified slot */
+    public Field getField(int slot) {
+        try {
+            return type.parse(buf, valueOffset(slot));
+        } catch (ParseException e) {
+            e.printStackTrace();
+            throw new NoSuchElementException("parsing error!");
+        }
+    }
+
+    /**
+     * @return true if the value in the specified slot satisfies op against
+     *         operand; it is compared in place, without being decoded
+     */
+    public boolean matches(int slot, Predicate.Op op, Field operand) {
+        return type.compare(buf, valueOffset(slot), op, operand);
+    }
+
+    /**
+     * @return false if no value on this page can satisfy p, judging by the
+     *         page's minimum and maximum
+     */
+    public boolean mayMatch(Predicate p) {
+        if (type != Type.INT_TYPE || numRows() == 0)
+            return true;
+        return p.mayMatch(buf.getInt(4), buf.getInt(8));
+    }
+
+    /** Store f, a value of this page's type, as the live row of a slot. */
+    public void setField(int slot, Field f) {
+        if (slot < 0 || slot >= numSlots)
+            throw new NoSuchElementException();
+        ByteBuffer dst = buf.duplicate();
+        dst.position(valueOffset(slot));
+        type.serialize(f, dst);
+        if (type == Type.INT_TYPE) {
+            int v = ((IntField) f).getValue();
+            boolean first = numRows() == 0;
+            if (first || v < buf.getInt(4))
+                buf.putInt(4, v);
+            if (first || v > buf.getInt(8))
+                buf.putInt(8, v);
+        }
+        buf.putInt(0, Math.max(numRows(), slot + 1));
+        markRowUsed(slot, true);
+    }
+
+    /** Mark the row in the specified slot as deleted. */
+    public void clearRow(int slot) {
+        if (!isRowUsed(slot))
+            throw new NoSuchElementException();
+        markRowUsed(slot, false);
+    }
+}
@@ -0,0 +1,83 @@
+package simpledb;
+
+/** Unique identifier for ColumnPage objects. */
+public class ColumnPageId implements PageId {
+
+	private final int tableId;
+	private final int column;
+	private final int pgNo;
+
+	/**
+	 * Constructor. Create a page id structure for a specific page of one
+	 * column of a specific table.
+	 *
+	 * @param tableId The table that is being referenced
+	 * @param column The column of the table the page holds values of
+	 * @param pgNo The page number in that column.
+	 */
+	public ColumnPageId(int tableId, int column, int pgNo) {
+		this.tableId = tableId;
+		this.column = column;
+		this.pgNo = pgNo;
+	}
+
+	/** @return the table associated with this PageId */
+	public int getTableId() {
+		return tableId;
+	}
+
+	/** @return the column of the table whose values the page holds */
+	public int getColumn() {
+		return column;
+	}
+
+	/**
+	 * @return the page number in the column getColumn() of the table
+	 *   getTableId() associated with this PageId
+	 */
+	public int getPageNumber() {
+		return pgNo;
+	}
+
+	/**
+	 * @return a hash code for this page, represented by the concatenation of
+	 *   the table number, column and page number (needed if a PageId is used
+	 *   as a key in a hash table in the BufferPool, for example.)
+	 * @see BufferPool
+	 */
+	public int hashCode() {
+		return (tableId * 31 + column) * 31 + pgNo;
+	}
+
+	/**
+	 * Compares one PageId to another.
+	 *
+	 * @param o The object to compare against (must be a PageId)
+	 * @return true if the objects are equal (e.g., page numbers, columns
+	 *   and table ids are the same)
+	 */
+	public boolean equals(Object o) {
+		if (!(o instanceof ColumnPageId))
+			return false;
+		ColumnPageId p = (ColumnPageId) o;
+		return tableId == p.tableId && column == p.column && pgNo == p.pgNo;
+	}
+
+	public String toString() {
+		return "(tableId: " + tableId + ", column: " + column + ", pgNo: " + pgNo + ")";
+	}
+
+	/**
+	 *  Return a representation of this object as an array of
+	 *  integers, for writing to disk.  Size of returned array must contain
+	 *  number of integers that corresponds to number of args to one of the
+	 *  constructors.
+	 */
+	public int[] serialize() {
+		int data[] = new int[3];
+		data[0] = tableId;
+		data[1] = column;
+		data[2] = pgNo;
+		return data;
+	}
+}
@@ -0,0 +1,104 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * ColumnScan is a sequential scan over some of the columns of a table
+ * stored in a ColumnarFile. Only the pages of those columns are read, so
+ * its cost grows with the columns a query uses rather than the width of
+ * the table. Its tuples hold just the scanned columns, in the order given.
+ *
+ * @see ColumnarFile
+ */
+public class ColumnScan implements OpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionId tid;
+    private final int tableid;
+    private final String tableAlias;
+    private final int[] columns;
+    private DbFileIterator itr;
+    /** predicates pushed down into this scan */
+    private final ArrayList<Predicate> predicates = new ArrayList<Predicate>();
+
+    /**
+     * Creates a scan over the specified columns of a columnar table as a
+     * part of the specified transaction.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan, which must be stored in a ColumnarFile.
+     * @param tableAlias
+     *            the alias of this table, which prefixes the field names of
+     *            the returned tuples as for SeqScan.
+     * @param columns
+     *            the columns to return, by their number in the table.
+     */
+    public ColumnScan(TransactionId tid, int tableid, String tableAlias, int[] columns) {
+        this.tid = tid;
+        this.tableid = tableid;
+        this.tableAlias = tableAlias == null ? "NULL" : tableAlias;
+        this.columns = columns.clone();
+    }
+
+    /**
+     * Only return tuples that satisfy p, whose field number is that of a
+     * column of this scan's tuples. Pages whose values cannot satisfy p are
+     * not read. Must be called before the scan is opened.
+     */
+    public void addPredicate(Predicate p) {
+        predicates.add(p);
+    }
+
+    /**
+     * @return the alias of the table this operator scans.
+     */
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (!(file instanceof ColumnarFile))
+            throw new DbException("table " + Database.getCatalog().getTableName(tableid)
+                    + " is not columnar");
+        itr = ((ColumnarFile) file).iterator(tid, columns,
+                predicates.toArray(new Predicate[0]));
+        itr.open();
+    }
+
+    /**
+     * Returns the TupleDesc of the scanned columns, with their field names
+     * prefixed with the tableAlias string from the constructor.
+     */
+    public TupleDesc getTupleDesc() {
+        TupleDesc desc = Database.getCatalog().getTupleDesc(tableid);
+        Type[] types = new Type[columns.length];
+        String[] fieldName = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            types[i] = desc.getFieldType(columns[i]);
+            fieldName[i] = tableAlias + "." + desc.getFieldName(columns[i]);
+        }
+        return new TupleDesc(types, fieldName);
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        return itr.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        return itr.next();
+    }
+
+    public void close() {
+        itr.close();
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        itr.rewind();
+    }
+}
@@ -0,0 +1,342 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * ColumnarFile is an implementation of a DbFile that stores each column of
+ * a table in its own sequence of ColumnPages, so a scan that needs only a
+ * few columns of a wide table reads and decodes only those columns' pages.
+ * Column i is kept in the file named after the table's file with ".i"
+ * appended.
+ * <p>
+ * Rows are appended: row r is stored in slot r % n of page r / n of every
+ * column, where n is the number of values of the column's type a page
+ * holds. A tuple's RecordId names its page and slot in column 0. Deleted
+ * rows are marked in every column and their slots are not reused, which
+ * suits the append-mostly tables columnar storage is meant for.
+ *
+ * @see ColumnPage
+ * @see ColumnScan
+ */
+public class ColumnarFile implements DbFile {
+
+    private final File file;
+    private final TupleDesc td;
+    private final PageChannel[] channels;
+    private final int[] rowsPerPage;
+    /** the number of rows ever appended, or -1 until first needed */
+    private volatile int numRows = -1;
+
+    /**
+     * Constructs a columnar file whose columns are stored in files named
+     * after the specified file.
+     *
+     * @param f
+     *            the file whose name, with the column number appended,
+     *            names the on-disk backing store of each column.
+     */
+    public ColumnarFile(File f, TupleDesc td) {
+        this.file = f;
+        this.td = td;
+        this.channels = new PageChannel[td.numFields()];
+        this.rowsPerPage = new int[td.numFields()];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = new PageChannel(columnFile(f, i));
+            rowsPerPage[i] = ColumnPage.rowsPerPage(td.getFieldType(i));
+        }
+    }
+
+    /** @return the file holding the specified column of the table in f */
+    public static File columnFile(File f, int column) {
+        return new File(f.getPath() + "." + column);
+    }
+
+    /**
+     * Returns the File whose name the column files of this ColumnarFile
+     * are named after.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns an ID uniquely identifying this ColumnarFile, the hash code of
+     * the absolute name of its file, as for a HeapFile.
+     */
+    public int getId() {
+        return file.getAbsoluteFile().hashCode();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    // see DbFile.java for javadocs
+    public void close() throws IOException {
+        for (PageChannel ch : channels)
+            ch.close();
+    }
+
+    /** @return the number of rows a page of the specified column holds */
+    public int rowsPerPage(int column) {
+        return rowsPerPage[column];
+    }
+
+    /**
+     * @return the number of rows appended to this file, including deleted
+     *         rows; each column has a value slot for every one of them
+     */
+    public int numRows() {
+        int n = numRows;
+        if (n >= 0)
+            return n;
+        synchronized (this) {
+            if (numRows >= 0)
+                return numRows;
+            // the rows on all but the last page of column 0, and the rows
+            // the last page says it holds
+            int pgsz = BufferPool.getPageSize();
+            long pages = (columnFile(file, 0).length() + pgsz - 1) / pgsz;
+            n = 0;
+            if (pages > 0) {
+                byte[] count = new byte[4];
+                try {
+                    channels[0].read((pages - 1) * pgsz, count);
+                } catch (IOException e) {
+                    throw new NoSuchElementException();
+                }
+                n = (int) (pages - 1) * rowsPerPage[0] + ByteBuffer.wrap(count).getInt();
+            }
+            numRows = n;
+            return n;
+        }
+    }
+
+    /** @return the number of pages of the specified column */
+    public int numPages(int column) {
+        return (numRows() + rowsPerPage[column] - 1) / rowsPerPage[column];
+    }
+
+    private synchronized int allocateRow() {
+        int row = numRows();
+        numRows = row + 1;
+        return row;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        if (!(pid instanceof ColumnPageId) || pid.getTableId() != getId())
+            throw new IllegalArgumentException("not a page of this file: " + pid);
+        ColumnPageId id = (ColumnPageId) pid;
+        int pgsz = BufferPool.getPageSize();
+        byte[] bytes = new byte[pgsz];
+        // a page past the end of the file reads as empty
+        try {
+            channels[id.getColumn()].read((long) id.getPageNumber() * pgsz, bytes);
+            return new ColumnPage(id, td.getFieldType(id.getColumn()), bytes);
+        } catch (IOException e) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        ColumnPageId id = (ColumnPageId) page.getId();
+        channels[id.getColumn()].write((long) id.getPageNumber() * BufferPool.getPageSize(),
+                page.getPageData());
+    }
+
+    /** @return the page of the specified column holding row */
+    private ColumnPage page(TransactionId tid, int column, int row, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        return (ColumnPage) Database.getBufferPool().getPage(tid,
+                new ColumnPageId(getId(), column, row / rowsPerPage[column]), perm);
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        TupleDesc other = t.getTupleDesc();
+        if (other.numFields() != td.numFields())
+            throw new DbException("mismatch descriptor");
+        for (int i = 0; i < td.numFields(); i++)
+            if (other.getFieldType(i).valueType() != td.getFieldType(i).valueType())
+                throw new DbException("mismatch descriptor");
+
+        int row = allocateRow();
+        ArrayList<Page> pages = new ArrayList<Page>();
+        for (int i = 0; i < td.numFields(); i++) {
+            ColumnPage pg = page(tid, i, row, Permissions.READ_WRITE);
+            pg.setField(row % rowsPerPage[i], t.getField(i));
+            pages.add(pg);
+        }
+        t.setRecordId(recordId(row));
+        return pages;
+    }
+
+    /** @return the RecordId of the specified row */
+    private RecordId recordId(int row) {
+        return new RecordId(new ColumnPageId(getId(), 0, row / rowsPerPage[0]),
+                row % rowsPerPage[0]);
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !(rid.getPageId() instanceof ColumnPageId)
+                || rid.getPageId().getTableId() != getId()
+                || ((ColumnPageId) rid.getPageId()).getColumn() != 0)
+            throw new DbException("tuple t is not a member of this DbFile");
+        int row = rid.getPageId().getPageNumber() * rowsPerPage[0] + rid.getTupleNumber();
+        if (rid.getPageId().getPageNumber() < 0 || rid.getTupleNumber() < 0
+                || rid.getTupleNumber() >= rowsPerPage[0] || row >= numRows())
+            throw new DbException("tuple t is not a member of this DbFile");
+        if (!page(tid, 0, row, Permissions.READ_WRITE).isRowUsed(row % rowsPerPage[0]))
+            throw new DbException("already empty");
+
+        ArrayList<Page> pages = new ArrayList<Page>();
+        for (int i = 0; i < td.numFields(); i++) {
+            ColumnPage pg = page(tid, i, row, Permissions.READ_WRITE);
+            pg.clearRow(row % rowsPerPage[i]);
+            pages.add(pg);
+        }
+        return pages;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return iterator(tid, allColumns(), new Predicate[0]);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that satisfy all of
+     * preds. Pages whose minimum and maximum rule a predicate out are
+     * skipped, and the others are tested before any value is decoded.
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate[] preds) {
+        return iterator(tid, allColumns(), preds);
+    }
+
+    /**
+     * Returns an iterator over the specified columns of the tuples of this
+     * file that satisfy all of preds. Only the pages of those columns are
+     * read.
+     *
+     * @param columns
+     *            the columns of the returned tuples, by their number in this
+     *            file's TupleDesc; there must be at least one
+     * @param preds
+     *            predicates whose field numbers index into columns
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] columns, Predicate[] preds) {
+        if (columns.length == 0)
+            throw new IllegalArgumentException("no columns to scan");
+        return new Itr(tid, columns, preds);
+    }
+
+    private int[] allColumns() {
+        int[] columns = new int[td.numFields()];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = i;
+        return columns;
+    }
+
+    /** @return the TupleDesc of the tuples of the specified columns */
+    TupleDesc project(int[] columns) {
+        Type[] types = new Type[columns.length];
+        String[] names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            types[i] = td.getFieldType(columns[i]);
+            names[i] = td.getFieldName(columns[i]);
+        }
+        return new TupleDesc(types, names);
+    }
+
+    private class Itr extends AbstractDbFileIterator {
+
+        final TransactionId tid;
+        final int[] columns;
+        final Predicate[] preds;
+        final TupleDesc outTd;
+        /**
+         * the scanned column whose pages are checked for deleted rows: the
+         * first predicate's, whose pages are read anyway, so the other
+         * columns are only read for rows that match
+         */
+        final int liveColumn;
+        /** the current page of each of the columns, or null */
+        ColumnPage[] pages;
+        int row, end;
+
+        Itr(TransactionId tid, int[] columns, Predicate[] preds) {
+            this.tid = tid;
+            this.columns = columns;
+            this.preds = preds;
+            this.outTd = project(columns);
+            this.liveColumn = preds.length > 0 ? preds[0].getField() : 0;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            pages = new ColumnPage[columns.length];
+            row = 0;
+            end = numRows();
+        }
+
+        /** @return the page of the ith scanned column holding the current row */
+        private ColumnPage page(int i) throws DbException, TransactionAbortedException {
+            int c = columns[i];
+            ColumnPage pg = pages[i];
+            if (pg == null || pg.getId().getPageNumber() != row / rowsPerPage[c])
+                pg = pages[i] = ColumnarFile.this.page(tid, c, row, Permissions.READ_ONLY);
+            return pg;
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            if (pages == null)
+                return null;
+            next:
+            while (row < end) {
+                for (Predicate p : preds) {
+                    int i = p.getField();
+                    if (!page(i).mayMatch(p)) {
+                        // go to the first row of the column's next page
+                        int rpp = rowsPerPage[columns[i]];
+                        row = (row / rpp + 1) * rpp;
+                        continue next;
+                    }
+                }
+                if (!page(liveColumn).isRowUsed(row % rowsPerPage[columns[liveColumn]])) {
+                    row++;
+                    continue;
+                }
+                for (Predicate p : preds) {
+                    int i = p.getField();
+                    if (!page(i).matches(row % rowsPerPage[columns[i]], p.getOp(), p.getOperand())) {
+                        row++;
+                        continue next;
+                    }
+                }
+                Tuple t = new Tuple(outTd);
+                for (int i = 0; i < columns.length; i++)
+                    t.setField(i, page(i).getField(row % rowsPerPage[columns[i]]));
+                t.setRecordId(recordId(row));
+                row++;
+                return t;
+            }
+            return null;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        public void close() {
+            super.close();
+            pages = null;
+        }
+    }
+}
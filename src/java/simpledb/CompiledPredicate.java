@@ -0,0 +1,274 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * CompiledPredicate evaluates a Predicate, or a conjunction of them, with a
+ * class specialized for its shape: the comparison of an INT field with an
+ * int has a class per operator, whose tests are straight-line code on the
+ * int, where {@link Predicate#filter(Tuple)} goes through Field.compare and
+ * a switch on the operator for every tuple. Predicates of any other shape
+ * fall back to that.
+ * <p>
+ * Operators compile their predicates once, when they are opened, for the
+ * TupleDesc of the tuples they will be tested against.
+ */
+public abstract class CompiledPredicate {
+
+    /** @return true if t satisfies the predicate */
+    public abstract boolean test(Tuple t);
+
+    /**
+     * @return true if the tuple serialized at offset in buf, in the layout
+     *         of td, satisfies the predicate, which is tested on its bytes
+     */
+    abstract boolean test(TupleDesc td, ByteBuffer buf, int offset);
+
+    /** Drop the selected rows of b that do not satisfy the predicate. */
+    public abstract void filter(TupleBatch b);
+
+    /**
+     * @return p compiled for tuples of td
+     */
+    public static CompiledPredicate compile(Predicate p, TupleDesc td) {
+        int f = p.getField();
+        if (f < 0 || f >= td.numFields() || td.getFieldType(f) != Type.INT_TYPE
+                || !(p.getOperand() instanceof IntField))
+            return new Interpreted(p);
+        int v = ((IntField) p.getOperand()).getValue();
+        switch (p.getOp()) {
+        case EQUALS:
+        case LIKE:
+            return new IntEquals(f, v);
+        case NOT_EQUALS:
+            return new IntNotEquals(f, v);
+        case GREATER_THAN:
+            return new IntGreaterThan(f, v);
+        case GREATER_THAN_OR_EQ:
+            return new IntGreaterThanOrEq(f, v);
+        case LESS_THAN:
+            return new IntLessThan(f, v);
+        case LESS_THAN_OR_EQ:
+            return new IntLessThanOrEq(f, v);
+        default:
+            return new Interpreted(p);
+        }
+    }
+
+    /**
+     * @return the conjunction of preds compiled for tuples of td
+     */
+    public static CompiledPredicate compile(Predicate[] preds, TupleDesc td) {
+        if (preds.length == 1)
+            return compile(preds[0], td);
+        CompiledPredicate[] all = new CompiledPredicate[preds.length];
+        for (int i = 0; i < preds.length; i++)
+            all[i] = compile(preds[i], td);
+        return new And(all);
+    }
+
+    /** Evaluates a predicate of any shape through Field.compare. */
+    static final class Interpreted extends CompiledPredicate {
+        private final Predicate p;
+
+        Interpreted(Predicate p) {
+            this.p = p;
+        }
+
+        public boolean test(Tuple t) {
+            return p.filter(t);
+        }
+
+        boolean test(TupleDesc td, ByteBuffer buf, int offset) {
+            int f = p.getField();
+            return td.getFieldType(f).compare(buf, td.getFieldOffset(f, buf, offset),
+                    p.getOp(), p.getOperand());
+        }
+
+        public void filter(TupleBatch b) {
+            int[] sel = b.selection();
+            int n = 0;
+            for (int i = 0, size = b.size(); i < size; i++)
+                if (b.getField(p.getField(), sel[i]).compare(p.getOp(), p.getOperand()))
+                    sel[n++] = sel[i];
+            b.select(n);
+        }
+    }
+
+    /** Evaluates each of a list of predicates in turn. */
+    static final class And extends CompiledPredicate {
+        private final CompiledPredicate[] preds;
+
+        And(CompiledPredicate[] preds) {
+            this.preds = preds;
+        }
+
+        public boolean test(Tuple t) {
+            for (CompiledPredicate p : preds)
+                if (!p.test(t))
+                    return false;
+            return true;
+        }
+
+        boolean test(TupleDesc td, ByteBuffer buf, int offset) {
+            for (CompiledPredicate p : preds)
+                if (!p.test(td, buf, offset))
+                    return false;
+            return true;
+        }
+
+        public void filter(TupleBatch b) {
+            for (int i = 0; i < preds.length && b.size() > 0; i++)
+                preds[i].filter(b);
+        }
+    }
+
+    /** The comparison of an INT field with an int. */
+    static abstract class IntPredicate extends CompiledPredicate {
+        final int field;
+        final int value;
+
+        IntPredicate(int field, int value) {
+            this.field = field;
+            this.value = value;
+        }
+    }
+
+    static final class IntEquals extends IntPredicate {
+        IntEquals(int field, int value) {
+            super(field, value);
+        }
+
+        public boolean test(Tuple t) {
+            return t.getInt(field) == value;
+        }
+
+        boolean test(TupleDesc td, ByteBuffer buf, int offset) {
+            return buf.getInt(td.getFieldOffset(field, buf, offset)) == value;
+        }
+
+        public void filter(TupleBatch b) {
+            int[] col = b.ints(field), sel = b.selection();
+            int n = 0;
+            for (int i = 0, size = b.size(); i < size; i++)
+                if (col[sel[i]] == value)
+                    sel[n++] = sel[i];
+            b.select(n);
+        }
+    }
+
+    static final class IntNotEquals extends IntPredicate {
+        IntNotEquals(int field, int value) {
+            super(field, value);
+        }
+
+        public boolean test(Tuple t) {
+            return t.getInt(field) != value;
+        }
+
+        boolean test(TupleDesc td, ByteBuffer buf, int offset) {
+            return buf.getInt(td.getFieldOffset(field, buf, offset)) != value;
+        }
+
+        public void filter(TupleBatch b) {
+            int[] col = b.ints(field), sel = b.selection();
+            int n = 0;
+            for (int i = 0, size = b.size(); i < size; i++)
+                if (col[sel[i]] != value)
+                    sel[n++] = sel[i];
+            b.select(n);
+        }
+    }
+
+    static final class IntGreaterThan extends IntPredicate {
+        IntGreaterThan(int field, int value) {
+            super(field, value);
+        }
+
+        public boolean test(Tuple t) {
+            return t.getInt(field) > value;
+        }
+
+        boolean test(TupleDesc td, ByteBuffer buf, int offset) {
+            return buf.getInt(td.getFieldOffset(field, buf, offset)) > value;
+        }
+
+        public void filter(TupleBatch b) {
+            int[] col = b.ints(field), sel = b.selection();
+            int n = 0;
+            for (int i = 0, size = b.size(); i < size; i++)
+                if (col[sel[i]] > value)
+                    sel[n++] = sel[i];
+            b.select(n);
+        }
+    }
+
+    static final class IntGreaterThanOrEq extends IntPredicate {
+        IntGreaterThanOrEq(int field, int value) {
+            super(field, value);
+        }
+
+        public boolean test(Tuple t) {
+            return t.getInt(field) >= value;
+        }
+
+        boolean test(TupleDesc td, ByteBuffer buf, int offset) {
+            return buf.getInt(td.getFieldOffset(field, buf, offset)) >= value;
+        }
+
+        public void filter(TupleBatch b) {
+            int[] col = b.ints(field), sel = b.selection();
+            int n = 0;
+            for (int i = 0, size = b.size(); i < size; i++)
+                if (col[sel[i]] >= value)
+                    sel[n++] = sel[i];
+            b.select(n);
+        }
+    }
+
+    static final class IntLessThan extends IntPredicate {
+        IntLessThan(int field, int value) {
+            super(field, value);
+        }
+
+        public boolean test(Tuple t) {
+            return t.getInt(field) < value;
+        }
+
+        boolean test(TupleDesc td, ByteBuffer buf, int offset) {
+            return buf.getInt(td.getFieldOffset(field, buf, offset)) < value;
+        }
+
+        public void filter(TupleBatch b) {
+            int[] col = b.ints(field), sel = b.selection();
+            int n = 0;
+            for (int i = 0, size = b.size(); i < size; i++)
+                if (col[sel[i]] < value)
+                    sel[n++] = sel[i];
+            b.select(n);
+        }
+    }
+
+    static final class IntLessThanOrEq extends IntPredicate {
+        IntLessThanOrEq(int field, int value) {
+            super(field, value);
+        }
+
+        public boolean test(Tuple t) {
+            return t.getInt(field) <= value;
+        }
+
+        boolean test(TupleDesc td, ByteBuffer buf, int offset) {
+            return buf.getInt(td.getFieldOffset(field, buf, offset)) <= value;
+        }
+
+        public void filter(TupleBatch b) {
+            int[] col = b.ints(field), sel = b.selection();
+            int n = 0;
+            for (int i = 0, size = b.size(); i < size; i++)
+                if (col[sel[i]] <= value)
+                    sel[n++] = sel[i];
+            b.select(n);
+        }
+    }
+}
@@ -21,6 +21,12 @@ public class Database {
     private final static String LOGFILENAME = "log";
     private final LogFile _logfile;
 
+    /**
+     * The buffer pool's eviction policy is chosen by the
+     * {@value EvictionPolicy#PROPERTY} system property, e.g.
+     * <code>-Dsimpledb.eviction=clock</code>, and
+     * <code>-Dsimpledb.offheap=true</code> keeps its pages off-heap.
+     */
     private Database() {
         _catalog = new Catalog();
         _bufferpool = new BufferPool(BufferPool.DEFAULT_PAGES);
@@ -55,11 +61,32 @@ public class Database {
      * return it
      */
     public static BufferPool resetBufferPool(int pages) {
+        return resetBufferPool(new BufferPool(pages));
+    }
+
+    /**
+     * Method used for testing -- create a new instance of the buffer pool
+     * using the specified eviction policy and return it
+     */
+    public static BufferPool resetBufferPool(int pages, EvictionPolicy policy) {
+        return resetBufferPool(new BufferPool(pages, policy));
+    }
+
+    /**
+     * Method used for testing -- create a new instance of the buffer pool
+     * using the specified eviction policy, with pages on or off the heap,
+     * and return it
+     */
+    public static BufferPool resetBufferPool(int pages, EvictionPolicy policy, boolean offHeap) {
+        return resetBufferPool(new BufferPool(pages, policy, offHeap));
+    }
+
+    private static BufferPool resetBufferPool(BufferPool bufferPool) {
         java.lang.reflect.Field bufferPoolF=null;
         try {
             bufferPoolF = Database.class.getDeclaredField("_bufferpool");
             bufferPoolF.setAccessible(true);
-            bufferPoolF.set(_instance.get(), new BufferPool(pages));
+            bufferPoolF.set(_instance.get(), bufferPool);
         } catch (NoSuchFieldException e) {
             e.printStackTrace();
         } catch (SecurityException e) {
@@ -75,6 +102,7 @@ public class Database {
 
     // reset the database, used for unit tests only.
     public static void reset() {
+        _instance.get()._catalog.clear();
         _instance.set(new Database());
     }
 
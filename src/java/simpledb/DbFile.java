@@ -3,6 +3,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * The interface for database files on disk. Each table is represented by a
@@ -19,6 +20,18 @@ public interface DbFile {
      */
     public Page readPage(PageId id);
 
+    /**
+     * Read the specified page from disk into frame, a one page buffer owned
+     * by the BufferPool, returning a page that interprets its contents in
+     * place. DbFiles whose pages cannot live in such a buffer ignore frame
+     * and return {@link #readPage(PageId)}.
+     *
+     * @throws IllegalArgumentException if the page does not exist in this file.
+     */
+    public default Page readPage(PageId id, ByteBuffer frame) {
+        return readPage(id);
+    }
+
     /**
      * Push the specified page to disk.
      *
@@ -59,6 +72,25 @@ public interface DbFile {
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException;
 
+    /**
+     * Replaces a tuple of the file with new contents on behalf of the
+     * specified transaction. The tuple to replace is the one at t's
+     * RecordId. Files that cannot update a tuple in place delete it and
+     * insert t, which updates t's RecordId to reflect where it is now stored.
+     *
+     * @param tid The transaction performing the update
+     * @param t The new contents of the tuple.
+     * @return An ArrayList contain the pages that were modified
+     * @throws DbException if the tuple cannot be updated or is not a member
+     *   of the file
+     */
+    public default ArrayList<Page> updateTuple(TransactionId tid, Tuple t)
+        throws DbException, IOException, TransactionAbortedException {
+        ArrayList<Page> pages = deleteTuple(tid, t);
+        pages.addAll(insertTuple(tid, t));
+        return pages;
+    }
+
     /**
      * Returns an iterator over all the tuples stored in this DbFile. The
      * iterator must use {@link BufferPool#getPage}, rather than
@@ -68,6 +100,16 @@ public interface DbFile {
      */
     public DbFileIterator iterator(TransactionId tid);
 
+    /**
+     * Returns an iterator over the tuples stored in this DbFile that
+     * satisfy all of the specified predicates. DbFiles that can evaluate
+     * predicates more cheaply than a Filter over {@link #iterator} override
+     * this.
+     */
+    public default DbFileIterator iterator(TransactionId tid, Predicate[] preds) {
+        return new FilteredDbFileIterator(iterator(tid), preds);
+    }
+
     /**
      * Returns a unique ID used to identify this DbFile in the Catalog. This id
      * can be used to look up the table via {@link Catalog#getDatabaseFile} and
@@ -88,4 +130,11 @@ public interface DbFile {
      * @return TupleDesc of this DbFile.
      */
     public TupleDesc getTupleDesc();
+
+    /**
+     * Closes the files this DbFile holds open. They are opened again on
+     * the next access, so the DbFile may still be used.
+     */
+    public default void close() throws IOException {
+    }
 }
@@ -37,4 +37,21 @@ public interface DbFileIterator{
      * Closes the iterator.
      */
     public void close();
+
+    /**
+     * @return the number of pages this iterator has passed over without
+     *         reading them, because none of their tuples could be returned
+     */
+    public default long pagesSkipped() {
+        return 0;
+    }
+
+    /**
+     * Add the next tuples to batch, until it is full or there are no more.
+     */
+    public default void nextBatch(TupleBatch batch)
+            throws DbException, TransactionAbortedException {
+        while (!batch.isFull() && hasNext())
+            batch.add(next());
+    }
 }
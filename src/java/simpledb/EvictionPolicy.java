@@ -0,0 +1,74 @@
+package simpledb;
+
+/**
+ * EvictionPolicy decides which frame of the {@link BufferPool} gives up its
+ * page when a page has to be read and every frame is in use. Frames are
+ * identified by their index in the pool, 0 to numPages-1.
+ * <p>
+ * {@link #accessed} is called on every buffer pool hit without holding the
+ * pool's monitor, so implementations must be thread safe and should keep it
+ * cheap. The other methods are called with the pool's monitor held.
+ *
+ * @see BufferPool
+ */
+public interface EvictionPolicy {
+
+    /** System property used by {@link BufferPool#BufferPool(int)} to pick a policy. */
+    public static final String PROPERTY = "simpledb.eviction";
+
+    /** Name of the policy used when {@link #PROPERTY} is not set. */
+    public static final String DEFAULT = "lru";
+
+    /**
+     * A page has been read into frame.
+     *
+     * @param frame the frame now holding the page
+     * @param pid the id of the page
+     */
+    public void loaded(int frame, PageId pid);
+
+    /**
+     * The page held by frame has been requested again.
+     */
+    public void accessed(int frame);
+
+    /**
+     * The page held by frame has left the pool.
+     *
+     * @param frame the frame that held the page
+     * @param evicted true if the page was evicted to make room, as chosen
+     *        by {@link #victim()}; false if it was discarded, as when its
+     *        transaction aborts
+     */
+    public void removed(int frame, boolean evicted);
+
+    /**
+     * @return the frame whose page should be evicted next, or -1 if no frame
+     *         holds a page.
+     */
+    public int victim();
+
+    /**
+     * Create the policy with the specified name, one of "lru", "clock",
+     * "lru2" (LRU-K with K=2) or "2q".
+     *
+     * @param name the name of the policy
+     * @param numPages the number of frames of the buffer pool
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static EvictionPolicy forName(String name, int numPages) {
+        switch (name.trim().toLowerCase()) {
+        case "lru":
+            return new LruPolicy(numPages);
+        case "clock":
+            return new ClockPolicy(numPages);
+        case "lru2":
+        case "lru-2":
+            return new LruKPolicy(numPages, 2);
+        case "2q":
+            return new TwoQueuePolicy(numPages);
+        default:
+            throw new IllegalArgumentException("Unknown eviction policy " + name);
+        }
+    }
+}
@@ -5,15 +5,18 @@ import java.util.*;
 /**
  * Filter is an operator that implements a relational select.
  */
-public class Filter extends Operator {
+public class Filter extends Operator implements BatchOpIterator {
 
     private static final long serialVersionUID = 1L;
 
     
     private Predicate p;
+    /** p, compiled for the child's tuples when the filter is opened */
+    private transient CompiledPredicate compiled;
     private OpIterator ch;
+    /** ch, read a batch at a time */
+    private transient BatchOpIterator batches;
     private ArrayList<Tuple> tpp; // tuples pass the predication
-    private ArrayList<OpIterator> itrs;
     /**
      * Constructor accepts a predicate to apply and a child operator to read
      * tuples to filter from.
@@ -39,6 +42,8 @@ public class Filter extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
     	ch.open();
+    	compiled = CompiledPredicate.compile(p, ch.getTupleDesc());
+    	batches = BatchOpIterator.of(ch);
     	this.open = true;
     }
 
@@ -67,7 +72,7 @@ public class Filter extends Operator {
     	Tuple t;
     	while (ch.hasNext()) {
     		t = ch.next();
-    		if (p.filter(t))
+    		if (compiled.test(t))
     		{
     			next = t;
     			return next;
@@ -76,6 +81,22 @@ public class Filter extends Operator {
     	return null;
     }
     
+    /**
+     * Returns the next batch of the child with its selection narrowed to
+     * the tuples that pass the predicate, skipping batches left empty.
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+    	if (this.open != true)
+    		throw new DbException("not open");
+    	TupleBatch b;
+    	while ((b = batches.nextBatch()) != null) {
+    		compiled.filter(b);
+    		if (b.size() > 0)
+    			return b;
+    	}
+    	return null;
+    }
+
     public boolean hasNext() throws DbException, TransactionAbortedException {
     	if (this.open != true)
     		throw new DbException("not open");
@@ -94,19 +115,15 @@ public class Filter extends Operator {
     	next = null;
     	return result;
     }
-    
-    
-    // I don't know whether the implementation of following methods is right   
+
     @Override
     public OpIterator[] getChildren() {
-        return (OpIterator[]) itrs.toArray();
+        return new OpIterator[] { ch };
     }
 
     @Override
     public void setChildren(OpIterator[] children) {
-        
-        itrs = (ArrayList<OpIterator>) Arrays.asList(children); 
-        
+        ch = children[0];
     }
 
 }
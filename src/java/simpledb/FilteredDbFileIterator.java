@@ -0,0 +1,44 @@
+package simpledb;
+
+/**
+ * A DbFileIterator that returns only the tuples of another DbFileIterator
+ * that satisfy a set of predicates.
+ *
+ * @see DbFile#iterator(TransactionId, Predicate[])
+ */
+public class FilteredDbFileIterator extends AbstractDbFileIterator {
+
+    private final DbFileIterator child;
+    private final Predicate[] preds;
+
+    public FilteredDbFileIterator(DbFileIterator child, Predicate[] preds) {
+        this.child = child;
+        this.preds = preds;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException {
+        while (child.hasNext()) {
+            Tuple t = child.next();
+            boolean pass = true;
+            for (int i = 0; pass && i < preds.length; i++)
+                pass = preds[i].filter(t);
+            if (pass)
+                return t;
+        }
+        return null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        close();
+        child.rewind();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+    }
+}
@@ -0,0 +1,152 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * FreeSpaceMap records the free space on each page of a HeapFile, so an
+ * insert can go straight to a page with room instead of reading every page
+ * of the table. The unit is up to the file: a HeapFile counts empty tuple
+ * slots, a SlottedHeapFile free bytes. The counts are kept in memory and
+ * persisted to a side file next to the table, one short per page, as the
+ * table's pages are written; reading the table never writes the side file.
+ * <p>
+ * The map is only a hint: an insert checks the page it is pointed to and
+ * corrects the map if the page turns out to be full. A side file older than
+ * the table, or entries missing from it, are rebuilt in memory from the page
+ * headers, and written out with the next page of the table.
+ *
+ * @see HeapFile#insertTuple
+ */
+public class FreeSpaceMap {
+
+    /** The count of a page whose free space is not known */
+    public static final int UNKNOWN = -1;
+
+    private final File file;
+    private final PageChannel channel;
+
+    /** free space per page plus one, or 0 if unknown */
+    private short[] counts = new short[16];
+    private int numPages;
+    /** true if the side file was missing or out of date when loaded */
+    private boolean stale;
+    /**
+     * A tree of maxima over the counts, to find a page with enough space in
+     * logarithmic time: node n covers the pages of nodes 2n and 2n+1, and
+     * the leaves, page i at node counts.length + i, hold the counts.
+     */
+    private int[] max = new int[32];
+
+    /**
+     * Create a map persisted in the specified side file, loading the counts
+     * already saved there unless the file is older than table, the file
+     * holding the pages it describes.
+     */
+    public FreeSpaceMap(File file, File table) throws IOException {
+        this.file = file;
+        this.channel = new PageChannel(file);
+        if (file.exists() && file.lastModified() >= table.lastModified())
+            load();
+        else
+            stale = true;
+    }
+
+    /** @return the side file holding the map of the specified table file */
+    public static File fileFor(File table) {
+        return new File(table.getPath() + ".fsm");
+    }
+
+    private void load() throws IOException {
+        byte[] bytes = new byte[(int) file.length() & ~1];
+        if (channel.read(0, bytes) <= 0)
+            return;
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        for (int i = 0; i < bytes.length / 2; i++) {
+            short c = buf.getShort();
+            if (c != 0)
+                set(i, c - 1);
+        }
+    }
+
+    /** @return the free space on the page, or UNKNOWN */
+    public synchronized int get(int pgNo) {
+        return pgNo < numPages ? counts[pgNo] - 1 : UNKNOWN;
+    }
+
+    /**
+     * Record the free space on the page, in memory only.
+     */
+    public synchronized void set(int pgNo, int free) {
+        if (pgNo >= counts.length) {
+            int n = counts.length;
+            while (n <= pgNo)
+                n *= 2;
+            counts = Arrays.copyOf(counts, n);
+            max = new int[2 * n];
+            for (int i = 0; i < numPages; i++)
+                max[n + i] = Math.max(0, counts[i] - 1);
+            for (int i = n - 1; i > 0; i--)
+                max[i] = Math.max(max[2 * i], max[2 * i + 1]);
+        }
+        numPages = Math.max(numPages, pgNo + 1);
+        counts[pgNo] = (short) (free + 1);
+        int i = counts.length + pgNo;
+        max[i] = Math.max(0, free);
+        for (i /= 2; i > 0; i /= 2)
+            max[i] = Math.max(max[2 * i], max[2 * i + 1]);
+    }
+
+    /**
+     * Record the free space on the page, as written to the table, and
+     * persist it, with the rest of the map if the side file was missing or
+     * out of date when the map was loaded.
+     */
+    public void save(int pgNo, int free) throws IOException {
+        boolean all;
+        synchronized (this) {
+            set(pgNo, free);
+            all = stale;
+        }
+        if (all)
+            saveAll();
+        else
+            channel.write(2L * pgNo, new byte[] { (byte) ((free + 1) >> 8), (byte) (free + 1) });
+    }
+
+    /** Persist the counts of all the pages in the map. */
+    public void saveAll() throws IOException {
+        ByteBuffer buf;
+        synchronized (this) {
+            buf = ByteBuffer.allocate(2 * numPages);
+            buf.asShortBuffer().put(counts, 0, numPages);
+            stale = false;
+        }
+        channel.write(0, buf.array());
+    }
+
+    /** Close the side file; it is opened again by the next save. */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return the first page at or after from with at least min free space,
+     *         or -1
+     */
+    public synchronized int nextWithSpace(int from, int min) {
+        return find(1, 0, counts.length, Math.max(from, 0), Math.max(min, 1));
+    }
+
+    /** Search node, covering pages [lo, hi), for nextWithSpace. */
+    private int find(int node, int lo, int hi, int from, int min) {
+        if (hi <= from || max[node] < min)
+            return -1;
+        if (hi - lo == 1)
+            return lo;
+        int mid = (lo + hi) / 2;
+        int i = find(2 * node, lo, mid, from, min);
+        return i >= 0 ? i : find(2 * node + 1, mid, hi, from, min);
+    }
+}
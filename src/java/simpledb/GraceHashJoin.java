@@ -0,0 +1,399 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * GraceHashJoin joins two inputs on the equality of a field of each, reading
+ * each input once when the left (build) input fits in memory and a bounded
+ * number of times when it does not.
+ * <p>
+ * The left input is read into a hash table of at most memoryTuples tuples.
+ * If it all fits, the right input is streamed past the table once. If not,
+ * both inputs are hashed on their join field into {@link #PARTITIONS} pairs
+ * of {@link SpillFile}s, so matching tuples land in the same pair, and the
+ * pairs are joined one at a time. A left partition that is still too large
+ * is partitioned again with a different hash, up to {@link #MAX_DEPTH}
+ * times; beyond that (when many tuples share one key) it is joined a
+ * memory's worth at a time, reading its right partition once per chunk.
+ * <p>
+ * Like HashEquiJoin, each output tuple is a left tuple followed by a right
+ * tuple, but they come out in no particular order.
+ */
+public class GraceHashJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** the left tuples held in memory at once, unless told otherwise */
+    public static final int DEFAULT_MEMORY_TUPLES = 50000;
+    /** the number of partitions an input is split into at each level */
+    public static final int PARTITIONS = 16;
+    /** the most times a partition is split again */
+    public static final int MAX_DEPTH = 3;
+
+    private final JoinPredicate pred;
+    private OpIterator child1, child2;
+    private final TupleDesc comboTD;
+    private final int memoryTuples;
+
+    /** a pair of partitions of the two inputs, still to be joined */
+    private static class Partition {
+        final SpillFile left, right;
+        final int depth;
+
+        Partition(SpillFile left, SpillFile right, int depth) {
+            this.left = left;
+            this.right = right;
+            this.depth = depth;
+        }
+
+        void delete() {
+            left.delete();
+            right.delete();
+        }
+    }
+
+    private transient HashMap<Field, ArrayList<Tuple>> map;
+    /** the map used instead when both join fields are INTs, or null */
+    private transient IntMultimap<Tuple> intMap;
+    private transient ArrayDeque<Partition> pending;
+    /** the pair being joined, or null while joining the inputs directly */
+    private transient Partition current;
+    /** the rest of current's left partition, if it did not fit in the map */
+    private transient DbFileIterator build;
+    /** where probe tuples come from: child2, if probeChild, or else this */
+    private transient DbFileIterator probe;
+    private transient boolean probeChild;
+    private transient Tuple t2;
+    private transient Iterator<Tuple> matches;
+    /** the next row of intMap matching t2, or -1 */
+    private transient int intRow = -1;
+    private transient int partitionsSpilled;
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join
+     * them on, which must compare them with EQUALS.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left (build) relation to join
+     * @param child2
+     *            Iterator for the right (probe) relation to join
+     * @param memoryTuples
+     *            the most left tuples to hold in memory
+     */
+    public GraceHashJoin(JoinPredicate p, OpIterator child1, OpIterator child2, int memoryTuples) {
+        if (p.getOperator() != Predicate.Op.EQUALS)
+            throw new IllegalArgumentException("hash joins need an EQUALS predicate");
+        this.pred = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.memoryTuples = memoryTuples;
+        comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    public GraceHashJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this(p, child1, child2, DEFAULT_MEMORY_TUPLES);
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(pred.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return child2.getTupleDesc().getFieldName(pred.getField2());
+    }
+
+    /**
+     * @return the number of partition pairs written to disk since the join
+     *         was opened, counting those written by repartitioning
+     */
+    public int getPartitionsSpilled() {
+        return partitionsSpilled;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        child2.open();
+        super.open();
+        start();
+    }
+
+    /**
+     * Read the left input into the map, and if it does not fit, partition
+     * both inputs.
+     */
+    private void start() throws DbException, TransactionAbortedException {
+        map = new HashMap<Field, ArrayList<Tuple>>();
+        boolean ints = child1.getTupleDesc().getFieldType(pred.getField1()) == Type.INT_TYPE
+                && child2.getTupleDesc().getFieldType(pred.getField2()) == Type.INT_TYPE;
+        intMap = ints ? new IntMultimap<Tuple>(Math.min(memoryTuples, 1 << 16)) : null;
+        intRow = -1;
+        pending = new ArrayDeque<Partition>();
+        partitionsSpilled = 0;
+        int n = 0;
+        while (n < memoryTuples && child1.hasNext()) {
+            add(child1.next());
+            n++;
+        }
+        if (!child1.hasNext()) {
+            probeChild = true;
+            return;
+        }
+        try {
+            SpillFile[] left = newPartitions(child1.getTupleDesc());
+            for (ArrayList<Tuple> list : map.values())
+                for (Tuple t : list)
+                    left[partition(t.getField(pred.getField1()), 0)].add(t);
+            map.clear();
+            if (intMap != null) {
+                for (int r = 0; r < intMap.size(); r++) {
+                    Tuple t = intMap.get(r);
+                    left[partition(t.getField(pred.getField1()), 0)].add(t);
+                }
+                intMap.clear();
+            }
+            while (child1.hasNext()) {
+                Tuple t = child1.next();
+                left[partition(t.getField(pred.getField1()), 0)].add(t);
+            }
+            SpillFile[] right = newPartitions(child2.getTupleDesc());
+            while (child2.hasNext()) {
+                Tuple t = child2.next();
+                right[partition(t.getField(pred.getField2()), 0)].add(t);
+            }
+            queue(left, right, 0);
+        } catch (IOException e) {
+            throw new DbException("cannot spill join input: " + e);
+        }
+    }
+
+    private void add(Tuple t) {
+        if (intMap != null) {
+            intMap.put(t.getInt(pred.getField1()), t);
+            return;
+        }
+        Field key = t.getField(pred.getField1());
+        ArrayList<Tuple> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<Tuple>();
+            map.put(key, list);
+        }
+        list.add(t);
+    }
+
+    /** @return the partition of key at the specified level of partitioning */
+    private static int partition(Field key, int depth) {
+        int h = key.hashCode() ^ (depth * 0x9e3779b9);
+        h *= 0x85ebca6b;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % PARTITIONS;
+    }
+
+    private SpillFile[] newPartitions(TupleDesc td) throws IOException {
+        SpillFile[] files = new SpillFile[PARTITIONS];
+        for (int i = 0; i < PARTITIONS; i++)
+            files[i] = new SpillFile(td);
+        return files;
+    }
+
+    /** Queue the pairs that can have matches, and delete the others. */
+    private void queue(SpillFile[] left, SpillFile[] right, int depth) {
+        for (int i = 0; i < PARTITIONS; i++) {
+            Partition p = new Partition(left[i], right[i], depth);
+            if (left[i].size() == 0 || right[i].size() == 0) {
+                p.delete();
+                continue;
+            }
+            pending.add(p);
+            partitionsSpilled++;
+        }
+    }
+
+    /** Split p, whose left side does not fit in memory, into more pairs. */
+    private void repartition(Partition p) throws DbException, TransactionAbortedException, IOException {
+        int depth = p.depth + 1;
+        SpillFile[] left = newPartitions(child1.getTupleDesc());
+        DbFileIterator it = p.left.iterator();
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            left[partition(t.getField(pred.getField1()), depth)].add(t);
+        }
+        it.close();
+        SpillFile[] right = newPartitions(child2.getTupleDesc());
+        it = p.right.iterator();
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            right[partition(t.getField(pred.getField2()), depth)].add(t);
+        }
+        it.close();
+        p.delete();
+        queue(left, right, depth);
+    }
+
+    /**
+     * Start joining the next pending pair of partitions.
+     *
+     * @return false if there are none left
+     */
+    private boolean nextPartition() throws DbException, TransactionAbortedException {
+        try {
+            while (!pending.isEmpty()) {
+                Partition p = pending.poll();
+                if (p.left.size() > memoryTuples && p.depth < MAX_DEPTH) {
+                    repartition(p);
+                    continue;
+                }
+                current = p;
+                build = p.left.iterator();
+                build.open();
+                loadChunk();
+                return true;
+            }
+            return false;
+        } catch (IOException e) {
+            throw new DbException("cannot read spilled join input: " + e);
+        }
+    }
+
+    /**
+     * Read the next memory's worth of current's left partition into the
+     * map, and start reading its right partition from the beginning.
+     */
+    private void loadChunk() throws DbException, TransactionAbortedException, IOException {
+        map.clear();
+        if (intMap != null)
+            intMap.clear();
+        for (int n = 0; n < memoryTuples && build.hasNext(); n++)
+            add(build.next());
+        if (!build.hasNext()) {
+            build.close();
+            build = null;
+        }
+        if (probe != null)
+            probe.close();
+        probe = current.right.iterator();
+        probe.open();
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples: a left tuple from the map joined to the probe tuple t2.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (intRow >= 0) {
+                Tuple t1 = intMap.get(intRow);
+                intRow = intMap.next(intRow);
+                return merge(t1, t2);
+            }
+            if (matches != null && matches.hasNext())
+                return merge(matches.next(), t2);
+            matches = null;
+            if (probeChild ? child2.hasNext() : probe != null && probe.hasNext()) {
+                t2 = probeChild ? child2.next() : probe.next();
+                if (intMap != null) {
+                    intRow = intMap.first(t2.getInt(pred.getField2()));
+                    continue;
+                }
+                ArrayList<Tuple> l = map.get(t2.getField(pred.getField2()));
+                if (l != null)
+                    matches = l.iterator();
+                continue;
+            }
+            if (probeChild) {
+                probeChild = false;
+                return null;
+            }
+            try {
+                if (build != null) {
+                    loadChunk();
+                    continue;
+                }
+            } catch (IOException e) {
+                throw new DbException("cannot read spilled join input: " + e);
+            }
+            finishPartition();
+            if (!nextPartition())
+                return null;
+        }
+    }
+
+    private Tuple merge(Tuple t1, Tuple t2) {
+        int td1n = t1.getTupleDesc().numFields();
+        int td2n = t2.getTupleDesc().numFields();
+        Tuple t = new Tuple(comboTD);
+        for (int i = 0; i < td1n; i++)
+            t.setField(i, t1.getField(i));
+        for (int i = 0; i < td2n; i++)
+            t.setField(td1n + i, t2.getField(i));
+        return t;
+    }
+
+    private void finishPartition() {
+        if (probe != null) {
+            probe.close();
+            probe = null;
+        }
+        if (build != null) {
+            build.close();
+            build = null;
+        }
+        if (current != null) {
+            current.delete();
+            current = null;
+        }
+    }
+
+    /** Delete every spill file, and forget the map. */
+    private void cleanup() {
+        finishPartition();
+        if (pending != null)
+            for (Partition p : pending)
+                p.delete();
+        pending = null;
+        map = null;
+        intMap = null;
+        intRow = -1;
+        matches = null;
+        t2 = null;
+        probeChild = false;
+    }
+
+    public void close() {
+        super.close();
+        cleanup();
+        child2.close();
+        child1.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        cleanup();
+        child1.rewind();
+        child2.rewind();
+        start();
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { child1, child2 };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        child1 = children[0];
+        child2 = children[1];
+    }
+}
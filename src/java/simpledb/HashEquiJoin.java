@@ -5,7 +5,7 @@ import java.util.*;
 /**
  * The Join operator implements the relational join operation.
  */
-public class HashEquiJoin extends Operator {
+public class HashEquiJoin extends Operator implements BatchOpIterator {
 
     private static final long serialVersionUID = 1L;
     private JoinPredicate pred;
@@ -51,19 +51,27 @@ public class HashEquiJoin extends Operator {
     }
     
     HashMap<Object, ArrayList<Tuple>> map = new HashMap<Object, ArrayList<Tuple>>();
+    /** the map used instead when both join fields are INTs, or null */
+    transient IntMultimap<Tuple> intMap;
     public final static int MAP_SIZE = 20000;
 
     private boolean loadMap() throws DbException, TransactionAbortedException {
         int cnt = 0;
         map.clear();
+        if (intMap != null)
+            intMap.clear();
         while (child1.hasNext()) {
             t1 = child1.next();
-            ArrayList<Tuple> list = map.get(t1.getField(pred.getField1()));
-            if (list == null) {
-                list = new ArrayList<Tuple>();
-                map.put(t1.getField(pred.getField1()), list);
+            if (intMap != null) {
+                intMap.put(t1.getInt(pred.getField1()), t1);
+            } else {
+                ArrayList<Tuple> list = map.get(t1.getField(pred.getField1()));
+                if (list == null) {
+                    list = new ArrayList<Tuple>();
+                    map.put(t1.getField(pred.getField1()), list);
+                }
+                list.add(t1);
             }
-            list.add(t1);
             if (cnt++ == MAP_SIZE)
                 return true;
         }
@@ -71,10 +79,37 @@ public class HashEquiJoin extends Operator {
 
     }
 
+    /** Point the matches at the tuples of child1 whose key is key. */
+    private void lookup(Field key) {
+        ArrayList<Tuple> l = map.get(key);
+        listIt = l == null ? null : l.iterator();
+    }
+
+    private void lookup(int key) {
+        intRow = intMap.first(key);
+    }
+
+    private boolean hasMatch() {
+        return intMap != null ? intRow >= 0 : listIt != null && listIt.hasNext();
+    }
+
+    private Tuple nextMatch() {
+        if (intMap == null)
+            return listIt.next();
+        Tuple t = intMap.get(intRow);
+        intRow = intMap.next(intRow);
+        return t;
+    }
+
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child1.open();
         child2.open();
+        probeSide = BatchOpIterator.of(child2);
+        boolean ints = child1.getTupleDesc().getFieldType(pred.getField1()) == Type.INT_TYPE
+                && child2.getTupleDesc().getFieldType(pred.getField2()) == Type.INT_TYPE;
+        intMap = ints ? new IntMultimap<Tuple>(MAP_SIZE + 1) : null;
+        intRow = -1;
         loadMap();
         super.open();
     }
@@ -87,14 +122,22 @@ public class HashEquiJoin extends Operator {
         this.t2=null;
         this.listIt=null;
         this.map.clear();
+        this.intMap = null;
+        this.intRow = -1;
+        this.probe = null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
         child1.rewind();
         child2.rewind();
+        probe = null;
+        listIt = null;
+        intRow = -1;
     }
 
     transient Iterator<Tuple> listIt = null;
+    /** the next row of intMap matching t2, or -1 */
+    transient int intRow = -1;
 
     /**
      * Returns the next tuple generated by the join, or null if there are no
@@ -115,7 +158,7 @@ public class HashEquiJoin extends Operator {
      * @see JoinPredicate#filter
      */
     private Tuple processList() throws TransactionAbortedException, DbException {
-        t1 = listIt.next();
+        t1 = nextMatch();
 
         int td1n = t1.getTupleDesc().numFields();
         int td2n = t2.getTupleDesc().numFields();
@@ -131,7 +174,7 @@ public class HashEquiJoin extends Operator {
     }
 
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        if (listIt != null && listIt.hasNext()) {
+        if (hasMatch()) {
             return processList();
         }
 
@@ -141,10 +184,12 @@ public class HashEquiJoin extends Operator {
 
             // if match, create a combined tuple and fill it with the values
             // from both tuples
-            ArrayList<Tuple> l = map.get(t2.getField(pred.getField2()));
-            if (l == null)
+            if (intMap != null)
+                lookup(t2.getInt(pred.getField2()));
+            else
+                lookup(t2.getField(pred.getField2()));
+            if (!hasMatch())
                 continue;
-            listIt = l.iterator();
 
             return processList();
 
@@ -159,6 +204,56 @@ public class HashEquiJoin extends Operator {
         return null;
     }
 
+    /** child2, read a batch at a time */
+    transient private BatchOpIterator probeSide;
+    transient private TupleBatch out;
+    /** the batch of child2 being probed, and the position in it */
+    transient private TupleBatch probe;
+    transient private int probePos;
+
+    /**
+     * Returns the next joined tuples, probing the hash table with a batch of
+     * child2 at a time and copying the probe side's values column by
+     * column.
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (out == null)
+            out = new TupleBatch(comboTD);
+        out.clear();
+        int n1 = child1.getTupleDesc().numFields();
+        int n2 = child2.getTupleDesc().numFields();
+        int f2 = pred.getField2();
+        while (!out.isFull()) {
+            if (hasMatch()) {
+                Tuple left = nextMatch();
+                int row = out.addRow();
+                int probeRow = probe.row(probePos);
+                for (int i = 0; i < n1; i++)
+                    out.setField(i, row, left.getField(i));
+                for (int i = 0; i < n2; i++)
+                    out.copy(n1 + i, row, probe, i, probeRow);
+                continue;
+            }
+            if (probe != null && ++probePos < probe.size()) {
+                int row = probe.row(probePos);
+                if (intMap != null)
+                    lookup(probe.getInt(f2, row));
+                else
+                    lookup(probe.getField(f2, row));
+                continue;
+            }
+            probe = probeSide.nextBatch();
+            probePos = -1;
+            if (probe == null) {
+                // child2 is done: advance child1
+                child2.rewind();
+                if (!loadMap())
+                    break;
+            }
+        }
+        return out.size() == 0 ? null : out;
+    }
+
     @Override
     public OpIterator[] getChildren() {
         return new OpIterator[]{this.child1, this.child2};
@@ -1,7 +1,9 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * HeapFile is an implementation of a DbFile that stores a collection of tuples
@@ -17,6 +19,7 @@ public class HeapFile implements DbFile {
 	
 	private File diskfile;
 	private TupleDesc td;
+	private final PageChannel channel;
     /**
      * Constructs a heap file backed by the specified file.
      * 
@@ -27,7 +30,7 @@ public class HeapFile implements DbFile {
     public HeapFile(File f, TupleDesc td) {
     	diskfile = f;
     	this.td = td;
-    	newpage = 0;
+    	channel = new PageChannel(f);
     }
 
     /**
@@ -66,47 +69,198 @@ public class HeapFile implements DbFile {
     public Page readPage(PageId pid) {
     	int pgsz = BufferPool.getPageSize(); 
     	byte[] bytes = new byte[pgsz];
-    	RandomAccessFile raf = null;
     	
     	int pgNo = pid.getPageNumber();
+    	long off = (long) pgNo * pgsz;
     	
-    	int off = pgNo * pgsz;
-    	HeapPage heapPage = null;
-    	
-    	// read a specific page from disk
-    	try{
-    		raf = new RandomAccessFile(diskfile, "r");
-    		raf.seek(off);
-			raf.read(bytes , 0, pgsz);
-			heapPage =  new HeapPage(new HeapPageId(pid.getTableId(), pgNo), bytes);
-			raf.close();
-    	} catch (FileNotFoundException e) {
-			throw new NoSuchElementException();
+    	// read a specific page from disk; a page past the end of the file
+    	// reads as empty
+    	try {
+    		int n = channel.read(off, bytes);
+    		HeapPage page = createPage(new HeapPageId(pid.getTableId(), pgNo), ByteBuffer.wrap(bytes));
+    		// a page not wholly in the file is written out in full
+    		if (n == pgsz)
+    			page.markClean();
+    		return page;
+    	} catch (IOException e) {
+    		throw new NoSuchElementException();
+    	}
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid, ByteBuffer frame) {
+    	int pgNo = pid.getPageNumber();
+    	try {
+    		int n = channel.read((long) pgNo * BufferPool.getPageSize(), frame);
+    		HeapPage page = createPage(new HeapPageId(pid.getTableId(), pgNo), frame);
+    		if (n == BufferPool.getPageSize())
+    			page.markClean();
+			return page;
 		} catch (IOException e) {
 			throw new NoSuchElementException();
 		}
-    	
-    	
-        return heapPage;
+    }
+
+    /**
+     * @return a page of this file that interprets data, the page's
+     *         contents, in place
+     */
+    HeapPage createPage(HeapPageId id, ByteBuffer data) throws IOException {
+    	return new HeapPage(id, td, data);
     }
 
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
-    	int pgsz = BufferPool.getPageSize();
-    	byte[] bytes = page.getPageData();
-    	RandomAccessFile raf = null;
-    	
     	int pgNo = page.getId().getPageNumber();
-    	int off = pgNo * pgsz;
+    	long off = (long) pgNo * BufferPool.getPageSize();
+    	if (zones == null) {
+    		// a zone map loaded after this reads the page as it is written;
+    		// changes made meanwhile mark it again
+    		synchronized (this) {
+    			if (zones == null)
+    				unzoned.clear(pgNo);
+    		}
+    	}
+    	// only the changed part of a HeapPage is written, from its buffer
+    	if (page instanceof HeapPage)
+    		((HeapPage) page).writeTo(channel, off);
+    	else
+    		channel.write(off, page.getPageData());
+    	FreeSpaceMap map = freeSpace;
+    	if (map != null && page instanceof HeapPage)
+    		map.save(pgNo, ((HeapPage) page).freeSpace());
+    	ZoneMap zones = this.zones;
+    	if (zones != null && page instanceof HeapPage && zones.set(pgNo, (HeapPage) page))
+    		zones.save(pgNo);
+    }
 
-		raf = new RandomAccessFile(diskfile, "rw");
-		raf.seek(off);
-		raf.write(bytes, 0, pgsz);
-		raf.close();
-		
+    // see DbFile.java for javadocs
+    public void close() throws IOException {
+    	channel.close();
+    	FreeSpaceMap map = freeSpace;
+    	if (map != null)
+    		map.close();
+    	ZoneMap zones = this.zones;
+    	if (zones != null)
+    		zones.close();
+    }
+
+    /**
+     * Returns the free space map of this file, loading it from its side
+     * file the first time. Pages the side file does not describe are
+     * counted from disk, in memory only: the side file is written with the
+     * table's pages.
+     */
+    FreeSpaceMap freeSpace() throws IOException {
+    	FreeSpaceMap map = freeSpace;
+    	if (map != null)
+    		return map;
+    	synchronized (this) {
+    		if (freeSpace != null)
+    			return freeSpace;
+    		map = new FreeSpaceMap(FreeSpaceMap.fileFor(diskfile), diskfile);
+    		for (int i = 0, n = numPages(); i < n; i++) {
+    			if (map.get(i) == FreeSpaceMap.UNKNOWN)
+    				map.set(i, readFreeSpace(i));
+    		}
+    		freeSpace = map;
+    		return map;
+    	}
+    }
+
+    /**
+     * Returns the zone map of this file, loading it from its side file the
+     * first time. Pages the side file does not describe are read from disk,
+     * in memory only: the side file is written with the table's pages.
+     * Pages changed in the buffer pool since they were last written are not
+     * described until they are written again.
+     *
+     * @return the zone map, or null if the table has no INT columns
+     */
+    ZoneMap zoneMap() throws IOException {
+    	ZoneMap map = zones;
+    	if (map != null || !ZoneMap.hasColumns(td))
+    		return map;
+    	synchronized (this) {
+    		if (zones != null)
+    			return zones;
+    		map = new ZoneMap(ZoneMap.fileFor(diskfile), diskfile, td);
+    		for (int i = 0, n = numPages(); i < n; i++) {
+    			if (unzoned.get(i))
+    				map.forget(i);
+    			else if (!map.isKnown(i))
+    				map.set(i, (HeapPage) readPage(new HeapPageId(getId(), i)));
+    		}
+    		unzoned.clear();
+    		zones = map;
+    		return map;
+    	}
+    }
+
+    /**
+     * Widen the zone map's ranges of pg, on which t has been stored, or if
+     * the map has not been loaded, remember that pg's ranges on disk no
+     * longer hold.
+     */
+    void widenZones(HeapPage pg, Tuple t) {
+    	int pgNo = pg.getId().getPageNumber();
+    	ZoneMap map = zones;
+    	if (map == null) {
+    		synchronized (this) {
+    			map = zones;
+    			if (map == null) {
+    				unzoned.set(pgNo);
+    				return;
+    			}
+    		}
+    	}
+    	map.include(pgNo, t);
+    }
+
+    /**
+     * @return the number of pages scans of this file have skipped because
+     *         the zone map showed that no tuple on them could match
+     */
+    public long getPagesSkipped() {
+    	return pagesSkipped.get();
+    }
+
+    /**
+     * @return the free space of the specified page as it is on disk, in the
+     *         units of {@link HeapPage#freeSpace}: for a HeapPage, the empty
+     *         slots, which are counted from the page's header
+     */
+    int readFreeSpace(int pgNo) throws IOException {
+    	int slots = HeapPage.numSlots(td);
+    	byte[] header = new byte[HeapPage.headerSize(slots)];
+    	channel.read((long) pgNo * BufferPool.getPageSize(), header);
+    	return slots - HeapPage.countUsedSlots(ByteBuffer.wrap(header), header.length);
     }
 
-    int newpage;
+    /**
+     * @return the free space t needs on a page, in the units of
+     *         {@link HeapPage#freeSpace}: for a HeapPage, one slot
+     */
+    int spaceNeeded(Tuple t) {
+    	return 1;
+    }
+
+    /**
+     * the number of pages known to exist: pages seen in the file, and
+     * pages added by insertTuple, which may not have reached the file yet
+     */
+    private volatile int knownPages;
+    /** the free space map, or null until the first insert or delete */
+    private volatile FreeSpaceMap freeSpace;
+    /** the zone map, or null until the first filtered scan */
+    private volatile ZoneMap zones;
+    /**
+     * the pages changed while the zone map was not loaded, and not written
+     * since, whose ranges the map must not take from disk
+     */
+    private final BitSet unzoned = new BitSet();
+    private final AtomicLong pagesSkipped = new AtomicLong();
+
     /**
      * Returns the number of pages in this HeapFile.
      */
@@ -118,29 +272,50 @@ public class HeapFile implements DbFile {
     		pagenum++;
     	
     	/** !!! cast (long -> int) here*/
-        return newpage + (int)pagenum;
+        if ((int)pagenum > knownPages) {
+        	synchronized (this) {
+        		knownPages = Math.max(knownPages, (int)pagenum);
+        	}
+        }
+        return knownPages;
+    }
+
+    /** @return the number of a new page appended to this file */
+    private synchronized int allocatePage() {
+    	int pgNo = numPages();
+    	knownPages = pgNo + 1;
+    	return pgNo;
     }
 
     // see DbFile.java for javadocs
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
-    		for (int i = 0; i <  numPages(); i++) {
+    		// go to the first page the free space map says has room,
+    		// correcting the map if it turns out to be full
+    		FreeSpaceMap map = freeSpace();
+    		int need = spaceNeeded(t);
+    		for (int i = map.nextWithSpace(0, need); i >= 0; i = map.nextWithSpace(i + 1, need)) {
     			HeapPage pg = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), i), Permissions.READ_ONLY);
-    			if (pg.getNumEmptySlots() == 0)
+    			if (pg.freeSpace() < need) {
+    				map.set(i, pg.freeSpace());
     				continue;
+    			}
     			
     			pg.insertTuple(t);
+    			map.set(i, pg.freeSpace());
+    			widenZones(pg, t);
     			
     			return new ArrayList<Page>() {{add(pg);}};
     		}
     		
     		
-    		// no enough space, need allocate a new page
-    		HeapPage pg =  (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), numPages()), Permissions.READ_ONLY);
+    		// no enough space, need allocate a new page; it is counted in
+    		// numPages until the bufferpool flushes it to the file
+    		int pgNo = allocatePage();
+    		HeapPage pg =  (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), pgNo), Permissions.READ_ONLY);
     		pg.insertTuple(t);
-    		// the page still reside on memory ,the number of pages will
-    		// increment when bufferpool flush the memory ?
-    		newpage++;
+    		map.set(pgNo, pg.freeSpace());
+    		widenZones(pg, t);
     		
     		return new ArrayList<Page>() {{add(pg);}};
     }
@@ -148,24 +323,67 @@ public class HeapFile implements DbFile {
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
-        for (int i = 0; i < numPages(); i++) {
-        	HeapPage pg = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), i), Permissions.READ_ONLY);
-        	Iterator<Tuple> itr = pg.iterator();
-        	while (itr.hasNext())
-        		if (itr.next().equals(t))
-        		{
-        			pg.deleteTuple(t);
-
-        			return new ArrayList<Page>() {{add(pg);}};
-        		}
+        HeapPage pg = pageOf(tid, t);
+        pg.deleteTuple(t);
+        try {
+        	freeSpace().set(pg.getId().getPageNumber(), pg.freeSpace());
+        } catch (IOException e) {
+        	throw new DbException("cannot read free space map: " + e);
         }
-        
-        throw new DbException("tuple t is not a member of this DbFile");
+
+        return new ArrayList<Page>() {{add(pg);}};
+    }
+
+    /**
+     * Replaces the tuple stored at t's RecordId with t, in place.
+     *
+     * @param tid The transaction performing the update
+     * @param t The new contents of the tuple; its RecordId identifies the
+     *          tuple to replace.
+     * @return An ArrayList contain the pages that were modified
+     * @throws DbException if t's RecordId does not identify a tuple of this
+     *   file, or t does not match this file's TupleDesc
+     */
+    public ArrayList<Page> updateTuple(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        HeapPage pg = pageOf(tid, t);
+        pg.updateTuple(t);
+        widenZones(pg, t);
+
+        return new ArrayList<Page>() {{add(pg);}};
+    }
+
+    /**
+     * @return the page named by t's RecordId, fetched for writing
+     * @throws DbException if t has no RecordId, or it names no page of
+     *   this file
+     */
+    HeapPage pageOf(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != getId())
+        	throw new DbException("tuple t is not a member of this DbFile");
+        int pgNo = rid.getPageId().getPageNumber();
+        // numPages asks the file system for the file's length
+        if (pgNo < 0 || (pgNo >= knownPages && pgNo >= numPages()))
+        	throw new DbException("tuple t is not a member of this DbFile");
+        return (HeapPage) Database.getBufferPool().getPage(tid,
+        		new HeapPageId(getId(), pgNo), Permissions.READ_WRITE);
     }
 
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
-        return new Itr(tid);
+        return new Itr(tid, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that satisfy all of
+     * preds. Pages whose zone map ranges rule out an INT predicate are not
+     * read, and tuples are tested against the page bytes before they are
+     * decoded, so rejected tuples cost no allocation.
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate[] preds) {
+        return new Itr(tid, preds);
     }
     
     private class Itr implements DbFileIterator {
@@ -174,9 +392,22 @@ public class HeapFile implements DbFile {
     	HeapPage curPage;
     	int pgNo, npages;
     	Iterator<Tuple> itr;
+    	/** private frames for scanning a table too large for the pool, or null */
+    	BufferRing ring;
+    	ReadAhead readAhead;
+    	/** predicates pushed down to the pages, or null */
+    	final Predicate[] preds;
+    	/** preds compiled for the table's tuples, or null */
+    	final CompiledPredicate compiled;
+    	/** the zone map the predicates are checked against, or null */
+    	ZoneMap zones;
+    	long skipped;
     	
-    	Itr(TransactionId id) {
+    	Itr(TransactionId id, Predicate[] preds) {
     		this.tid = id;
+    		this.preds = preds;
+    		this.compiled = preds == null || preds.length == 0 ? null
+    				: CompiledPredicate.compile(preds, getTupleDesc());
     		this.pgNo = 0;
     		this.curPage = null;
     		this.itr = null;
@@ -185,10 +416,21 @@ public class HeapFile implements DbFile {
     	
 		@Override
 		public void open() throws DbException, TransactionAbortedException {
-			curPage = (HeapPage) Database.getBufferPool().getPage(tid, 
-					new HeapPageId(getId(), 0), Permissions.READ_ONLY);
-			itr = curPage.iterator();
-			pgNo = curPage.getId().getPageNumber();
+			if (ring == null)
+				ring = Database.getBufferPool().newScanRing(npages);
+			if (preds != null && preds.length > 0) {
+				try {
+					zones = zoneMap();
+				} catch (IOException e) {
+					throw new DbException("cannot read zone map: " + e);
+				}
+			}
+			final ZoneMap z = zones;
+			readAhead = new ReadAhead(getId(), npages, ring,
+					z == null ? null : p -> z.mayMatch(p, preds));
+			pgNo = 0;
+			skipped = 0;
+			loadPage();
 			
 			
 			
@@ -217,18 +459,49 @@ public class HeapFile implements DbFile {
 			if ((pgNo + 1) > npages || itr == null)
 				return false;
 
-			if (itr.hasNext())
-				return true;
-			if ((pgNo + 1) == npages)
-				return false;
-			/** current page has been iterated absolutely     */
-			/** just read the next page (here pgNo < npages) */
-			pgNo++;
-			curPage = (HeapPage) Database.getBufferPool().getPage(tid, 
-					new HeapPageId(getId(), pgNo), Permissions.READ_ONLY);
-			itr = curPage.iterator();
-			
-			return itr.hasNext();
+			while (!itr.hasNext()) {
+				if ((pgNo + 1) == npages)
+					return false;
+				/** current page has been iterated absolutely     */
+				/** just read the next page (here pgNo < npages), */
+				/** skipping over pages with no tuples            */
+				pgNo++;
+				loadPage();
+			}
+			return true;
+		}
+
+		/**
+		 * Point the iterator at the tuples of page pgNo, or at none if the
+		 * zone map shows that none of them can match.
+		 */
+		private void loadPage() throws DbException, TransactionAbortedException {
+			readAhead.advance(pgNo);
+			if (zones != null && !zones.mayMatch(pgNo, preds)) {
+				skipped++;
+				pagesSkipped.incrementAndGet();
+				curPage = null;
+				itr = Collections.<Tuple>emptyIterator();
+				return;
+			}
+			curPage = (HeapPage) Database.getBufferPool().getPage(tid,
+					new HeapPageId(getId(), pgNo), Permissions.READ_ONLY, ring);
+			itr = curPage.iterator(compiled);
+		}
+
+		@Override
+		public long pagesSkipped() {
+			return skipped;
+		}
+
+		@Override
+		public void nextBatch(TupleBatch batch) throws DbException, TransactionAbortedException {
+			while (!batch.isFull() && hasNext()) {
+				if (itr instanceof HeapPage.Itr)
+					((HeapPage.Itr) itr).fill(batch);
+				else
+					batch.add(itr.next());
+			}
 		}
 
 		@Override
@@ -251,6 +524,9 @@ public class HeapFile implements DbFile {
 			/** release resource */
 			itr = null;
 			curPage = null;
+			ring = null;
+			readAhead = null;
+			zones = null;
 		}
     	
     }
@@ -1,7 +1,9 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.regex.Pattern;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
@@ -157,6 +159,17 @@ public class HeapFileEncoder {
                 while (overflow-- > 0)
                     pageStream.write((byte)0);
             }
+            else   if (typeAr[fieldNo] == Type.VARCHAR_TYPE) {
+                // stored padded to its maximum length, as in a HeapPage
+                // every slot is the same size
+                s = s.trim();
+                if (s.length() > Type.STRING_LEN)
+                    s = s.substring(0,Type.STRING_LEN);
+                pageStream.writeShort(s.length());
+                pageStream.writeBytes(s);
+                for (int pad = s.length() + 2; pad < Type.VARCHAR_TYPE.getLen(); pad++)
+                    pageStream.write((byte)0);
+            }
             curpos = 0;
             if (c == '\n')
                 fieldNo = 0;
@@ -223,4 +236,69 @@ public class HeapFileEncoder {
     br.close();
     os.close();
   }
+
+  /** Convert the specified input text file, in the format read by
+   * {@link #convert(File, File, int, int, Type[], char)}, into a file of
+   * SlottedHeapPages of BufferPool.getPageSize() bytes, to be read by a
+   * SlottedHeapFile. VARCHAR fields take only as many bytes as they hold;
+   * each page is filled until the next tuple does not fit.
+   *
+   * @see SlottedHeapPage
+   * @see SlottedHeapFile
+   * @param inFile The input file to read data from
+   * @param outFile The output file to write data to
+   * @param typeAr the types of the fields of each input line/output tuple
+   * @param fieldSeparator the character separating the fields of a line
+   * @throws IOException if the input/output file can't be opened or a
+   *   malformed input line is encountered
+   */
+  public static void convertSlotted(File inFile, File outFile, Type[] typeAr,
+                 char fieldSeparator) throws IOException {
+      TupleDesc td = new TupleDesc(typeAr);
+      BufferedReader br = new BufferedReader(new FileReader(inFile));
+      FileOutputStream os = new FileOutputStream(outFile);
+      String separator = Pattern.quote(String.valueOf(fieldSeparator));
+      int npages = 0;
+      SlottedHeapPage page = null;
+      String line;
+      try {
+          while ((line = br.readLine()) != null) {
+              if (line.trim().isEmpty())
+                  continue;
+              String[] els = line.split(separator, -1);
+              if (els.length != typeAr.length)
+                  throw new IOException("BAD LINE : " + line);
+              Tuple t = new Tuple(td);
+              for (int i = 0; i < els.length; i++) {
+                  String s = els[i].trim();
+                  if (typeAr[i] == Type.INT_TYPE) {
+                      try {
+                          t.setField(i, new IntField(Integer.parseInt(s)));
+                      } catch (NumberFormatException e) {
+                          throw new IOException("BAD LINE : " + line);
+                      }
+                  } else
+                      t.setField(i, new StringField(s, Type.STRING_LEN));
+              }
+              if (page != null && page.freeSpace() < td.getSize(t)) {
+                  os.write(page.getPageData());
+                  page = null;
+              }
+              if (page == null)
+                  page = new SlottedHeapPage(new HeapPageId(0, npages++), td,
+                          ByteBuffer.wrap(HeapPage.createEmptyPageData()));
+              page.insertTuple(t);
+          }
+          // an empty table still gets an empty page
+          if (page == null)
+              os.write(HeapPage.createEmptyPageData());
+          else
+              os.write(page.getPageData());
+      } catch (DbException e) {
+          throw new IOException(e);
+      } finally {
+          br.close();
+          os.close();
+      }
+  }
 }
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
@@ -15,12 +16,48 @@ public class HeapPage implements Page {
 
     final HeapPageId pid;
     final TupleDesc td;
-    final byte header[];
-    final Tuple tuples[];
     final int numSlots;
+    final int headerSize;
+
+    /**
+     * The page's contents, in the on-disk format: position 0, limit one
+     * page. Tuples are decoded from it on demand and inserts and deletes
+     * modify it in place. It may be a heap buffer, a frame of the
+     * BufferPool's off-heap arena, or a read-only region of a mapped file.
+     */
+    volatile ByteBuffer data;
+    /** true while data is a BufferPool frame */
+    private boolean attached;
+
+    /**
+     * Where tuples handed out by this page decode their fields from. All
+     * tuples read since the page last changed share the current snapshot,
+     * whose buffer is data. Before the page is modified, the snapshot of
+     * any outstanding tuples is given a private copy of the old contents,
+     * so a tuple always shows the values it was read with.
+     */
+    static final class Snapshot {
+        volatile ByteBuffer buf;
+
+        Snapshot(ByteBuffer buf) {
+            this.buf = buf;
+        }
+    }
+
+    private Snapshot current;
+    /** true once a tuple has been read from the current snapshot */
+    private volatile boolean shared;
     
+    /**
+     * The bytes of data changed since the page was last read from or
+     * written to its file, as the range [dirtyFrom, dirtyTo). A page that
+     * was not read from its file has the whole page in range.
+     */
+    private int dirtyFrom, dirtyTo;
+
+    /** the before image, or null if the page is unchanged since setBeforeImage */
     byte[] oldData;
-    private final Byte oldDataLock=new Byte((byte)0);
+    private final Object oldDataLock = new Object();
 
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
@@ -34,44 +71,69 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * The bytes are copied, so the caller may reuse data.
+     *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, copyOf(ByteBuffer.wrap(data)));
+    }
+
+    /**
+     * Create a HeapPage that interprets its contents in place in a buffer,
+     * such as a BufferPool frame or a region of a memory mapped file,
+     * starting at the buffer's position. The format is the same as for
+     * {@link #HeapPage(HeapPageId, byte[])}. Tuples are only decoded when
+     * they are read, and modifications are written to the buffer, except
+     * that a read-only buffer is first copied to the heap.
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this(id, Database.getCatalog().getTupleDesc(id.getTableId()), data);
+    }
+
+    /**
+     * Create a HeapPage of a table with schema td, which need not be in the
+     * catalog, as for {@link #HeapPage(HeapPageId, ByteBuffer)}.
+     */
+    HeapPage(HeapPageId id, TupleDesc td, ByteBuffer data) throws IOException {
         this.pid = id;
-        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.td = td;
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-        
-        tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
+        this.headerSize = getHeaderSize();
+        int len = BufferPool.getPageSize();
+        if (data.remaining() < len)
+            data = copyOf(data);
+        else if (data.position() != 0 || data.limit() != len) {
+            data = data.slice();
+            data.limit(len);
         }
-        dis.close();
+        this.data = data;
+        this.current = new Snapshot(data);
+        this.dirtyFrom = 0;
+        this.dirtyTo = len;
+    }
 
-        setBeforeImage();
+    /**
+     * @return a heap buffer holding a copy of the page in buf, starting at
+     *         its position, padded with zeroes to a full page
+     */
+    static ByteBuffer copyOf(ByteBuffer buf) {
+        ByteBuffer src = buf.duplicate();
+        ByteBuffer copy = ByteBuffer.allocate(BufferPool.getPageSize());
+        if (src.remaining() > copy.capacity())
+            src.limit(src.position() + copy.capacity());
+        copy.put(src);
+        copy.clear();
+        return copy;
     }
 
     /** Retrieve the number of tuples on this page.
         @return the number of tuples on this page
     */
     private int getNumTuples() {        
-        // some code goes here
-    	int tupleSize = td.getSize();
-    	int tuplePerPage = BufferPool.getPageSize() * 8 / (tupleSize * 8 + 1);
-    	
-        return tuplePerPage;
-
+        return numSlots(td);
     }
 
     /**
@@ -79,14 +141,33 @@ public class HeapPage implements Page {
      * @return the number of bytes in the header of a page in a HeapFile with each tuple occupying tupleSize bytes
      */
     private int getHeaderSize() {        
-        int tupleNum = getNumTuples();
+        return headerSize(numSlots(td));
+    }
+
+    /** @return the number of tuple slots on a page of a table with schema td */
+    static int numSlots(TupleDesc td) {
+    	int tupleSize = td.getSize();
+    	return BufferPool.getPageSize() * 8 / (tupleSize * 8 + 1);
+    }
+
+    /** @return the number of header bytes on a page with numSlots slots */
+    static int headerSize(int numSlots) {
         // ceiling
-        int headBytes = tupleNum/8;
-        if (headBytes * 8 < tupleNum)
-        	headBytes++;
-        
-        return headBytes;
-                 
+        return (numSlots + 7) / 8;
+    }
+
+    /**
+     * Count the slots in use on a page from its header, the first
+     * headerSize bytes of buf, by population count. Header bits past the
+     * last slot are always zero.
+     */
+    static int countUsedSlots(ByteBuffer buf, int headerSize) {
+        int used = 0, i = 0;
+        for (; i + 8 <= headerSize; i += 8)
+            used += Long.bitCount(buf.getLong(i));
+        for (; i < headerSize; i++)
+            used += Integer.bitCount(buf.get(i) & 0xff);
+        return used;
     }
     
     /** Return a view of this page before it was modified
@@ -97,8 +178,11 @@ public class HeapPage implements Page {
             synchronized(oldDataLock)
             {
                 oldDataRef = oldData;
+                if (oldDataRef == null)
+                    oldDataRef = getPageData();
             }
-            return new HeapPage(pid,oldDataRef);
+            // the image is never modified, so the page can use it in place
+            return newPage(ByteBuffer.wrap(oldDataRef).asReadOnlyBuffer());
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -107,124 +191,184 @@ public class HeapPage implements Page {
         return null;
     }
     
+    /**
+     * @return a page of the same kind and table as this one, with the same
+     *         id, that interprets data in place
+     */
+    HeapPage newPage(ByteBuffer data) throws IOException {
+        return new HeapPage(pid, td, data);
+    }
+
     public void setBeforeImage() {
         synchronized(oldDataLock)
         {
-        oldData = getPageData().clone();
+        // the current contents are the before image until the next change
+        oldData = null;
         }
     }
 
     /**
-     * @return the PageId associated with this page.
+     * Called before every modification. Captures the before image if this
+     * is the first change since setBeforeImage, and moves the contents out
+     * of a read-only buffer so they can be changed.
      */
-    public HeapPageId getId() {
-    	return pid;
+    void prepareWrite() {
+        synchronized(oldDataLock)
+        {
+            byte[] image = null;
+            if (oldData == null)
+                image = oldData = getPageData();
+            if (shared) {
+                // oldData is never modified, so outstanding tuples can share it
+                current.buf = ByteBuffer.wrap(image != null ? image : getPageData()).asReadOnlyBuffer();
+                current = new Snapshot(data);
+                shared = false;
+            }
+            if (data.isReadOnly()) {
+                data = copyOf(data);
+                current.buf = data;
+            }
+        }
     }
 
     /**
-     * Suck up tuples from the source file.
+     * Move this page's contents into frame, a one page buffer owned by the
+     * BufferPool, and interpret them there from now on.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
+    void attach(ByteBuffer frame) {
+        synchronized(oldDataLock)
+        {
+            if (frame != data) {
+                frame.clear();
+                frame.put(data.duplicate());
+                frame.clear();
+                data = frame;
+                current.buf = frame;
             }
-            return null;
+            attached = true;
         }
+    }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
+    /**
+     * Copy this page's contents out of its BufferPool frame onto the heap,
+     * so the pool can reuse the frame while the page is still referenced.
+     */
+    void detach() {
+        synchronized(oldDataLock)
+        {
+            if (attached) {
+                data = copyOf(data);
+                current.buf = data;
+                attached = false;
             }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
         }
+    }
 
-        return t;
+    /** Record that bytes [from, to) of the page have been changed. */
+    void touch(int from, int to) {
+        if (dirtyFrom >= dirtyTo) {
+            dirtyFrom = from;
+            dirtyTo = to;
+        } else {
+            dirtyFrom = Math.min(dirtyFrom, from);
+            dirtyTo = Math.max(dirtyTo, to);
+        }
     }
 
     /**
-     * Generates a byte array representing the contents of this page.
-     * Used to serialize this page to disk.
-     * <p>
-     * The invariant here is that it should be possible to pass the byte
-     * array generated by getPageData to the HeapPage constructor and
-     * have it produce an identical HeapPage object.
-     *
-     * @see #HeapPage
-     * @return A byte array correspond to the bytes of this page.
+     * Record that the page's contents are the same as its image on disk,
+     * as when it has just been read from its file.
      */
-    public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
+    void markClean() {
+        synchronized(oldDataLock)
+        {
+            dirtyFrom = dirtyTo = 0;
+        }
+    }
+
+    /**
+     * Write the bytes of this page changed since it was read or last
+     * written straight from the page's buffer to ch, where the page starts
+     * at the specified offset.
+     */
+    void writeTo(PageChannel ch, long offset) throws IOException {
+        synchronized(oldDataLock)
+        {
+            if (dirtyFrom < dirtyTo) {
+                ByteBuffer buf = data.duplicate();
+                buf.limit(dirtyTo).position(dirtyFrom);
+                ch.write(offset + dirtyFrom, buf);
             }
+            dirtyFrom = dirtyTo = 0;
         }
+    }
 
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+    	return pid;
+    }
 
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);				/** padding */
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+    /** @return the offset in the page of the tuple in the specified slot */
+    int slotOffset(int slotId) {
+        return headerSize + slotId * td.getSize();
+    }
 
-                }
-                continue;
-            }
+    /** @return the number of slots on the page, used or not */
+    int slotCount() {
+        return numSlots;
+    }
 
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
+    /**
+     * @return the amount of free space on the page, as recorded in the
+     *         file's {@link FreeSpaceMap}: here, the number of empty slots
+     */
+    int freeSpace() {
+        return getNumEmptySlots();
+    }
 
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Return the tuple in the specified slot, which must be in use. Its
+     * fields are decoded when they are first requested.
+     */
+    private Tuple readTuple(int slotId) {
+        Snapshot snap;
+        synchronized(oldDataLock)
+        {
+            snap = current;
+            shared = true;
         }
+        return new PageTuple(this, snap, slotId);
+    }
 
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Evaluate p against the tuple in the specified slot, which must be in
+     * use, comparing the serialized field directly rather than decoding it.
+     */
+    public boolean matches(int slotId, Predicate p) {
+        int f = p.getField();
+        ByteBuffer buf = data;
+        return td.getFieldType(f).compare(buf, td.getFieldOffset(f, buf, slotOffset(slotId)),
+                p.getOp(), p.getOperand());
+    }
 
-        return baos.toByteArray();
+    /**
+     * Generates a byte array representing the contents of this page.
+     * Used to serialize this page to disk.
+     * <p>
+     * The invariant here is that it should be possible to pass the byte
+     * array generated by getPageData to the HeapPage constructor and
+     * have it produce an identical HeapPage object.
+     *
+     * @see #HeapPage
+     * @return A byte array correspond to the bytes of this page.
+     */
+    public byte[] getPageData() {
+        ByteBuffer buf = data.duplicate();
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        return bytes;
     }
 
     /**
@@ -249,21 +393,45 @@ public class HeapPage implements Page {
      * @param t The tuple to delete
      */
     public void deleteTuple(Tuple t) throws DbException {
-    	int i;
-    	for (i = 0; i < numSlots; i++) 
-    	{
-    		if (tuples[i] == null)
-    			continue;
-    		
-    		if (tuples[i].equals(t)) {
-    			if ((header[i/8] &  1 << (i % 8)) == 0)
-    				throw new DbException("already empty");
-    			tuples[i] = null;
-    			markSlotUsed(i, false);
-    			return;
-    		}
-    	}
-    	throw new DbException("[Delete]the tuple don't exsist this page");
+    	RecordId rid = t.getRecordId();
+    	if (rid == null || !pid.equals(rid.getPageId()))
+    		throw new DbException("[Delete]the tuple don't exsist this page");
+    	int i = rid.getTupleNumber();
+    	if (i < 0 || i >= numSlots || !isSlotUsed(i))
+    		throw new DbException("already empty");
+    	prepareWrite();
+    	markSlotUsed(i, false);
+    	ByteBuffer buf = data;
+    	int end = slotOffset(i) + td.getSize();
+    	for (int off = slotOffset(i); off < end; off++)
+    		buf.put(off, (byte) 0);				/** padding */
+    	touch(slotOffset(i), end);
+    }
+
+    /**
+     * Replace the tuple stored in the slot named by t's RecordId with t.
+     * @throws DbException if this tuple is not on this page, its slot is
+     *         empty, or tupledesc is mismatch.
+     * @param t The new contents of the tuple.
+     */
+    public void updateTuple(Tuple t) throws DbException {
+    	RecordId rid = t.getRecordId();
+    	if (rid == null || !pid.equals(rid.getPageId()))
+    		throw new DbException("[Update]the tuple don't exsist this page");
+    	int i = rid.getTupleNumber();
+    	if (i < 0 || i >= numSlots || !isSlotUsed(i))
+    		throw new DbException("slot is empty");
+    	if (!td.equals(t.getTupleDesc()))
+    		throw new DbException("mismatch descriptor");
+    	Field[] fields = new Field[td.numFields()];
+    	for (int j = 0; j < fields.length; j++)
+    		fields[j] = t.getField(j);
+    	prepareWrite();
+    	ByteBuffer buf = data.duplicate();
+    	buf.position(slotOffset(i));
+    	for (int j = 0; j < fields.length; j++)
+    		td.getFieldType(j).serialize(fields[j], buf);
+    	touch(slotOffset(i), buf.position());
     }
 
     /**
@@ -277,12 +445,15 @@ public class HeapPage implements Page {
     	int i;
     	if (this.getNumEmptySlots() == 0)
     		throw new DbException("no empty slots");
-    	if (!Database.getCatalog().getTupleDesc(pid.getTableId()).equals(t.getTupleDesc()))
+    	if (!td.equals(t.getTupleDesc()))
     		throw new DbException("mismatch descriptor");
-    	for (i = 0; i < numSlots; i++)
-    		if (!this.isSlotUsed(i))
-    			break;
-        tuples[i] = t;
+    	i = firstEmptySlot();
+    	prepareWrite();
+    	ByteBuffer buf = data.duplicate();
+    	buf.position(slotOffset(i));
+    	for (int j = 0; j < td.numFields(); j++)
+    		td.getFieldType(j).serialize(t.getField(j), buf);
+    	touch(slotOffset(i), buf.position());
         t.setRecordId(new RecordId(getId(), i));
         markSlotUsed(i, true);
     }
@@ -311,32 +482,39 @@ public class HeapPage implements Page {
      * Returns the number of empty slots on this page.
      */
     public int getNumEmptySlots() {
-        // some code goes here
-    	int count = 0;
-    	for (int i = 0; i < numSlots; i++)
-    		if ((header[i/8] &  1 << (i % 8)) == 0)
-    			count++;
-    	return count;
+    	return numSlots - countUsedSlots(data, headerSize);
+    }
+
+    /** @return the lowest numbered empty slot, or numSlots if there is none */
+    private int firstEmptySlot() {
+    	ByteBuffer buf = data;
+    	for (int b = 0; b < headerSize; b++) {
+    		int bits = ~buf.get(b) & 0xff;
+    		if (bits != 0)
+    			return Math.min(numSlots, b * 8 + Integer.numberOfTrailingZeros(bits));
+    	}
+    	return numSlots;
     }
 
     /**
      * Returns true if associated slot on this page is filled.
      */
     public boolean isSlotUsed(int i) {
-        // some code goes here
-		if ((header[i/8] &  1 << (i % 8)) != 0)
-			return true;
-    	return false;
+    	return (data.get(i/8) & 1 << (i % 8)) != 0;
     }
 
     /**
      * Abstraction to fill or clear a slot on this page.
      */
     private void markSlotUsed(int i, boolean value) {
+    	ByteBuffer buf = data;
+    	byte b = buf.get(i/8);
     	if (value) 
-    		header[i/8] |= 1 << (i % 8);
+    		b |= 1 << (i % 8);
     	else 
-    		header[i/8] &= ~(1 << (i % 8));
+    		b &= ~(1 << (i % 8));
+    	buf.put(i/8, b);
+    	touch(i/8, i/8 + 1);
     }
 
     /**
@@ -344,29 +522,67 @@ public class HeapPage implements Page {
      * (note that this iterator shouldn't return tuples in empty slots!)
      */
     public Iterator<Tuple> iterator() {
-        return new Itr();
+        return new Itr(null);
+    }
+
+    /**
+     * @return an iterator over the tuples on this page that satisfy all of
+     * preds. Slots that fail a predicate are rejected from the page bytes,
+     * without creating a tuple.
+     */
+    public Iterator<Tuple> iterator(Predicate[] preds) {
+        return iterator(preds == null || preds.length == 0 ? null : CompiledPredicate.compile(preds, td));
+    }
+
+    /**
+     * @return an iterator over the tuples on this page that satisfy pred,
+     * or over all of them if it is null
+     */
+    Itr iterator(CompiledPredicate pred) {
+        return new Itr(pred);
     }
     
+    /**
+     * Decodes the tuples of used slots one at a time, as they are requested.
+     */
     class Itr implements Iterator<Tuple>{
+    	/** the next slot to look at */
     	int cur;
-    	int maxcur;
-    	public Itr() {
-    		cur = 0;
-    		maxcur = numSlots;
+    	/** the predicate every returned tuple satisfies, or null */
+    	final CompiledPredicate pred;
+    	
+    	Itr(CompiledPredicate pred) {
+    		this.pred = pred;
     	}
+    	
 		@Override
 		public boolean hasNext() {
-			if (cur >= maxcur)
-				return false;
-			if ((header[cur/8] &  1 << (cur % 8)) != 0)
-				return true;
-			return false;
+			int n = slotCount();
+			while (cur < n && !(isSlotUsed(cur) && accept(cur)))
+				cur++;
+			return cur < n;
+		}
+
+		private boolean accept(int slot) {
+			return pred == null || pred.test(td, data, slotOffset(slot));
 		}
 
 		@Override
 		public Tuple next() {
-			
-			return tuples[cur++];
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return readTuple(cur++);
+		}
+
+		/**
+		 * Decode the next tuples into batch straight from the page bytes,
+		 * until it is full or the page has no more.
+		 */
+		void fill(TupleBatch batch) {
+			ByteBuffer buf = data;
+			for (int n = slotCount(); cur < n && !batch.isFull(); cur++)
+				if (isSlotUsed(cur) && accept(cur))
+					batch.add(buf, slotOffset(cur));
 		}
     	
 		public void remove() {
@@ -374,5 +590,70 @@ public class HeapPage implements Page {
 		}
     }
 
-}
+    /**
+     * A tuple of a HeapPage whose fields are decoded from the page bytes the
+     * first time they are requested.
+     */
+    static final class PageTuple extends Tuple {
+
+        private static final long serialVersionUID = 1L;
+
+        private transient Snapshot snapshot;
+        private final TupleDesc pageTd;
+        private final int offset;
+
+        PageTuple(HeapPage page, Snapshot snapshot, int slotId) {
+            super(page.td);
+            this.snapshot = snapshot;
+            this.pageTd = page.td;
+            this.offset = page.slotOffset(slotId);
+            setRecordId(new RecordId(page.pid, slotId));
+        }
+
+        @Override
+        public Field getField(int i) {
+            Field f = super.getField(i);
+            if (f == null && snapshot != null && i >= 0 && i < pageTd.numFields()) {
+                try {
+                    ByteBuffer buf = snapshot.buf;
+                    f = pageTd.getFieldType(i).parse(buf, pageTd.getFieldOffset(i, buf, offset));
+                } catch (java.text.ParseException e) {
+                    e.printStackTrace();
+                    throw new NoSuchElementException("parsing error!");
+                }
+                super.setField(i, f);
+            }
+            return f;
+        }
 
+        /** Reads the serialized field, unless it has been decoded or set. */
+        @Override
+        int getInt(int i) {
+            if (snapshot == null || super.getField(i) != null)
+                return super.getInt(i);
+            ByteBuffer buf = snapshot.buf;
+            return buf.getInt(pageTd.getFieldOffset(i, buf, offset));
+        }
+
+        /** Compares the serialized field, unless it has been decoded or set. */
+        @Override
+        boolean matches(Predicate p) {
+            int i = p.getField();
+            if (snapshot == null || super.getField(i) != null)
+                return super.matches(p);
+            ByteBuffer buf = snapshot.buf;
+            return pageTd.getFieldType(i).compare(buf, pageTd.getFieldOffset(i, buf, offset),
+                    p.getOp(), p.getOperand());
+        }
+
+        /** Serialize as a plain tuple, since the page does not travel with it. */
+        private Object writeReplace() {
+            Tuple t = new Tuple(getTupleDesc());
+            for (int i = 0; i < pageTd.numFields(); i++)
+                t.setField(i, getField(i));
+            t.setRecordId(getRecordId());
+            return t;
+        }
+    }
+
+}
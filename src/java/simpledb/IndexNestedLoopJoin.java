@@ -0,0 +1,240 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexNestedLoopJoin joins an outer input to a table stored in a BTreeFile
+ * keyed on its join field, by looking each outer key up in the B+ tree
+ * rather than scanning the table.
+ * <p>
+ * The inner child must be a scan of such a table, possibly under Filters
+ * (see {@link #canProbe}); it is never opened, but its table, transaction
+ * and predicates, pushed or filtered, are used for the lookups. The outer
+ * input is read {@link #PROBE_BATCH} tuples at a time, and each batch is
+ * sorted on the join field, so each distinct key is looked up once and
+ * consecutive lookups descend to the same or neighbouring leaf pages.
+ * <p>
+ * The join predicate must be EQUALS or one of the range comparisons. Like
+ * Join, each output tuple is an outer tuple followed by an inner tuple.
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** the outer tuples read, sorted and looked up at once */
+    public static final int PROBE_BATCH = 1024;
+
+    private final JoinPredicate pred;
+    private OpIterator child1, child2;
+    private final TupleDesc comboTD;
+    /** the comparison of an inner key to an outer key that makes a match */
+    private final Predicate.Op indexOp;
+
+    private transient BTreeFile index;
+    private transient TransactionId tid;
+    /** predicates every inner tuple must satisfy, from child2 */
+    private transient ArrayList<Predicate> filters;
+    /** the current batch of outer tuples, sorted */
+    private transient ArrayList<Tuple> batch;
+    /** the outer tuples with the key being looked up are [runStart, runEnd) */
+    private transient int runStart, runEnd;
+    private transient DbFileIterator probe;
+    /** the current inner tuple, and the next outer tuple to join it to */
+    private transient Tuple t2;
+    private transient int runPos;
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join
+     * them on.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the outer relation to join
+     * @param child2
+     *            a scan of the inner relation, which must be stored in a
+     *            BTreeFile keyed on the field p joins on
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        switch (p.getOperator()) {
+        case EQUALS:
+            indexOp = Predicate.Op.EQUALS;
+            break;
+        case LESS_THAN:
+            indexOp = Predicate.Op.GREATER_THAN;
+            break;
+        case LESS_THAN_OR_EQ:
+            indexOp = Predicate.Op.GREATER_THAN_OR_EQ;
+            break;
+        case GREATER_THAN:
+            indexOp = Predicate.Op.LESS_THAN;
+            break;
+        case GREATER_THAN_OR_EQ:
+            indexOp = Predicate.Op.LESS_THAN_OR_EQ;
+            break;
+        default:
+            throw new IllegalArgumentException(
+                    "index joins need an equality or range predicate");
+        }
+        if (!canProbe(child2, p.getField2()))
+            throw new IllegalArgumentException(
+                    "the inner input is not a scan of a B+ tree keyed on the join field");
+        this.pred = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    /** @return the scan under any Filters of it, or null if there is none */
+    private static SeqScan scanOf(OpIterator it) {
+        while (it instanceof Filter)
+            it = ((Filter) it).getChildren()[0];
+        return it instanceof SeqScan ? (SeqScan) it : null;
+    }
+
+    /**
+     * @return true if it is a scan, possibly under Filters, of a BTreeFile
+     *         keyed on the specified field, so its tuples matching a key can
+     *         be looked up instead of scanned for
+     */
+    public static boolean canProbe(OpIterator it, int field) {
+        SeqScan scan = scanOf(it);
+        if (scan == null)
+            return false;
+        DbFile f = Database.getCatalog().getDatabaseFile(scan.getTableId());
+        return f instanceof BTreeFile && ((BTreeFile) f).keyField() == field;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(pred.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return child2.getTupleDesc().getFieldName(pred.getField2());
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        super.open();
+        SeqScan scan = scanOf(child2);
+        index = (BTreeFile) Database.getCatalog().getDatabaseFile(scan.getTableId());
+        tid = scan.getTransactionId();
+        filters = new ArrayList<Predicate>(scan.getPredicates());
+        for (OpIterator it = child2; it instanceof Filter; it = ((Filter) it).getChildren()[0])
+            filters.add(((Filter) it).getPredicate());
+        batch = new ArrayList<Tuple>();
+        reset();
+    }
+
+    private void reset() {
+        if (probe != null)
+            probe.close();
+        probe = null;
+        batch.clear();
+        runStart = runEnd = 0;
+        t2 = null;
+    }
+
+    /**
+     * Read and sort the next batch of outer tuples.
+     *
+     * @return false if there are none left
+     */
+    private boolean loadBatch() throws DbException, TransactionAbortedException {
+        batch.clear();
+        while (batch.size() < PROBE_BATCH && child1.hasNext())
+            batch.add(child1.next());
+        Collections.sort(batch, new TupleComparator(pred.getField1(), true));
+        runStart = runEnd = 0;
+        return !batch.isEmpty();
+    }
+
+    /** @return the next inner tuple the current lookup finds, or null */
+    private Tuple nextInner() throws DbException, TransactionAbortedException {
+        while (probe.hasNext()) {
+            Tuple t = probe.next();
+            boolean ok = true;
+            for (Predicate f : filters)
+                ok = ok && f.filter(t);
+            if (ok)
+                return t;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples: an outer tuple with the key being looked up, joined to an
+     * inner tuple the lookup found.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (t2 != null && runPos < runEnd)
+                return merge(batch.get(runPos++), t2);
+            if (probe != null) {
+                t2 = nextInner();
+                runPos = runStart;
+                if (t2 != null)
+                    continue;
+                probe.close();
+                probe = null;
+                runStart = runEnd;
+            }
+            if (runStart >= batch.size() && !loadBatch())
+                return null;
+            Field key = batch.get(runStart).getField(pred.getField1());
+            runEnd = runStart + 1;
+            while (runEnd < batch.size()
+                    && key.compare(Predicate.Op.EQUALS, batch.get(runEnd).getField(pred.getField1())))
+                runEnd++;
+            probe = index.indexIterator(tid, new IndexPredicate(indexOp, key));
+            probe.open();
+        }
+    }
+
+    private Tuple merge(Tuple t1, Tuple t2) {
+        int td1n = t1.getTupleDesc().numFields();
+        int td2n = t2.getTupleDesc().numFields();
+        Tuple t = new Tuple(comboTD);
+        for (int i = 0; i < td1n; i++)
+            t.setField(i, t1.getField(i));
+        for (int i = 0; i < td2n; i++)
+            t.setField(td1n + i, t2.getField(i));
+        return t;
+    }
+
+    public void close() {
+        super.close();
+        if (probe != null)
+            probe.close();
+        probe = null;
+        batch = null;
+        t2 = null;
+        child1.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child1.rewind();
+        reset();
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { child1, child2 };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        child1 = children[0];
+        child2 = children[1];
+    }
+}
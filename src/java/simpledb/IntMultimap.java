@@ -0,0 +1,135 @@
+package simpledb;
+
+import java.util.Arrays;
+
+/**
+ * IntMultimap maps int keys to any number of values each, keeping keys and
+ * values in flat arrays rather than boxing them: an open addressing table
+ * of keys, with linear probing, points at each key's first value, and the
+ * values of a key are chained through an array of row numbers in the
+ * order they were added. Each key sits next to its first row in the
+ * table, so a probe usually touches one cache line of it. A hash join on
+ * INT fields builds one of these instead of a HashMap of Fields to lists
+ * of tuples.
+ * <p>
+ * Values are numbered by the order they were added, from 0; a key's values
+ * are walked with {@link #first(int)} and {@link #next(int)}.
+ */
+public class IntMultimap<V> {
+
+    private static final int EMPTY = -1;
+
+    /** the key, then the first row or EMPTY, of each slot of the table */
+    private int[] table;
+    /** the last row of the key of each slot */
+    private int[] tails;
+    private int mask;
+    private int numKeys;
+
+    /** the row after each row with the same key, or EMPTY */
+    private int[] next;
+    private Object[] values;
+    private int size;
+
+    public IntMultimap() {
+        this(16);
+    }
+
+    /**
+     * Create a map sized for about the specified number of values.
+     */
+    public IntMultimap(int expected) {
+        int slots = 16;
+        while (slots < expected * 2)
+            slots <<= 1;
+        allocate(slots);
+        next = new int[Math.max(expected, 16)];
+        values = new Object[next.length];
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private void allocate(int slots) {
+        table = new int[2 * slots];
+        for (int i = 1; i < table.length; i += 2)
+            table[i] = EMPTY;
+        tails = new int[slots];
+        mask = slots - 1;
+    }
+
+    /** @return the slot of key, or the empty slot where it belongs */
+    private int slot(int key) {
+        int i = hash(key) & mask;
+        while (table[2 * i + 1] != EMPTY && table[2 * i] != key)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    /** Add value under key, after the values already there. */
+    public void put(int key, V value) {
+        if (size == next.length) {
+            next = Arrays.copyOf(next, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        int row = size++;
+        values[row] = value;
+        next[row] = EMPTY;
+        int i = slot(key);
+        if (table[2 * i + 1] == EMPTY) {
+            table[2 * i] = key;
+            table[2 * i + 1] = row;
+            tails[i] = row;
+            if (++numKeys * 2 > tails.length)
+                grow();
+        } else {
+            next[tails[i]] = row;
+            tails[i] = row;
+        }
+    }
+
+    private void grow() {
+        int[] oldTable = table, oldTails = tails;
+        allocate(oldTails.length * 2);
+        for (int j = 0; j < oldTails.length; j++) {
+            if (oldTable[2 * j + 1] == EMPTY)
+                continue;
+            int i = slot(oldTable[2 * j]);
+            table[2 * i] = oldTable[2 * j];
+            table[2 * i + 1] = oldTable[2 * j + 1];
+            tails[i] = oldTails[j];
+        }
+    }
+
+    /** @return the first row of key, or -1 if it has no values */
+    public int first(int key) {
+        return table[2 * slot(key) + 1];
+    }
+
+    /** @return the row after row with the same key, or -1 if it is the last */
+    public int next(int row) {
+        return next[row];
+    }
+
+    /** @return the value of the specified row */
+    @SuppressWarnings("unchecked")
+    public V get(int row) {
+        return (V) values[row];
+    }
+
+    /** @return the number of values in the map */
+    public int size() {
+        return size;
+    }
+
+    /** Remove all the keys and values, keeping the arrays. */
+    public void clear() {
+        for (int i = 1; i < table.length; i += 2)
+            table[i] = EMPTY;
+        Arrays.fill(values, 0, size, null);
+        numKeys = 0;
+        size = 0;
+    }
+}
@@ -4,30 +4,63 @@ import java.util.*;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * It is a block nested-loops join: a block of up to blockTuples left (outer)
+ * tuples is read into memory, and the right (inner) child is scanned once
+ * per block rather than once per left tuple. The join fields of the block
+ * are kept in an array beside it, as ints when the fields are INTs, so each
+ * right tuple is compared against the whole block in a tight loop.
  */
 public class Join extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    /** the left tuples held in memory at once, unless told otherwise */
+    public static final int DEFAULT_BLOCK_TUPLES = 50000;
+
     OpIterator ch1, ch2;
     JoinPredicate p;
+    private final int blockTuples;
+    private final TupleDesc comboTD;
+
+    /** the current block of left tuples, and their join fields */
+    private transient Tuple[] block;
+    private transient int[] intKeys;
+    private transient Field[] keys;
+    private transient int blockSize;
+    /** the current right tuple, and the next of block to compare it with */
+    private transient Tuple t2;
+    private transient int t2Key;
+    private transient int blockPos;
+    /** whether ch2 has been read since it was last opened or rewound */
+    private transient boolean ch2Used;
+
     /**
      * Constructor. Accepts two children to join and the predicate to join them
      * on
-     * 
+     *
      * @param p
      *            The predicate to use to join the children
      * @param child1
      *            Iterator for the left(outer) relation to join
      * @param child2
      *            Iterator for the right(inner) relation to join
+     * @param blockTuples
+     *            the most left tuples to hold in memory; 1 scans child2
+     *            once per tuple of child1
      */
+    public Join(JoinPredicate p, OpIterator child1, OpIterator child2, int blockTuples) {
+        if (blockTuples < 1)
+            throw new IllegalArgumentException("a block needs at least one tuple");
+        this.p = p;
+        ch1 = child1;
+        ch2 = child2;
+        this.blockTuples = blockTuples;
+        comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
     public Join(JoinPredicate p, OpIterator child1, OpIterator child2) {
-    	this.p = p;
-    	ch1 = child1;
-    	ch2 = child2;
-    	if (p.getOperator() == Predicate.Op.GREATER_THAN)
-    		System.out.println("gt");
+        this(p, child1, child2, DEFAULT_BLOCK_TUPLES);
     }
 
     public JoinPredicate getJoinPredicate() {
@@ -57,31 +90,105 @@ public class Join extends Operator {
      *      implementation logic.
      */
     public TupleDesc getTupleDesc() {
-        return TupleDesc.merge(ch1.getTupleDesc(), ch2.getTupleDesc());
+        return comboTD;
     }
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         ch1.open();
         ch2.open();
-        this.open = true;
+        super.open();
+        boolean ints = ch1.getTupleDesc().getFieldType(p.getField1()) == Type.INT_TYPE
+                && ch2.getTupleDesc().getFieldType(p.getField2()) == Type.INT_TYPE;
+        // the arrays grow to blockTuples only if the left input is that large
+        int capacity = Math.min(blockTuples, 1024);
+        block = new Tuple[capacity];
+        intKeys = ints ? new int[capacity] : null;
+        keys = ints ? null : new Field[capacity];
+        reset();
+    }
+
+    private void reset() {
+        Arrays.fill(block, 0, blockSize, null);
+        if (keys != null)
+            Arrays.fill(keys, 0, blockSize, null);
+        blockSize = 0;
+        blockPos = 0;
+        t2 = null;
+        ch2Used = false;
     }
 
     public void close() {
-    	ch1.close();
-    	ch2.close();
-    	this.open = false;
+        super.close();
+        block = null;
+        intKeys = null;
+        keys = null;
+        blockSize = 0;
+        t2 = null;
+        ch2.close();
+        ch1.close();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-    	ch1.rewind();
-    	ch2.rewind();
-    	this.next = null;
-    	t1 = t2 = null;
+        ch1.rewind();
+        ch2.rewind();
+        reset();
+    }
+
+    /**
+     * Read the next block of left tuples, and start scanning the right
+     * child from the beginning.
+     *
+     * @return false if the left child has no more tuples
+     */
+    private boolean loadBlock() throws DbException, TransactionAbortedException {
+        Arrays.fill(block, 0, blockSize, null);
+        blockSize = 0;
+        while (blockSize < blockTuples && ch1.hasNext()) {
+            if (blockSize == block.length) {
+                int n = (int) Math.min((long) blockTuples, 2L * block.length);
+                block = Arrays.copyOf(block, n);
+                if (intKeys != null)
+                    intKeys = Arrays.copyOf(intKeys, n);
+                else
+                    keys = Arrays.copyOf(keys, n);
+            }
+            Tuple t = ch1.next();
+            block[blockSize] = t;
+            if (intKeys != null)
+                intKeys[blockSize] = t.getInt(p.getField1());
+            else
+                keys[blockSize] = t.getField(p.getField1());
+            blockSize++;
+        }
+        if (blockSize == 0)
+            return false;
+        if (ch2Used)
+            ch2.rewind();
+        ch2Used = true;
+        return true;
+    }
+
+    /** @return whether the join predicate holds for ints a and b */
+    private static boolean compare(Predicate.Op op, int a, int b) {
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return a == b;
+        case NOT_EQUALS:
+            return a != b;
+        case GREATER_THAN:
+            return a > b;
+        case GREATER_THAN_OR_EQ:
+            return a >= b;
+        case LESS_THAN:
+            return a < b;
+        case LESS_THAN_OR_EQ:
+            return a <= b;
+        }
+        return false;
     }
 
-    private boolean open;
-    private Tuple next, t1, t2;
     /**
      * Returns the next tuple generated by the join, or null if there are no
      * more tuples. Logically, this is the next tuple in r1 cross r2 that
@@ -96,82 +203,62 @@ public class Join extends Operator {
      * <p>
      * For example, if one tuple is {1,2,3} and the other tuple is {1,5,6},
      * joined on equality of the first column, then this returns {1,2,3,1,5,6}.
-     * 
+     *
      * @return The next matching tuple.
      * @see JoinPredicate#filter
      */
-
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-    	if (t1 == null) {
-    		if (ch1.hasNext())
-    			t1 = ch1.next();
-    		else
-    			return null;
-    	}
-    	if (t2 == null) {
-    		if (ch2.hasNext())
-    			t2 = ch2.next();
-    		else
-    			return null;
-    	}
-    	
-    	while (true) {
-    		if (!ch2.hasNext()) {
-        		if (ch1.hasNext()) {
-        			t1 = ch1.next();
-        			ch2.rewind();
-        		} else {
-        			return null;
-        		}
-        	}
-    		if (t2 == null)
-    			t2 = ch2.next();
-    		if (p.filter(t1, t2)) // merge tuple
-    		{			
-    			next = new Tuple(this.getTupleDesc());
-    			Iterator<Field> itr1 = t1.fields();
-    			Iterator<Field> itr2 = t2.fields();
-    			
-    			int i = 0;
-    			while (itr1.hasNext())
-    				next.setField(i++, itr1.next());
-    			while (itr2.hasNext())
-    				next.setField(i++, itr2.next());
-    			t2 = null;
-    			return next;
-    		}
-    		t2 = null;
-    	}
-    }
-
-    
-    public boolean hasNext() throws DbException, TransactionAbortedException {
-    	if (this.open != true)
-    		throw new DbException("not open");
-    	if (next == null)
-    		fetchNext();
-    	return next != null;
-    }
-
-    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
-    	if (next == null) {
-    		fetchNext();
-    		if (next == null)
-    			throw new NoSuchElementException();
-    	}
-    	Tuple result = next;
-    	next = null;
-    	return result;
+        Predicate.Op op = p.getOperator();
+        while (true) {
+            if (t2 != null) {
+                if (intKeys != null) {
+                    while (blockPos < blockSize) {
+                        int i = blockPos++;
+                        if (compare(op, intKeys[i], t2Key))
+                            return merge(block[i], t2);
+                    }
+                } else {
+                    Field f2 = t2.getField(p.getField2());
+                    while (blockPos < blockSize) {
+                        int i = blockPos++;
+                        if (keys[i].compare(op, f2))
+                            return merge(block[i], t2);
+                    }
+                }
+                t2 = null;
+            }
+            if (blockSize > 0 && ch2.hasNext()) {
+                t2 = ch2.next();
+                if (intKeys != null)
+                    t2Key = t2.getInt(p.getField2());
+                blockPos = 0;
+                continue;
+            }
+            if (!loadBlock())
+                return null;
+        }
+    }
+
+    private Tuple merge(Tuple t1, Tuple t2) {
+        int td1n = t1.getTupleDesc().numFields();
+        int td2n = t2.getTupleDesc().numFields();
+        Tuple t = new Tuple(comboTD);
+        for (int i = 0; i < td1n; i++)
+            t.setField(i, t1.getField(i));
+        for (int i = 0; i < td2n; i++)
+            t.setField(td1n + i, t2.getField(i));
+        return t;
     }
+
     @Override
     public OpIterator[] getChildren() {
-        // some code goes here
-        return null;
+        return new OpIterator[] { ch1, ch2 };
     }
 
     @Override
     public void setChildren(OpIterator[] children) {
-        // some code goes here
+        ch1 = children[0];
+        ch2 = children[1];
     }
 
 }
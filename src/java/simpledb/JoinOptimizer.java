@@ -14,6 +14,12 @@ public class JoinOptimizer {
     LogicalPlan p;
     Vector<LogicalJoinNode> joins;
 
+    /**
+     * The most tuples a SortMergeJoin planned by the optimizer may read into
+     * memory to sort them, or to hold the right input of a range join.
+     */
+    static final int MERGE_MEMORY_TUPLES = 50000;
+
     /**
      * Constructor
      * 
@@ -34,6 +40,10 @@ public class JoinOptimizer {
      * inner/outer here -- because OpIterator's don't provide any cardinality
      * estimates, and stats only has information about the base tables. For this
      * reason, the plan1
+     * <p>
+     * A range join is merged only if both inputs are already sorted on
+     * their join fields; otherwise it is a nested-loops Join, since the
+     * inputs a SortMergeJoin would read into memory may not fit.
      * 
      * @param lj
      *            The join being considered
@@ -45,9 +55,104 @@ public class JoinOptimizer {
     public static OpIterator instantiateJoin(LogicalJoinNode lj,
                                              OpIterator plan1, OpIterator plan2) throws ParsingException {
 
-        int t1id = 0, t2id = 0;
+        JoinPredicate p = joinPredicate(lj, plan1, plan2);
+        int t1id = p.getField1(), t2id = p.getField2();
         OpIterator j;
 
+        switch (lj.p) {
+        case EQUALS:
+            if (SortMergeJoin.isSortedOn(plan1, t1id)
+                    && SortMergeJoin.isSortedOn(plan2, t2id))
+                j = new SortMergeJoin(p, plan1, plan2);
+            else
+                j = new GraceHashJoin(p, plan1, plan2);
+            break;
+        case LESS_THAN:
+        case LESS_THAN_OR_EQ:
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQ:
+            if (SortMergeJoin.isSortedOn(plan1, t1id)
+                    && SortMergeJoin.isSortedOn(plan2, t2id))
+                j = new SortMergeJoin(p, plan1, plan2);
+            else
+                j = new Join(p, plan1, plan2);
+            break;
+        default:
+            j = new Join(p, plan1, plan2);
+        }
+
+        return j;
+
+    }
+
+    /**
+     * Return best iterator for computing a given logical join, given
+     * estimates of the cardinality and scan cost of each subplan. This is
+     * an IndexNestedLoopJoin when plan2 is a scan of a B+ tree keyed on its
+     * join field and looking up each of the card1 outer keys costs less
+     * than the join {@link #instantiateJoin(LogicalJoinNode, OpIterator, OpIterator)}
+     * would pick, which is the case when the outer side is small. A range
+     * join of unsorted inputs is merged when the tuples it reads into memory
+     * fit in {@link #MERGE_MEMORY_TUPLES} and merging costs less than a
+     * nested-loops join.
+     * 
+     * @param lj
+     *            The join being considered
+     * @param plan1
+     *            The left join node's child
+     * @param plan2
+     *            The right join node's child
+     */
+    public static OpIterator instantiateJoin(LogicalJoinNode lj,
+            OpIterator plan1, OpIterator plan2, int card1, int card2,
+            double cost1, double cost2) throws ParsingException {
+        JoinPredicate p = joinPredicate(lj, plan1, plan2);
+        if (!(lj instanceof LogicalSubplanJoinNode) && canUseIndex(lj.p)
+                && IndexNestedLoopJoin.canProbe(plan2, p.getField2())
+                && indexNestedLoopJoinCost(card1, card2, cost1)
+                        < scanJoinCost(lj.p, card1, card2, cost1, cost2))
+            return new IndexNestedLoopJoin(p, plan1, plan2);
+        if (isRange(lj.p) && !(lj instanceof LogicalSubplanJoinNode)
+                && mergeTuples(p, plan1, plan2, card1, card2) <= MERGE_MEMORY_TUPLES
+                && sortMergeJoinCost(card1, card2, cost1, cost2)
+                        < nestedLoopJoinCost(card1, card2, cost1, cost2))
+            return new SortMergeJoin(p, plan1, plan2);
+        return instantiateJoin(lj, plan1, plan2);
+    }
+
+    private static boolean isRange(Predicate.Op op) {
+        switch (op) {
+        case LESS_THAN:
+        case LESS_THAN_OR_EQ:
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQ:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @return how many tuples a SortMergeJoin of plan1 and plan2 on p reads
+     *         into memory: each input not already sorted on its join field,
+     *         and the right input of a range join
+     */
+    private static long mergeTuples(JoinPredicate p, OpIterator plan1,
+            OpIterator plan2, int card1, int card2) {
+        long n = 0;
+        if (!SortMergeJoin.isSortedOn(plan1, p.getField1()))
+            n += card1;
+        if (p.getOperator() != Predicate.Op.EQUALS
+                || !SortMergeJoin.isSortedOn(plan2, p.getField2()))
+            n += card2;
+        return n;
+    }
+
+    /** @return the predicate lj joins plan1 and plan2 on */
+    private static JoinPredicate joinPredicate(LogicalJoinNode lj,
+            OpIterator plan1, OpIterator plan2) throws ParsingException {
+        int t1id = 0, t2id = 0;
+
         try {
             t1id = plan1.getTupleDesc().fieldNameToIndex(lj.f1QuantifiedName);
         } catch (NoSuchElementException e) {
@@ -66,12 +171,7 @@ public class JoinOptimizer {
             }
         }
 
-        JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
-
-        j = new Join(p,plan1,plan2);
-
-        return j;
-
+        return new JoinPredicate(t1id, lj.p, t2id);
     }
 
     /**
@@ -82,6 +182,15 @@ public class JoinOptimizer {
      * the amount of data that must be read over the course of the query, as
      * well as the number of CPU opertions performed by your join. Assume that
      * the cost of a single predicate application is roughly 1.
+     * <p>
+     * Each predicate is costed with the algorithm instantiateJoin uses for
+     * it: GraceHashJoin for EQUALS, SortMergeJoin for the range comparisons
+     * when both inputs fit in memory and merging is cheaper, and a block
+     * nested-loops Join otherwise. An EQUALS join of inputs already
+     * sorted on their keys is merged instead, which costs no more than the
+     * hash join it is estimated as. If the right-hand table is a BTreeFile
+     * keyed on its join field, looking up each left-hand key in it is
+     * considered too.
      * 
      * 
      * @param j
@@ -107,14 +216,103 @@ public class JoinOptimizer {
             // You do not need to implement proper support for these for Lab 3.
             return card1 + cost1 + cost2;
         } else {
-            // Insert your code here.
-            // HINT: You may need to use the variable "j" if you implemented
-            // a join algorithm that's more complicated than a basic
-            // nested-loops join.
-            return -1.0;
+            double cost = scanJoinCost(j.p, card1, card2, cost1, cost2);
+            if (innerIndexed(j))
+                cost = Math.min(cost, indexNestedLoopJoinCost(card1, card2, cost1));
+            return cost;
         }
     }
 
+    /**
+     * @return the cost of the join instantiateJoin picks for op when it does
+     *         not use an index
+     */
+    static double scanJoinCost(Predicate.Op op, int card1, int card2,
+            double cost1, double cost2) {
+        switch (op) {
+        case EQUALS:
+            return hashJoinCost(card1, card2, cost1, cost2);
+        case LESS_THAN:
+        case LESS_THAN_OR_EQ:
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQ:
+            double cost = nestedLoopJoinCost(card1, card2, cost1, cost2);
+            if ((long) card1 + card2 <= MERGE_MEMORY_TUPLES)
+                cost = Math.min(cost, sortMergeJoinCost(card1, card2, cost1, cost2));
+            return cost;
+        default:
+            return nestedLoopJoinCost(card1, card2, cost1, cost2);
+        }
+    }
+
+    private static boolean canUseIndex(Predicate.Op op) {
+        return op != Predicate.Op.NOT_EQUALS && op != Predicate.Op.LIKE;
+    }
+
+    /**
+     * @return true if the right-hand table of j is a BTreeFile keyed on the
+     *         field j joins it on
+     */
+    private boolean innerIndexed(LogicalJoinNode j) {
+        if (p == null || j.t2Alias == null || !canUseIndex(j.p))
+            return false;
+        Integer id = p.getTableId(j.t2Alias);
+        if (id == null)
+            return false;
+        DbFile f = Database.getCatalog().getDatabaseFile(id);
+        if (!(f instanceof BTreeFile))
+            return false;
+        try {
+            return ((BTreeFile) f).keyField() == f.getTupleDesc().fieldNameToIndex(j.f2PureName);
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the cost of an index nested-loops join: the left side is
+     *         scanned, and each of its keys looked up in the right side's
+     *         B+ tree, reading about one leaf page per lookup
+     */
+    static double indexNestedLoopJoinCost(int card1, int card2, double cost1) {
+        double search = card2 < 2 ? 1 : Math.log(card2) / Math.log(2);
+        return cost1 + card1 * (TableStats.IOCOSTPERPAGE + search);
+    }
+
+    /**
+     * @return the cost of a block nested-loops join: the left side is read
+     *         in blocks of Join.DEFAULT_BLOCK_TUPLES, the right side scanned
+     *         once per block, and the predicate applied to every pair
+     */
+    static double nestedLoopJoinCost(int card1, int card2, double cost1, double cost2) {
+        double blocks = Math.ceil((double) card1 / Join.DEFAULT_BLOCK_TUPLES);
+        return cost1 + blocks * cost2 + (double) card1 * card2;
+    }
+
+    /**
+     * @return the cost of a hash join: each side is scanned and each tuple
+     *         hashed once, and if the left side does not fit in memory both
+     *         are written to partitions and read back
+     */
+    static double hashJoinCost(int card1, int card2, double cost1, double cost2) {
+        double cost = cost1 + cost2 + card1 + card2;
+        if (card1 > GraceHashJoin.DEFAULT_MEMORY_TUPLES)
+            cost += 2 * (cost1 + cost2);
+        return cost;
+    }
+
+    /**
+     * @return the cost of a sort-merge join: each side is scanned and
+     *         sorted, and the merge compares each tuple about once
+     */
+    static double sortMergeJoinCost(int card1, int card2, double cost1, double cost2) {
+        return cost1 + cost2 + sortCost(card1) + sortCost(card2) + card1 + card2;
+    }
+
+    private static double sortCost(int card) {
+        return card < 2 ? 0 : card * (Math.log(card) / Math.log(2));
+    }
+
     /**
      * Estimate the cardinality of a join. The cardinality of a join is the
      * number of tuples produced by the join.
@@ -6,6 +6,7 @@ import java.util.Iterator;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
+import java.util.Collections;
 
 /**
  * LogicalPlan represents a logical query plan that has been through
@@ -29,10 +30,9 @@ public class LogicalPlan {
     private HashMap<String,Integer> tableMap;
 
     private Vector<LogicalSelectListNode> selectList;
-    private String groupByField = null;
+    private Vector<String> groupByFields;
     private boolean hasAgg = false;
-    private String aggOp;
-    private String aggField;
+    private Vector<LogicalSelectListNode> aggregates;
     private boolean oByAsc, hasOrderBy = false;
     private String oByField;
     private String query;
@@ -47,6 +47,8 @@ public class LogicalPlan {
         tableMap = new HashMap<String,Integer>();
 
         selectList = new Vector<LogicalSelectListNode>();
+        groupByFields = new Vector<String>();
+        aggregates = new Vector<LogicalSelectListNode>();
         this.query = "";
     }
 
@@ -186,23 +188,39 @@ public class LogicalPlan {
     }
     
     /** Add an aggregate over the field with the specified grouping to
-        the query.  SimpleDb only supports a single aggregate
-        expression and GROUP BY field.
+        the query.  Any number of aggregates may be added; they are all
+        computed in one pass over the same groups, which are formed from
+        every field added with this method or {@link #addGroupBy}.
         @param op the aggregation operator
-        @param afield the field to aggregate over
-        @param gfield the field to group by
+        @param afield the field to aggregate over, or * for COUNT(*)
+        @param gfield a field to group by, or null
      * @throws ParsingException 
     */
     public void addAggregate(String op, String afield, String gfield) throws ParsingException {
         afield=disambiguateName(afield);
+        if (afield.equals("*"))
+            afield="null.*";
+        boolean found = false;
+        for (LogicalSelectListNode a : aggregates)
+            found |= a.aggOp.equalsIgnoreCase(op) && a.fname.equals(afield);
+        if (!found)
+            aggregates.addElement(new LogicalSelectListNode(op, afield));
         if (gfield!=null)
-            gfield=disambiguateName(gfield);
-        aggOp = op;
-        aggField = afield;
-        groupByField = gfield;
+            addGroupBy(gfield);
         hasAgg = true;
     }
 
+    /** Add a GROUP BY field to the query.  Groups are formed from all of
+        the GROUP BY fields together, in the order they were added.
+        @param gfield the field to group by
+     * @throws ParsingException 
+    */
+    public void addGroupBy(String gfield) throws ParsingException {
+        gfield=disambiguateName(gfield);
+        if (!groupByFields.contains(gfield))
+            groupByFields.addElement(gfield);
+    }
+
     /** Add an ORDER BY expression in the specified order on the specified field.  SimpleDb only supports
         a single ORDER BY field.
         @param field the field to order by
@@ -289,6 +307,7 @@ public class LogicalPlan {
         HashMap<String,String> equivMap = new HashMap<String,String>();
         HashMap<String,Double> filterSelectivities = new HashMap<String, Double>();
         HashMap<String,TableStats> statsMap = new HashMap<String,TableStats>();
+        HashMap<String,SeqScan> scans = new HashMap<String,SeqScan>();
 
         while (tableIt.hasNext()) {
             LogicalScanNode table = tableIt.next();
@@ -300,6 +319,7 @@ public class LogicalPlan {
             }
             
             subplanMap.put(table.alias,ss);
+            scans.put(table.alias,ss);
             String baseTableName = Database.getCatalog().getTableName(table.t);
             statsMap.put(baseTableName, baseTableStats.get(baseTableName));
             filterSelectivities.put(table.alias, 1.0);
@@ -334,6 +354,9 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
+            // evaluate the predicate in the scan, where rejected tuples are never
+            // decoded; the Filter stays in the plan to carry its cardinality
+            scans.get(lf.tableAlias).addPredicate(p);
             subplanMap.put(lf.tableAlias, new Filter(p, subplan));
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
@@ -348,6 +371,18 @@ public class LogicalPlan {
 
         joins = jo.orderJoins(statsMap,filterSelectivities,explain);
 
+        // estimated cardinality and scan cost of each subplan, so each join
+        // can be instantiated knowing how large its inputs are
+        HashMap<String,Integer> subplanCards = new HashMap<String,Integer>();
+        HashMap<String,Double> subplanCosts = new HashMap<String,Double>();
+        for (LogicalScanNode table : tables) {
+            TableStats s = statsMap.get(Database.getCatalog().getTableName(table.t));
+            if (s == null)
+                continue;
+            subplanCards.put(table.alias, s.estimateTableCardinality(filterSelectivities.get(table.alias)));
+            subplanCosts.put(table.alias, s.estimateScanCost());
+        }
+
         Iterator<LogicalJoinNode> joinIt = joins.iterator();
         while (joinIt.hasNext()) {
             LogicalJoinNode lj = joinIt.next();
@@ -382,7 +417,19 @@ public class LogicalPlan {
                 throw new ParsingException("Unknown table in WHERE clause " + lj.t2Alias);
             
             OpIterator j;
-            j = jo.instantiateJoin(lj,plan1,plan2);
+            Integer card1 = subplanCards.get(t1name);
+            Integer card2 = isSubqueryJoin ? null : subplanCards.get(t2name);
+            if (card1 != null && card2 != null) {
+                double cost1 = subplanCosts.get(t1name), cost2 = subplanCosts.get(t2name);
+                j = JoinOptimizer.instantiateJoin(lj, plan1, plan2, card1, card2, cost1, cost2);
+                boolean pkey1 = lj.f1PureName.equals(Database.getCatalog().getPrimaryKey(getTableId(lj.t1Alias)));
+                boolean pkey2 = lj.f2PureName.equals(Database.getCatalog().getPrimaryKey(getTableId(lj.t2Alias)));
+                subplanCards.put(t1name, jo.estimateJoinCardinality(lj, card1, card2, pkey1, pkey2, statsMap));
+                subplanCosts.put(t1name, jo.estimateJoinCost(lj, card1, card2, cost1, cost2));
+            } else {
+                j = jo.instantiateJoin(lj,plan1,plan2);
+                subplanCards.remove(t1name);
+            }
             subplanMap.put(t1name, j);
 
             if (!isSubqueryJoin) {
@@ -408,36 +455,54 @@ public class LogicalPlan {
         
         OpIterator node =  (OpIterator)(subplanMap.entrySet().iterator().next().getValue());
 
+        // the GROUP BY fields, with one the input is already sorted on first,
+        // if there is one, so that the groups can be aggregated as it streams in
+        TupleDesc childTd = node.getTupleDesc();
+        ArrayList<String> groups = new ArrayList<String>(groupByFields);
+        int[] gfields = new int[groups.size()];
+        for (int i = 0; i < gfields.length; i++) {
+            try {
+                gfields[i] = childTd.fieldNameToIndex(groups.get(i));
+            } catch (NoSuchElementException e) {
+                throw new ParsingException("Unknown field " +  groups.get(i) + " in GROUP BY statement");
+            }
+        }
+        boolean streaming = false;
+        for (int i = 0; i < gfields.length && !streaming; i++) {
+            if (SortMergeJoin.isSortedOn(node, gfields[i])) {
+                Collections.swap(groups, 0, i);
+                int g = gfields[0];
+                gfields[0] = gfields[i];
+                gfields[i] = g;
+                streaming = true;
+            }
+        }
+
         //walk the select list, to determine order in which to project output fields
         ArrayList<Integer> outFields = new ArrayList<Integer>();
         ArrayList<Type> outTypes = new ArrayList<Type>();
         for (int i = 0; i < selectList.size(); i++) {
             LogicalSelectListNode si = selectList.elementAt(i);
             if (si.aggOp != null) {
-                outFields.add(groupByField!=null?1:0);
-                TupleDesc td = node.getTupleDesc();
-//                int  id;
-                try {
-//                    id = 
-                    td.fieldNameToIndex(si.fname);
-                } catch (NoSuchElementException e) {
-                    throw new ParsingException("Unknown field " +  si.fname + " in SELECT list");
+                // aggregates follow the group fields in the output of Aggregate
+                int k = -1;
+                for (int j = 0; j < aggregates.size() && k < 0; j++) {
+                    LogicalSelectListNode a = aggregates.elementAt(j);
+                    if (a.aggOp.equalsIgnoreCase(si.aggOp) && a.fname.equals(si.fname))
+                        k = j;
                 }
+                if (k < 0)
+                    throw new ParsingException("Aggregate " + si.aggOp + "(" + si.fname + ") in SELECT list is not computed by the query");
+                outFields.add(groups.size() + k);
                 outTypes.add(Type.INT_TYPE);  //the type of all aggregate functions is INT
 
             } else if (hasAgg) {
-                    if (groupByField == null) {
+                    int k = groups.indexOf(si.fname);
+                    if (k < 0) {
                         throw new ParsingException("Field " + si.fname + " does not appear in GROUP BY list");
                     }
-                    outFields.add(0);
-                    TupleDesc td = node.getTupleDesc();
-                    int  id;
-                    try {
-                        id = td.fieldNameToIndex(groupByField);
-                    } catch (NoSuchElementException e) {
-                        throw new ParsingException("Unknown field " +  groupByField + " in GROUP BY statement");
-                    }
-                    outTypes.add(td.getFieldType(id));
+                    outFields.add(k);
+                    outTypes.add(childTd.getFieldType(gfields[k]));
             } else if (si.fname.equals("null.*")) {
                     TupleDesc td = node.getTupleDesc();
                     for ( i = 0; i < td.numFields(); i++) {
@@ -459,19 +524,38 @@ public class LogicalPlan {
         }
 
         if (hasAgg) {
-            TupleDesc td = node.getTupleDesc();
-            Aggregate aggNode;
+            // all of the aggregates are computed in one pass over the child
+            int[] afields = new int[aggregates.size()];
+            String[] anames = new String[aggregates.size()];
+            Aggregator.Op[] aops = new Aggregator.Op[aggregates.size()];
+            for (int i = 0; i < afields.length; i++) {
+                LogicalSelectListNode a = aggregates.elementAt(i);
+                aops[i] = getAggOp(a.aggOp);
+                if (a.fname.equals("null.*")) {
+                    // COUNT(*) counts tuples, which any one field does
+                    if (aops[i] != Aggregator.Op.COUNT)
+                        throw new ParsingException("Only COUNT may be computed over *");
+                    afields[i] = 0;
+                    anames[i] = "count(*)";
+                    continue;
+                }
+                try {
+                    afields[i] = childTd.fieldNameToIndex(a.fname);
+                } catch (NoSuchElementException e) {
+                    throw new ParsingException("Unknown field " +  a.fname + " in SELECT list");
+                }
+            }
             try {
-                aggNode = new Aggregate(node,
-                                        td.fieldNameToIndex(aggField),
-                                        groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField),
-                                getAggOp(aggOp));
-            } catch (NoSuchElementException e) {
-                throw new simpledb.ParsingException(e);
+                // input already in order of the first group field is
+                // aggregated a value of that field at a time
+                if (streaming)
+                    node = new StreamingAggregate(node, afields, anames, gfields, aops);
+                else
+                    node = new Aggregate(node, afields, anames, gfields, aops,
+                            Aggregate.DEFAULT_MEMORY_GROUPS);
             } catch (IllegalArgumentException e) {
                 throw new simpledb.ParsingException(e);
             }
-            node = aggNode;
         }
 
         if (hasOrderBy) {
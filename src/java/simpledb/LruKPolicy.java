@@ -0,0 +1,128 @@
+package simpledb;
+
+/**
+ * LRU-K replacement (O'Neil et al.). The victim is the page whose K-th most
+ * recent access is furthest in the past; pages seen fewer than K times are
+ * evicted first, least recently used first. A page touched once by a large
+ * sequential scan therefore cannot push out pages that are used repeatedly,
+ * such as B+ tree internal pages.
+ * <p>
+ * The last K access times of every frame are kept in a ring, and frames are
+ * ordered by their eviction priority in an indexed binary heap, so every
+ * operation is O(log numPages).
+ */
+public class LruKPolicy implements EvictionPolicy {
+
+    /** added to the priority of frames with a full history so they sort last */
+    private static final long FULL_HISTORY = 1L << 62;
+
+    private final int k;
+    /** history[frame * k + i]: the access times of frame, newest at histPos[frame] */
+    private final long[] history;
+    private final int[] histPos, histCount;
+
+    /** heap of frames ordered by priority; heapPos[frame] is -1 if absent */
+    private final int[] heap, heapPos;
+    private final long[] priority;
+    private int heapSize;
+
+    private long clock;
+
+    public LruKPolicy(int numPages, int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be positive");
+        this.k = k;
+        history = new long[numPages * k];
+        histPos = new int[numPages];
+        histCount = new int[numPages];
+        heap = new int[numPages];
+        heapPos = new int[numPages];
+        priority = new long[numPages];
+        java.util.Arrays.fill(heapPos, -1);
+    }
+
+    public synchronized void loaded(int frame, PageId pid) {
+        histCount[frame] = 0;
+        histPos[frame] = 0;
+        record(frame);
+        priority[frame] = priorityOf(frame);
+        heap[heapSize] = frame;
+        heapPos[frame] = heapSize++;
+        siftUp(heapPos[frame]);
+    }
+
+    public synchronized void accessed(int frame) {
+        if (heapPos[frame] < 0)
+            return;
+        record(frame);
+        // priorities only grow, so the frame can only move down
+        priority[frame] = priorityOf(frame);
+        siftDown(heapPos[frame]);
+    }
+
+    public synchronized void removed(int frame, boolean evicted) {
+        int pos = heapPos[frame];
+        if (pos < 0)
+            return;
+        heapPos[frame] = -1;
+        int last = heap[--heapSize];
+        if (pos == heapSize)
+            return;
+        heap[pos] = last;
+        heapPos[last] = pos;
+        siftDown(pos);
+        siftUp(heapPos[last]);
+    }
+
+    public synchronized int victim() {
+        return heapSize == 0 ? -1 : heap[0];
+    }
+
+    private void record(int frame) {
+        histPos[frame] = (histPos[frame] + 1) % k;
+        history[frame * k + histPos[frame]] = ++clock;
+        if (histCount[frame] < k)
+            histCount[frame]++;
+    }
+
+    private long priorityOf(int frame) {
+        if (histCount[frame] < k)
+            return history[frame * k + histPos[frame]];
+        // the oldest entry of a full ring is the K-th most recent access
+        int oldest = (histPos[frame] + 1) % k;
+        return FULL_HISTORY + history[frame * k + oldest];
+    }
+
+    private void siftUp(int pos) {
+        int frame = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) / 2;
+            if (priority[heap[parent]] <= priority[frame])
+                break;
+            move(heap[parent], pos);
+            pos = parent;
+        }
+        move(frame, pos);
+    }
+
+    private void siftDown(int pos) {
+        int frame = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && priority[heap[child + 1]] < priority[heap[child]])
+                child++;
+            if (priority[frame] <= priority[heap[child]])
+                break;
+            move(heap[child], pos);
+            pos = child;
+        }
+        move(frame, pos);
+    }
+
+    private void move(int frame, int pos) {
+        heap[pos] = frame;
+        heapPos[frame] = pos;
+    }
+}
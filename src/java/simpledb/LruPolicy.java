@@ -0,0 +1,68 @@
+package simpledb;
+
+/**
+ * Evicts the least recently used page. Frames are kept in a doubly linked
+ * list threaded through two int arrays so that every operation is O(1) and
+ * allocation free.
+ */
+public class LruPolicy implements EvictionPolicy {
+
+    private static final int NIL = -1;
+
+    private final int[] prev, next;
+    /** least recently used frame, and most recently used frame */
+    private int head = NIL, tail = NIL;
+
+    public LruPolicy(int numPages) {
+        prev = new int[numPages];
+        next = new int[numPages];
+        for (int i = 0; i < numPages; i++)
+            prev[i] = next[i] = NIL;
+    }
+
+    public synchronized void loaded(int frame, PageId pid) {
+        append(frame);
+    }
+
+    public synchronized void accessed(int frame) {
+        if (frame == tail || !linked(frame))
+            return;
+        unlink(frame);
+        append(frame);
+    }
+
+    public synchronized void removed(int frame, boolean evicted) {
+        if (linked(frame))
+            unlink(frame);
+    }
+
+    public synchronized int victim() {
+        return head;
+    }
+
+    private boolean linked(int frame) {
+        return frame == head || prev[frame] != NIL;
+    }
+
+    private void append(int frame) {
+        prev[frame] = tail;
+        next[frame] = NIL;
+        if (tail != NIL)
+            next[tail] = frame;
+        else
+            head = frame;
+        tail = frame;
+    }
+
+    private void unlink(int frame) {
+        if (prev[frame] != NIL)
+            next[prev[frame]] = next[frame];
+        else
+            head = next[frame];
+        if (next[frame] != NIL)
+            prev[next[frame]] = prev[frame];
+        else
+            tail = prev[frame];
+        prev[frame] = next[frame] = NIL;
+    }
+}
@@ -0,0 +1,150 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * MappedHeapFile is a HeapFile that reads its pages from a memory mapping of
+ * the backing file rather than copying them into a byte array first. It is
+ * meant for large, read-mostly tables: HeapPages parse their tuples straight
+ * out of the mapped region, and the page's before image is only copied out
+ * of the mapping if the page is modified.
+ * <p>
+ * The file is mapped read-only in fixed size segments, so files larger than
+ * 2GB can be mapped. Writes go through the ordinary HeapFile write path;
+ * the OS keeps the mapping coherent with them, and segments are extended as
+ * the file grows. Pages read from a MappedHeapFile are cached and evicted by
+ * the BufferPool like any other page.
+ *
+ * @see HeapFile
+ * @see HeapPage#HeapPage(HeapPageId, ByteBuffer)
+ */
+public class MappedHeapFile extends HeapFile {
+
+    /** Approximate size of each mapped segment, in bytes */
+    private static final int SEGMENT_BYTES = 1 << 26;
+
+    /** An immutable snapshot of the file's mapped segments. */
+    private static class Mapping {
+        final int pageSize;
+        final int pagesPerSegment;
+        final int numPages;
+        final MappedByteBuffer[] segments;
+
+        Mapping(int pageSize, int numPages, MappedByteBuffer[] segments) {
+            this.pageSize = pageSize;
+            this.pagesPerSegment = pagesPerSegment(pageSize);
+            this.numPages = numPages;
+            this.segments = segments;
+        }
+    }
+
+    private volatile Mapping mapping;
+
+    private static int pagesPerSegment(int pageSize) {
+        return Math.max(1, SEGMENT_BYTES / pageSize);
+    }
+
+    /**
+     * Constructs a memory mapped heap file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     */
+    public MappedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    /** Drops the mapping too; the file is mapped again on the next read. */
+    public void close() throws IOException {
+        super.close();
+        mapping = null;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        int pgNo = pid.getPageNumber();
+        ByteBuffer buf;
+        try {
+            buf = mappedPage(pgNo);
+        } catch (IOException e) {
+            throw new NoSuchElementException();
+        }
+        // pages that are not (yet) wholly in the file are read as usual
+        if (buf == null)
+            return super.readPage(pid);
+        try {
+            HeapPage page = createPage(new HeapPageId(pid.getTableId(), pgNo), buf);
+            page.markClean();
+            return page;
+        } catch (IOException e) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * @return the number of bytes of the backing file currently mapped
+     */
+    public long mappedBytes() {
+        Mapping m = mapping;
+        return m == null ? 0 : (long) m.numPages * m.pageSize;
+    }
+
+    /**
+     * Returns a buffer positioned at the start of the specified page in the
+     * mapping, or null if the page lies past the end of the file.
+     */
+    private ByteBuffer mappedPage(int pgNo) throws IOException {
+        int pgsz = BufferPool.getPageSize();
+        Mapping m = mapping;
+        if (m == null || m.pageSize != pgsz || pgNo >= m.numPages) {
+            m = remap(pgsz);
+            if (pgNo >= m.numPages)
+                return null;
+        }
+        ByteBuffer buf = m.segments[pgNo / m.pagesPerSegment].duplicate();
+        buf.position((pgNo % m.pagesPerSegment) * pgsz);
+        return buf;
+    }
+
+    /**
+     * Extend the mapping to cover every whole page in the file. Segments that
+     * are already completely mapped are reused.
+     */
+    private synchronized Mapping remap(int pgsz) throws IOException {
+        Mapping m = mapping;
+        int numPages = (int) (getFile().length() / pgsz);
+        if (m != null && m.pageSize == pgsz && numPages <= m.numPages)
+            return m;
+
+        int pps = pagesPerSegment(pgsz);
+        MappedByteBuffer[] segments = new MappedByteBuffer[(numPages + pps - 1) / pps];
+        int reuse = 0;
+        if (m != null && m.pageSize == pgsz)
+            reuse = m.numPages / pps;  // only segments that were mapped in full
+        FileChannel ch = null;
+        try {
+            for (int i = 0; i < segments.length; i++) {
+                if (i < reuse) {
+                    segments[i] = m.segments[i];
+                    continue;
+                }
+                if (ch == null)
+                    ch = FileChannel.open(getFile().toPath(), StandardOpenOption.READ);
+                int pages = Math.min(pps, numPages - i * pps);
+                segments[i] = ch.map(FileChannel.MapMode.READ_ONLY,
+                        (long) i * pps * pgsz, (long) pages * pgsz);
+            }
+        } finally {
+            if (ch != null)
+                ch.close();
+        }
+        mapping = new Mapping(pgsz, numPages, segments);
+        return mapping;
+    }
+}
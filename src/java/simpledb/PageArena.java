@@ -0,0 +1,61 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PageArena is an off-heap block of memory carved into fixed size page
+ * frames, used by a BufferPool in off-heap mode. Frames are slices of a
+ * few large direct ByteBuffers (slabs), so a pool of any size costs the
+ * Java heap only a handful of objects, and the garbage collector never
+ * scans or copies the cached pages.
+ *
+ * @see BufferPool#BufferPool(int, EvictionPolicy, boolean)
+ */
+public class PageArena {
+
+    /** Approximate size of each slab, in bytes */
+    private static final int SLAB_BYTES = 1 << 26;
+
+    private final int pageSize;
+    private final int numFrames;
+    private final int framesPerSlab;
+    private final ByteBuffer[] slabs;
+
+    /**
+     * Allocate an arena of numFrames frames of pageSize bytes each.
+     */
+    public PageArena(int numFrames, int pageSize) {
+        this.pageSize = pageSize;
+        this.numFrames = numFrames;
+        this.framesPerSlab = Math.max(1, SLAB_BYTES / pageSize);
+        slabs = new ByteBuffer[(numFrames + framesPerSlab - 1) / framesPerSlab];
+        for (int i = 0; i < slabs.length; i++) {
+            int frames = Math.min(framesPerSlab, numFrames - i * framesPerSlab);
+            slabs[i] = ByteBuffer.allocateDirect(frames * pageSize);
+        }
+    }
+
+    /**
+     * @return a buffer over the specified frame, with position 0 and limit
+     *         one page. Each call returns a new buffer on the same memory.
+     */
+    public ByteBuffer frame(int frame) {
+        if (frame < 0 || frame >= numFrames)
+            throw new IndexOutOfBoundsException("no frame " + frame);
+        ByteBuffer buf = slabs[frame / framesPerSlab].duplicate();
+        int off = (frame % framesPerSlab) * pageSize;
+        buf.limit(off + pageSize);
+        buf.position(off);
+        return buf.slice();
+    }
+
+    /** @return the size of each frame, in bytes */
+    public int pageSize() {
+        return pageSize;
+    }
+
+    /** @return the total size of the arena, in bytes */
+    public long capacity() {
+        return (long) numFrames * pageSize;
+    }
+}
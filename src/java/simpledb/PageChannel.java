@@ -0,0 +1,205 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * PageChannel is the page I/O path shared by the DbFile implementations. It
+ * keeps a single FileChannel open on the backing file for the life of the
+ * DbFile and transfers pages with positional reads and writes, so a page
+ * access costs one system call rather than an open/seek/close, and
+ * concurrent readers never contend on a shared file pointer.
+ * <p>
+ * Transfers go through direct buffers drawn from a small pool shared by all
+ * channels, which avoids the temporary direct buffer the JDK would otherwise
+ * allocate for each heap array read or written.
+ */
+public class PageChannel {
+
+    /** Maximum number of idle direct buffers kept in the pool */
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    private static final ConcurrentLinkedQueue<ByteBuffer> buffers =
+            new ConcurrentLinkedQueue<ByteBuffer>();
+
+    private final File file;
+    private volatile FileChannel channel;
+    /** channel, once it has been opened for writing */
+    private volatile FileChannel writable;
+
+    /**
+     * Create a channel on the specified file. The file is opened lazily on
+     * first access, read-only until the first write; only a write creates
+     * a file that does not exist.
+     */
+    public PageChannel(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the open channel, reopened for writing if write is set and it
+     *         was opened read-only, or null if the file does not exist and
+     *         write is not set
+     */
+    private FileChannel channel(boolean write) throws IOException {
+        FileChannel ch = channel;
+        if (ch != null && (!write || ch == writable))
+            return ch;
+        synchronized (this) {
+            ch = channel;
+            if (ch != null && (!write || ch == writable))
+                return ch;
+            if (!write && !file.exists())
+                return null;
+            FileChannel old = ch;
+            if (write) {
+                ch = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+                writable = ch;
+            } else {
+                ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+            channel = ch;
+            // readers still using the read-only channel see it closed, and
+            // retry on the new one
+            if (old != null)
+                old.close();
+            return ch;
+        }
+    }
+
+    /** Forget a channel that has been closed underneath us. */
+    private synchronized void discard(FileChannel closed) {
+        if (channel == closed)
+            channel = null;
+        if (writable == closed)
+            writable = null;
+    }
+
+    /**
+     * Read up to dst.length bytes starting at the specified file offset.
+     * Short reads are retried until dst is full or the end of the file is
+     * reached; bytes of dst past the end of the file are left untouched. A
+     * file that does not exist reads as empty.
+     *
+     * @return the number of bytes read, or -1 if position is at or past the
+     *         end of the file
+     */
+    public int read(long position, byte[] dst) throws IOException {
+        ByteBuffer buf = acquire(dst.length);
+        try {
+            int total = transfer(buf, position, false);
+            buf.flip();
+            buf.get(dst, 0, total);
+            return total == 0 && dst.length > 0 ? -1 : total;
+        } finally {
+            release(buf);
+        }
+    }
+
+    /**
+     * Read dst.remaining() bytes starting at the specified file offset
+     * directly into dst, which is typically a direct buffer. The part of dst
+     * that lies past the end of the file is zero filled. The position of dst
+     * is left unchanged.
+     *
+     * @return the number of bytes read from the file
+     */
+    public int read(long position, ByteBuffer dst) throws IOException {
+        ByteBuffer buf = dst.duplicate();
+        int total = transfer(buf, position, false);
+        while (buf.hasRemaining())
+            buf.put((byte) 0);
+        return total;
+    }
+
+    /**
+     * Write all of src at the specified file offset, extending the file if
+     * necessary.
+     */
+    public void write(long position, byte[] src) throws IOException {
+        ByteBuffer buf = acquire(src.length);
+        try {
+            buf.put(src).flip();
+            transfer(buf, position, true);
+        } finally {
+            release(buf);
+        }
+    }
+
+    /**
+     * Write the remaining bytes of src at the specified file offset without
+     * staging them in an intermediate buffer. The position of src is left
+     * unchanged.
+     */
+    public void write(long position, ByteBuffer src) throws IOException {
+        transfer(src.duplicate(), position, true);
+    }
+
+    /**
+     * Move the remaining bytes of buf to or from the file, starting at
+     * position. An interrupt delivered to any thread blocked on a FileChannel
+     * closes it for every user, so a transfer that fails because another
+     * thread was interrupted reopens the channel and starts over.
+     *
+     * @return the number of bytes transferred
+     */
+    private int transfer(ByteBuffer buf, long position, boolean write) throws IOException {
+        int start = buf.position();
+        FileChannel ch = channel(write);
+        while (ch != null) {
+            try {
+                while (buf.hasRemaining()) {
+                    long pos = position + buf.position() - start;
+                    int n = write ? ch.write(buf, pos) : ch.read(buf, pos);
+                    if (n < 0)
+                        break;
+                }
+                return buf.position() - start;
+            } catch (ClosedByInterruptException e) {
+                discard(ch);
+                throw e;
+            } catch (ClosedChannelException e) {
+                buf.position(start);
+                discard(ch);
+                ch = channel(write);
+            }
+        }
+        return 0;
+    }
+
+    /** Force any written pages out to the storage device. */
+    public void force() throws IOException {
+        FileChannel ch = channel;
+        if (ch != null)
+            ch.force(false);
+    }
+
+    /** Close the underlying channel. It will be reopened on next access. */
+    public synchronized void close() throws IOException {
+        FileChannel ch = channel;
+        channel = null;
+        writable = null;
+        if (ch != null)
+            ch.close();
+    }
+
+    private static ByteBuffer acquire(int size) {
+        ByteBuffer buf = buffers.poll();
+        if (buf == null || buf.capacity() < size)
+            buf = ByteBuffer.allocateDirect(Math.max(size, BufferPool.getPageSize()));
+        buf.clear().limit(size);
+        return buf;
+    }
+
+    private static void release(ByteBuffer buf) {
+        // page size only changes in tests; let buffers of a stale size go
+        if (buf.capacity() == BufferPool.getPageSize() && buffers.size() < MAX_POOLED_BUFFERS)
+            buffers.offer(buf);
+    }
+}
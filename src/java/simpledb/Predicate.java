@@ -100,7 +100,41 @@ public class Predicate implements Serializable {
      * @return true if the comparison is true, false otherwise.
      */
     public boolean filter(Tuple t) {
-        return t.getField(field).compare(op, operand);
+        return t.matches(this);
+    }
+
+    /**
+     * Tells whether any value between min and max, inclusive, could satisfy
+     * this predicate, so a page or other group of values summarized by that
+     * range can be skipped when it cannot. Only integer operands are
+     * compared; for any other operand the answer is always true.
+     *
+     * @param min
+     *            the least value of the group
+     * @param max
+     *            the greatest value of the group
+     * @return false if no value in the range satisfies this predicate
+     */
+    public boolean mayMatch(int min, int max) {
+        if (!(operand instanceof IntField))
+            return true;
+        int v = ((IntField) operand).getValue();
+        switch (op) {
+        case EQUALS:
+            return min <= v && v <= max;
+        case NOT_EQUALS:
+            return min != v || max != v;
+        case GREATER_THAN:
+            return max > v;
+        case GREATER_THAN_OR_EQ:
+            return max >= v;
+        case LESS_THAN:
+            return min < v;
+        case LESS_THAN_OR_EQ:
+            return min <= v;
+        default:
+            return true;
+        }
     }
 
     /**
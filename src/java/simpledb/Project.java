@@ -5,12 +5,15 @@ import java.util.*;
 /**
  * Project is an operator that implements a relational projection.
  */
-public class Project extends Operator {
+public class Project extends Operator implements BatchOpIterator {
 
     private static final long serialVersionUID = 1L;
     private OpIterator child;
     private TupleDesc td;
     private ArrayList<Integer> outFieldIds;
+    private int[] columns;
+    /** child, read a batch at a time */
+    private transient BatchOpIterator batches;
 
     /**
      * Constructor accepts a child operator to read tuples to apply projection
@@ -39,6 +42,9 @@ public class Project extends Operator {
             fieldAr[i] = childtd.getFieldName(fieldList.get(i));
         }
         td = new TupleDesc(types, fieldAr);
+        columns = new int[fieldList.size()];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = fieldList.get(i);
     }
 
     public TupleDesc getTupleDesc() {
@@ -48,6 +54,7 @@ public class Project extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
+        batches = BatchOpIterator.of(child);
         super.open();
     }
 
@@ -73,13 +80,22 @@ public class Project extends Operator {
             Tuple newTuple = new Tuple(td);
             newTuple.setRecordId(t.getRecordId());
             for (int i = 0; i < td.numFields(); i++) {
-                newTuple.setField(i, t.getField(outFieldIds.get(i)));
+                newTuple.setField(i, t.getField(columns[i]));
             }
             return newTuple;
         }
         return null;
     }
 
+    /**
+     * Returns the next batch of the child projected to the output fields,
+     * which shares their values rather than copying them.
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        TupleBatch b = batches.nextBatch();
+        return b == null ? null : b.project(td, columns);
+    }
+
     @Override
     public OpIterator[] getChildren() {
         return new OpIterator[] { this.child };
@@ -0,0 +1,94 @@
+package simpledb;
+
+import java.util.function.IntPredicate;
+
+/**
+ * ReadAhead issues background reads for the pages a sequential scan of a
+ * HeapFile is about to ask for, so that by the time the scan gets to a page
+ * it is already in the buffer pool. Read-ahead starts once the scan has
+ * read {@link #SEQUENTIAL_RUN} consecutive pages, and the number of pages
+ * kept in flight adapts to how fast the scan consumes them: it doubles when
+ * the scan catches up with a read that has not finished, and halves when a
+ * prefetched page was evicted before the scan got to it.
+ *
+ * @see BufferPool#prefetch
+ */
+public class ReadAhead {
+
+    /** consecutive pages read before the access pattern counts as sequential */
+    public static final int SEQUENTIAL_RUN = 2;
+
+    static final int MIN_WINDOW = 2;
+
+    private final int tableId;
+    private final int numPages;
+    private final BufferRing ring;
+    private final int maxWindow;
+    private final IntPredicate wanted;
+
+    private int window;
+    private int lastPage = -1;
+    private int run;
+    /** every page below this one has been prefetched or read */
+    private int issuedUpTo;
+
+    /**
+     * @param tableId the table being scanned
+     * @param numPages the number of pages of the table
+     * @param ring the ring the scan reads through, or null
+     */
+    public ReadAhead(int tableId, int numPages, BufferRing ring) {
+        this(tableId, numPages, ring, null);
+    }
+
+    /**
+     * @param tableId the table being scanned
+     * @param numPages the number of pages of the table
+     * @param ring the ring the scan reads through, or null
+     * @param wanted the pages the scan will read, or null for all of them;
+     *        the others are passed to advance but never prefetched
+     */
+    public ReadAhead(int tableId, int numPages, BufferRing ring, IntPredicate wanted) {
+        this.wanted = wanted;
+        this.tableId = tableId;
+        this.numPages = numPages;
+        this.ring = ring;
+        this.maxWindow = Database.getBufferPool().maxReadAhead(ring);
+        this.window = Math.min(MIN_WINDOW * 2, maxWindow);
+    }
+
+    /** @return the number of pages currently read ahead of the scan */
+    public int window() {
+        return window;
+    }
+
+    /**
+     * The scan is about to read page pgNo; prefetch the pages after it.
+     */
+    public void advance(int pgNo) {
+        if (pgNo == lastPage + 1) {
+            run++;
+        } else {
+            run = 1;
+            issuedUpTo = pgNo + 1;
+        }
+        lastPage = pgNo;
+        if (maxWindow < MIN_WINDOW || run < SEQUENTIAL_RUN)
+            return;
+
+        BufferPool bp = Database.getBufferPool();
+        if (pgNo < issuedUpTo && (wanted == null || wanted.test(pgNo))) {
+            PageId pid = new HeapPageId(tableId, pgNo);
+            if (bp.isPrefetching(pid))
+                window = Math.min(window * 2, maxWindow);
+            else if (!bp.isResident(pid))
+                window = Math.max(window / 2, MIN_WINDOW);
+        }
+
+        int end = Math.min(numPages, pgNo + 1 + window);
+        for (int p = Math.max(issuedUpTo, pgNo + 1); p < end; p++)
+            if (wanted == null || wanted.test(p))
+                bp.prefetch(new HeapPageId(tableId, p), ring);
+        issuedUpTo = Math.max(issuedUpTo, end);
+    }
+}
@@ -7,7 +7,7 @@ import java.util.*;
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
  */
-public class SeqScan implements OpIterator {
+public class SeqScan implements BatchOpIterator {
 
     private static final long serialVersionUID = 1L;
     
@@ -15,6 +15,9 @@ public class SeqScan implements OpIterator {
     private int tableid;
     private String tableAlias;
     private DbFileIterator itr;
+    private transient TupleBatch batch;
+    /** predicates pushed down into this scan */
+    private final ArrayList<Predicate> predicates = new ArrayList<Predicate>();
     /**
      * Creates a sequential scan over the specified table as a part of the
      * specified transaction.
@@ -56,6 +59,20 @@ public class SeqScan implements OpIterator {
         return tableAlias;
     }
 
+    /**
+     * @return the id of the table this operator scans
+     */
+    public int getTableId() {
+        return tableid;
+    }
+
+    /**
+     * @return the transaction this scan reads the table as a part of
+     */
+    public TransactionId getTransactionId() {
+        return tid;
+    }
+
     /**
      * Reset the tableid, and tableAlias of this operator.
      * @param tableid
@@ -83,8 +100,39 @@ public class SeqScan implements OpIterator {
         this(tid, tableId, Database.getCatalog().getTableName(tableId));
     }
 
+    /**
+     * Only return tuples that satisfy p. The DbFile evaluates p as it reads
+     * the table, which for heap files avoids decoding the tuples p rejects.
+     * Must be called before the scan is opened.
+     *
+     * @param p
+     *            a predicate over the fields of this scan's tuples
+     */
+    public void addPredicate(Predicate p) {
+        predicates.add(p);
+    }
+
+    /**
+     * @return the predicates pushed down into this scan
+     */
+    public List<Predicate> getPredicates() {
+        return predicates;
+    }
+
+    /**
+     * @return the number of pages this scan has skipped since it was
+     *         opened, because the pushed predicates ruled out their tuples
+     */
+    public long getPagesSkipped() {
+        return itr == null ? 0 : itr.pagesSkipped();
+    }
+
     public void open() throws DbException, TransactionAbortedException {
-    	itr = Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
+    	DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+    	if (predicates.isEmpty())
+    		itr = file.iterator(tid);
+    	else
+    		itr = file.iterator(tid, predicates.toArray(new Predicate[0]));
     	itr.open();
     }
 
@@ -120,6 +168,18 @@ public class SeqScan implements OpIterator {
         return itr.next();
     }
 
+    /**
+     * Returns the next tuples of the table. Heap files decode them straight
+     * from their pages into the batch.
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (batch == null)
+            batch = new TupleBatch(getTupleDesc());
+        batch.clear();
+        itr.nextBatch(batch);
+        return batch.size() == 0 ? null : batch;
+    }
+
     public void close() {
     	itr.close();
     }
@@ -0,0 +1,73 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * SlottedHeapFile is a HeapFile whose pages are SlottedHeapPages, so each
+ * tuple takes only the bytes its fields need. It is meant for tables with
+ * VARCHAR fields, which a HeapFile would store padded to their maximum
+ * length. Its free space map counts free bytes rather than empty slots, so
+ * an insert goes to the first page with room for that particular tuple.
+ *
+ * @see SlottedHeapPage
+ */
+public class SlottedHeapFile extends HeapFile {
+
+    /**
+     * Constructs a slotted heap file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     */
+    public SlottedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    @Override
+    HeapPage createPage(HeapPageId id, ByteBuffer data) throws IOException {
+        return new SlottedHeapPage(id, getTupleDesc(), data);
+    }
+
+    /**
+     * @return the free bytes of the specified page as it is on disk; the
+     *         whole page is read, since they are not kept in its header
+     */
+    @Override
+    int readFreeSpace(int pgNo) throws IOException {
+        HeapPageId id = new HeapPageId(getId(), pgNo);
+        return ((HeapPage) readPage(id)).freeSpace();
+    }
+
+    /** @return the bytes t takes on a page */
+    @Override
+    int spaceNeeded(Tuple t) {
+        return getTupleDesc().getSize(t);
+    }
+
+    /**
+     * Replaces the tuple stored at t's RecordId with t. If t no longer fits
+     * on the tuple's page, it is deleted there and inserted elsewhere, and
+     * its RecordId changes.
+     */
+    @Override
+    public ArrayList<Page> updateTuple(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        SlottedHeapPage pg = (SlottedHeapPage) pageOf(tid, t);
+        try {
+            if (pg.canUpdate(t)) {
+                pg.updateTuple(t);
+                freeSpace().set(pg.getId().getPageNumber(), pg.freeSpace());
+                widenZones(pg, t);
+                return new ArrayList<Page>() {{add(pg);}};
+            }
+            ArrayList<Page> pages = deleteTuple(tid, t);
+            pages.addAll(insertTuple(tid, t));
+            return pages;
+        } catch (IOException e) {
+            throw new DbException("cannot update tuple: " + e);
+        }
+    }
+}
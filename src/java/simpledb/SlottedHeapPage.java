@@ -0,0 +1,313 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * SlottedHeapPage is a HeapPage whose tuples are stored in as many bytes as
+ * they take, rather than in fixed size slots, so tables with VARCHAR fields
+ * only pay for the characters they hold. The page is laid out as:
+ * <ul>
+ * <li> a 4 byte header: the number of entries in the slot directory, and
+ *      the offset of the lowest record on the page (0 if there is none);
+ * <li> the slot directory, an entry of 4 bytes per slot: the offset of the
+ *      slot's record, 0 if the slot is empty, and the record's length;
+ * <li> free space;
+ * <li> the records, packed from the end of the page towards its start.
+ * </ul>
+ * All values are unsigned shorts, so pages must be smaller than 64KB. A
+ * page of all zeroes is an empty page. A tuple keeps its slot, and thus its
+ * RecordId, for as long as it is on the page; records are moved to collect
+ * the free space left by deleted and shrunken tuples when an insert or
+ * update needs it.
+ *
+ * @see SlottedHeapFile
+ */
+public class SlottedHeapPage extends HeapPage {
+
+    /** The size of the page header, in bytes */
+    static final int HEADER_SIZE = 4;
+    /** The size of a slot directory entry, in bytes */
+    static final int ENTRY_SIZE = 4;
+
+    /**
+     * Create a SlottedHeapPage from a set of bytes of data read from disk,
+     * in the format described above. The bytes are copied.
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        super(id, data);
+    }
+
+    /**
+     * Create a SlottedHeapPage that interprets its contents in place in a
+     * buffer, as for {@link HeapPage#HeapPage(HeapPageId, ByteBuffer)}.
+     */
+    public SlottedHeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        super(id, data);
+    }
+
+    SlottedHeapPage(HeapPageId id, TupleDesc td, ByteBuffer data) throws IOException {
+        super(id, td, data);
+    }
+
+    @Override
+    HeapPage newPage(ByteBuffer data) throws IOException {
+        return new SlottedHeapPage(pid, td, data);
+    }
+
+    private static int getShort(ByteBuffer buf, int off) {
+        return buf.getShort(off) & 0xffff;
+    }
+
+    /** @return the offset of the lowest record, or the page size if none */
+    private static int recordStart(ByteBuffer buf) {
+        int start = getShort(buf, 2);
+        return start == 0 ? BufferPool.getPageSize() : start;
+    }
+
+    private static int entryOffset(int slot) {
+        return HEADER_SIZE + slot * ENTRY_SIZE;
+    }
+
+    @Override
+    int slotCount() {
+        return getShort(data, 0);
+    }
+
+    @Override
+    int slotOffset(int slotId) {
+        return getShort(data, entryOffset(slotId));
+    }
+
+    /** @return the length of the record in the specified slot */
+    private int slotLength(ByteBuffer buf, int slotId) {
+        return getShort(buf, entryOffset(slotId) + 2);
+    }
+
+    @Override
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < slotCount() && slotOffset(i) != 0;
+    }
+
+    /** @return the lowest numbered empty slot, or slotCount() if none */
+    private int firstEmptySlot() {
+        int n = slotCount();
+        for (int i = 0; i < n; i++)
+            if (slotOffset(i) == 0)
+                return i;
+        return n;
+    }
+
+    /**
+     * @return the number of bytes on the page not taken by the header, the
+     *         slot directory, or a record
+     */
+    private int freeBytes() {
+        ByteBuffer buf = data;
+        int n = getShort(buf, 0);
+        int free = BufferPool.getPageSize() - entryOffset(n);
+        for (int i = 0; i < n; i++)
+            if (getShort(buf, entryOffset(i)) != 0)
+                free -= slotLength(buf, i);
+        return free;
+    }
+
+    /**
+     * @return the number of bytes available for the record of a new tuple,
+     *         after making room for its slot directory entry if needed
+     */
+    @Override
+    int freeSpace() {
+        int free = freeBytes();
+        if (firstEmptySlot() == slotCount())
+            free -= ENTRY_SIZE;
+        return Math.max(0, free);
+    }
+
+    /**
+     * Returns the number of tuples of the largest size the TupleDesc allows
+     * that could still be inserted into this page.
+     */
+    @Override
+    public int getNumEmptySlots() {
+        int max = td.getSize();
+        int free = freeBytes();
+        int reusable = 0;
+        for (int i = 0, n = slotCount(); i < n; i++)
+            if (slotOffset(i) == 0)
+                reusable++;
+        int count = Math.min(reusable, free / max);
+        return count + (free - count * max) / (max + ENTRY_SIZE);
+    }
+
+    /** @return true if a field of type from can be stored as type to */
+    private static boolean compatible(Type from, Type to) {
+        return from.valueType() == to.valueType();
+    }
+
+    private void checkTupleDesc(Tuple t) throws DbException {
+        TupleDesc other = t.getTupleDesc();
+        if (other.numFields() != td.numFields())
+            throw new DbException("mismatch descriptor");
+        for (int i = 0; i < td.numFields(); i++)
+            if (!compatible(other.getFieldType(i), td.getFieldType(i)))
+                throw new DbException("mismatch descriptor");
+    }
+
+    /**
+     * Make the free space on the page contiguous, by moving the records to
+     * the end of the page. Must be called after prepareWrite.
+     */
+    private void compact() {
+        ByteBuffer buf = data;
+        int n = getShort(buf, 0);
+        byte[] copy = new byte[BufferPool.getPageSize()];
+        ByteBuffer src = buf.duplicate();
+        src.clear();
+        src.get(copy);
+        int end = BufferPool.getPageSize();
+        for (int i = 0; i < n; i++) {
+            int off = getShort(buf, entryOffset(i));
+            if (off == 0)
+                continue;
+            int len = slotLength(buf, i);
+            end -= len;
+            ByteBuffer dst = buf.duplicate();
+            dst.position(end);
+            dst.put(copy, off, len);
+            buf.putShort(entryOffset(i), (short) end);
+        }
+        buf.putShort(2, (short) (end == BufferPool.getPageSize() ? 0 : end));
+        touch(0, BufferPool.getPageSize());
+    }
+
+    /**
+     * Write t as the record of the specified slot, in the free space below
+     * the lowest record, compacting the page first if that space is too
+     * small. The caller has checked that the page has room for it, and
+     * called prepareWrite.
+     */
+    private void writeRecord(int slot, Tuple t, int len) {
+        ByteBuffer buf = data;
+        int n = getShort(buf, 0);
+        int dirEnd = entryOffset(Math.max(n, slot + 1));
+        if (recordStart(buf) - dirEnd < len) {
+            compact();
+            buf = data;
+        }
+        int off = recordStart(buf) - len;
+        ByteBuffer dst = buf.duplicate();
+        dst.position(off);
+        for (int j = 0; j < td.numFields(); j++)
+            td.getFieldType(j).serialize(t.getField(j), dst);
+        buf.putShort(entryOffset(slot), (short) off);
+        buf.putShort(entryOffset(slot) + 2, (short) len);
+        if (slot >= n)
+            buf.putShort(0, (short) (slot + 1));
+        buf.putShort(2, (short) off);
+        touch(0, HEADER_SIZE);
+        touch(entryOffset(slot), entryOffset(slot) + ENTRY_SIZE);
+        touch(off, off + len);
+    }
+
+    /**
+     * Adds the specified tuple to the page, in the lowest numbered empty
+     * slot; the tuple is updated to reflect that it is now stored on this
+     * page.
+     * @throws DbException if the page does not have room for the tuple or
+     *         tupledesc is mismatch.
+     */
+    @Override
+    public void insertTuple(Tuple t) throws DbException {
+        checkTupleDesc(t);
+        int len = td.getSize(t);
+        if (freeSpace() < len)
+            throw new DbException("no room for tuple");
+        int slot = firstEmptySlot();
+        prepareWrite();
+        writeRecord(slot, t, len);
+        t.setRecordId(new RecordId(getId(), slot));
+    }
+
+    /**
+     * Delete the specified tuple from the page, leaving its slot empty.
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     */
+    @Override
+    public void deleteTuple(Tuple t) throws DbException {
+        int slot = checkSlot(t);
+        prepareWrite();
+        ByteBuffer buf = data;
+        int off = slotOffset(slot);
+        // the free space below the records grows if this was the lowest
+        if (off == recordStart(buf))
+            buf.putShort(2, (short) (off + slotLength(buf, slot)));
+        buf.putInt(entryOffset(slot), 0);
+        // empty entries at the end of the directory are given back
+        int n = getShort(buf, 0);
+        while (n > 0 && getShort(buf, entryOffset(n - 1)) == 0)
+            n--;
+        buf.putShort(0, (short) n);
+        touch(0, HEADER_SIZE);
+        touch(entryOffset(slot), entryOffset(slot) + ENTRY_SIZE);
+    }
+
+    /**
+     * @return true if t can replace the tuple at its RecordId without
+     *         leaving the page
+     */
+    boolean canUpdate(Tuple t) throws DbException {
+        int slot = checkSlot(t);
+        return td.getSize(t) <= freeBytes() + slotLength(data, slot);
+    }
+
+    /**
+     * Replace the tuple stored in the slot named by t's RecordId with t. The
+     * record is rewritten in place if t is no longer than it.
+     * @throws DbException if this tuple is not on this page, its slot is
+     *         empty, tupledesc is mismatch, or the page does not have room
+     *         for the new contents.
+     */
+    @Override
+    public void updateTuple(Tuple t) throws DbException {
+        checkTupleDesc(t);
+        if (!canUpdate(t))
+            throw new DbException("no room for tuple");
+        int slot = t.getRecordId().getTupleNumber();
+        int len = td.getSize(t);
+        prepareWrite();
+        ByteBuffer buf = data;
+        int off = slotOffset(slot);
+        if (len <= slotLength(buf, slot)) {
+            ByteBuffer dst = buf.duplicate();
+            dst.position(off);
+            for (int j = 0; j < td.numFields(); j++)
+                td.getFieldType(j).serialize(t.getField(j), dst);
+            buf.putShort(entryOffset(slot) + 2, (short) len);
+            touch(entryOffset(slot), entryOffset(slot) + ENTRY_SIZE);
+            touch(off, off + len);
+            return;
+        }
+        // free the old record, then write the new one as for an insert
+        if (off == recordStart(buf))
+            buf.putShort(2, (short) (off + slotLength(buf, slot)));
+        buf.putInt(entryOffset(slot), 0);
+        writeRecord(slot, t, len);
+    }
+
+    /**
+     * @return the slot of t on this page
+     * @throws DbException if t is not on this page, or its slot is empty
+     */
+    private int checkSlot(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()))
+            throw new DbException("the tuple is not on this page");
+        int slot = rid.getTupleNumber();
+        if (!isSlotUsed(slot))
+            throw new DbException("already empty");
+        return slot;
+    }
+}
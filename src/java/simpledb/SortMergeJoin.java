@@ -0,0 +1,278 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * SortMergeJoin joins two inputs on an equality or range comparison of a
+ * field of each, by sorting both on their join fields and merging them.
+ * <p>
+ * An input already sorted on its join field (see {@link #isSortedOn}), such
+ * as a BTreeScan of a table keyed on it, is read as it comes; any other
+ * input is read into memory and sorted when the join is opened, as OrderBy
+ * does. For EQUALS, the right input is streamed too, holding only the run
+ * of right tuples with the current key. For the range comparisons, the
+ * tuples matching each left tuple are a prefix or suffix of the sorted
+ * right input, whose boundary only moves forward as the left key grows, so
+ * the right input is held in memory and never compared against more than
+ * once per left tuple.
+ * <p>
+ * Like Join, each output tuple is a left tuple followed by a right tuple.
+ * They come out in the order of the left join field.
+ */
+public class SortMergeJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate pred;
+    private OpIterator child1, child2;
+    private final TupleDesc comboTD;
+
+    /** the inputs, sorted, if they are not read as they come; or null */
+    private transient ArrayList<Tuple> leftTuples, rightTuples;
+    private transient int leftPos, rightPos;
+    /** the current left tuple */
+    private transient Tuple t1;
+    /** for EQUALS, the run of right tuples with the latest matched key */
+    private transient ArrayList<Tuple> run;
+    private transient int runPos;
+    /** for EQUALS, the first right tuple after run, or null at the end */
+    private transient Tuple t2;
+    /** for range comparisons, the right tuples matching t1 are [lo, hi) */
+    private transient int lo, hi, bound;
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join
+     * them on, which must be EQUALS or one of the range comparisons.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left relation to join
+     * @param child2
+     *            Iterator for the right relation to join
+     */
+    public SortMergeJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        switch (p.getOperator()) {
+        case EQUALS:
+        case LESS_THAN:
+        case LESS_THAN_OR_EQ:
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQ:
+            break;
+        default:
+            throw new IllegalArgumentException(
+                    "sort-merge joins need an equality or range predicate");
+        }
+        this.pred = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    /**
+     * @return true if the tuples of it are known to come out in ascending
+     *         order of the specified field
+     */
+    public static boolean isSortedOn(OpIterator it, int field) {
+        if (it instanceof OrderBy)
+            return ((OrderBy) it).isASC() && ((OrderBy) it).getOrderByField() == field;
+        if (it instanceof BTreeScan)
+            return ((BTreeScan) it).getKeyField() == field;
+        if (it instanceof SeqScan) {
+            // a B+ tree is scanned leaf by leaf, in key order
+            DbFile f = Database.getCatalog().getDatabaseFile(((SeqScan) it).getTableId());
+            return f instanceof BTreeFile && ((BTreeFile) f).keyField() == field;
+        }
+        if (it instanceof Filter)
+            return isSortedOn(((Filter) it).getChildren()[0], field);
+        if (it instanceof SortMergeJoin) {
+            SortMergeJoin j = (SortMergeJoin) it;
+            int f1 = j.pred.getField1();
+            int f2 = j.child1.getTupleDesc().numFields() + j.pred.getField2();
+            return field == f1 || (j.pred.getOperator() == Predicate.Op.EQUALS && field == f2);
+        }
+        return false;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(pred.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return child2.getTupleDesc().getFieldName(pred.getField2());
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        child2.open();
+        super.open();
+        boolean equals = pred.getOperator() == Predicate.Op.EQUALS;
+        leftTuples = isSortedOn(child1, pred.getField1()) ? null
+                : sorted(child1, pred.getField1());
+        rightTuples = equals && isSortedOn(child2, pred.getField2()) ? null
+                : sorted(child2, pred.getField2());
+        run = new ArrayList<Tuple>();
+        start();
+    }
+
+    /** @return the tuples of child, sorted on field if they are not already */
+    private static ArrayList<Tuple> sorted(OpIterator child, int field)
+            throws DbException, TransactionAbortedException {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        while (child.hasNext())
+            tuples.add(child.next());
+        if (!isSortedOn(child, field))
+            Collections.sort(tuples, new TupleComparator(field, true));
+        return tuples;
+    }
+
+    /** Position both inputs at their first tuples. */
+    private void start() throws DbException, TransactionAbortedException {
+        leftPos = rightPos = 0;
+        t1 = null;
+        run.clear();
+        runPos = 0;
+        lo = hi = bound = 0;
+        t2 = pred.getOperator() == Predicate.Op.EQUALS ? nextRight() : null;
+    }
+
+    private Tuple nextLeft() throws DbException, TransactionAbortedException {
+        if (leftTuples != null)
+            return leftPos < leftTuples.size() ? leftTuples.get(leftPos++) : null;
+        return child1.hasNext() ? child1.next() : null;
+    }
+
+    private Tuple nextRight() throws DbException, TransactionAbortedException {
+        if (rightTuples != null)
+            return rightPos < rightTuples.size() ? rightTuples.get(rightPos++) : null;
+        return child2.hasNext() ? child2.next() : null;
+    }
+
+    /** @return the comparison of the join fields of a left and a right tuple */
+    private int compare(Tuple left, Tuple right) {
+        Field a = left.getField(pred.getField1());
+        Field b = right.getField(pred.getField2());
+        if (a.compare(Predicate.Op.EQUALS, b))
+            return 0;
+        return a.compare(Predicate.Op.LESS_THAN, b) ? -1 : 1;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (pred.getOperator() == Predicate.Op.EQUALS)
+            return fetchEquals();
+        return fetchRange();
+    }
+
+    private Tuple fetchEquals() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (t1 != null && runPos < run.size())
+                return merge(t1, run.get(runPos++));
+            t1 = nextLeft();
+            if (t1 == null)
+                return null;
+            runPos = 0;
+            if (!run.isEmpty() && compare(t1, run.get(0)) == 0)
+                continue;
+            run.clear();
+            while (t2 != null && compare(t1, t2) > 0)
+                t2 = nextRight();
+            if (t2 == null)
+                return null;
+            if (compare(t1, t2) < 0)
+                continue;
+            while (t2 != null && compare(t1, t2) == 0) {
+                run.add(t2);
+                t2 = nextRight();
+            }
+        }
+    }
+
+    private Tuple fetchRange() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (lo < hi)
+                return merge(t1, rightTuples.get(lo++));
+            t1 = nextLeft();
+            if (t1 == null)
+                return null;
+            int n = rightTuples.size();
+            switch (pred.getOperator()) {
+            case LESS_THAN:
+                while (bound < n && compare(t1, rightTuples.get(bound)) >= 0)
+                    bound++;
+                lo = bound;
+                hi = n;
+                break;
+            case LESS_THAN_OR_EQ:
+                while (bound < n && compare(t1, rightTuples.get(bound)) > 0)
+                    bound++;
+                lo = bound;
+                hi = n;
+                break;
+            case GREATER_THAN:
+                while (bound < n && compare(t1, rightTuples.get(bound)) > 0)
+                    bound++;
+                lo = 0;
+                hi = bound;
+                break;
+            default:
+                while (bound < n && compare(t1, rightTuples.get(bound)) >= 0)
+                    bound++;
+                lo = 0;
+                hi = bound;
+                break;
+            }
+        }
+    }
+
+    private Tuple merge(Tuple t1, Tuple t2) {
+        int td1n = t1.getTupleDesc().numFields();
+        int td2n = t2.getTupleDesc().numFields();
+        Tuple t = new Tuple(comboTD);
+        for (int i = 0; i < td1n; i++)
+            t.setField(i, t1.getField(i));
+        for (int i = 0; i < td2n; i++)
+            t.setField(td1n + i, t2.getField(i));
+        return t;
+    }
+
+    public void close() {
+        super.close();
+        leftTuples = rightTuples = null;
+        run = null;
+        t1 = t2 = null;
+        child2.close();
+        child1.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (leftTuples == null)
+            child1.rewind();
+        if (rightTuples == null)
+            child2.rewind();
+        start();
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { child1, child2 };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        child1 = children[0];
+        child2 = children[1];
+    }
+}
@@ -0,0 +1,138 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * SpillFile holds tuples that an operator cannot keep in memory in a
+ * temporary file. Tuples are appended, in the layout of their TupleDesc,
+ * until the file is first read; it can then be read any number of times.
+ * The file is removed by {@link #delete()}, or when the JVM exits.
+ */
+public class SpillFile {
+
+    private final TupleDesc td;
+    private final File file;
+    private DataOutputStream out;
+    private final ByteBuffer buf;
+    private int size;
+    private long bytes;
+
+    /**
+     * Create an empty spill file for tuples of td.
+     */
+    public SpillFile(TupleDesc td) throws IOException {
+        this.td = td;
+        this.file = File.createTempFile("spill", ".tmp");
+        file.deleteOnExit();
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        this.buf = ByteBuffer.allocate(td.getSize());
+    }
+
+    /** @return the number of tuples in the file */
+    public int size() {
+        return size;
+    }
+
+    /** @return the number of bytes written to the file */
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Append t, whose fields must all be set.
+     *
+     * @throws IllegalStateException if the file has already been read
+     */
+    public void add(Tuple t) throws IOException {
+        if (out == null)
+            throw new IllegalStateException("spill file has been read");
+        buf.clear();
+        for (int i = 0; i < td.numFields(); i++)
+            td.getFieldType(i).serialize(t.getField(i), buf);
+        out.writeShort(buf.position());
+        out.write(buf.array(), 0, buf.position());
+        bytes += 2 + buf.position();
+        size++;
+    }
+
+    private void finish() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * @return an iterator over the tuples of the file, in the order they
+     *         were added. No more tuples can be added.
+     */
+    public DbFileIterator iterator() throws IOException {
+        finish();
+        return new Itr();
+    }
+
+    /** Remove the file. */
+    public void delete() {
+        try {
+            finish();
+        } catch (IOException e) {
+            // the file is going away
+        }
+        file.delete();
+    }
+
+    private class Itr extends AbstractDbFileIterator {
+        private DataInputStream in;
+        private final byte[] record = new byte[td.getSize()];
+        private final ByteBuffer recordBuf = ByteBuffer.wrap(record);
+
+        public void open() throws DbException {
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            } catch (IOException e) {
+                throw new DbException("cannot read spill file: " + e);
+            }
+        }
+
+        protected Tuple readNext() throws DbException {
+            if (in == null)
+                return null;
+            try {
+                int len;
+                try {
+                    len = in.readUnsignedShort();
+                } catch (EOFException e) {
+                    return null;
+                }
+                in.readFully(record, 0, len);
+                Tuple t = new Tuple(td);
+                for (int i = 0; i < td.numFields(); i++)
+                    t.setField(i, td.getFieldType(i).parse(recordBuf,
+                            td.getFieldOffset(i, recordBuf, 0)));
+                return t;
+            } catch (IOException e) {
+                throw new DbException("cannot read spill file: " + e);
+            } catch (java.text.ParseException e) {
+                throw new DbException("cannot parse spilled tuple: " + e);
+            }
+        }
+
+        public void rewind() throws DbException {
+            close();
+            open();
+        }
+
+        public void close() {
+            super.close();
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // nothing more is read from it
+                }
+                in = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * StreamingAggregate computes the same aggregates as Aggregate over an input
+ * already sorted on its first group-by field, such as an OrderBy or a scan
+ * of a B+ tree keyed on it (see {@link SortMergeJoin#isSortedOn}). Since the
+ * tuples with each value of that field are adjacent, it holds only the
+ * groups with the current value, and returns their results as soon as a
+ * tuple with the next value is read, rather than reading the whole input
+ * first. With a single group-by field, that is one group at a time.
+ * <p>
+ * The input must be sorted on the first group-by field, in either
+ * direction; if it is not, a group may be returned more than once. Without
+ * grouping, the one result is returned at the end of the input.
+ */
+public class StreamingAggregate extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private OpIterator child;
+    private final int[] afields, gfields;
+    private final Aggregator.Op[] aops;
+    /** the name of each aggregate column, or null to name it after its field */
+    private final String[] anames;
+
+    /** the groups with the current value of the first group-by field */
+    private transient AggregateTable table;
+    /** the current value of the first group-by field */
+    private transient Field key;
+    /** the results of the groups with the previous value, still to return */
+    private transient Iterator<Tuple> results;
+
+    /**
+     * Constructor.
+     *
+     * @param child
+     *            The OpIterator that is feeding us tuples, sorted on gfield.
+     * @param afield
+     *            The column over which we are computing an aggregate.
+     * @param gfield
+     *            The column over which we are grouping the result, or -1 if
+     *            there is no grouping
+     * @param aop
+     *            The aggregation operator to use
+     */
+    public StreamingAggregate(OpIterator child, int afield, int gfield, Aggregator.Op aop) {
+        this(child, new int[] { afield }, gfield == -1 ? new int[0] : new int[] { gfield },
+                new Aggregator.Op[] { aop });
+    }
+
+    /**
+     * Constructor for several aggregates over a composite group key, as for
+     * {@link Aggregate#Aggregate(OpIterator, int[], int[], Aggregator.Op[])}.
+     *
+     * @param child
+     *            The OpIterator that is feeding us tuples, sorted on
+     *            gfields[0].
+     * @param afields
+     *            The column over which each aggregate is computed.
+     * @param gfields
+     *            The columns over which we are grouping the result, none if
+     *            there is no grouping
+     * @param aops
+     *            The aggregation operator of each aggregate
+     */
+    public StreamingAggregate(OpIterator child, int[] afields, int[] gfields,
+            Aggregator.Op[] aops) {
+        this(child, afields, null, gfields, aops);
+    }
+
+    /**
+     * Constructor for several aggregates, some of whose columns are named
+     * explicitly, as for
+     * {@link Aggregate#Aggregate(OpIterator, int[], String[], int[], Aggregator.Op[], int)}.
+     */
+    public StreamingAggregate(OpIterator child, int[] afields, String[] anames,
+            int[] gfields, Aggregator.Op[] aops) {
+        Aggregate.checkAggregates(child.getTupleDesc(), afields, aops);
+        this.child = child;
+        this.afields = afields.clone();
+        this.gfields = gfields.clone();
+        this.aops = aops.clone();
+        this.anames = Aggregate.aggregateNames(afields, anames);
+    }
+
+    /**
+     * @return the first groupby field index in the <b>INPUT</b> tuples, or
+     *         {@link simpledb.Aggregator#NO_GROUPING}
+     */
+    public int groupField() {
+        return gfields.length == 0 ? Aggregator.NO_GROUPING : gfields[0];
+    }
+
+    /** @return the groupby field indexes in the <b>INPUT</b> tuples */
+    public int[] groupFields() {
+        return gfields.clone();
+    }
+
+    /**
+     * @return the name of the first groupby field in the <b>OUTPUT</b>
+     *         tuples, or null if there is no grouping
+     */
+    public String groupFieldName() {
+        return gfields.length == 0 ? null : child.getTupleDesc().getFieldName(gfields[0]);
+    }
+
+    /** @return the first aggregate field */
+    public int aggregateField() {
+        return afields[0];
+    }
+
+    /** @return the aggregate fields, in the order they are output */
+    public int[] aggregateFields() {
+        return afields.clone();
+    }
+
+    /** @return the name of the first aggregate field in the <b>OUTPUT</b> tuples */
+    public String aggregateFieldName() {
+        return child.getTupleDesc().getFieldName(afields[0]);
+    }
+
+    /** @return the first aggregate operator */
+    public Aggregator.Op aggregateOp() {
+        return aops[0];
+    }
+
+    /** @return the aggregate operators, in the order they are output */
+    public Aggregator.Op[] aggregateOps() {
+        return aops.clone();
+    }
+
+    /** @see Aggregate#aggregateNames() */
+    public String[] aggregateNames() {
+        return anames.clone();
+    }
+
+    /** @see Aggregate#getTupleDesc() */
+    public TupleDesc getTupleDesc() {
+        return Aggregate.getTupleDesc(child.getTupleDesc(), afields, anames, gfields, aops);
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        table = new AggregateTable(gfields,
+                Aggregate.fieldTypes(child.getTupleDesc(), gfields), afields, aops);
+        key = null;
+        results = null;
+        child.open();
+        super.open();
+    }
+
+    /** Set aside the results of the groups in the table, and empty it. */
+    private void finishGroups() {
+        ArrayList<Tuple> out = new ArrayList<Tuple>(table.size());
+        for (int g = 0; g < table.size(); g++)
+            out.add(table.resultTuple(g));
+        table.clear();
+        results = out.iterator();
+    }
+
+    /**
+     * Returns the result of the next group, once the first tuple with the
+     * next value of the first group-by field has been read, or null if there
+     * are no more groups.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (results == null || !results.hasNext()) {
+            results = null;
+            if (!child.hasNext()) {
+                if (table.size() == 0)
+                    return null;
+                finishGroups();
+                continue;
+            }
+            Tuple t = child.next();
+            if (gfields.length > 0) {
+                Field f = t.getField(gfields[0]);
+                if (key != null && !f.equals(key))
+                    finishGroups();
+                key = f;
+            }
+            table.merge(t);
+        }
+        return results.next();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+        table.clear();
+        key = null;
+        results = null;
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        table = null;
+        key = null;
+        results = null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { child };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        child = children[0];
+    }
+}
@@ -71,7 +71,7 @@ public class Tuple implements Serializable {
     public void setField(int i, Field f) {
     	if (i > numFields) 
     		return;
-    	if (tupleDescriptor.getFieldType(i) != f.getType())
+    	if (tupleDescriptor.getFieldType(i).valueType() != f.getType())
     		return;
         fields[i] = f; 
     }
@@ -88,6 +88,20 @@ public class Tuple implements Serializable {
         return fields[i];
     }
 
+    /** @return the value of the ith field, which must be an IntField */
+    int getInt(int i) {
+        return ((IntField) getField(i)).getValue();
+    }
+
+    /**
+     * @return true if the field of this tuple named by p satisfies p.
+     *         Tuples that can evaluate predicates without decoding their
+     *         fields override this.
+     */
+    boolean matches(Predicate p) {
+        return getField(p.getField()).compare(p.getOp(), p.getOperand());
+    }
+
     /**
      * Returns the contents of this Tuple as a string. Note that to pass the
      * system tests, the format needs to be as follows:
@@ -100,7 +114,7 @@ public class Tuple implements Serializable {
         // some code goes here
     	String str = new String();
     	for (int i = 0; i < numFields; i++)
-    		str += String.format("%s ", fields[i].toString());
+    		str += String.format("%s ", getField(i).toString());
     	return str;
         //throw new UnsupportedOperationException("Implement this");
     	
@@ -129,7 +143,7 @@ public class Tuple implements Serializable {
 		}
 		@Override
 		public Field next() {
-			return fields[i++];
+			return getField(i++);
 		}
     	
     }
@@ -148,7 +162,7 @@ public class Tuple implements Serializable {
         	return true;
         if (obj == null)
         	return false;
-        if (getClass() != obj.getClass())
+        if (!(obj instanceof Tuple))
         	return false;
         Tuple other = (Tuple) obj;
         return this.rid.equals(other.getRecordId()) ;
@@ -0,0 +1,215 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * TupleBatch holds up to {@link #CAPACITY} rows of a TupleDesc column by
+ * column, so operators can work on many rows per call instead of one Tuple
+ * at a time. The values of an INT column are kept in an int array; those of
+ * any other column as Fields.
+ * <p>
+ * A selection vector lists the rows of the batch that are still part of
+ * it, in order: a filter narrows it rather than moving values, and the
+ * rows it drops are simply never looked at again. Positions passed to
+ * {@link #row(int)} and {@link #getTuple(int)} count selected rows only;
+ * the other accessors take the physical row that row() returns.
+ * <p>
+ * Batches do not carry RecordIds.
+ *
+ * @see BatchOpIterator
+ */
+public class TupleBatch {
+
+    /** the most rows a batch holds */
+    public static final int CAPACITY = 1024;
+
+    private final TupleDesc td;
+    /** for each column, its values if it is an INT column, or null */
+    private final int[][] ints;
+    /** for each column, its values if it is not an INT column, or null */
+    private final Field[][] fields;
+    /** the selected rows, in order */
+    private final int[] sel;
+    /** the number of rows filled in */
+    private int numRows;
+    /** the number of entries of sel in use */
+    private int size;
+
+    /**
+     * Create an empty batch of rows of the specified TupleDesc.
+     */
+    public TupleBatch(TupleDesc td) {
+        this.td = td;
+        int n = td.numFields();
+        this.ints = new int[n][];
+        this.fields = new Field[n][];
+        for (int i = 0; i < n; i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE)
+                ints[i] = new int[CAPACITY];
+            else
+                fields[i] = new Field[CAPACITY];
+        }
+        this.sel = new int[CAPACITY];
+    }
+
+    private TupleBatch(TupleDesc td, int[][] ints, Field[][] fields, int[] sel) {
+        this.td = td;
+        this.ints = ints;
+        this.fields = fields;
+        this.sel = sel;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /** @return the number of selected rows */
+    public int size() {
+        return size;
+    }
+
+    /** @return true if no more rows can be added */
+    public boolean isFull() {
+        return numRows == CAPACITY;
+    }
+
+    /** Remove all the rows. */
+    public void clear() {
+        numRows = 0;
+        size = 0;
+    }
+
+    /** @return the physical row of the i'th selected row */
+    public int row(int i) {
+        return sel[i];
+    }
+
+    /** @return the value of an INT column in the specified physical row */
+    public int getInt(int column, int row) {
+        return ints[column][row];
+    }
+
+    /** @return the value of a column in the specified physical row */
+    public Field getField(int column, int row) {
+        if (ints[column] != null)
+            return new IntField(ints[column][row]);
+        return fields[column][row];
+    }
+
+    /** @return a new Tuple holding the i'th selected row */
+    public Tuple getTuple(int i) {
+        int row = sel[i];
+        Tuple t = new Tuple(td);
+        for (int c = 0; c < ints.length; c++)
+            t.setField(c, getField(c, row));
+        return t;
+    }
+
+    /**
+     * Add a row, which is selected, leaving its values to be set.
+     *
+     * @return the physical row added
+     * @throws IllegalStateException if the batch is full
+     */
+    public int addRow() {
+        if (isFull())
+            throw new IllegalStateException("batch is full");
+        sel[size++] = numRows;
+        return numRows++;
+    }
+
+    /** Add the fields of t as a new row. */
+    public void add(Tuple t) {
+        int row = addRow();
+        for (int c = 0; c < ints.length; c++)
+            setField(c, row, t.getField(c));
+    }
+
+    /**
+     * Add the tuple serialized at offset in buf, in the layout of td, as a
+     * new row, without creating a Tuple or Fields for its INT columns.
+     */
+    void add(ByteBuffer buf, int offset) {
+        int row = addRow();
+        try {
+            for (int c = 0; c < ints.length; c++) {
+                int at = td.getFieldOffset(c, buf, offset);
+                if (ints[c] != null)
+                    ints[c][row] = buf.getInt(at);
+                else
+                    fields[c][row] = td.getFieldType(c).parse(buf, at);
+            }
+        } catch (java.text.ParseException e) {
+            throw new IllegalStateException("cannot parse tuple: " + e);
+        }
+    }
+
+    /**
+     * Add the rows of op, from its current position, until the batch is
+     * full or op has no more.
+     */
+    public void addAll(OpIterator op) throws DbException, TransactionAbortedException {
+        while (!isFull() && op.hasNext())
+            add(op.next());
+    }
+
+    public void setInt(int column, int row, int value) {
+        ints[column][row] = value;
+    }
+
+    public void setField(int column, int row, Field f) {
+        if (ints[column] != null)
+            ints[column][row] = ((IntField) f).getValue();
+        else
+            fields[column][row] = f;
+    }
+
+    /**
+     * Set a column of the specified row from a column of a row of another
+     * batch, of the same type.
+     */
+    public void copy(int column, int row, TupleBatch from, int fromColumn, int fromRow) {
+        if (ints[column] != null)
+            ints[column][row] = from.ints[fromColumn][fromRow];
+        else
+            fields[column][row] = from.getField(fromColumn, fromRow);
+    }
+
+    /** Drop the selected rows that do not satisfy p from the selection. */
+    public void filter(Predicate p) {
+        CompiledPredicate.compile(p, td).filter(this);
+    }
+
+    /** @return the values of an INT column, by physical row */
+    int[] ints(int column) {
+        return ints[column];
+    }
+
+    /** @return the selection vector, whose first size() entries are in use */
+    int[] selection() {
+        return sel;
+    }
+
+    /** Keep only the first n entries of the selection vector. */
+    void select(int n) {
+        size = n;
+    }
+
+    /**
+     * @return a batch of the specified columns of this one, with the given
+     *         TupleDesc, that shares their values and has a copy of the
+     *         selection. It is only valid until this batch changes.
+     */
+    public TupleBatch project(TupleDesc td, int[] columns) {
+        int[][] pi = new int[columns.length][];
+        Field[][] pf = new Field[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            pi[i] = ints[columns[i]];
+            pf[i] = fields[columns[i]];
+        }
+        TupleBatch b = new TupleBatch(td, pi, pf, sel.clone());
+        b.numRows = numRows;
+        b.size = size;
+        return b;
+    }
+}
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -66,6 +67,7 @@ public class TupleDesc implements Serializable {
     //
     private TDItem[] item;
     private final int fieldNum;
+    private transient int[] offsets;
     // static meaning there is only one in the memory.
     private final static String strnull = "NULL";
     /**
@@ -184,14 +186,77 @@ public class TupleDesc implements Serializable {
 
     /**
      * @return The size (in bytes) of tuples corresponding to this TupleDesc.
-     *         Note that tuples from a given TupleDesc are of a fixed size.
+     *         Note that tuples from a given TupleDesc are of a fixed size,
+     *         unless it has fields of variable length, in which case this is
+     *         the most a tuple can take.
      */
     public int getSize() {
-        int sum = 0;
-    	for (int i = 0; i < fieldNum; i++) {
-        	sum += item[i].fieldType.getLen();
+        return offsets()[fieldNum];
+    }
+
+    /**
+     * @return the offset in bytes of the ith field from the start of a
+     *         serialized tuple of this TupleDesc.
+     * @param i
+     *            The index of the field. It must be a valid index.
+     */
+    public int getFieldOffset(int i) {
+        if (i < 0 || i >= fieldNum)
+            throw new NoSuchElementException();
+        return offsets()[i];
+    }
+
+    /**
+     * @return the offset in bytes of the ith field of the tuple serialized
+     *         at recordOffset in buf. Unless the TupleDesc has fields of
+     *         variable length, this is recordOffset + getFieldOffset(i).
+     */
+    public int getFieldOffset(int i, ByteBuffer buf, int recordOffset) {
+        if (fixedLength())
+            return recordOffset + getFieldOffset(i);
+        if (i < 0 || i >= fieldNum)
+            throw new NoSuchElementException();
+        int off = recordOffset;
+        for (int j = 0; j < i; j++)
+            off += item[j].fieldType.getLen(buf, off);
+        return off;
+    }
+
+    /**
+     * @return the size (in bytes) of t serialized with this TupleDesc, which
+     *         is getSize() unless it has fields of variable length.
+     */
+    public int getSize(Tuple t) {
+        if (fixedLength())
+            return getSize();
+        int size = 0;
+        for (int i = 0; i < fieldNum; i++)
+            size += item[i].fieldType.getLen(t.getField(i));
+        return size;
+    }
+
+    /** @return true if every field has a fixed length */
+    private boolean fixedLength() {
+        return offsets()[fieldNum + 1] != 0;
+    }
+
+    /**
+     * the field offsets, followed by the tuple size, followed by 1 if every
+     * field has a fixed length and 0 otherwise; computed on first use
+     */
+    private int[] offsets() {
+        int[] off = offsets;
+        if (off == null) {
+            off = new int[fieldNum + 2];
+            off[fieldNum + 1] = 1;
+            for (int i = 0; i < fieldNum; i++) {
+                off[i + 1] = off[i] + item[i].fieldType.getLen();
+                if (!item[i].fieldType.isFixedLength())
+                    off[fieldNum + 1] = 0;
+            }
+            offsets = off;
         }
-        return sum;
+        return off;
     }
 
     /**
@@ -0,0 +1,103 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * The full 2Q algorithm (Johnson and Shasha). Pages read for the first time
+ * enter a FIFO queue, A1in; when they fall out of it only their id is
+ * remembered in a ghost queue, A1out. A page that is requested again while
+ * its id is in A1out is hot and goes to the main LRU queue, Am. Pages that
+ * are touched once, as by a large sequential scan, therefore only ever
+ * compete for the A1in frames.
+ */
+public class TwoQueuePolicy implements EvictionPolicy {
+
+    private static final int NIL = -1;
+    private static final byte NONE = 0, A1IN = 1, AM = 2;
+
+    /** target sizes of A1in (frames) and A1out (page ids), as in the paper */
+    private final int kin, kout;
+
+    private final int[] prev, next;
+    private final byte[] queue;
+    private final PageId[] pageOf;
+    private final int[] head = { NIL, NIL, NIL }, tail = { NIL, NIL, NIL };
+    private int a1inSize;
+    private final LinkedHashSet<PageId> a1out = new LinkedHashSet<PageId>();
+
+    public TwoQueuePolicy(int numPages) {
+        kin = Math.max(1, numPages / 4);
+        kout = Math.max(1, numPages / 2);
+        prev = new int[numPages];
+        next = new int[numPages];
+        queue = new byte[numPages];
+        pageOf = new PageId[numPages];
+    }
+
+    public synchronized void loaded(int frame, PageId pid) {
+        pageOf[frame] = pid;
+        if (a1out.remove(pid)) {
+            append(AM, frame);
+        } else {
+            append(A1IN, frame);
+            a1inSize++;
+        }
+    }
+
+    public synchronized void accessed(int frame) {
+        // hits in A1in are deliberately ignored: they are correlated references
+        if (queue[frame] == AM && frame != tail[AM]) {
+            unlink(frame);
+            append(AM, frame);
+        }
+    }
+
+    public synchronized void removed(int frame, boolean evicted) {
+        if (queue[frame] == NONE)
+            return;
+        if (evicted && queue[frame] == A1IN) {
+            // evicted from A1in: remember that we saw it
+            a1out.add(pageOf[frame]);
+            if (a1out.size() > kout) {
+                Iterator<PageId> it = a1out.iterator();
+                it.next();
+                it.remove();
+            }
+        }
+        if (queue[frame] == A1IN)
+            a1inSize--;
+        unlink(frame);
+        pageOf[frame] = null;
+    }
+
+    public synchronized int victim() {
+        if (head[A1IN] != NIL && (a1inSize > kin || head[AM] == NIL))
+            return head[A1IN];
+        return head[AM];
+    }
+
+    private void append(byte q, int frame) {
+        queue[frame] = q;
+        prev[frame] = tail[q];
+        next[frame] = NIL;
+        if (tail[q] != NIL)
+            next[tail[q]] = frame;
+        else
+            head[q] = frame;
+        tail[q] = frame;
+    }
+
+    private void unlink(int frame) {
+        byte q = queue[frame];
+        if (prev[frame] != NIL)
+            next[prev[frame]] = next[frame];
+        else
+            head[q] = next[frame];
+        if (next[frame] != NIL)
+            prev[next[frame]] = prev[frame];
+        else
+            tail[q] = prev[frame];
+        queue[frame] = NONE;
+    }
+}
@@ -2,6 +2,8 @@ package simpledb;
 
 import java.text.ParseException;
 import java.io.*;
+import java.util.NoSuchElementException;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a type in SimpleDB.
@@ -24,6 +26,37 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(ByteBuffer buf, int offset) throws ParseException {
+            try {
+                return new IntField(buf.getInt(offset));
+            } catch (IndexOutOfBoundsException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public boolean compare(ByteBuffer buf, int offset, Predicate.Op op, Field operand) {
+            int value = buf.getInt(offset);
+            int other = ((IntField) operand).getValue();
+            switch (op) {
+            case EQUALS:
+            case LIKE:
+                return value == other;
+            case NOT_EQUALS:
+                return value != other;
+            case GREATER_THAN:
+                return value > other;
+            case GREATER_THAN_OR_EQ:
+                return value >= other;
+            case LESS_THAN:
+                return value < other;
+            case LESS_THAN_OR_EQ:
+                return value <= other;
+            }
+            return false;
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -42,15 +75,146 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) throws ParseException {
+            try {
+                int strLen = buf.getInt(offset);
+                byte bs[] = new byte[strLen];
+                ByteBuffer src = buf.duplicate();
+                src.position(offset + 4);
+                src.get(bs);
+                return new StringField(new String(bs), STRING_LEN);
+            } catch (RuntimeException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public boolean compare(ByteBuffer buf, int offset, Predicate.Op op, Field operand) {
+            int len = buf.getInt(offset);
+            if (len < 0 || len > STRING_LEN)
+                return slowCompare(buf, offset, op, operand);
+            return compareString(buf, offset, offset + 4, len, op, operand);
+        }
+
+    }, VARCHAR_TYPE() {
+        /** The most bytes a value takes: a two byte length, then the string */
+        @Override
+        public int getLen() {
+            return STRING_LEN+2;
+        }
+
+        @Override
+        public boolean isFixedLength() {
+            return false;
+        }
+
+        /** Values are StringFields, as for STRING_TYPE. */
+        @Override
+        public Type valueType() {
+            return STRING_TYPE;
+        }
+
+        @Override
+        public int getLen(ByteBuffer buf, int offset) {
+            return 2 + (buf.getShort(offset) & 0xffff);
+        }
+
+        @Override
+        public int getLen(Field f) {
+            return 2 + Math.min(((StringField) f).getValue().length(), STRING_LEN);
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                byte bs[] = new byte[dis.readUnsignedShort()];
+                dis.readFully(bs);
+                return new StringField(new String(bs), STRING_LEN);
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) throws ParseException {
+            try {
+                byte bs[] = new byte[buf.getShort(offset) & 0xffff];
+                ByteBuffer src = buf.duplicate();
+                src.position(offset + 2);
+                src.get(bs);
+                return new StringField(new String(bs), STRING_LEN);
+            } catch (RuntimeException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        /** Writes the length of the string as a short, then its bytes. */
+        @Override
+        public void serialize(Field f, ByteBuffer buf) {
+            String s = ((StringField) f).getValue();
+            int len = Math.min(s.length(), STRING_LEN);
+            buf.putShort((short) len);
+            for (int i = 0; i < len; i++)
+                buf.put((byte) s.charAt(i));
+        }
+
+        @Override
+        public boolean compare(ByteBuffer buf, int offset, Predicate.Op op, Field operand) {
+            int len = buf.getShort(offset) & 0xffff;
+            if (len > STRING_LEN)
+                return slowCompare(buf, offset, op, operand);
+            return compareString(buf, offset, offset + 2, len, op, operand);
+        }
     };
     
     public static final int STRING_LEN = 128;
 
   /**
-   * @return the number of bytes required to store a field of this type.
+   * @return the number of bytes required to store a field of this type. For
+   *   a type whose values vary in length, the most a value can take.
    */
     public abstract int getLen();
 
+  /**
+   * @return true if every value of this type takes getLen() bytes
+   */
+    public boolean isFixedLength() {
+        return true;
+    }
+
+  /**
+   * @return the type reported by the Fields of this type; only differs
+   *   from this type for a different way of storing the same values
+   */
+    public Type valueType() {
+        return this;
+    }
+
+  /**
+   * @return the number of bytes taken by the serialized field of this type
+   *   at the specified offset in buf
+   */
+    public int getLen(ByteBuffer buf, int offset) {
+        return getLen();
+    }
+
+  /**
+   * @return the number of bytes f takes when serialized as this type
+   */
+    public int getLen(Field f) {
+        return getLen();
+    }
+
+  /**
+   * Write f, a field of this type, to buf at its position, in the format
+   * read by {@link #parse(ByteBuffer, int)}.
+   */
+    public void serialize(Field f, ByteBuffer buf) {
+        f.serialize(buf);
+    }
+
   /**
    * @return a Field object of the same type as this object that has contents
    *   read from the specified DataInputStream.
@@ -60,4 +224,77 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object that has contents
+   *   read from the specified buffer at the specified offset. The buffer's
+   *   position is not used or changed.
+   * @param buf The buffer to read from
+   * @param offset The index in buf of the field's first byte
+   * @throws ParseException if the buffer does not hold a field of the
+   *   appropriate type.
+   */
+    public abstract Field parse(ByteBuffer buf, int offset) throws ParseException;
+
+  /**
+   * Compare the serialized field of this type at the specified offset in buf
+   * to operand, without creating a Field object where possible.
+   * @return the result of parse(buf, offset).compare(op, operand)
+   * @see Field#compare
+   */
+    public abstract boolean compare(ByteBuffer buf, int offset, Predicate.Op op, Field operand);
+
+    /**
+     * Compares the string of len bytes at start in buf, the contents of the
+     * field at offset, with operand. ASCII strings are compared byte by
+     * byte, which orders them the same way as String.compareTo; anything
+     * else is decoded first.
+     */
+    boolean compareString(ByteBuffer buf, int offset, int start, int len,
+            Predicate.Op op, Field operand) {
+        String other = ((StringField) operand).getValue();
+        for (int i = 0; i < len; i++)
+            if (buf.get(start + i) < 0)
+                return slowCompare(buf, offset, op, operand);
+        if (op == Predicate.Op.LIKE) {
+            for (int i = 0; i + other.length() <= len; i++) {
+                int j = 0;
+                while (j < other.length() && buf.get(start + i + j) == other.charAt(j))
+                    j++;
+                if (j == other.length())
+                    return true;
+            }
+            return other.length() == 0;
+        }
+        int cmp = 0;
+        for (int i = 0; i < len && i < other.length() && cmp == 0; i++)
+            cmp = buf.get(start + i) - other.charAt(i);
+        if (cmp == 0)
+            cmp = len - other.length();
+        switch (op) {
+        case EQUALS:
+            return cmp == 0;
+        case NOT_EQUALS:
+            return cmp != 0;
+        case GREATER_THAN:
+            return cmp > 0;
+        case GREATER_THAN_OR_EQ:
+            return cmp >= 0;
+        case LESS_THAN:
+            return cmp < 0;
+        case LESS_THAN_OR_EQ:
+            return cmp <= 0;
+        default:
+            return false;
+        }
+    }
+
+    /** Fallback for {@link #compare(ByteBuffer, int, Predicate.Op, Field)}. */
+    boolean slowCompare(ByteBuffer buf, int offset, Predicate.Op op, Field operand) {
+        try {
+            return parse(buf, offset).compare(op, operand);
+        } catch (ParseException e) {
+            throw new NoSuchElementException("parsing error!");
+        }
+    }
+
 }
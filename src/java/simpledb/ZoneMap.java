@@ -0,0 +1,257 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * ZoneMap records the least and greatest value of each INT column on each
+ * page of a HeapFile, so a scan with pushed predicates can skip the pages
+ * whose values cannot satisfy them without reading them. The ranges are
+ * kept in memory and persisted to a side file next to the table, as the
+ * table's pages are written; reading the table never writes the side file.
+ * <p>
+ * A range only has to contain the values of its page: inserts and updates
+ * widen it, deletes leave it as it is, and it is recomputed exactly from
+ * the page when the page is written. A page whose range is not known is
+ * never skipped. A side file older than the table, or entries missing from
+ * it, are rebuilt in memory from the table's pages, and written out with
+ * the next page of the table.
+ *
+ * @see HeapFile#iterator(TransactionId, Predicate[])
+ */
+public class ZoneMap {
+
+    private final File file;
+    private final PageChannel channel;
+    /** the INT columns of the table, whose ranges are kept */
+    private final int[] columns;
+    /** for each column of the table, its index in columns, or -1 */
+    private final int[] index;
+    /**
+     * the ints of each page's entry: 1 if the page's ranges are known and
+     * 0 if not, then the minimum and maximum of each of the columns
+     */
+    private final int stride;
+
+    private int[] entries;
+    private int numPages;
+    /** the pages whose entries differ from the side file */
+    private final BitSet unsaved = new BitSet();
+    /** true if the side file was missing or out of date when loaded */
+    private boolean stale;
+
+    /**
+     * Create a map of the INT columns of td persisted in the specified side
+     * file, loading the ranges already saved there unless the file is older
+     * than table, the file holding the pages it describes.
+     */
+    public ZoneMap(File file, File table, TupleDesc td) throws IOException {
+        this.file = file;
+        this.channel = new PageChannel(file);
+        this.index = new int[td.numFields()];
+        int n = 0;
+        for (int i = 0; i < td.numFields(); i++)
+            index[i] = td.getFieldType(i) == Type.INT_TYPE ? n++ : -1;
+        this.columns = new int[n];
+        for (int i = 0; i < td.numFields(); i++)
+            if (index[i] >= 0)
+                columns[index[i]] = i;
+        this.stride = 1 + 2 * n;
+        this.entries = new int[16 * stride];
+        if (file.exists() && file.lastModified() >= table.lastModified())
+            load();
+        else
+            stale = true;
+    }
+
+    /** @return the side file holding the map of the specified table file */
+    public static File fileFor(File table) {
+        return new File(table.getPath() + ".zone");
+    }
+
+    /** @return true if td has a column a ZoneMap keeps ranges of */
+    public static boolean hasColumns(TupleDesc td) {
+        for (int i = 0; i < td.numFields(); i++)
+            if (td.getFieldType(i) == Type.INT_TYPE)
+                return true;
+        return false;
+    }
+
+    private void load() throws IOException {
+        int size = 4 * stride;
+        byte[] bytes = new byte[(int) (file.length() / size * size)];
+        if (bytes.length == 0 || channel.read(0, bytes) <= 0)
+            return;
+        IntBuffer buf = ByteBuffer.wrap(bytes).asIntBuffer();
+        int[] entry = new int[stride];
+        for (int pg = 0; pg < bytes.length / size; pg++) {
+            buf.get(entry);
+            if (entry[0] != 0)
+                put(pg, entry);
+        }
+    }
+
+    private void ensureCapacity(int pgNo) {
+        if ((pgNo + 1) * stride > entries.length) {
+            int n = entries.length / stride;
+            while (n <= pgNo)
+                n *= 2;
+            entries = Arrays.copyOf(entries, n * stride);
+        }
+        numPages = Math.max(numPages, pgNo + 1);
+    }
+
+    private void put(int pgNo, int[] entry) {
+        ensureCapacity(pgNo);
+        System.arraycopy(entry, 0, entries, pgNo * stride, stride);
+    }
+
+    /** @return true if the ranges of the page are known */
+    public synchronized boolean isKnown(int pgNo) {
+        return pgNo < numPages && entries[pgNo * stride] != 0;
+    }
+
+    /**
+     * @return the least value of the specified column on the page, which
+     *         is Integer.MAX_VALUE if it has no tuples; the page's ranges
+     *         must be known
+     */
+    public synchronized int getMin(int pgNo, int column) {
+        return entries[pgNo * stride + 1 + 2 * index[column]];
+    }
+
+    /**
+     * @return the greatest value of the specified column on the page, which
+     *         is Integer.MIN_VALUE if it has no tuples; the page's ranges
+     *         must be known
+     */
+    public synchronized int getMax(int pgNo, int column) {
+        return entries[pgNo * stride + 2 + 2 * index[column]];
+    }
+
+    /**
+     * @return false if no tuple on the page can satisfy all of preds,
+     *         judging by the page's ranges
+     */
+    public synchronized boolean mayMatch(int pgNo, Predicate[] preds) {
+        if (pgNo >= numPages || entries[pgNo * stride] == 0)
+            return true;
+        for (Predicate p : preds) {
+            int f = p.getField();
+            if (f < 0 || f >= index.length || index[f] < 0)
+                continue;
+            int at = pgNo * stride + 1 + 2 * index[f];
+            if (!p.mayMatch(entries[at], entries[at + 1]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Record the exact ranges of the tuples on page, in memory only.
+     *
+     * @return true if they differ from the ranges in the side file
+     */
+    public boolean set(int pgNo, HeapPage page) {
+        int[] entry = new int[stride];
+        entry[0] = 1;
+        for (int i = 0; i < columns.length; i++) {
+            entry[1 + 2 * i] = Integer.MAX_VALUE;
+            entry[2 + 2 * i] = Integer.MIN_VALUE;
+        }
+        ByteBuffer buf = page.data;
+        TupleDesc td = page.td;
+        for (int slot = 0, n = page.slotCount(); slot < n; slot++) {
+            if (!page.isSlotUsed(slot))
+                continue;
+            int off = page.slotOffset(slot);
+            for (int i = 0; i < columns.length; i++) {
+                int v = buf.getInt(td.getFieldOffset(columns[i], buf, off));
+                entry[1 + 2 * i] = Math.min(entry[1 + 2 * i], v);
+                entry[2 + 2 * i] = Math.max(entry[2 + 2 * i], v);
+            }
+        }
+        synchronized (this) {
+            boolean same = pgNo < numPages;
+            for (int i = 0; same && i < stride; i++)
+                same = entries[pgNo * stride + i] == entry[i];
+            if (!same) {
+                put(pgNo, entry);
+                unsaved.set(pgNo);
+            }
+            return unsaved.get(pgNo);
+        }
+    }
+
+    /**
+     * Widen the ranges of the page, in memory only, to include the values
+     * of t, which has been stored on it. A page whose ranges are not known
+     * is taken to be a new page, with no other tuples.
+     */
+    public synchronized void include(int pgNo, Tuple t) {
+        ensureCapacity(pgNo);
+        unsaved.set(pgNo);
+        int at = pgNo * stride;
+        if (entries[at] == 0) {
+            entries[at] = 1;
+            for (int i = 0; i < columns.length; i++) {
+                entries[at + 1 + 2 * i] = Integer.MAX_VALUE;
+                entries[at + 2 + 2 * i] = Integer.MIN_VALUE;
+            }
+        }
+        for (int i = 0; i < columns.length; i++) {
+            int v = ((IntField) t.getField(columns[i])).getValue();
+            entries[at + 1 + 2 * i] = Math.min(entries[at + 1 + 2 * i], v);
+            entries[at + 2 + 2 * i] = Math.max(entries[at + 2 + 2 * i], v);
+        }
+    }
+
+    /**
+     * Forget the ranges of the page, in memory only, so that it is never
+     * skipped until they are set again.
+     */
+    public synchronized void forget(int pgNo) {
+        if (pgNo < numPages && entries[pgNo * stride] != 0) {
+            entries[pgNo * stride] = 0;
+            unsaved.set(pgNo);
+        }
+    }
+
+    /**
+     * Persist the ranges of the page, or of every page if the side file
+     * was missing or out of date when the map was loaded.
+     */
+    public void save(int pgNo) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4 * stride);
+        boolean all;
+        synchronized (this) {
+            all = stale;
+            buf.asIntBuffer().put(entries, pgNo * stride, stride);
+            unsaved.clear(pgNo);
+        }
+        if (all)
+            saveAll();
+        else
+            channel.write(4L * stride * pgNo, buf.array());
+    }
+
+    /** Persist the ranges of all the pages in the map. */
+    public void saveAll() throws IOException {
+        ByteBuffer buf;
+        synchronized (this) {
+            buf = ByteBuffer.allocate(4 * stride * numPages);
+            buf.asIntBuffer().put(entries, 0, stride * numPages);
+            unsaved.clear();
+            stale = false;
+        }
+        channel.write(0, buf.array());
+    }
+
+    /** Close the side file; it is opened again by the next save. */
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -3,6 +3,8 @@ package simpledb;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import java.util.*;
+
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Before;
@@ -176,6 +178,101 @@ public class AggregateTest extends SimpleDbTestBase {
     TestUtil.matchAllTuples(min, op);
   }
 
+  /** @return the tuples of op, as strings, sorted */
+  private static List<String> rows(OpIterator op) throws Exception {
+    ArrayList<String> list = new ArrayList<String>();
+    while (op.hasNext())
+      list.add(op.next().toString());
+    Collections.sort(list);
+    return list;
+  }
+
+  /**
+   * Unit test for Aggregate with more groups than it may hold in memory,
+   * which spills them and splits some partitions again
+   */
+  @Test public void spill() throws Exception {
+    Random r = new Random(23);
+    int[] values = new int[2 * 20000];
+    for (int i = 0; i < values.length; i += 2) {
+      values[i] = r.nextInt(3000);
+      values[i + 1] = r.nextInt(2000) - 1000;
+    }
+    Aggregator.Op[] ops = { Aggregator.Op.MIN, Aggregator.Op.MAX,
+        Aggregator.Op.SUM, Aggregator.Op.AVG, Aggregator.Op.COUNT };
+    for (Aggregator.Op aop : ops) {
+      Aggregate inMemory = new Aggregate(TestUtil.createTupleList(width1, values), 1, 0, aop);
+      inMemory.open();
+      List<String> expected = rows(inMemory);
+      assertEquals(0, inMemory.getPartitionsSpilled());
+
+      Aggregate op = new Aggregate(TestUtil.createTupleList(width1, values), 1, 0, aop, 10);
+      op.open();
+      assertEquals(aop.toString(), expected, rows(op));
+      assertTrue(op.getPartitionsSpilled() > Aggregate.PARTITIONS);
+      assertTrue(op.getBytesSpilled() > 0);
+      op.rewind();
+      assertEquals(aop.toString(), expected, rows(op));
+      op.close();
+    }
+  }
+
+  /**
+   * Unit test for several aggregates over a composite group key of an int
+   * and a string field, in memory, spilled and streamed
+   */
+  @Test public void multipleAggregates() throws Exception {
+    Random r = new Random(25);
+    Object[] values = new Object[4 * 4000];
+    HashMap<String, int[]> groups = new HashMap<String, int[]>();
+    for (int i = 0; i < values.length; i += 4) {
+      int a = r.nextInt(30), c = r.nextInt(2000) - 1000, d = r.nextInt(100);
+      String b = "s" + r.nextInt(7);
+      values[i] = a;
+      values[i + 1] = b;
+      values[i + 2] = c;
+      values[i + 3] = d;
+      int[] g = groups.get(a + "," + b);
+      if (g == null)
+        groups.put(a + "," + b, g = new int[] { a, 0, Integer.MIN_VALUE, 0 });
+      g[1] += c;
+      g[2] = Math.max(g[2], d);
+      g[3]++;
+    }
+    ArrayList<Object> out = new ArrayList<Object>();
+    for (Map.Entry<String, int[]> e : groups.entrySet()) {
+      int[] g = e.getValue();
+      out.addAll(Arrays.<Object>asList(g[0], e.getKey().split(",")[1],
+          g[1], g[2], g[3], g[1] / g[3]));
+    }
+    List<String> expected = rows(TestUtil.createTupleList(6, out.toArray()));
+
+    int[] afields = { 2, 3, 2, 2 };
+    int[] gfields = { 0, 1 };
+    Aggregator.Op[] aops = { Aggregator.Op.SUM, Aggregator.Op.MAX,
+        Aggregator.Op.COUNT, Aggregator.Op.AVG };
+    Aggregate inMemory = new Aggregate(TestUtil.createTupleList(4, values),
+        afields, gfields, aops);
+    assertEquals(6, inMemory.getTupleDesc().numFields());
+    assertEquals(Type.STRING_TYPE, inMemory.getTupleDesc().getFieldType(1));
+    inMemory.open();
+    assertEquals(expected, rows(inMemory));
+
+    Aggregate spilled = new Aggregate(TestUtil.createTupleList(4, values),
+        afields, gfields, aops, 10);
+    spilled.open();
+    assertEquals(expected, rows(spilled));
+    assertTrue(spilled.getPartitionsSpilled() > 0);
+    spilled.rewind();
+    assertEquals(expected, rows(spilled));
+    spilled.close();
+
+    StreamingAggregate streamed = new StreamingAggregate(
+        new OrderBy(0, true, TestUtil.createTupleList(4, values)), afields, gfields, aops);
+    streamed.open();
+    assertEquals(expected, rows(streamed));
+  }
+
   /**
    * JUnit suite target
    */
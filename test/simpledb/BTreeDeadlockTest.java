@@ -83,6 +83,15 @@ public class BTreeDeadlockTest extends SimpleDbTestBase {
 		return bw;
 	}
 
+	/**
+	 * A writer is retried only if it was aborted to break a deadlock; any
+	 * other error would fail again on every retry, so fail the test with it.
+	 */
+	private static void rethrowUnlessAborted(Exception e) throws Exception {
+		if (!(e instanceof TransactionAbortedException))
+			throw e;
+	}
+
 	/**
 	 * Not-so-unit test to construct a deadlock situation.
 	 * 
@@ -112,6 +121,7 @@ public class BTreeDeadlockTest extends SimpleDbTestBase {
 			if(writer1.succeeded() || writer2.succeeded()) break;
 
 			if (writer1.getError() != null) {
+				rethrowUnlessAborted(writer1.getError());
 				writer1 = null;
 				bp.transactionComplete(tid1);
 				Thread.sleep(rand.nextInt(WAIT_INTERVAL));
@@ -121,6 +131,7 @@ public class BTreeDeadlockTest extends SimpleDbTestBase {
 			}
 
 			if (writer2.getError() != null) {
+				rethrowUnlessAborted(writer2.getError());
 				writer2 = null;
 				bp.transactionComplete(tid2);
 				Thread.sleep(rand.nextInt(WAIT_INTERVAL));
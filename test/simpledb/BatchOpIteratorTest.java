@@ -0,0 +1,123 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BatchOpIteratorTest extends SimpleDbTestBase {
+
+    private HeapFile left, right;
+    private TransactionId tid;
+
+    @Before
+    public void setUp() throws Exception {
+        left = SystemTestUtil.createRandomHeapFile(3, 5000, 100, null, null);
+        right = SystemTestUtil.createRandomHeapFile(2, 300, 100, null, null);
+        tid = new TransactionId();
+    }
+
+    /** @return the tuples of op, as lists of ints, in order */
+    private List<ArrayList<Integer>> rows(OpIterator op) throws Exception {
+        ArrayList<ArrayList<Integer>> list = new ArrayList<ArrayList<Integer>>();
+        op.open();
+        while (op.hasNext())
+            list.add(SystemTestUtil.tupleToList(op.next()));
+        op.close();
+        return list;
+    }
+
+    /** @return the tuples of op, read a batch at a time, in order */
+    private List<ArrayList<Integer>> batches(BatchOpIterator op) throws Exception {
+        ArrayList<ArrayList<Integer>> list = new ArrayList<ArrayList<Integer>>();
+        op.open();
+        TupleBatch b;
+        while ((b = op.nextBatch()) != null) {
+            assertTrue(b.size() > 0 && b.size() <= TupleBatch.CAPACITY);
+            for (int i = 0; i < b.size(); i++)
+                list.add(SystemTestUtil.tupleToList(b.getTuple(i)));
+        }
+        op.close();
+        return list;
+    }
+
+    private static final Comparator<ArrayList<Integer>> ORDER = new Comparator<ArrayList<Integer>>() {
+        public int compare(ArrayList<Integer> a, ArrayList<Integer> b) {
+            return a.toString().compareTo(b.toString());
+        }
+    };
+
+    private Project plan() {
+        Filter f = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(30)),
+                new SeqScan(tid, left.getId()));
+        return new Project(new ArrayList<Integer>(Arrays.asList(2, 1)),
+                new Type[] { Type.INT_TYPE, Type.INT_TYPE }, f);
+    }
+
+    /**
+     * A scan, filter and projection return the same tuples in the same
+     * order through batches as one at a time.
+     */
+    @Test
+    public void scanFilterProject() throws Exception {
+        List<ArrayList<Integer>> expected = rows(plan());
+        assertTrue(expected.size() > TupleBatch.CAPACITY);
+        for (ArrayList<Integer> t : expected)
+            assertTrue(t.get(1) < 30);
+        assertEquals(expected, batches(plan()));
+        // a row reader over the batches runs the plan a batch at a time
+        assertEquals(expected, rows(new BatchTupleIterator(plan())));
+    }
+
+    /**
+     * A hash join returns the same tuples through batches, including the
+     * matches of a probe row that are split between two batches.
+     */
+    @Test
+    public void hashEquiJoin() throws Exception {
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        List<ArrayList<Integer>> expected = rows(new HashEquiJoin(p,
+                new SeqScan(tid, left.getId()), new SeqScan(tid, right.getId())));
+        List<ArrayList<Integer>> actual = batches(new HashEquiJoin(p,
+                new SeqScan(tid, left.getId()), new SeqScan(tid, right.getId())));
+        assertTrue(expected.size() > 2 * TupleBatch.CAPACITY);
+        Collections.sort(expected, ORDER);
+        Collections.sort(actual, ORDER);
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * An aggregate reads a row operator through an adapter and returns its
+     * groups through batches.
+     */
+    @Test
+    public void aggregate() throws Exception {
+        int[] data = new int[2 * 3000];
+        for (int i = 0; i < 3000; i++) {
+            data[2 * i] = i % 7;
+            data[2 * i + 1] = i;
+        }
+        OpIterator child = TestUtil.createTupleList(2, data);
+        assertFalse(child instanceof BatchOpIterator);
+        List<ArrayList<Integer>> expected = rows(new Aggregate(child, 1, 0, Aggregator.Op.SUM));
+        List<ArrayList<Integer>> actual = batches(new Aggregate(child, 1, 0, Aggregator.Op.SUM));
+        assertEquals(7, expected.size());
+        assertEquals(expected, actual);
+
+        List<ArrayList<Integer>> all = batches(BatchOpIterator.of(child));
+        assertEquals(3000, all.size());
+        assertEquals(Arrays.asList(3, 2999), all.get(2999));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BatchOpIteratorTest.class);
+    }
+}
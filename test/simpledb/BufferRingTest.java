@@ -0,0 +1,158 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferRingTest extends SimpleDbTestBase {
+
+    private static final int POOL_PAGES = 20;
+    private static final int HOT_PAGES = 4;
+
+    /** HeapFile that counts how often its pages are read from disk */
+    static class CountingHeapFile extends HeapFile {
+        int reads;
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+    }
+
+    /** HeapFile whose reads into a frame fail for one page, and are counted */
+    static class FailingHeapFile extends HeapFile {
+        volatile int failing = -1;
+        int reads;
+
+        FailingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public Page readPage(PageId pid, ByteBuffer frame) {
+            if (pid.getPageNumber() == failing)
+                throw new NoSuchElementException();
+            reads++;
+            return super.readPage(pid, frame);
+        }
+    }
+
+    private CountingHeapFile hot;
+    private HeapFile big;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * HOT_PAGES, 1000, null, null);
+        hot = new CountingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hot, SystemTestUtil.getUUID());
+        big = SystemTestUtil.createRandomHeapFile(2, 504 * POOL_PAGES * 2, null, null);
+        tid = new TransactionId();
+    }
+
+    private void touchHotPages() throws Exception {
+        for (int i = 0; i < HOT_PAGES; i++)
+            Database.getBufferPool().getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+    }
+
+    private int scanBigTable() throws Exception {
+        SeqScan scan = new SeqScan(tid, big.getId(), "");
+        scan.open();
+        int count = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        scan.close();
+        return count;
+    }
+
+    /**
+     * A scan of a table larger than the pool must not evict other pages
+     */
+    @Test public void scanKeepsHotPages() throws Exception {
+        Database.resetBufferPool(POOL_PAGES);
+        touchHotPages();
+        assertEquals(HOT_PAGES, hot.reads);
+
+        assertEquals(504 * POOL_PAGES * 2, scanBigTable());
+        touchHotPages();
+        assertEquals(HOT_PAGES, hot.reads);
+    }
+
+    /**
+     * Without a ring the same scan flushes the hot pages out of the pool
+     */
+    @Test public void scanWithoutRing() throws Exception {
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        bp.setScanRing(Double.MAX_VALUE, BufferPool.DEFAULT_RING_PAGES);
+        touchHotPages();
+        scanBigTable();
+        touchHotPages();
+        assertTrue(hot.reads > HOT_PAGES);
+    }
+
+    @Test public void smallTableHasNoRing() {
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        assertEquals(null, bp.newScanRing(POOL_PAGES / 4));
+        assertEquals(null, bp.newScanRing(POOL_PAGES));
+        assertEquals(POOL_PAGES / 4, bp.newScanRing(POOL_PAGES + 1).capacity());
+    }
+
+    /**
+     * A page the ring fails to read gives its frame back to the pool only:
+     * the ring must not later evict whatever page the pool put there.
+     */
+    @Test public void failedReadLeavesRing() throws Exception {
+        BufferPool bp = Database.resetBufferPool(8, EvictionPolicy.forName("lru", 8), true);
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 40, 1000, null, null);
+        FailingHeapFile file = new FailingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+        // fill all but two frames, which the ring takes
+        for (int i = 30; i < 36; i++)
+            bp.getPage(tid, new HeapPageId(file.getId(), i), Permissions.READ_ONLY);
+        BufferRing ring = bp.newScanRing(file.numPages());
+        assertEquals(2, ring.capacity());
+
+        bp.getPage(tid, new HeapPageId(file.getId(), 0), Permissions.READ_ONLY, ring);
+        file.failing = 1;
+        try {
+            bp.getPage(tid, new HeapPageId(file.getId(), 1), Permissions.READ_ONLY, ring);
+            fail("read should fail");
+        } catch (NoSuchElementException expected) {
+        }
+        file.failing = -1;
+
+        // the freed frame now holds page 1 for another reader
+        int reads = file.reads;
+        bp.getPage(tid, new HeapPageId(file.getId(), 1), Permissions.READ_ONLY);
+        assertEquals(reads + 1, file.reads);
+        for (int i = 2; i < 6; i++)
+            bp.getPage(tid, new HeapPageId(file.getId(), i), Permissions.READ_ONLY, ring);
+        reads = file.reads;
+        bp.getPage(tid, new HeapPageId(file.getId(), 1), Permissions.READ_ONLY);
+        assertEquals(reads, file.reads);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferRingTest.class);
+    }
+}
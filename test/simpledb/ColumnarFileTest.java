@@ -0,0 +1,135 @@
+package simpledb;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ColumnarFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 3000;
+
+    private ColumnarFile cf;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        File f = File.createTempFile("columnar", ".dat");
+        f.deleteOnExit();
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE },
+                new String[] { "a", "s", "b" });
+        for (int i = 0; i < td.numFields(); i++)
+            ColumnarFile.columnFile(f, i).deleteOnExit();
+        cf = new ColumnarFile(f, td);
+        Database.getCatalog().addTable(cf, "columnar");
+        tid = new TransactionId();
+        Database.resetBufferPool(1000);
+        for (int i = 0; i < ROWS; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("s" + i, Type.STRING_LEN));
+            t.setField(2, new IntField(-i));
+            Database.getBufferPool().insertTuple(tid, cf.getId(), t);
+        }
+    }
+
+    @After public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static List<Tuple> scan(OpIterator it) throws Exception {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext())
+            tuples.add(it.next());
+        it.close();
+        return tuples;
+    }
+
+    /** @return the number of pages of the column in the buffer pool */
+    private int resident(int column) {
+        int n = 0;
+        for (int pg = 0; pg < cf.numPages(column); pg++)
+            if (Database.getBufferPool().isResident(new ColumnPageId(cf.getId(), column, pg)))
+                n++;
+        return n;
+    }
+
+    /**
+     * A ColumnScan returns only the requested columns, reading only their
+     * pages, while a SeqScan returns whole tuples.
+     */
+    @Test public void projection() throws Exception {
+        ColumnScan scan = new ColumnScan(tid, cf.getId(), "c", new int[] { 2, 0 });
+        assertEquals("c.b", scan.getTupleDesc().getFieldName(0));
+        List<Tuple> tuples = scan(scan);
+        assertEquals(ROWS, tuples.size());
+        assertEquals(new IntField(-7), tuples.get(7).getField(0));
+        assertEquals(new IntField(7), tuples.get(7).getField(1));
+
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(1000);
+        scan(scan);
+        assertEquals(0, resident(1));
+        assertEquals(cf.numPages(2), resident(2));
+
+        tuples = scan(new SeqScan(tid, cf.getId(), "c"));
+        assertEquals(ROWS, tuples.size());
+        assertEquals(new StringField("s9", Type.STRING_LEN), tuples.get(9).getField(1));
+    }
+
+    /**
+     * Deleted rows disappear from scans, and the rows survive a flush and a
+     * new ColumnarFile over the same files.
+     */
+    @Test public void deleteAndReopen() throws Exception {
+        List<Tuple> tuples = scan(new SeqScan(tid, cf.getId(), "c"));
+        Database.getBufferPool().deleteTuple(tid, tuples.get(5));
+        Database.getBufferPool().deleteTuple(tid, tuples.get(ROWS - 1));
+        try {
+            Database.getBufferPool().deleteTuple(tid, tuples.get(5));
+            fail("row was already deleted");
+        } catch (DbException e) {
+            // expected
+        }
+        Database.getBufferPool().flushAllPages();
+
+        ColumnarFile reopened = new ColumnarFile(cf.getFile(), cf.getTupleDesc());
+        assertEquals(ROWS, reopened.numRows());
+        Database.getCatalog().addTable(reopened, "columnar");
+        Database.resetBufferPool(1000);
+        tuples = scan(new ColumnScan(tid, reopened.getId(), "c", new int[] { 0 }));
+        assertEquals(ROWS - 2, tuples.size());
+        assertEquals(new IntField(6), tuples.get(5).getField(0));
+    }
+
+    /**
+     * Pushed predicates skip the pages whose minimum and maximum rule them
+     * out.
+     */
+    @Test public void predicateSkipsPages() throws Exception {
+        ColumnScan scan = new ColumnScan(tid, cf.getId(), "c", new int[] { 1, 2 });
+        scan.addPredicate(new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(-10)));
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(1000);
+        List<Tuple> tuples = scan(scan);
+        assertEquals(10, tuples.size());
+        assertEquals(new StringField("s9", Type.STRING_LEN), tuples.get(9).getField(0));
+        // the predicate's column is read for the bounds of its pages, but
+        // only the first page of the other column holds a matching row
+        assertTrue(cf.numPages(1) > 50);
+        assertEquals(1, resident(1));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ColumnarFileTest.class);
+    }
+}
@@ -0,0 +1,131 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class EvictionPolicyTest extends SimpleDbTestBase {
+
+    private static final int FRAMES = 8;
+
+    private static PageId pid(int pgNo) {
+        return new HeapPageId(-1, pgNo);
+    }
+
+    /** Fill every frame, touching frames 0 and 1 a few more times. */
+    private static void fillWithHotPages(EvictionPolicy policy) {
+        for (int i = 0; i < FRAMES; i++)
+            policy.loaded(i, pid(i));
+        for (int r = 0; r < 3; r++) {
+            policy.accessed(0);
+            policy.accessed(1);
+        }
+    }
+
+    /**
+     * Simulate a sequential scan of many pages that are each read once,
+     * and check that the hot frames 0 and 1 are never chosen as victims.
+     */
+    private static void checkScanResistant(EvictionPolicy policy) {
+        fillWithHotPages(policy);
+        for (int pg = 100; pg < 200; pg++) {
+            int victim = policy.victim();
+            assertTrue("evicted hot frame " + victim, victim != 0 && victim != 1);
+            policy.removed(victim, true);
+            policy.loaded(victim, pid(pg));
+        }
+    }
+
+    /**
+     * Unit test for LruPolicy
+     */
+    @Test public void lru() {
+        EvictionPolicy policy = new LruPolicy(FRAMES);
+        fillWithHotPages(policy);
+        assertEquals(2, policy.victim());
+        policy.accessed(2);
+        assertEquals(3, policy.victim());
+        policy.removed(3, true);
+        assertEquals(4, policy.victim());
+    }
+
+    /**
+     * Unit test for ClockPolicy: referenced frames get a second chance
+     */
+    @Test public void clock() {
+        EvictionPolicy policy = new ClockPolicy(FRAMES);
+        fillWithHotPages(policy);
+        assertEquals(2, policy.victim());
+        policy.removed(2, true);
+        policy.loaded(2, pid(100));
+        // the hand has passed frames 0-2; frame 3 is next
+        assertEquals(3, policy.victim());
+    }
+
+    /**
+     * Unit test for LruKPolicy with K=2
+     */
+    @Test public void lru2() {
+        checkScanResistant(new LruKPolicy(FRAMES, 2));
+    }
+
+    /**
+     * Unit test for TwoQueuePolicy: a page seen again after leaving A1in
+     * is promoted to the main queue
+     */
+    @Test public void twoQueue() {
+        EvictionPolicy policy = new TwoQueuePolicy(FRAMES);
+        for (int i = 0; i < FRAMES; i++)
+            policy.loaded(i, pid(i));
+        int victim = policy.victim();
+        assertEquals(0, victim);
+        policy.removed(victim, true);
+        // page 0 comes back while it is remembered in A1out
+        policy.loaded(victim, pid(0));
+        for (int pg = 100; pg < 200; pg++) {
+            int v = policy.victim();
+            assertTrue("evicted hot frame", v != victim);
+            policy.removed(v, true);
+            policy.loaded(v, pid(pg));
+        }
+    }
+
+    /**
+     * Unit test for TwoQueuePolicy: a page discarded from the head of A1in,
+     * as on abort, was not evicted, so reading it again does not promote it
+     */
+    @Test public void twoQueueDiscard() {
+        TwoQueuePolicy policy = new TwoQueuePolicy(FRAMES);
+        for (int i = 0; i < FRAMES; i++)
+            policy.loaded(i, pid(i));
+        assertEquals(0, policy.victim());
+        policy.removed(0, false);
+        policy.loaded(0, pid(0));
+        // page 0 is back at the tail of A1in, so it is evicted before
+        // anything in the main queue would be
+        for (int i = 1; i < FRAMES; i++) {
+            assertEquals(i, policy.victim());
+            policy.removed(i, true);
+            policy.loaded(i, pid(100 + i));
+        }
+        assertEquals(0, policy.victim());
+    }
+
+    @Test public void forName() {
+        assertTrue(EvictionPolicy.forName("lru", FRAMES) instanceof LruPolicy);
+        assertTrue(EvictionPolicy.forName("clock", FRAMES) instanceof ClockPolicy);
+        assertTrue(EvictionPolicy.forName("LRU2", FRAMES) instanceof LruKPolicy);
+        assertTrue(EvictionPolicy.forName("2q", FRAMES) instanceof TwoQueuePolicy);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
@@ -0,0 +1,106 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class GraceHashJoinTest extends SimpleDbTestBase {
+
+    private static final JoinPredicate EQ = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+
+    private HeapFile left, right;
+    private TransactionId tid;
+
+    @Before
+    public void setUp() throws Exception {
+        left = SystemTestUtil.createRandomHeapFile(2, 3000, 1000, null, null);
+        right = SystemTestUtil.createRandomHeapFile(2, 2000, 1000, null, null);
+        tid = new TransactionId();
+    }
+
+    /** @return the tuples of op, as lists of ints, in a canonical order */
+    private List<String> rows(OpIterator op) throws Exception {
+        ArrayList<String> list = new ArrayList<String>();
+        while (op.hasNext())
+            list.add(SystemTestUtil.tupleToList(op.next()).toString());
+        Collections.sort(list);
+        return list;
+    }
+
+    private List<String> expected(OpIterator c1, OpIterator c2) throws Exception {
+        HashEquiJoin j = new HashEquiJoin(EQ, c1, c2);
+        j.open();
+        List<String> list = rows(j);
+        j.close();
+        return list;
+    }
+
+    /** A left input that fits in memory is joined without spilling. */
+    @Test
+    public void inMemory() throws Exception {
+        GraceHashJoin j = new GraceHashJoin(EQ, new SeqScan(tid, left.getId()),
+                new SeqScan(tid, right.getId()));
+        j.open();
+        List<String> actual = rows(j);
+        assertEquals(0, j.getPartitionsSpilled());
+        j.close();
+        assertTrue(actual.size() > 0);
+        assertEquals(expected(new SeqScan(tid, left.getId()), new SeqScan(tid, right.getId())),
+                actual);
+    }
+
+    /**
+     * A left input larger than memory is partitioned to disk, and the join
+     * returns the same tuples, again after a rewind.
+     */
+    @Test
+    public void spill() throws Exception {
+        GraceHashJoin j = new GraceHashJoin(EQ, new SeqScan(tid, left.getId()),
+                new SeqScan(tid, right.getId()), 100);
+        j.open();
+        List<String> actual = rows(j);
+        // 3000 tuples need a second level of 16 partitions to fit in 100
+        assertTrue(j.getPartitionsSpilled() > GraceHashJoin.PARTITIONS);
+        List<String> expected = expected(new SeqScan(tid, left.getId()),
+                new SeqScan(tid, right.getId()));
+        assertEquals(expected, actual);
+        j.rewind();
+        assertEquals(expected, rows(j));
+        j.close();
+    }
+
+    /**
+     * A key too common to fit in memory even after repartitioning is joined
+     * a chunk of its left tuples at a time.
+     */
+    @Test
+    public void skew() throws Exception {
+        int[] l = new int[2 * 500];
+        for (int i = 0; i < 500; i++) {
+            l[2 * i] = i < 400 ? 7 : i;
+            l[2 * i + 1] = i;
+        }
+        int[] r = { 7, 0, 7, 1, 8, 2, 450, 3 };
+        GraceHashJoin j = new GraceHashJoin(EQ, TestUtil.createTupleList(2, l),
+                TestUtil.createTupleList(2, r), 50);
+        j.open();
+        List<String> actual = rows(j);
+        j.close();
+        assertEquals(2 * 400 + 1, actual.size());
+        assertEquals(expected(TestUtil.createTupleList(2, l), TestUtil.createTupleList(2, r)),
+                actual);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(GraceHashJoinTest.class);
+    }
+}
@@ -3,6 +3,7 @@ package simpledb;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
 
+import java.io.File;
 import java.util.*;
 import org.junit.After;
 import org.junit.Before;
@@ -122,6 +123,27 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         it.close();
     }
 
+    /**
+     * Reading opens the file read-only and never creates it.
+     */
+    @Test
+    public void readOnly() throws Exception {
+        hf.close();
+        assertTrue(hf.getFile().setWritable(false));
+        try {
+            HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0));
+            assertEquals(484, page.getNumEmptySlots());
+        } finally {
+            hf.getFile().setWritable(true);
+        }
+
+        File missing = new File(hf.getFile().getPath() + ".missing");
+        HeapFile empty = new HeapFile(missing, td);
+        HeapPage page = (HeapPage) empty.readPage(new HeapPageId(empty.getId(), 0));
+        assertEquals(504, page.getNumEmptySlots());
+        assertFalse(missing.exists());
+    }
+
     /**
      * JUnit suite target
      */
@@ -1,5 +1,9 @@
 package simpledb;
 
+import java.io.RandomAccessFile;
+
+import simpledb.systemtest.SystemTestUtil;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,6 +47,113 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Pages added by inserts are counted once, before and after they are
+     * flushed to the file.
+     */
+    @Test public void numPagesAfterFlush() throws Exception {
+        for (int i = 0; i < 505; ++i)
+            Database.getBufferPool().insertTuple(tid, empty.getId(), Utility.getHeapTuple(i, 2));
+        assertEquals(2, empty.numPages());
+        Database.getBufferPool().flushAllPages();
+        assertEquals(2, empty.numPages());
+    }
+
+    /**
+     * Inserts go to the page with free space, which the free space map
+     * remembers across opens of the file.
+     */
+    @Test public void freeSpaceMap() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 1008, null, null);
+        FreeSpaceMap.fileFor(hf.getFile()).deleteOnExit();
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Tuple t = null;
+        for (int i = 0; i < 506 && it.hasNext(); i++)
+            t = it.next();
+        it.close();
+        assertEquals(1, t.getRecordId().getPageId().getPageNumber());
+
+        HeapPage page = (HeapPage) hf.deleteTuple(tid, t).get(0);
+        hf.writePage(page);
+        assertEquals(1, new HeapFile(hf.getFile(), hf.getTupleDesc()).freeSpace().get(1));
+        assertEquals(0, hf.freeSpace().get(0));
+
+        Tuple u = Utility.getHeapTuple(1, 2);
+        assertSame(page, hf.insertTuple(tid, u).get(0));
+        assertEquals(2, hf.numPages());
+        assertEquals(0, hf.freeSpace().get(1));
+    }
+
+    /**
+     * Deletes and updates through the BufferPool go to the tuple's RecordId.
+     */
+    @Test public void deleteAndUpdate() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 1008, null, null);
+        FreeSpaceMap.fileFor(hf.getFile()).deleteOnExit();
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Tuple first = it.next();
+        Tuple second = it.next();
+        it.close();
+
+        Tuple update = Utility.getHeapTuple(new int[] { -1, -2 });
+        update.setRecordId(second.getRecordId());
+        Database.getBufferPool().updateTuple(tid, update);
+        Database.getBufferPool().deleteTuple(tid, first);
+        assertEquals(1, hf.freeSpace().get(0));
+
+        it.open();
+        Tuple t = it.next();
+        it.close();
+        assertEquals(second.getRecordId(), t.getRecordId());
+        assertTrue(TestUtil.compareTuples(update, t));
+
+        try {
+            hf.deleteTuple(tid, first);
+            fail("deleting a deleted tuple should throw an DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+        Tuple elsewhere = Utility.getHeapTuple(1, 2);
+        elsewhere.setRecordId(new RecordId(new HeapPageId(hf.getId(), 2), 0));
+        try {
+            hf.deleteTuple(tid, elsewhere);
+            fail("deleting a tuple of no page should throw an DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+    }
+
+    /**
+     * Writing a page only writes the bytes changed since it was read.
+     */
+    @Test public void writeChangedBytes() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504, null, null);
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        HeapPage page = (HeapPage) hf.readPage(pid);
+        byte[] expected = page.getPageData();
+
+        // change the last slot on disk behind the page's back
+        int end = BufferPool.getPageSize() - 1;
+        RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "rw");
+        raf.seek(end);
+        raf.write(expected[end] + 1);
+        raf.close();
+
+        Tuple t = page.iterator().next();
+        page.deleteTuple(t);
+        page.insertTuple(t);
+        hf.writePage(page);
+        byte[] written = hf.readPage(pid).getPageData();
+        assertEquals((byte) (expected[end] + 1), written[end]);
+        written[end] = expected[end];
+        assertArrayEquals(expected, written);
+        assertArrayEquals(page.getPageData(), expected);
+    }
+
     /**
      * JUnit suite target
      */
@@ -120,6 +120,57 @@ public class HeapPageReadTest extends SimpleDbTestBase {
             assertFalse(page.isSlotUsed(i));
     }
 
+    /**
+     * Unit test for HeapPage.matches(), which compares against the page
+     * bytes, and the predicate iterator built on it.
+     */
+    @Test public void matches() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        for (Predicate.Op op : Predicate.Op.values()) {
+            for (int operand : new int[] { 0, 17876, 30000, 62778, 70000 }) {
+                Predicate p = new Predicate(1, op, new IntField(operand));
+                int expected = 0;
+                for (int slot = 0; slot < EXAMPLE_VALUES.length; slot++) {
+                    boolean pass = new IntField(EXAMPLE_VALUES[slot][1]).compare(op, p.getOperand());
+                    assertEquals(pass, page.matches(slot, p));
+                    if (pass)
+                        expected++;
+                }
+                int count = 0;
+                Iterator<Tuple> it = page.iterator(new Predicate[] { p });
+                while (it.hasNext()) {
+                    assertTrue(p.filter(it.next()));
+                    count++;
+                }
+                assertEquals(expected, count);
+            }
+        }
+    }
+
+    /**
+     * Raw comparison of string fields agrees with StringField.compare.
+     */
+    @Test public void matchesStrings() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE });
+        Database.getCatalog().addTable(new SkeletonFile(-2, td), SystemTestUtil.getUUID());
+        HeapPage page = new HeapPage(new HeapPageId(-2, 0), HeapPage.createEmptyPageData());
+        String[] values = { "", "a", "abc", "abd", "b", "xabcx" };
+        for (String v : values) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new StringField(v, Type.STRING_LEN));
+            page.insertTuple(t);
+        }
+        for (Predicate.Op op : Predicate.Op.values()) {
+            for (String operand : values) {
+                Predicate p = new Predicate(0, op, new StringField(operand, Type.STRING_LEN));
+                for (int slot = 0; slot < values.length; slot++)
+                    assertEquals(op + " " + operand + " " + values[slot],
+                            new StringField(values[slot], Type.STRING_LEN).compare(op, p.getOperand()),
+                            page.matches(slot, p));
+            }
+        }
+    }
+
     /**
      * JUnit suite target
      */
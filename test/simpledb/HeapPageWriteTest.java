@@ -126,6 +126,46 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Tuples decode their fields lazily, but keep the values they were read
+     * with after their slot is deleted and reused.
+     */
+    @Test public void tuplesOutliveChanges() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        Tuple first = page.iterator().next();
+        page.deleteTuple(first);
+        page.insertTuple(Utility.getHeapTuple(new int[] { 7, 8 }));
+        assertEquals(HeapPageReadTest.EXAMPLE_VALUES[0][1], ((IntField) first.getField(1)).getValue());
+        assertEquals(HeapPageReadTest.EXAMPLE_VALUES[0][0], ((IntField) first.getField(0)).getValue());
+        Tuple reused = page.iterator().next();
+        assertEquals(7, ((IntField) reused.getField(0)).getValue());
+    }
+
+    /**
+     * Unit test for HeapPage.updateTuple()
+     */
+    @Test public void updateTuple() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        Tuple first = page.iterator().next();
+        int free = page.getNumEmptySlots();
+        Tuple update = Utility.getHeapTuple(new int[] { 7, 8 });
+        update.setRecordId(first.getRecordId());
+        page.updateTuple(update);
+        assertEquals(free, page.getNumEmptySlots());
+        Tuple updated = page.iterator().next();
+        assertEquals(first.getRecordId(), updated.getRecordId());
+        assertTrue(TestUtil.compareTuples(update, updated));
+        assertEquals(HeapPageReadTest.EXAMPLE_VALUES[0][0], ((IntField) first.getField(0)).getValue());
+
+        page.deleteTuple(updated);
+        try {
+            page.updateTuple(update);
+            throw new Exception("update of an empty slot should throw an DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+    }
+
     /**
      * JUnit suite target
      */
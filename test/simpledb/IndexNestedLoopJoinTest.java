@@ -0,0 +1,129 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class IndexNestedLoopJoinTest extends SimpleDbTestBase {
+
+    private HeapFile outer;
+    private BTreeFile inner;
+    private ArrayList<ArrayList<Integer>> outerTuples, innerTuples;
+    private TransactionId tid;
+
+    @Before
+    public void setUp() throws Exception {
+        outerTuples = new ArrayList<ArrayList<Integer>>();
+        innerTuples = new ArrayList<ArrayList<Integer>>();
+        outer = SystemTestUtil.createRandomHeapFile(2, 300, 500, null, outerTuples);
+        inner = BTreeUtility.createRandomBTreeFile(2, 2000, 500, null, innerTuples, 0);
+        tid = new TransactionId();
+    }
+
+    /** @return the tuples of op, as lists of ints, in a canonical order */
+    private List<String> rows(OpIterator op) throws Exception {
+        ArrayList<String> list = new ArrayList<String>();
+        while (op.hasNext())
+            list.add(SystemTestUtil.tupleToList(op.next()).toString());
+        Collections.sort(list);
+        return list;
+    }
+
+    /** @return the pairs of outer and inner tuples matching p, by brute force */
+    private List<String> expected(JoinPredicate p, Predicate innerFilter) {
+        ArrayList<String> list = new ArrayList<String>();
+        for (ArrayList<Integer> t1 : outerTuples) {
+            for (ArrayList<Integer> t2 : innerTuples) {
+                IntField f1 = new IntField(t1.get(p.getField1()));
+                IntField f2 = new IntField(t2.get(p.getField2()));
+                if (!f1.compare(p.getOperator(), f2))
+                    continue;
+                if (innerFilter != null && !new IntField(t2.get(innerFilter.getField()))
+                        .compare(innerFilter.getOp(), innerFilter.getOperand()))
+                    continue;
+                ArrayList<Integer> row = new ArrayList<Integer>(t1);
+                row.addAll(t2);
+                list.add(row.toString());
+            }
+        }
+        Collections.sort(list);
+        return list;
+    }
+
+    /** Each outer key is looked up in the B+ tree, for each supported predicate. */
+    @Test
+    public void predicates() throws Exception {
+        Predicate.Op[] ops = { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+                Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN,
+                Predicate.Op.GREATER_THAN_OR_EQ };
+        for (Predicate.Op op : ops) {
+            JoinPredicate p = new JoinPredicate(1, op, 0);
+            IndexNestedLoopJoin j = new IndexNestedLoopJoin(p, new SeqScan(tid, outer.getId()),
+                    new SeqScan(tid, inner.getId()));
+            j.open();
+            List<String> expected = expected(p, null);
+            assertTrue(expected.size() > 0);
+            assertEquals(op.toString(), expected, rows(j));
+            j.rewind();
+            assertEquals(op.toString(), expected, rows(j));
+            j.close();
+        }
+    }
+
+    /** Filters over the inner scan apply to the tuples looked up. */
+    @Test
+    public void innerFilter() throws Exception {
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        Predicate f = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(250));
+        OpIterator innerPlan = new Filter(f, new SeqScan(tid, inner.getId()));
+        assertTrue(IndexNestedLoopJoin.canProbe(innerPlan, 0));
+        IndexNestedLoopJoin j = new IndexNestedLoopJoin(p, new SeqScan(tid, outer.getId()),
+                innerPlan);
+        j.open();
+        assertEquals(expected(p, f), rows(j));
+        j.close();
+    }
+
+    /** Only a scan of a B+ tree keyed on the join field can be looked up. */
+    @Test
+    public void canProbe() throws Exception {
+        assertTrue(IndexNestedLoopJoin.canProbe(new SeqScan(tid, inner.getId()), 0));
+        assertFalse(IndexNestedLoopJoin.canProbe(new SeqScan(tid, inner.getId()), 1));
+        assertFalse(IndexNestedLoopJoin.canProbe(new SeqScan(tid, outer.getId()), 0));
+        try {
+            new IndexNestedLoopJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                    new SeqScan(tid, inner.getId()), new SeqScan(tid, outer.getId()));
+            fail("joined by looking up a heap file");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /** The optimizer looks up a small outer side, and hashes a large one. */
+    @Test
+    public void instantiateJoin() throws Exception {
+        SeqScan o = new SeqScan(tid, outer.getId(), "o");
+        SeqScan i = new SeqScan(tid, inner.getId(), "i");
+        LogicalJoinNode lj = new LogicalJoinNode("o", "i",
+                o.getTupleDesc().getFieldName(0), i.getTupleDesc().getFieldName(0),
+                Predicate.Op.EQUALS);
+        int pages = 2000;
+        double cost = pages * TableStats.IOCOSTPERPAGE;
+        assertTrue(JoinOptimizer.instantiateJoin(lj, o, i, 10, 1000000, cost, cost)
+                instanceof IndexNestedLoopJoin);
+        assertTrue(JoinOptimizer.instantiateJoin(lj, o, i, 100000, 1000000, cost, cost)
+                instanceof GraceHashJoin);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IndexNestedLoopJoinTest.class);
+    }
+}
@@ -0,0 +1,56 @@
+package simpledb;
+
+import java.util.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class IntMultimapTest {
+
+    private static List<String> values(IntMultimap<String> map, int key) {
+        ArrayList<String> list = new ArrayList<String>();
+        for (int r = map.first(key); r >= 0; r = map.next(r))
+            list.add(map.get(r));
+        return list;
+    }
+
+    /** The values of a key come back in the order they were added. */
+    @Test
+    public void putAndWalk() {
+        IntMultimap<String> map = new IntMultimap<String>();
+        map.put(3, "a");
+        map.put(-7, "b");
+        map.put(3, "c");
+        map.put(0, "d");
+        assertEquals(Arrays.asList("a", "c"), values(map, 3));
+        assertEquals(Arrays.asList("b"), values(map, -7));
+        assertEquals(Arrays.asList("d"), values(map, 0));
+        assertEquals(-1, map.first(4));
+        assertEquals(4, map.size());
+        assertEquals("c", map.get(2));
+    }
+
+    /** The table grows past its initial size and can be cleared. */
+    @Test
+    public void growAndClear() {
+        IntMultimap<String> map = new IntMultimap<String>(4);
+        for (int i = 0; i < 10000; i++)
+            map.put(i % 3000 * 65536, Integer.toString(i));
+        assertEquals(10000, map.size());
+        assertEquals(Arrays.asList("5", "3005", "6005", "9005"), values(map, 5 * 65536));
+        assertEquals(Arrays.asList("2999", "5999", "8999"), values(map, 2999 * 65536));
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.first(5 * 65536));
+        map.put(1, "x");
+        assertEquals(Arrays.asList("x"), values(map, 1));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IntMultimapTest.class);
+    }
+}
@@ -179,6 +179,34 @@ public class IntegerAggregatorTest extends SimpleDbTestBase {
     }
   }
 
+  /**
+   * Test IntegerAggregator over many groups, whose sums overflow an int
+   * before they are averaged
+   */
+  @Test public void manyGroups() throws Exception {
+    int groups = 5000, perGroup = 4;
+    int[] values = new int[groups * perGroup * 2];
+    for (int i = 0; i < groups * perGroup; i++) {
+      values[2 * i] = (i % groups) * 7 - groups;
+      values[2 * i + 1] = Integer.MAX_VALUE - i / groups;
+    }
+    OpIterator scan = TestUtil.createTupleList(width1, values);
+    scan.open();
+    IntegerAggregator agg = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.AVG);
+    while (scan.hasNext())
+      agg.mergeTupleIntoGroup(scan.next());
+
+    // each group averages MAX_VALUE, ..., MAX_VALUE - 3, rounding down
+    int[] expected = new int[groups * 2];
+    for (int g = 0; g < groups; g++) {
+      expected[2 * g] = g * 7 - groups;
+      expected[2 * g + 1] = Integer.MAX_VALUE - 2;
+    }
+    OpIterator it = agg.iterator();
+    it.open();
+    TestUtil.matchAllTuples(TestUtil.createTupleList(width1, expected), it);
+  }
+
   /**
    * JUnit suite target
    */
@@ -105,6 +105,34 @@ public class JoinTest extends SimpleDbTestBase {
     TestUtil.matchAllTuples(eqJoin, op);
   }
 
+  /**
+   * Unit test for Join.getNext() with blocks smaller than the left input,
+   * so the right input is scanned once per block
+   */
+  @Test public void blockJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0);
+    for (int blockTuples = 1; blockTuples <= 3; blockTuples++) {
+      Join op = new Join(pred, scan1, scan2, blockTuples);
+      op.open();
+      gtJoin.open();
+      TestUtil.matchAllTuples(gtJoin, op);
+      gtJoin.close();
+      op.close();
+    }
+  }
+
+  /**
+   * The optimizer charges one scan of the right input per block of left
+   * tuples, plus a comparison per pair
+   */
+  @Test public void blockJoinCost() {
+    int card1 = Join.DEFAULT_BLOCK_TUPLES + 1;
+    assertEquals(10 + 2 * 100 + card1 * 7.0,
+        JoinOptimizer.nestedLoopJoinCost(card1, 7, 10, 100), 0.0);
+    assertEquals(10 + 100 + 5 * 7.0,
+        JoinOptimizer.nestedLoopJoinCost(5, 7, 10, 100), 0.0);
+  }
+
   /**
    * JUnit suite target
    */
@@ -0,0 +1,87 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+    private ArrayList<ArrayList<Integer>> tuples;
+    private MappedHeapFile mf;
+
+    @Before
+    public void setUp() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 2000, 10000, null, tuples);
+        mf = new MappedHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(mf, SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Pages read through the mapping match pages read from the file.
+     */
+    @Test
+    public void readPage() throws Exception {
+        HeapFile hf = new HeapFile(mf.getFile(), mf.getTupleDesc());
+        for (int i = 0; i < mf.numPages(); i++) {
+            HeapPageId pid = new HeapPageId(mf.getId(), i);
+            assertArrayEquals(hf.readPage(pid).getPageData(), mf.readPage(pid).getPageData());
+        }
+        assertEquals(mf.numPages() * (long) BufferPool.getPageSize(), mf.mappedBytes());
+    }
+
+    @Test
+    public void scan() throws Exception {
+        SystemTestUtil.matchTuples(mf, tuples);
+    }
+
+    /**
+     * Modifying a mapped page keeps its before image, and once written the
+     * change is visible through the mapping, including in new pages.
+     */
+    @Test
+    public void writeThrough() throws Exception {
+        HeapPageId pid = new HeapPageId(mf.getId(), 0);
+        HeapPage page = (HeapPage) mf.readPage(pid);
+        byte[] before = page.getPageData();
+        Tuple first = page.iterator().next();
+        page.deleteTuple(first);
+        mf.writePage(page);
+        assertArrayEquals(before, page.getBeforeImage().getPageData());
+        assertArrayEquals(page.getPageData(), mf.readPage(pid).getPageData());
+
+        HeapPageId next = new HeapPageId(mf.getId(), mf.numPages());
+        HeapPage empty = (HeapPage) mf.readPage(next);
+        empty.insertTuple(first);
+        mf.writePage(empty);
+        assertArrayEquals(empty.getPageData(), mf.readPage(next).getPageData());
+    }
+
+    @Test
+    public void catalog() throws Exception {
+        File dir = mf.getFile().getParentFile();
+        String name = mf.getFile().getName().replace(".dat", "");
+        File schema = File.createTempFile("catalog", ".txt", dir);
+        schema.deleteOnExit();
+        FileWriter w = new FileWriter(schema);
+        w.write(name + " (a int, b int) mapped\n");
+        w.close();
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        DbFile f = Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId(name));
+        assertTrue(f instanceof MappedHeapFile);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
@@ -3,6 +3,7 @@ package simpledb;
 import org.junit.Test;
 
 import simpledb.systemtest.SimpleDbTestBase;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 import junit.framework.JUnit4TestAdapter;
@@ -55,6 +56,53 @@ public class PredicateTest extends SimpleDbTestBase{
     }
   }
 
+  /**
+   * A compiled predicate agrees with Predicate.filter() on tuples, on their
+   * serialized bytes and on batches.
+   */
+  @Test public void compiled() throws Exception {
+    TupleDesc td = Utility.getTupleDesc(1);
+    TupleBatch batch = new TupleBatch(td);
+    for (int i = -2; i <= 2; i++)
+      batch.add(Utility.getHeapTuple(i));
+
+    for (Predicate.Op op : Predicate.Op.values()) {
+      for (int v = -1; v <= 1; v++) {
+        Predicate p = new Predicate(0, op, TestUtil.getField(v));
+        CompiledPredicate c = CompiledPredicate.compile(p, td);
+        TupleBatch b = batch.project(td, new int[] { 0 });
+        c.filter(b);
+        int selected = 0;
+        for (int i = -2; i <= 2; i++) {
+          Tuple t = Utility.getHeapTuple(i);
+          java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(td.getSize());
+          td.getFieldType(0).serialize(t.getField(0), buf);
+          assertEquals(p.filter(t), c.test(t));
+          assertEquals(p.filter(t), c.test(td, buf, 0));
+          if (p.filter(t))
+            assertEquals(i, b.getInt(0, b.row(selected++)));
+        }
+        assertEquals(selected, b.size());
+      }
+    }
+
+    // a conjunction, and a predicate on a string field
+    CompiledPredicate both = CompiledPredicate.compile(new Predicate[] {
+        new Predicate(0, Predicate.Op.GREATER_THAN, TestUtil.getField(-2)),
+        new Predicate(0, Predicate.Op.LESS_THAN_OR_EQ, TestUtil.getField(0)) }, td);
+    TupleBatch b = batch.project(td, new int[] { 0 });
+    both.filter(b);
+    assertEquals(2, b.size());
+    assertTrue(both.test(Utility.getHeapTuple(0)));
+    assertFalse(both.test(Utility.getHeapTuple(1)));
+
+    TupleDesc strings = new TupleDesc(new Type[] { Type.STRING_TYPE });
+    Tuple t = new Tuple(strings);
+    t.setField(0, new StringField("b", Type.STRING_LEN));
+    assertTrue(CompiledPredicate.compile(new Predicate(0, Predicate.Op.GREATER_THAN,
+        new StringField("a", Type.STRING_LEN)), strings).test(t));
+  }
+
   /**
    * JUnit suite target
    */
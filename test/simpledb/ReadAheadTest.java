@@ -0,0 +1,69 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+
+    /** HeapFile that counts the pages read by the background I/O threads */
+    static class CountingHeapFile extends HeapFile {
+        final AtomicInteger prefetched = new AtomicInteger();
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public Page readPage(PageId pid) {
+            if (Thread.currentThread().getName().startsWith("simpledb-io"))
+                prefetched.incrementAndGet();
+            return super.readPage(pid);
+        }
+    }
+
+    private CountingHeapFile createTable(int pages, ArrayList<ArrayList<Integer>> tuples) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * pages, 1000, null, tuples);
+        CountingHeapFile table = new CountingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        return table;
+    }
+
+    /**
+     * A sequential scan prefetches pages and still returns every tuple,
+     * whether or not the table fits in the pool
+     */
+    @Test public void scanPrefetches() throws Exception {
+        for (int pages : new int[] { 30, 200 }) {
+            ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+            CountingHeapFile table = createTable(pages, tuples);
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            SystemTestUtil.matchTuples(table, tuples);
+            assertTrue(table.prefetched.get() > 0);
+        }
+    }
+
+    @Test public void disabled() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        CountingHeapFile table = createTable(30, tuples);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES).setReadAhead(0);
+        SystemTestUtil.matchTuples(table, tuples);
+        assertEquals(0, table.prefetched.get());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
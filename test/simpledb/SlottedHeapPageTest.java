@@ -0,0 +1,180 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class SlottedHeapPageTest extends SimpleDbTestBase {
+    private TupleDesc td;
+    private SlottedHeapFile hf;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.VARCHAR_TYPE });
+        File f = File.createTempFile("slotted", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.fileFor(f).deleteOnExit();
+        hf = new SlottedHeapFile(f, td);
+        Database.getCatalog().addTable(hf, "slotted");
+        tid = new TransactionId();
+    }
+
+    @After public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private Tuple tuple(int i, String s) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    private SlottedHeapPage emptyPage() throws IOException {
+        return new SlottedHeapPage(new HeapPageId(hf.getId(), 0),
+                HeapPage.createEmptyPageData());
+    }
+
+    private static List<String> strings(HeapPage page) {
+        List<String> values = new ArrayList<String>();
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext(); )
+            values.add(((StringField) it.next().getField(1)).getValue());
+        return values;
+    }
+
+    /**
+     * Short strings take only their own bytes, and read back intact from
+     * the page's bytes.
+     */
+    @Test public void insertAndRead() throws Exception {
+        SlottedHeapPage page = emptyPage();
+        int n = 0;
+        while (page.freeSpace() >= td.getSize(tuple(n, "v" + n)))
+            page.insertTuple(tuple(n, "v" + n++));
+        // a fixed width HeapPage holds 30 of these tuples
+        assertTrue(n > 250);
+        assertEquals(0, page.getNumEmptySlots());
+        try {
+            page.insertTuple(tuple(n, "v" + n));
+            fail("page should be full");
+        } catch (DbException e) {
+            // expected
+        }
+
+        SlottedHeapPage copy = new SlottedHeapPage(page.getId(), page.getPageData());
+        List<String> values = strings(copy);
+        assertEquals(n, values.size());
+        assertEquals("v0", values.get(0));
+        assertEquals("v" + (n - 1), values.get(n - 1));
+        assertTrue(copy.matches(5, new Predicate(1, Predicate.Op.EQUALS,
+                new StringField("v5", Type.STRING_LEN))));
+    }
+
+    /**
+     * Deleted slots are reused, and the space of deleted and grown tuples
+     * is collected when an insert or update needs it.
+     */
+    @Test public void deleteAndUpdate() throws Exception {
+        SlottedHeapPage page = emptyPage();
+        String big = new String(new char[60]).replace('\0', 'x');
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        while (page.freeSpace() >= td.getSize(tuple(0, big))) {
+            Tuple t = tuple(tuples.size(), big);
+            page.insertTuple(t);
+            tuples.add(t);
+        }
+        page.deleteTuple(tuples.get(3));
+        page.deleteTuple(tuples.get(7));
+        assertFalse(page.isSlotUsed(3));
+
+        // a tuple twice as long fits in the space of the two deleted ones
+        Tuple t = tuple(-1, big + big);
+        page.insertTuple(t);
+        assertEquals(3, t.getRecordId().getTupleNumber());
+
+        Tuple shrunk = tuple(5, "small");
+        shrunk.setRecordId(tuples.get(5).getRecordId());
+        page.updateTuple(shrunk);
+        Tuple grown = tuple(6, big + "yy");
+        grown.setRecordId(tuples.get(6).getRecordId());
+        assertTrue(page.canUpdate(grown));
+        page.updateTuple(grown);
+
+        List<String> values = strings(new SlottedHeapPage(page.getId(), page.getPageData()));
+        assertEquals(tuples.size() - 1, values.size());
+        assertEquals(big + big, values.get(3));
+        assertEquals(big, values.get(4));
+        assertEquals("small", values.get(5));
+        assertEquals(big + "yy", values.get(6));
+        assertEquals(big, values.get(7));
+    }
+
+    /**
+     * The encoder writes slotted pages a SlottedHeapFile reads, in a
+     * fraction of the pages of a fixed width table.
+     */
+    @Test public void encodeAndScan() throws Exception {
+        File txt = File.createTempFile("slotted", ".txt");
+        txt.deleteOnExit();
+        PrintWriter out = new PrintWriter(new FileWriter(txt));
+        for (int i = 0; i < 1000; i++)
+            out.println(i + ",name" + i);
+        out.close();
+        HeapFileEncoder.convertSlotted(txt, hf.getFile(),
+                new Type[] { Type.INT_TYPE, Type.VARCHAR_TYPE }, ',');
+        File fixed = File.createTempFile("fixed", ".dat");
+        fixed.deleteOnExit();
+        HeapFileEncoder.convert(txt, fixed, BufferPool.getPageSize(), 2,
+                new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+
+        assertTrue(fixed.length() / BufferPool.getPageSize() >= 3 * hf.numPages());
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(new StringField("name" + ((IntField) t.getField(0)).getValue(),
+                    Type.STRING_LEN), t.getField(1));
+            n++;
+        }
+        it.close();
+        assertEquals(1000, n);
+
+        // an update that outgrows a full page moves the tuple
+        it.open();
+        it.hasNext();
+        Tuple t = tuple(0, new String(new char[120]).replace('\0', 'z'));
+        t.setRecordId(it.next().getRecordId());
+        it.close();
+        hf.updateTuple(tid, t);
+        assertTrue(t.getRecordId().getPageId().getPageNumber() > 0);
+        assertEquals(1000, count());
+    }
+
+    private int count() throws Exception {
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+    }
+}
@@ -0,0 +1,151 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class SortMergeJoinTest extends SimpleDbTestBase {
+
+    private HeapFile left, right;
+    private TransactionId tid;
+
+    @Before
+    public void setUp() throws Exception {
+        left = SystemTestUtil.createRandomHeapFile(2, 300, 100, null, null);
+        right = SystemTestUtil.createRandomHeapFile(2, 200, 100, null, null);
+        tid = new TransactionId();
+    }
+
+    /** @return the tuples of op, as lists of ints, in a canonical order */
+    private List<String> rows(OpIterator op) throws Exception {
+        ArrayList<String> list = new ArrayList<String>();
+        while (op.hasNext())
+            list.add(SystemTestUtil.tupleToList(op.next()).toString());
+        Collections.sort(list);
+        return list;
+    }
+
+    /** @return the pairs of left and right tuples matching p, by brute force */
+    private List<String> expected(JoinPredicate p) throws Exception {
+        ArrayList<String> list = new ArrayList<String>();
+        DbFileIterator l = left.iterator(tid);
+        l.open();
+        while (l.hasNext()) {
+            Tuple t1 = l.next();
+            DbFileIterator r = right.iterator(tid);
+            r.open();
+            while (r.hasNext()) {
+                Tuple t2 = r.next();
+                if (p.filter(t1, t2)) {
+                    ArrayList<Integer> row = SystemTestUtil.tupleToList(t1);
+                    row.addAll(SystemTestUtil.tupleToList(t2));
+                    list.add(row.toString());
+                }
+            }
+            r.close();
+        }
+        l.close();
+        Collections.sort(list);
+        return list;
+    }
+
+    /** Unsorted inputs are sorted and merged, for each supported predicate. */
+    @Test
+    public void predicates() throws Exception {
+        Predicate.Op[] ops = { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+                Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN,
+                Predicate.Op.GREATER_THAN_OR_EQ };
+        for (Predicate.Op op : ops) {
+            JoinPredicate p = new JoinPredicate(0, op, 1);
+            SortMergeJoin j = new SortMergeJoin(p, new SeqScan(tid, left.getId()),
+                    new SeqScan(tid, right.getId()));
+            j.open();
+            List<String> expected = expected(p);
+            assertTrue(expected.size() > 0);
+            assertEquals(op.toString(), expected, rows(j));
+            j.rewind();
+            assertEquals(op.toString(), expected, rows(j));
+            j.close();
+        }
+    }
+
+    /**
+     * Inputs already sorted on their join fields are read as they come, and
+     * the output is sorted on the left join field.
+     */
+    @Test
+    public void sortedInputs() throws Exception {
+        JoinPredicate p = new JoinPredicate(1, Predicate.Op.EQUALS, 0);
+        OpIterator l = new OrderBy(1, true, new SeqScan(tid, left.getId()));
+        OpIterator r = new OrderBy(0, true, new SeqScan(tid, right.getId()));
+        assertTrue(SortMergeJoin.isSortedOn(l, 1));
+        assertFalse(SortMergeJoin.isSortedOn(l, 0));
+        assertFalse(SortMergeJoin.isSortedOn(new OrderBy(0, false, r), 0));
+
+        SortMergeJoin j = new SortMergeJoin(p, l, r);
+        assertTrue(SortMergeJoin.isSortedOn(j, 1));
+        assertTrue(SortMergeJoin.isSortedOn(j, 2));
+        j.open();
+        ArrayList<String> actual = new ArrayList<String>();
+        int last = Integer.MIN_VALUE;
+        while (j.hasNext()) {
+            Tuple t = j.next();
+            int key = ((IntField) t.getField(1)).getValue();
+            assertTrue(key >= last);
+            last = key;
+            actual.add(SystemTestUtil.tupleToList(t).toString());
+        }
+        j.close();
+        Collections.sort(actual);
+        assertEquals(expected(p), actual);
+    }
+
+    /** Predicates that cannot be merged are refused. */
+    @Test(expected = IllegalArgumentException.class)
+    public void notEquals() {
+        new SortMergeJoin(new JoinPredicate(0, Predicate.Op.NOT_EQUALS, 0),
+                new SeqScan(tid, left.getId()), new SeqScan(tid, right.getId()));
+    }
+
+    /** Range joins are costed as merges, well below nested loops. */
+    @Test
+    public void rangeJoinCost() {
+        JoinOptimizer jo = new JoinOptimizer(null, new Vector<LogicalJoinNode>());
+        LogicalJoinNode range = new LogicalJoinNode("a", "b", "a.x", "b.y",
+                Predicate.Op.GREATER_THAN);
+        double cost = jo.estimateJoinCost(range, 10000, 10000, 100, 100);
+        assertEquals(JoinOptimizer.sortMergeJoinCost(10000, 10000, 100, 100), cost, 0.0);
+        assertTrue(cost * 10 < JoinOptimizer.nestedLoopJoinCost(10000, 10000, 100, 100));
+    }
+
+    /**
+     * Unsorted inputs of a range join are merged only if they fit in
+     * memory, and nested-loop joined if their sizes are unknown.
+     */
+    @Test
+    public void instantiateRangeJoin() throws Exception {
+        SeqScan l = new SeqScan(tid, left.getId(), "l");
+        SeqScan r = new SeqScan(tid, right.getId(), "r");
+        LogicalJoinNode lj = new LogicalJoinNode("l", "r",
+                l.getTupleDesc().getFieldName(0), r.getTupleDesc().getFieldName(0),
+                Predicate.Op.LESS_THAN);
+        assertTrue(JoinOptimizer.instantiateJoin(lj, l, r, 300, 200, 100, 100)
+                instanceof SortMergeJoin);
+        assertTrue(JoinOptimizer.instantiateJoin(lj, l, r, 100000, 100000, 100, 100)
+                instanceof Join);
+        assertTrue(JoinOptimizer.instantiateJoin(lj, l, r) instanceof Join);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SortMergeJoinTest.class);
+    }
+}
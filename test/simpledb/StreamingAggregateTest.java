@@ -0,0 +1,166 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class StreamingAggregateTest extends SimpleDbTestBase {
+
+    private int[] values;
+
+    @Before
+    public void setUp() {
+        Random r = new Random(24);
+        values = new int[2 * 5000];
+        for (int i = 0; i < values.length; i += 2) {
+            values[i] = r.nextInt(300);
+            values[i + 1] = r.nextInt(2000) - 1000;
+        }
+    }
+
+    /** @return the tuples of op, as strings, sorted */
+    private static List<String> rows(OpIterator op) throws Exception {
+        ArrayList<String> list = new ArrayList<String>();
+        while (op.hasNext())
+            list.add(op.next().toString());
+        Collections.sort(list);
+        return list;
+    }
+
+    /** A sorted input gives the same groups as Aggregate, for each aggregate. */
+    @Test
+    public void matchesAggregate() throws Exception {
+        Aggregator.Op[] ops = { Aggregator.Op.MIN, Aggregator.Op.MAX,
+                Aggregator.Op.SUM, Aggregator.Op.AVG, Aggregator.Op.COUNT };
+        for (Aggregator.Op aop : ops) {
+            Aggregate agg = new Aggregate(TestUtil.createTupleList(2, values), 1, 0, aop);
+            agg.open();
+            List<String> expected = rows(agg);
+
+            for (boolean asc : new boolean[] { true, false }) {
+                OpIterator sorted = new OrderBy(0, asc, TestUtil.createTupleList(2, values));
+                StreamingAggregate op = new StreamingAggregate(sorted, 1, 0, aop);
+                assertEquals(agg.getTupleDesc(), op.getTupleDesc());
+                op.open();
+                assertEquals(aop.toString(), expected, rows(op));
+                op.rewind();
+                assertEquals(aop.toString(), expected, rows(op));
+                op.close();
+            }
+        }
+    }
+
+    /** Groups of strings, and no grouping, are aggregated too. */
+    @Test
+    public void stringsAndNoGrouping() throws Exception {
+        OpIterator scan = TestUtil.createTupleList(2,
+                new Object[] { "a", 2, "a", 4, "b", 2, "c", 7, "c", 1 });
+        StreamingAggregate op = new StreamingAggregate(scan, 1, 0, Aggregator.Op.SUM);
+        op.open();
+        TestUtil.matchAllTuples(TestUtil.createTupleList(2,
+                new Object[] { "a", 6, "b", 2, "c", 8 }), op);
+
+        op = new StreamingAggregate(TestUtil.createTupleList(2, values), 1,
+                Aggregator.NO_GROUPING, Aggregator.Op.COUNT);
+        op.open();
+        TestUtil.matchAllTuples(TestUtil.createTupleList(1, new int[] { 5000 }), op);
+    }
+
+    /** The first group comes out after reading one tuple past it. */
+    @Test
+    public void firstGroupEarly() throws Exception {
+        final int[] read = { 0 };
+        OpIterator sorted = new OrderBy(0, true, TestUtil.createTupleList(2, values)) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Tuple next() throws DbException, TransactionAbortedException {
+                read[0]++;
+                return super.next();
+            }
+        };
+        StreamingAggregate op = new StreamingAggregate(sorted, 1, 0, Aggregator.Op.COUNT);
+        op.open();
+        Tuple first = op.next();
+        assertEquals(((IntField) first.getField(1)).getValue() + 1, read[0]);
+        op.close();
+    }
+
+    /** The planner streams a GROUP BY on the key of a B+ tree. */
+    @Test
+    public void physicalPlan() throws Exception {
+        // a copy of a random B+ tree, with named fields
+        BTreeFile f = BTreeUtility.createRandomBTreeFile(2, 2000, 100, null, null, 0);
+        File copy = File.createTempFile("streamed", ".dat");
+        copy.deleteOnExit();
+        Files.copy(f.getFile().toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        BTreeFile named = BTreeUtility.openBTreeFile(2, "c", copy, 0);
+        TransactionId tid = new TransactionId();
+
+        for (String group : new String[] { "t.c0", "t.c1" }) {
+            LogicalPlan lp = new LogicalPlan();
+            lp.addScan(named.getId(), "t");
+            lp.addAggregate("sum", "t.c1", group);
+            lp.addProjectField(group, null);
+            lp.addProjectField("t.c1", "sum");
+            OpIterator plan = lp.physicalPlan(tid, new HashMap<String, TableStats>(), false);
+            OpIterator agg = ((Operator) plan).getChildren()[0];
+            if (group.equals("t.c0"))
+                assertTrue(agg instanceof StreamingAggregate);
+            else
+                assertTrue(agg instanceof Aggregate);
+        }
+    }
+
+    /** The planner streams a composite key whose second field is the B+ tree key. */
+    @Test
+    public void compositeKeyPlan() throws Exception {
+        BTreeFile f = BTreeUtility.createRandomBTreeFile(2, 2000, 20, null, null, 0);
+        File copy = File.createTempFile("streamed", ".dat");
+        copy.deleteOnExit();
+        Files.copy(f.getFile().toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        BTreeFile named = BTreeUtility.openBTreeFile(2, "c", copy, 0);
+        TransactionId tid = new TransactionId();
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(named.getId(), "t");
+        lp.addGroupBy("t.c1");
+        lp.addGroupBy("t.c0");
+        lp.addAggregate("count", "*", null);
+        lp.addAggregate("max", "t.c1", null);
+        lp.addProjectField("t.c0", null);
+        lp.addProjectField("t.c1", null);
+        lp.addProjectField("t.c1", "max");
+        lp.addProjectField("*", "count");
+        OpIterator plan = lp.physicalPlan(tid, new HashMap<String, TableStats>(), false);
+        OpIterator agg = ((Operator) plan).getChildren()[0];
+        assertTrue(agg instanceof StreamingAggregate);
+        assertArrayEquals(new int[] { 0, 1 }, ((StreamingAggregate) agg).groupFields());
+        // COUNT(*) is computed over the first field, but not named after it
+        assertEquals("count(*)", plan.getTupleDesc().getFieldName(3));
+        assertEquals("aggName(max)t.c1", plan.getTupleDesc().getFieldName(2));
+
+        Aggregate expected = new Aggregate(new SeqScan(tid, named.getId(), "t"),
+                new int[] { 1, 0 }, new int[] { 0, 1 },
+                new Aggregator.Op[] { Aggregator.Op.MAX, Aggregator.Op.COUNT });
+        expected.open();
+        plan.open();
+        assertEquals(rows(expected), rows(plan));
+        plan.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(StreamingAggregateTest.class);
+    }
+}
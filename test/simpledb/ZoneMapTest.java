@@ -0,0 +1,112 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+    private static final int ROWS = 5000;
+
+    private HeapFile hf;
+    private TransactionId tid;
+
+    /** A table whose first column increases with the row, over 10 pages. */
+    @Before
+    public void setUp() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, -i)));
+        File f = File.createTempFile("zonemap", ".dat");
+        f.deleteOnExit();
+        ZoneMap.fileFor(f).deleteOnExit();
+        FreeSpaceMap.fileFor(f).deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.getPageSize(), 2);
+        hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** @return the number of tuples of hf with field 0 op v */
+    private int count(SeqScan scan, Predicate.Op op, int v) throws Exception {
+        scan.addPredicate(new Predicate(0, op, new IntField(v)));
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.close();
+        return n;
+    }
+
+    /**
+     * A scan with a pushed range predicate only reads the pages whose
+     * range overlaps it.
+     */
+    @Test
+    public void skipPages() throws Exception {
+        assertEquals(10, hf.numPages());
+        SeqScan scan = new SeqScan(tid, hf.getId());
+        assertEquals(100, count(scan, Predicate.Op.LESS_THAN, 100));
+        assertEquals(9, scan.getPagesSkipped());
+
+        scan = new SeqScan(tid, hf.getId());
+        assertEquals(1, count(scan, Predicate.Op.EQUALS, 2000));
+        assertEquals(9, scan.getPagesSkipped());
+        assertEquals(18, hf.getPagesSkipped());
+
+        // the second column decreases, so its ranges skip the same pages
+        scan = new SeqScan(tid, hf.getId());
+        scan.addPredicate(new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(-503)));
+        assertEquals(504, count(scan, Predicate.Op.GREATER_THAN_OR_EQ, 0));
+        assertEquals(9, scan.getPagesSkipped());
+
+        // the map was built in memory: scans write nothing
+        assertFalse(ZoneMap.fileFor(hf.getFile()).exists());
+    }
+
+    /**
+     * Inserted tuples widen the ranges of their page, and the ranges are
+     * persisted with the page and read back by a new HeapFile.
+     */
+    @Test
+    public void insertAndReopen() throws Exception {
+        Tuple t = new Tuple(hf.getTupleDesc());
+        t.setField(0, new IntField(7));
+        t.setField(1, new IntField(0));
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        assertEquals(9, t.getRecordId().getPageId().getPageNumber());
+
+        SeqScan scan = new SeqScan(tid, hf.getId());
+        assertEquals(2, count(scan, Predicate.Op.EQUALS, 7));
+        assertEquals(8, scan.getPagesSkipped());
+        Database.getBufferPool().flushAllPages();
+
+        HeapFile reopened = new HeapFile(hf.getFile(), hf.getTupleDesc());
+        ZoneMap zones = reopened.zoneMap();
+        assertEquals(7, zones.getMin(9, 0));
+        assertEquals(ROWS - 1, zones.getMax(9, 0));
+        assertEquals(0, zones.getMin(0, 0));
+        assertEquals(503, zones.getMax(0, 0));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
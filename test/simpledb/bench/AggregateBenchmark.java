@@ -0,0 +1,101 @@
+package simpledb.bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Computes AVG grouped by an INT field, over 10000000 rows in 100000 groups,
+ * with IntegerAggregator's hash table. The linear search over the groups
+ * it replaced takes time proportional to rows times groups, so it is
+ * compared with the hash table on a hundredth of the rows and a tenth of
+ * the groups. Reports the time of each, per row.
+ * <p>
+ * Run with: java -Xmx1g -cp bin/src:bin/test simpledb.bench.AggregateBenchmark [rows] [groups]
+ */
+public class AggregateBenchmark {
+
+    /** The aggregator IntegerAggregator used to be: AVG by linear search. */
+    private static class LinearAggregator {
+        final ArrayList<Tuple> list = new ArrayList<Tuple>();
+        final ArrayList<ArrayList<Integer>> avglist = new ArrayList<ArrayList<Integer>>();
+        final TupleDesc td = Utility.getTupleDesc(2);
+
+        void mergeTupleIntoGroup(Tuple tup) {
+            for (int i = 0; i < list.size(); i++) {
+                if (!list.get(i).getField(0).equals(tup.getField(0)))
+                    continue;
+                int newval = ((IntField) tup.getField(1)).getValue();
+                int oldval = ((IntField) list.get(i).getField(1)).getValue();
+                if (avglist.get(i).size() == 0)
+                    avglist.get(i).add(oldval);
+                avglist.get(i).add(newval);
+                int sum = 0;
+                for (int j : avglist.get(i))
+                    sum += j;
+                list.get(i).setField(1, new IntField(sum / avglist.get(i).size()));
+                return;
+            }
+            Tuple t = new Tuple(td);
+            t.setField(0, tup.getField(0));
+            t.setField(1, tup.getField(1));
+            avglist.add(new ArrayList<Integer>());
+            list.add(t);
+        }
+    }
+
+    /** @return the time, in ns per row, to aggregate rows tuples with keys in [0, groups) */
+    private static double run(Object agg, int rows, IntField[] keys, IntField[] values)
+            throws Exception {
+        Random r = new Random(22);
+        Tuple t = new Tuple(Utility.getTupleDesc(2));
+        long start = System.nanoTime();
+        for (int i = 0; i < rows; i++) {
+            t.setField(0, keys[r.nextInt(keys.length)]);
+            t.setField(1, values[r.nextInt(values.length)]);
+            if (agg instanceof LinearAggregator)
+                ((LinearAggregator) agg).mergeTupleIntoGroup(t);
+            else
+                ((Aggregator) agg).mergeTupleIntoGroup(t);
+        }
+        return (System.nanoTime() - start) / (double) rows;
+    }
+
+    private static IntField[] fields(int n) {
+        IntField[] f = new IntField[n];
+        for (int i = 0; i < n; i++)
+            f[i] = new IntField(i);
+        return f;
+    }
+
+    private static Aggregator hash() {
+        return new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.AVG);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        int groups = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        IntField[] values = fields(1000);
+
+        for (int round = 0; round < 3; round++) {
+            IntField[] keys = fields(groups / 10);
+            double linear = run(new LinearAggregator(), rows / 100, keys, values);
+            double small = run(hash(), rows / 100, keys, values);
+            System.out.printf("%8d rows, %6d groups: linear %8.1f ns/row, hash %6.1f ns/row%n",
+                    rows / 100, keys.length, linear, small);
+            keys = fields(groups);
+            Aggregator agg = hash();
+            double full = run(agg, rows, keys, values);
+            OpIterator it = agg.iterator();
+            it.open();
+            int n = 0;
+            while (it.hasNext()) {
+                it.next();
+                n++;
+            }
+            System.out.printf("%8d rows, %6d groups:                      hash %6.1f ns/row (%d groups, %.0f ms)%n",
+                    rows, groups, full, n, full * rows / 1e6);
+        }
+    }
+}
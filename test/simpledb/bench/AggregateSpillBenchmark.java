@@ -0,0 +1,87 @@
+package simpledb.bench;
+
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Computes SUM grouped by a nearly unique INT field, over 2000000 generated
+ * rows, with every group held in memory and with Aggregate's default
+ * budget of groups, which spills partial state to disk. Reports the time of
+ * each, and the partitions and bytes spilled. With a small heap (say
+ * -Xmx200m) only the budgeted aggregate finishes.
+ * <p>
+ * Run with: java -Xmx1g -cp bin/src:bin/test simpledb.bench.AggregateSpillBenchmark [rows]
+ */
+public class AggregateSpillBenchmark {
+
+    /** Generates rows of a random key and a value, without holding them. */
+    private static class Rows extends Operator {
+        private static final long serialVersionUID = 1L;
+        private final int rows;
+        private final TupleDesc td = Utility.getTupleDesc(2);
+        private Random r;
+        private int n;
+
+        Rows(int rows) {
+            this.rows = rows;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            super.open();
+            rewind();
+        }
+
+        public void rewind() {
+            r = new Random(23);
+            n = 0;
+        }
+
+        protected Tuple fetchNext() {
+            if (n == rows)
+                return null;
+            n++;
+            return Utility.getHeapTuple(new int[] { r.nextInt(rows * 4), r.nextInt(1000) });
+        }
+
+        public TupleDesc getTupleDesc() {
+            return td;
+        }
+
+        public OpIterator[] getChildren() {
+            return new OpIterator[0];
+        }
+
+        public void setChildren(OpIterator[] children) {
+        }
+    }
+
+    private static void run(String name, int rows, int memoryGroups) throws Exception {
+        Aggregate agg = new Aggregate(new Rows(rows), 1, 0, Aggregator.Op.SUM, memoryGroups);
+        long start = System.nanoTime();
+        long n = 0;
+        try {
+            agg.open();
+            while (agg.hasNext()) {
+                agg.next();
+                n++;
+            }
+        } catch (OutOfMemoryError e) {
+            System.out.printf("%-10s out of memory after %.0f ms%n", name,
+                    (System.nanoTime() - start) / 1e6);
+            return;
+        }
+        agg.close();
+        System.out.printf("%-10s %7.0f ms, %d groups, %d partitions, %.1f MB spilled%n",
+                name, (System.nanoTime() - start) / 1e6, n, agg.getPartitionsSpilled(),
+                agg.getBytesSpilled() / 1e6);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        for (int round = 0; round < 3; round++) {
+            run("in memory", rows, Integer.MAX_VALUE);
+            run("budgeted", rows, Aggregate.DEFAULT_MEMORY_GROUPS);
+        }
+    }
+}
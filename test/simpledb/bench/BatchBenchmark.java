@@ -0,0 +1,78 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import simpledb.*;
+
+/**
+ * Runs a Project over a Filter over a SeqScan of an int table, once reading
+ * the Project a tuple at a time and once a batch at a time, and reports the
+ * rows scanned per second of each. The Filter keeps about half the rows.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.BatchBenchmark [rows]
+ */
+public class BatchBenchmark {
+
+    private static HeapFile table(File f, TupleDesc td, int rows) throws Exception {
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, "batchbench");
+        FileOutputStream out = new FileOutputStream(f);
+        HeapPage page = null;
+        for (int i = 0, pg = 0; i < rows; i++) {
+            if (page == null)
+                page = new HeapPage(new HeapPageId(hf.getId(), pg++), HeapPage.createEmptyPageData());
+            page.insertTuple(Utility.getHeapTuple(new int[] { i, i % 100, i * 7, -i }));
+            if (page.getNumEmptySlots() == 0 || i == rows - 1) {
+                out.write(page.getPageData());
+                page = null;
+            }
+        }
+        out.close();
+        return hf;
+    }
+
+    private static Project plan(HeapFile hf) {
+        Filter filter = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(50)),
+                new SeqScan(new TransactionId(), hf.getId(), "t"));
+        return new Project(new ArrayList<Integer>(Arrays.asList(0, 2)),
+                new Type[] { Type.INT_TYPE, Type.INT_TYPE }, filter);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        File f = File.createTempFile("batchbench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = table(f, Utility.getTupleDesc(4), rows);
+        Database.resetBufferPool(hf.numPages() + 10);
+
+        System.out.printf("%d rows of 4 int columns%n", rows);
+        for (int round = 0; round < 5; round++) {
+            Project op = plan(hf);
+            long start = System.nanoTime();
+            long sum = 0;
+            op.open();
+            while (op.hasNext())
+                sum += ((IntField) op.next().getField(1)).getValue();
+            op.close();
+            double tuples = rows / ((System.nanoTime() - start) / 1e9);
+
+            op = plan(hf);
+            start = System.nanoTime();
+            long batchSum = 0;
+            op.open();
+            TupleBatch b;
+            while ((b = op.nextBatch()) != null)
+                for (int i = 0; i < b.size(); i++)
+                    batchSum += b.getInt(1, b.row(i));
+            op.close();
+            double batches = rows / ((System.nanoTime() - start) / 1e9);
+            if (sum != batchSum)
+                throw new IllegalStateException("results differ");
+            System.out.printf("tuple at a time: %10.0f rows/s, batch at a time: %10.0f rows/s%n",
+                    tuples, batches);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Joins two tables of random keys on a range predicate (left key greater
+ * than right key, true of about 0.5% of pairs) with Join a tuple at a time,
+ * which scans the right table once per left tuple, and with Join's default
+ * block of left tuples. Reports the time of each and the right table pages
+ * read through the BufferPool.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.BlockJoinBenchmark [rows]
+ */
+public class BlockJoinBenchmark {
+
+    private static HeapFile table(String name, int rows, int from, Random r) throws Exception {
+        File f = File.createTempFile(name, ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, name);
+        FileOutputStream out = new FileOutputStream(f);
+        HeapPage page = null;
+        for (int i = 0, pg = 0; i < rows; i++) {
+            if (page == null)
+                page = new HeapPage(new HeapPageId(hf.getId(), pg++), HeapPage.createEmptyPageData());
+            page.insertTuple(Utility.getHeapTuple(new int[] { from + r.nextInt(rows * 10), i }));
+            if (page.getNumEmptySlots() == 0 || i == rows - 1) {
+                out.write(page.getPageData());
+                page = null;
+            }
+        }
+        out.close();
+        return hf;
+    }
+
+    /** A scan that counts the tuples it returns, across rewinds. */
+    private static class CountingScan extends SeqScan {
+        private static final long serialVersionUID = 1L;
+        long read;
+
+        CountingScan(int tableId) {
+            super(new TransactionId(), tableId, "r");
+        }
+
+        @Override
+        public Tuple next() throws TransactionAbortedException, DbException {
+            read++;
+            return super.next();
+        }
+    }
+
+    private static void run(String name, HeapFile left, HeapFile right, int blockTuples)
+            throws Exception {
+        CountingScan scan = new CountingScan(right.getId());
+        Join join = new Join(new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0),
+                new SeqScan(new TransactionId(), left.getId(), "l"), scan, blockTuples);
+        long start = System.nanoTime();
+        long n = 0;
+        join.open();
+        while (join.hasNext()) {
+            join.next();
+            n++;
+        }
+        join.close();
+        double pages = scan.read / 504.0;
+        System.out.printf("%-16s %8.0f ms, %d tuples, %.0f right pages read (table has %d)%n",
+                name, (System.nanoTime() - start) / 1e6, n, pages, right.numPages());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        Random r = new Random(20);
+        HeapFile left = table("blockleft", rows, 0, r);
+        HeapFile right = table("blockright", rows, rows * 9, r);
+        Database.resetBufferPool(left.numPages() + right.numPages() + 10);
+
+        for (int round = 0; round < 3; round++) {
+            run("tuple at a time", left, right, 1);
+            run("block", left, right, Join.DEFAULT_BLOCK_TUPLES);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package simpledb.bench;
+
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures the latency of a BufferPool.getPage() hit for pools of various
+ * sizes. Every page of the table fits in the pool, so after the warm-up
+ * pass every access is a hit and the numbers reflect page table lookup
+ * cost only.
+ * <p>
+ * Run with: java -Xmx1g -cp bin/src:bin/test simpledb.bench.BufferPoolBenchmark [frames...]
+ */
+public class BufferPoolBenchmark {
+
+    private static final int LOOKUPS = 2000000;
+
+    /** DbFile that produces empty pages without touching the disk. */
+    static class MemoryFile extends TestUtil.SkeletonFile {
+        MemoryFile(int tableid, TupleDesc td) {
+            super(tableid, td);
+        }
+
+        public Page readPage(PageId id) {
+            try {
+                return new HeapPage((HeapPageId) id, HeapPage.createEmptyPageData());
+            } catch (java.io.IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    static double hitLatencyNanos(int frames) throws Exception {
+        Database.reset();
+        MemoryFile file = new MemoryFile(42, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(file, "bench");
+        BufferPool bp = Database.resetBufferPool(frames);
+        TransactionId tid = new TransactionId();
+
+        PageId[] pids = new PageId[frames];
+        for (int i = 0; i < frames; i++) {
+            pids[i] = new HeapPageId(file.getId(), i);
+            bp.getPage(tid, pids[i], Permissions.READ_ONLY);
+        }
+
+        Random r = new Random(1);
+        int[] order = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++)
+            order[i] = r.nextInt(frames);
+
+        // one untimed pass to let the JIT settle
+        for (int i = 0; i < LOOKUPS; i++)
+            bp.getPage(tid, pids[order[i]], Permissions.READ_ONLY);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++)
+            bp.getPage(tid, pids[order[i]], Permissions.READ_ONLY);
+        return (System.nanoTime() - start) / (double) LOOKUPS;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = { 50, 1000, 100000 };
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                sizes[i] = Integer.parseInt(args[i]);
+        }
+        for (int frames : sizes)
+            System.out.printf("%8d frames: %8.1f ns/hit%n", frames, hitLatencyNanos(frames));
+    }
+}
@@ -0,0 +1,107 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import simpledb.*;
+
+/**
+ * Stores the same wide table of int columns as a HeapFile and as a
+ * ColumnarFile, then reads two of its columns from each, with a SeqScan
+ * under a Project for the HeapFile and a ColumnScan for the ColumnarFile.
+ * Reports the rate and the megabytes of pages read for each.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.ColumnScanBenchmark [rows] [columns]
+ */
+public class ColumnScanBenchmark {
+
+    private static Tuple row(TupleDesc td, int i) {
+        Tuple t = new Tuple(td);
+        for (int j = 0; j < td.numFields(); j++)
+            t.setField(j, new IntField(i * 31 + j));
+        return t;
+    }
+
+    private static HeapFile heapTable(File f, TupleDesc td, int rows) throws Exception {
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, "heap");
+        FileOutputStream out = new FileOutputStream(f);
+        HeapPage page = null;
+        for (int i = 0, pg = 0; i < rows; i++) {
+            if (page == null)
+                page = new HeapPage(new HeapPageId(hf.getId(), pg++), HeapPage.createEmptyPageData());
+            page.insertTuple(row(td, i));
+            if (page.getNumEmptySlots() == 0 || i == rows - 1) {
+                out.write(page.getPageData());
+                page = null;
+            }
+        }
+        out.close();
+        return hf;
+    }
+
+    private static ColumnarFile columnarTable(File f, TupleDesc td, int rows) throws Exception {
+        ColumnarFile cf = new ColumnarFile(f, td);
+        for (int i = 0; i < td.numFields(); i++)
+            ColumnarFile.columnFile(f, i).deleteOnExit();
+        Database.getCatalog().addTable(cf, "columnar");
+        int pages = 0;
+        for (int i = 0; i < td.numFields(); i++)
+            pages += rows / cf.rowsPerPage(i) + 1;
+        BufferPool pool = Database.resetBufferPool(pages + 10);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < rows; i++)
+            pool.insertTuple(tid, cf.getId(), row(td, i));
+        pool.transactionComplete(tid);
+        pool.flushAllPages();
+        return cf;
+    }
+
+    /** @return rows per second of scanning op to its end */
+    private static double rate(OpIterator op) throws Exception {
+        Database.resetBufferPool(1000);
+        long start = System.nanoTime();
+        op.open();
+        long rows = 0;
+        while (op.hasNext()) {
+            op.next();
+            rows++;
+        }
+        op.close();
+        return rows / ((System.nanoTime() - start) / 1e9);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        TupleDesc td = Utility.getTupleDesc(width);
+        File heap = File.createTempFile("columnbench", ".dat");
+        heap.deleteOnExit();
+        File columnar = File.createTempFile("columnbench", ".dat");
+        columnar.deleteOnExit();
+        HeapFile hf = heapTable(heap, td, rows);
+        ColumnarFile cf = columnarTable(columnar, td, rows);
+        int[] columns = { 3, 11 };
+        double heapMB = heap.length() / (double) (1 << 20);
+        double columnMB = 0;
+        for (int c : columns)
+            columnMB += cf.numPages(c) * (double) BufferPool.getPageSize() / (1 << 20);
+
+        System.out.printf("%d rows of %d int columns, scanning columns %s%n",
+                rows, width, Arrays.toString(columns));
+        for (int round = 0; round < 3; round++) {
+            ArrayList<Integer> fields = new ArrayList<Integer>();
+            for (int c : columns)
+                fields.add(c);
+            Project project = new Project(fields, new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+                    new SeqScan(new TransactionId(), hf.getId(), "h"));
+            System.out.printf("HeapFile   SeqScan+Project: %10.0f rows/s, %7.1f MB read%n",
+                    rate(project), heapMB);
+            ColumnScan scan = new ColumnScan(new TransactionId(), cf.getId(), "c", columns);
+            System.out.printf("ColumnarFile ColumnScan:    %10.0f rows/s, %7.1f MB read%n",
+                    rate(scan), columnMB);
+        }
+    }
+}
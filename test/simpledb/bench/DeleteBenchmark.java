@@ -0,0 +1,73 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import simpledb.*;
+
+/**
+ * Deletes tuples spread evenly over full two column tables of increasing
+ * size, first by running a Delete operator over them and then by calling
+ * HeapFile.deleteTuple directly, and reports the cost per deleted row. The
+ * sizes are run twice, the first time to warm up.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.DeleteBenchmark [deletes]
+ */
+public class DeleteBenchmark {
+
+    /**
+     * @return n tuples of hf, spread evenly over its rows, taken from the
+     *         even slots if odd is false and from the odd slots otherwise
+     */
+    private static ArrayList<Tuple> sample(HeapFile hf, int n, boolean odd) throws Exception {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        TransactionId tid = new TransactionId();
+        long rows = hf.numPages() * 504L;
+        long step = Math.max(2, rows / n) & ~1L;
+        HeapPage p = null;
+        for (long row = odd ? 1 : 0; row < rows - 1 && tuples.size() < n; row += step) {
+            int pg = (int) (row / 504);
+            if (p == null || p.getId().getPageNumber() != pg)
+                p = (HeapPage) Database.getBufferPool().getPage(tid,
+                        new HeapPageId(hf.getId(), pg), Permissions.READ_ONLY);
+            java.util.Iterator<Tuple> it = p.iterator();
+            for (int i = 0; i < row % 504; i++)
+                it.next();
+            tuples.add(it.next());
+        }
+        return tuples;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int deletes = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        for (int rows : new int[] { 10000, 100000, 1000000, 10000, 100000, 1000000 }) {
+            int pages = rows / 504;
+            File f = File.createTempFile("deletebench", ".dat");
+            f.deleteOnExit();
+            new File(f.getPath() + ".fsm").deleteOnExit();
+            HeapFile hf = ScanBenchmark.createTable(f, pages);
+            BufferPool pool = Database.resetBufferPool(pages + 10);
+            TransactionId tid = new TransactionId();
+            ArrayList<Tuple> tuples = sample(hf, deletes, false);
+            ArrayList<Tuple> odd = sample(hf, deletes, true);
+            // the first delete from a table loads its free space map
+            pool.deleteTuple(tid, odd.remove(0));
+
+            Delete delete = new Delete(tid, new TupleIterator(hf.getTupleDesc(), tuples));
+            long start = System.nanoTime();
+            delete.open();
+            delete.next();
+            delete.close();
+            double op = (System.nanoTime() - start) / 1e3 / tuples.size();
+
+            tuples = odd;
+            start = System.nanoTime();
+            for (Tuple t : tuples)
+                hf.deleteTuple(tid, t);
+            double file = (System.nanoTime() - start) / 1e3 / tuples.size();
+            System.out.printf("%8d rows: Delete %8.2f us/row, HeapFile.deleteTuple %8.2f us/row%n",
+                    pages * 504, op, file);
+            pool.transactionComplete(tid);
+        }
+    }
+}
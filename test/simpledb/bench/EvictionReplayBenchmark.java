@@ -0,0 +1,124 @@
+package simpledb.bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Replays a page access trace against each eviction policy and reports the
+ * hit ratio. Traces are recorded with {@link BufferPool#setAccessTrace}: one
+ * access per line, the integers of {@link PageId#serialize}. Without a trace
+ * file a synthetic OLTP + scan workload is generated: a hot set of index
+ * pages read constantly, interleaved with full scans of a large table.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.EvictionReplayBenchmark [frames] [trace]
+ */
+public class EvictionReplayBenchmark {
+
+    /** page id built from the integers of a trace line */
+    static class TracePageId implements PageId {
+        private final int[] data;
+
+        TracePageId(int... data) {
+            this.data = data;
+        }
+
+        public int[] serialize() {
+            return data;
+        }
+
+        public int getTableId() {
+            return data[0];
+        }
+
+        public int getPageNumber() {
+            return data[1];
+        }
+
+        public int hashCode() {
+            return Arrays.hashCode(data);
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof TracePageId && Arrays.equals(data, ((TracePageId) o).data);
+        }
+    }
+
+    static ArrayList<PageId> readTrace(String path) throws IOException {
+        ArrayList<PageId> trace = new ArrayList<PageId>();
+        BufferedReader br = new BufferedReader(new FileReader(path));
+        String line;
+        while ((line = br.readLine()) != null) {
+            String[] els = line.trim().split(" ");
+            int[] data = new int[els.length];
+            for (int i = 0; i < els.length; i++)
+                data[i] = Integer.parseInt(els[i]);
+            trace.add(new TracePageId(data));
+        }
+        br.close();
+        return trace;
+    }
+
+    static ArrayList<PageId> syntheticTrace(int frames) {
+        ArrayList<PageId> trace = new ArrayList<PageId>();
+        Random r = new Random(7);
+        int hotPages = frames / 2, tablePages = frames * 10;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < frames * 20; i++)
+                trace.add(new TracePageId(1, r.nextInt(hotPages)));
+            for (int pg = 0; pg < tablePages; pg++) {
+                trace.add(new TracePageId(2, pg));
+                if (pg % 4 == 0)
+                    trace.add(new TracePageId(1, r.nextInt(hotPages)));
+            }
+        }
+        return trace;
+    }
+
+    /** @return the fraction of accesses in trace that hit a pool of the given size */
+    static double hitRatio(EvictionPolicy policy, int frames, ArrayList<PageId> trace) {
+        HashMap<PageId, Integer> resident = new HashMap<PageId, Integer>();
+        PageId[] frameOf = new PageId[frames];
+        ArrayDeque<Integer> free = new ArrayDeque<Integer>();
+        for (int i = 0; i < frames; i++)
+            free.add(i);
+
+        long hits = 0;
+        for (PageId pid : trace) {
+            Integer frame = resident.get(pid);
+            if (frame != null) {
+                hits++;
+                policy.accessed(frame);
+                continue;
+            }
+            if (free.isEmpty()) {
+                int victim = policy.victim();
+                policy.removed(victim, true);
+                resident.remove(frameOf[victim]);
+                free.add(victim);
+            }
+            int f = free.poll();
+            frameOf[f] = pid;
+            resident.put(pid, f);
+            policy.loaded(f, pid);
+        }
+        return hits / (double) trace.size();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : BufferPool.DEFAULT_PAGES * 20;
+        ArrayList<PageId> trace = args.length > 1 ? readTrace(args[1]) : syntheticTrace(frames);
+        System.out.printf("%d accesses, %d frames%n", trace.size(), frames);
+        for (String name : new String[] { "lru", "clock", "lru2", "2q" }) {
+            double ratio = hitRatio(EvictionPolicy.forName(name, frames), frames, trace);
+            System.out.printf("%-6s hit ratio %.4f%n", name, ratio);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import simpledb.*;
+
+/**
+ * Measures a selective scan of a cached two column table: a Filter over a
+ * SeqScan, and the same with the predicate also pushed into the scan.
+ * Reports rows scanned per second and bytes allocated per row scanned.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.FilterScanBenchmark [pages] [selectivity%]
+ */
+public class FilterScanBenchmark {
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static void run(String name, HeapFile hf, Predicate p, boolean pushDown) throws Exception {
+        long rows = 0;
+        long start = System.nanoTime(), alloc = allocatedBytes();
+        int rounds = 5;
+        for (int i = 0; i < rounds; i++) {
+            SeqScan scan = new SeqScan(new TransactionId(), hf.getId(), "t");
+            if (pushDown)
+                scan.addPredicate(p);
+            Filter filter = new Filter(p, scan);
+            filter.open();
+            while (filter.hasNext()) {
+                filter.next();
+                rows++;
+            }
+            filter.close();
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        long scanned = (long) rounds * hf.numPages() * 504;
+        System.out.printf("%-10s %6.1f M rows/s  %6.1f bytes/row  (%d matches)%n", name,
+                scanned / secs / 1e6, (allocatedBytes() - alloc) / (double) scanned, rows);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int percent = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        File f = File.createTempFile("filterbench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = ScanBenchmark.createTable(f, pages);
+        Database.resetBufferPool(pages + 10);
+        // every page holds the values 0..503 in both columns
+        Predicate p = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(504 * percent / 100));
+        for (int round = 0; round < 3; round++) {
+            run("filter", hf, p, false);
+            run("pushdown", hf, p, true);
+        }
+    }
+}
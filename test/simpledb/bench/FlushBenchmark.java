@@ -0,0 +1,56 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Dirties cached pages of a two column table by rewriting one tuple on
+ * each, then flushes the pool. Reports the time and the bytes allocated per
+ * page flushed.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.FlushBenchmark [pages] [rounds]
+ */
+public class FlushBenchmark {
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        File f = File.createTempFile("flushbench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = ScanBenchmark.createTable(f, pages);
+        BufferPool pool = Database.resetBufferPool(pages + 10);
+        TransactionId tid = new TransactionId();
+        Random r = new Random(1);
+
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < pages; i++) {
+                HeapPage p = (HeapPage) pool.getPage(tid, new HeapPageId(hf.getId(), i),
+                        Permissions.READ_WRITE);
+                java.util.Iterator<Tuple> it = p.iterator();
+                Tuple t = it.next();
+                for (int skip = r.nextInt(500); skip > 0; skip--)
+                    t = it.next();
+                Tuple copy = new Tuple(t.getTupleDesc());
+                copy.setField(0, t.getField(0));
+                copy.setField(1, t.getField(1));
+                p.deleteTuple(t);
+                p.insertTuple(copy);
+                p.markDirty(true, tid);
+            }
+            long start = System.nanoTime(), alloc = allocatedBytes();
+            pool.flushAllPages();
+            long ns = System.nanoTime() - start;
+            if (round >= rounds / 2)
+                System.out.printf("flush: %6.2f us/page  %8.1f bytes/page%n",
+                        ns / 1e3 / pages, (allocatedBytes() - alloc) / (double) pages);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Joins two tables of random keys larger than the hash table's memory with
+ * HashEquiJoin, which rescans the right table for each 20000 tuples of the
+ * left, and with GraceHashJoin given the same memory, which partitions both
+ * to disk once. Reports the time of each and the right table pages read.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.GraceJoinBenchmark [rows]
+ */
+public class GraceJoinBenchmark {
+
+    private static HeapFile table(String name, int rows, Random r) throws Exception {
+        File f = File.createTempFile(name, ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, name);
+        FileOutputStream out = new FileOutputStream(f);
+        HeapPage page = null;
+        for (int i = 0, pg = 0; i < rows; i++) {
+            if (page == null)
+                page = new HeapPage(new HeapPageId(hf.getId(), pg++), HeapPage.createEmptyPageData());
+            page.insertTuple(Utility.getHeapTuple(new int[] { r.nextInt(rows), i }));
+            if (page.getNumEmptySlots() == 0 || i == rows - 1) {
+                out.write(page.getPageData());
+                page = null;
+            }
+        }
+        out.close();
+        return hf;
+    }
+
+    /** A scan that counts the tuples it returns, across rewinds. */
+    private static class CountingScan extends SeqScan {
+        private static final long serialVersionUID = 1L;
+        long read;
+
+        CountingScan(int tableId) {
+            super(new TransactionId(), tableId, "r");
+        }
+
+        @Override
+        public Tuple next() throws TransactionAbortedException, DbException {
+            read++;
+            return super.next();
+        }
+    }
+
+    private static void run(String name, HeapFile right, CountingScan scan, OpIterator join)
+            throws Exception {
+        long start = System.nanoTime();
+        long n = 0;
+        join.open();
+        while (join.hasNext()) {
+            join.next();
+            n++;
+        }
+        join.close();
+        double pages = scan.read / 504.0;
+        System.out.printf("%-14s %8.0f ms, %d tuples, %.0f right pages read (table has %d)%n",
+                name, (System.nanoTime() - start) / 1e6, n, pages, right.numPages());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Random r = new Random(17);
+        HeapFile left = table("graceleft", rows, r);
+        HeapFile right = table("graceright", rows, r);
+        Database.resetBufferPool(left.numPages() + right.numPages() + 10);
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+
+        for (int round = 0; round < 3; round++) {
+            CountingScan scan = new CountingScan(right.getId());
+            run("HashEquiJoin", right, scan, new HashEquiJoin(p,
+                    new SeqScan(new TransactionId(), left.getId(), "l"), scan));
+            scan = new CountingScan(right.getId());
+            run("GraceHashJoin", right, scan, new GraceHashJoin(p,
+                    new SeqScan(new TransactionId(), left.getId(), "l"), scan,
+                    HashEquiJoin.MAP_SIZE));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package simpledb.bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Joins outer inputs of 10 to 10000 random keys on equality to a B+ tree
+ * table of 200000 tuples keyed on the join field, with GraceHashJoin, which
+ * scans the whole table, and with IndexNestedLoopJoin, which looks each
+ * outer key up. Reports the time of each.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.IndexJoinBenchmark [rows]
+ */
+public class IndexJoinBenchmark {
+
+    private static long run(OpIterator join) throws Exception {
+        long n = 0;
+        join.open();
+        while (join.hasNext()) {
+            join.next();
+            n++;
+        }
+        join.close();
+        return n;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        BTreeFile inner = BTreeUtility.createRandomBTreeFile(2, rows, rows, null, null, 0);
+        Database.resetBufferPool(inner.numPages() + 10);
+        Random r = new Random(21);
+        TupleDesc td = Utility.getTupleDesc(2);
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+
+        for (int round = 0; round < 3; round++) {
+            for (int outerRows = 10; outerRows <= 10000; outerRows *= 10) {
+                ArrayList<Tuple> outer = new ArrayList<Tuple>();
+                for (int i = 0; i < outerRows; i++)
+                    outer.add(Utility.getHeapTuple(new int[] { r.nextInt(rows), i }));
+                TransactionId tid = new TransactionId();
+
+                long start = System.nanoTime();
+                long n = run(new GraceHashJoin(p, new TupleIterator(td, outer),
+                        new SeqScan(tid, inner.getId())));
+                double hashMs = (System.nanoTime() - start) / 1e6;
+                start = System.nanoTime();
+                long m = run(new IndexNestedLoopJoin(p, new TupleIterator(td, outer),
+                        new SeqScan(tid, inner.getId())));
+                double indexMs = (System.nanoTime() - start) / 1e6;
+                System.out.printf("%6d outer: GraceHashJoin %7.1f ms, IndexNestedLoopJoin %7.1f ms (%d, %d tuples)%n",
+                        outerRows, hashMs, indexMs, n, m);
+            }
+        }
+    }
+}
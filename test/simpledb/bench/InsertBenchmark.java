@@ -0,0 +1,40 @@
+package simpledb.bench;
+
+import java.io.File;
+
+import simpledb.*;
+
+/**
+ * Inserts tuples into full two column tables of increasing size, through
+ * the BufferPool, and reports the insert rate for each size. The first
+ * insert into each table, which loads or builds its free space map, is
+ * timed separately.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.InsertBenchmark [inserts]
+ */
+public class InsertBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int inserts = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        for (int rows : new int[] { 10000, 100000, 1000000 }) {
+            int pages = rows / 504;
+            File f = File.createTempFile("insertbench", ".dat");
+            f.deleteOnExit();
+            new File(f.getPath() + ".fsm").deleteOnExit();
+            HeapFile hf = ScanBenchmark.createTable(f, pages);
+            BufferPool pool = Database.resetBufferPool(pages + inserts / 504 + 10);
+            TransactionId tid = new TransactionId();
+
+            long start = System.nanoTime();
+            pool.insertTuple(tid, hf.getId(), Utility.getHeapTuple(0, 2));
+            long first = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 1; i < inserts; i++)
+                pool.insertTuple(tid, hf.getId(), Utility.getHeapTuple(i, 2));
+            double secs = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%8d rows: first insert %8.2f ms, then %10.0f inserts/s%n",
+                    pages * 504, first / 1e6, (inserts - 1) / secs);
+            pool.transactionComplete(tid);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package simpledb.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Builds the hash table of a join on an INT field from a million tuples,
+ * as HashEquiJoin did before, with a HashMap from Fields to lists of
+ * tuples, and with an IntMultimap, then probes each with another million
+ * keys. Reports the time of each phase and the bytes allocated building.
+ * <p>
+ * There is no JMH in this tree, so this warms up by repeating rounds.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.IntMultimapBenchmark [rows]
+ */
+public class IntMultimapBenchmark {
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Random r = new Random(3);
+        ArrayList<Tuple> build = new ArrayList<Tuple>(rows);
+        for (int i = 0; i < rows; i++)
+            build.add(Utility.getHeapTuple(new int[] { r.nextInt(rows / 2), i }));
+        int[] probes = new int[rows];
+        for (int i = 0; i < rows; i++)
+            probes[i] = r.nextInt(rows);
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime(), alloc = allocatedBytes();
+            HashMap<Object, ArrayList<Tuple>> map = new HashMap<Object, ArrayList<Tuple>>();
+            for (Tuple t : build) {
+                ArrayList<Tuple> list = map.get(t.getField(0));
+                if (list == null) {
+                    list = new ArrayList<Tuple>();
+                    map.put(t.getField(0), list);
+                }
+                list.add(t);
+            }
+            double buildMs = (System.nanoTime() - start) / 1e6;
+            long buildBytes = allocatedBytes() - alloc;
+            start = System.nanoTime();
+            long matches = 0;
+            for (int k : probes) {
+                ArrayList<Tuple> list = map.get(new IntField(k));
+                if (list != null)
+                    for (Tuple t : list)
+                        if (t != null)
+                            matches++;
+            }
+            double probeMs = (System.nanoTime() - start) / 1e6;
+            System.out.printf("HashMap:     build %7.1f ms %6.1f MB, probe %7.1f ms (%d matches)%n",
+                    buildMs, buildBytes / 1e6, probeMs, matches);
+            map = null;
+
+            start = System.nanoTime();
+            alloc = allocatedBytes();
+            IntMultimap<Tuple> intMap = new IntMultimap<Tuple>();
+            for (Tuple t : build)
+                intMap.put(((IntField) t.getField(0)).getValue(), t);
+            buildMs = (System.nanoTime() - start) / 1e6;
+            buildBytes = allocatedBytes() - alloc;
+            start = System.nanoTime();
+            long intMatches = 0;
+            for (int k : probes)
+                for (int row = intMap.first(k); row >= 0; row = intMap.next(row))
+                    if (intMap.get(row) != null)
+                        intMatches++;
+            probeMs = (System.nanoTime() - start) / 1e6;
+            System.out.printf("IntMultimap: build %7.1f ms %6.1f MB, probe %7.1f ms (%d matches)%n",
+                    buildMs, buildBytes / 1e6, probeMs, intMatches);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package simpledb.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Computes SUM, MIN, MAX and AVG grouped by an INT and a STRING field, over
+ * 2000000 rows in about 100000 groups, with one Aggregate computing all four
+ * in a single pass and with four Aggregates computing one each, all with room
+ * in memory for every group. Reports the time of each, and the bytes
+ * allocated per row, which is mostly the results and the growth of the hash
+ * table rather than anything per row.
+ * <p>
+ * Run with: java -Xmx1g -cp bin/src:bin/test simpledb.bench.MultiAggregateBenchmark [rows] [groups]
+ */
+public class MultiAggregateBenchmark {
+
+    private static final Aggregator.Op[] OPS = { Aggregator.Op.SUM,
+            Aggregator.Op.MIN, Aggregator.Op.MAX, Aggregator.Op.AVG };
+
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long run(OpIterator agg) throws Exception {
+        long n = 0;
+        agg.open();
+        while (agg.hasNext()) {
+            agg.next();
+            n++;
+        }
+        agg.close();
+        return n;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int groups = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE,
+                Type.INT_TYPE, Type.INT_TYPE });
+        StringField[] names = new StringField[10];
+        for (int i = 0; i < names.length; i++)
+            names[i] = new StringField("name" + i, Type.STRING_LEN);
+        Random r = new Random(25);
+        ArrayList<Tuple> input = new ArrayList<Tuple>(rows);
+        for (int i = 0; i < rows; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(r.nextInt(groups / names.length)));
+            t.setField(1, names[r.nextInt(names.length)]);
+            t.setField(2, new IntField(r.nextInt(1000)));
+            t.setField(3, new IntField(r.nextInt(1000)));
+            input.add(t);
+        }
+        int[] gfields = { 0, 1 };
+
+        for (int round = 0; round < 3; round++) {
+            long bytes = allocated();
+            long start = System.nanoTime();
+            long n = run(new Aggregate(new TupleIterator(td, input),
+                    new int[] { 2, 2, 3, 3 }, gfields, OPS, groups * 2));
+            double oneMs = (System.nanoTime() - start) / 1e6;
+            double oneBytes = (allocated() - bytes) / (double) rows;
+
+            bytes = allocated();
+            start = System.nanoTime();
+            long m = 0;
+            for (int i = 0; i < OPS.length; i++)
+                m += run(new Aggregate(new TupleIterator(td, input),
+                        new int[] { i < 2 ? 2 : 3 }, gfields, new Aggregator.Op[] { OPS[i] },
+                        groups * 2));
+            double fourMs = (System.nanoTime() - start) / 1e6;
+            double fourBytes = (allocated() - bytes) / (double) rows;
+            System.out.printf("%d rows, %d groups: one pass %7.1f ms (%5.1f bytes/row), four passes %7.1f ms (%5.1f bytes/row)%n",
+                    rows, n, oneMs, oneBytes, fourMs, fourBytes);
+            if (m != n * OPS.length)
+                throw new RuntimeException("passes returned " + m + " groups");
+        }
+    }
+}
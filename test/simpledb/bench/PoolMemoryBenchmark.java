@@ -0,0 +1,94 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Fills a buffer pool with pages of a two column table, then reports the
+ * Java heap it takes to hold them, the pause of a full collection with the
+ * pool resident, and the collections incurred by a workload of random page
+ * reads that each decode the page's tuples.
+ * <p>
+ * Pages are kept on or off the heap according to the simpledb.offheap
+ * system property. An off-heap pool needs -XX:MaxDirectMemorySize at least
+ * as large as the pool.
+ * <p>
+ * Run with: java -Xmx3g -cp bin/src:bin/test simpledb.bench.PoolMemoryBenchmark [poolMB] [seconds]
+ */
+public class PoolMemoryBenchmark {
+
+    private static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            n += gc.getCollectionCount();
+        return n;
+    }
+
+    private static long gcMillis() {
+        long ms = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            ms += gc.getCollectionTime();
+        return ms;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /** @return the duration of a full collection, in milliseconds */
+    private static double fullGc() {
+        long start = System.nanoTime();
+        System.gc();
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int poolMB = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int pages = (int) ((long) poolMB * (1 << 20) / BufferPool.getPageSize());
+
+        File f = File.createTempFile("poolmem", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = ScanBenchmark.createTable(f, pages);
+        System.out.printf("pool of %d pages (%d MB), offheap=%s%n",
+                pages, poolMB, System.getProperty("simpledb.offheap", "false"));
+
+        fullGc();
+        long base = usedHeap();
+        BufferPool pool = Database.resetBufferPool(pages);
+        TransactionId tid = new TransactionId();
+        long start = System.nanoTime();
+        for (int i = 0; i < pages; i++)
+            pool.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY);
+        System.out.printf("load:            %8.1f s%n", (System.nanoTime() - start) / 1e9);
+
+        fullGc();
+        System.out.printf("heap for pool:   %8.1f MB%n", (usedHeap() - base) / (double) (1 << 20));
+        double pause = 0;
+        for (int i = 0; i < 3; i++)
+            pause = Math.max(pause, fullGc());
+        System.out.printf("full GC pause:   %8.1f ms%n", pause);
+
+        Random r = new Random(1);
+        long gcs = gcCount(), gcMs = gcMillis(), reads = 0, rows = 0;
+        long end = System.nanoTime() + seconds * 1000000000L;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 100; i++, reads++) {
+                HeapPage p = (HeapPage) pool.getPage(tid,
+                        new HeapPageId(hf.getId(), r.nextInt(pages)), Permissions.READ_ONLY);
+                java.util.Iterator<Tuple> it = p.iterator();
+                while (it.hasNext()) {
+                    it.next();
+                    rows++;
+                }
+            }
+        }
+        System.out.printf("workload:        %d page reads, %d rows, %d GCs, %d ms in GC%n",
+                reads, rows, gcCount() - gcs, gcMillis() - gcMs);
+    }
+}
@@ -0,0 +1,86 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Measures random page reads from a large file: opening a RandomAccessFile
+ * per page, as HeapFile.readPage used to, against positional reads through
+ * a PageChannel. The file is read once before timing so both sides are
+ * served from the OS page cache, isolating the per-read overhead.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.RandomReadBenchmark [MB] [reads]
+ */
+public class RandomReadBenchmark {
+
+    static File createFile(int mb) throws Exception {
+        File f = File.createTempFile("randread", ".dat");
+        f.deleteOnExit();
+        byte[] chunk = new byte[1 << 20];
+        new Random(1).nextBytes(chunk);
+        FileOutputStream out = new FileOutputStream(f);
+        for (int i = 0; i < mb; i++)
+            out.write(chunk);
+        out.close();
+        return f;
+    }
+
+    static long perPageOpen(File f, int[] pages) throws Exception {
+        int pgsz = BufferPool.getPageSize();
+        byte[] buf = new byte[pgsz];
+        long sum = 0;
+        for (int pgNo : pages) {
+            RandomAccessFile raf = new RandomAccessFile(f, "r");
+            raf.seek((long) pgNo * pgsz);
+            raf.read(buf, 0, pgsz);
+            raf.close();
+            sum += buf[0];
+        }
+        return sum;
+    }
+
+    static long channel(PageChannel ch, int[] pages) throws Exception {
+        int pgsz = BufferPool.getPageSize();
+        byte[] buf = new byte[pgsz];
+        long sum = 0;
+        for (int pgNo : pages) {
+            ch.read((long) pgNo * pgsz, buf);
+            sum += buf[0];
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int mb = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int reads = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        File f = createFile(mb);
+        int numPages = (int) (f.length() / BufferPool.getPageSize());
+        int[] pages = new int[reads];
+        Random r = new Random(42);
+        for (int i = 0; i < reads; i++)
+            pages[i] = r.nextInt(numPages);
+
+        PageChannel ch = new PageChannel(f);
+        int[] warm = new int[numPages];
+        for (int i = 0; i < numPages; i++)
+            warm[i] = i;
+        channel(ch, warm);
+
+        System.out.printf("%d random reads over %d pages (%d MB)%n", reads, numPages, mb);
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            perPageOpen(f, pages);
+            long open = System.nanoTime() - start;
+            start = System.nanoTime();
+            channel(ch, pages);
+            long positional = System.nanoTime() - start;
+            System.out.printf("open per page: %6.2f us/read   positional channel: %6.2f us/read%n",
+                    open / 1e3 / reads, positional / 1e3 / reads);
+        }
+        ch.close();
+    }
+}
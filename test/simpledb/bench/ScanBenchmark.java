@@ -0,0 +1,87 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import simpledb.*;
+
+/**
+ * Measures the throughput of a full SeqScan over a two column table, with
+ * and without read-ahead, against the raw sequential read bandwidth of the
+ * table's file.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.ScanBenchmark [pages] [poolPages]
+ */
+public class ScanBenchmark {
+
+    /** Write a table of the specified number of full pages to f. */
+    static HeapFile createTable(File f, int pages) throws Exception {
+        TupleDesc td = Utility.getTupleDesc(2);
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, "scanbench");
+        HeapPage page = new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData());
+        for (int i = 0; page.getNumEmptySlots() > 0; i++)
+            page.insertTuple(Utility.getHeapTuple(i, 2));
+        byte[] data = page.getPageData();
+        FileOutputStream out = new FileOutputStream(f);
+        for (int i = 0; i < pages; i++)
+            out.write(data);
+        out.close();
+        return hf;
+    }
+
+    static double rawMBps(File f) throws IOException {
+        long start = System.nanoTime();
+        FileChannel ch = new RandomAccessFile(f, "r").getChannel();
+        ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+        long total = 0;
+        int n;
+        while ((n = ch.read(buf)) > 0) {
+            total += n;
+            buf.clear();
+        }
+        ch.close();
+        return mbps(total, System.nanoTime() - start);
+    }
+
+    static double scanMBps(HeapFile hf, int poolPages, int readAhead) throws Exception {
+        Database.resetBufferPool(poolPages).setReadAhead(readAhead);
+        long start = System.nanoTime();
+        SeqScan scan = new SeqScan(new TransactionId(), hf.getId(), "t");
+        scan.open();
+        long rows = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            rows++;
+        }
+        scan.close();
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("  %d rows%n", rows);
+        return mbps(hf.getFile().length(), elapsed);
+    }
+
+    private static double mbps(long bytes, long nanos) {
+        return bytes / (double) (1 << 20) / (nanos / 1e9);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 25600;
+        int poolPages = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        File f = File.createTempFile("scanbench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = createTable(f, pages);
+        System.out.printf("table of %d pages (%d MB), pool of %d pages%n",
+                pages, f.length() >> 20, poolPages);
+        for (int round = 0; round < 2; round++) {
+            System.out.printf("raw read:          %8.1f MB/s%n", rawMBps(f));
+            System.out.printf("scan, no prefetch: %8.1f MB/s%n", scanMBps(hf, poolPages, 0));
+            System.out.printf("scan, read-ahead:  %8.1f MB/s%n",
+                    scanMBps(hf, poolPages, BufferPool.DEFAULT_READ_AHEAD_PAGES));
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,87 @@
+package simpledb.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Joins two inputs of random keys on a range predicate (left key greater
+ * than right key, true of about 0.5% of pairs) by comparing every pair, as
+ * nested loops do, and with SortMergeJoin; and joins two inputs already
+ * sorted on their keys on equality with GraceHashJoin and SortMergeJoin.
+ * Reports the time and output size of each. The nested loops only count
+ * matches, without building output tuples, so they are timed low.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.SortMergeJoinBenchmark [rows]
+ */
+public class SortMergeJoinBenchmark {
+
+    private static ArrayList<Tuple> tuples(int rows, int from, Random r) {
+        ArrayList<Tuple> list = new ArrayList<Tuple>(rows);
+        for (int i = 0; i < rows; i++)
+            list.add(Utility.getHeapTuple(new int[] { from + r.nextInt(rows * 10), i }));
+        return list;
+    }
+
+    private static ArrayList<Tuple> sorted(ArrayList<Tuple> tuples) {
+        ArrayList<Tuple> list = new ArrayList<Tuple>(tuples);
+        Collections.sort(list, new Comparator<Tuple>() {
+            public int compare(Tuple a, Tuple b) {
+                return Integer.compare(((IntField) a.getField(0)).getValue(),
+                        ((IntField) b.getField(0)).getValue());
+            }
+        });
+        return list;
+    }
+
+    private static void nestedLoops(JoinPredicate p, ArrayList<Tuple> left, ArrayList<Tuple> right) {
+        long start = System.nanoTime();
+        long n = 0;
+        for (Tuple t1 : left)
+            for (Tuple t2 : right)
+                if (p.filter(t1, t2))
+                    n++;
+        System.out.printf("%-26s %8.0f ms, %d tuples%n", "nested loops (>)",
+                (System.nanoTime() - start) / 1e6, n);
+    }
+
+    private static void run(String name, OpIterator join) throws Exception {
+        long start = System.nanoTime();
+        long n = 0;
+        join.open();
+        while (join.hasNext()) {
+            join.next();
+            n++;
+        }
+        join.close();
+        System.out.printf("%-26s %8.0f ms, %d tuples%n", name,
+                (System.nanoTime() - start) / 1e6, n);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        Random r = new Random(19);
+        TupleDesc td = Utility.getTupleDesc(2);
+        ArrayList<Tuple> left = tuples(rows, 0, r), right = tuples(rows, rows * 9, r);
+        ArrayList<Tuple> bigLeft = sorted(tuples(rows * 10, 0, r));
+        ArrayList<Tuple> bigRight = sorted(tuples(rows * 10, 0, r));
+        JoinPredicate gt = new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0);
+        JoinPredicate eq = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+
+        for (int round = 0; round < 3; round++) {
+            nestedLoops(gt, left, right);
+            run("SortMergeJoin (>)", new SortMergeJoin(gt, new TupleIterator(td, left),
+                    new TupleIterator(td, right)));
+            // OrderBy over inputs already in order only marks them sorted
+            run("GraceHashJoin (=, sorted)", new GraceHashJoin(eq,
+                    new OrderBy(0, true, new TupleIterator(td, bigLeft)),
+                    new OrderBy(0, true, new TupleIterator(td, bigRight))));
+            run("SortMergeJoin (=, sorted)", new SortMergeJoin(eq,
+                    new OrderBy(0, true, new TupleIterator(td, bigLeft)),
+                    new OrderBy(0, true, new TupleIterator(td, bigRight))));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package simpledb.bench;
+
+import simpledb.*;
+
+/**
+ * Computes SUM grouped by the key of a B+ tree table of 500000 tuples with
+ * 50000 distinct keys, scanned in key order, with Aggregate, which reads
+ * the whole table into a hash table of groups first, and with
+ * StreamingAggregate, which returns each group when the key changes.
+ * Reports the time to the first result and to the last.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.StreamingAggregateBenchmark [rows]
+ */
+public class StreamingAggregateBenchmark {
+
+    private static void run(String name, OpIterator agg) throws Exception {
+        long start = System.nanoTime();
+        agg.open();
+        agg.next();
+        double first = (System.nanoTime() - start) / 1e6;
+        long n = 1;
+        while (agg.hasNext()) {
+            agg.next();
+            n++;
+        }
+        agg.close();
+        System.out.printf("%-18s first group %8.2f ms, all %6d groups %7.1f ms%n",
+                name, first, n, (System.nanoTime() - start) / 1e6);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        BTreeFile table = BTreeUtility.createRandomBTreeFile(2, rows, rows / 10, null, null, 0);
+        Database.resetBufferPool(table.numPages() + 10);
+        TransactionId tid = new TransactionId();
+
+        for (int round = 0; round < 3; round++) {
+            run("Aggregate", new Aggregate(new SeqScan(tid, table.getId()), 1, 0,
+                    Aggregator.Op.SUM));
+            run("StreamingAggregate", new StreamingAggregate(new SeqScan(tid, table.getId()), 1, 0,
+                    Aggregator.Op.SUM));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Encodes the same table of an int and a short string, 4 to 24 characters,
+ * once as a STRING field in a HeapFile and once as a VARCHAR field in a
+ * SlottedHeapFile, and reports the pages each takes and the rate of a full
+ * SeqScan over each.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.VarcharBenchmark [rows]
+ */
+public class VarcharBenchmark {
+
+    private static double scanRowsPerSec(DbFile f) throws Exception {
+        Database.resetBufferPool(1000);
+        long start = System.nanoTime();
+        SeqScan scan = new SeqScan(new TransactionId(), f.getId(), "t");
+        scan.open();
+        long rows = 0;
+        while (scan.hasNext()) {
+            scan.next().getField(1);
+            rows++;
+        }
+        scan.close();
+        return rows / ((System.nanoTime() - start) / 1e9);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        File txt = File.createTempFile("varcharbench", ".txt");
+        txt.deleteOnExit();
+        PrintWriter out = new PrintWriter(txt);
+        Random r = new Random(1);
+        for (int i = 0; i < rows; i++) {
+            StringBuilder s = new StringBuilder();
+            for (int n = 4 + r.nextInt(21); n > 0; n--)
+                s.append((char) ('a' + r.nextInt(26)));
+            out.println(i + "," + s);
+        }
+        out.close();
+
+        File fixed = File.createTempFile("varcharbench", ".dat");
+        fixed.deleteOnExit();
+        Type[] strings = { Type.INT_TYPE, Type.STRING_TYPE };
+        HeapFileEncoder.convert(txt, fixed, BufferPool.getPageSize(), 2, strings);
+        HeapFile hf = new HeapFile(fixed, new TupleDesc(strings));
+        Database.getCatalog().addTable(hf, "fixed");
+
+        File slotted = File.createTempFile("varcharbench", ".dat");
+        slotted.deleteOnExit();
+        Type[] varchars = { Type.INT_TYPE, Type.VARCHAR_TYPE };
+        HeapFileEncoder.convertSlotted(txt, slotted, varchars, ',');
+        SlottedHeapFile shf = new SlottedHeapFile(slotted, new TupleDesc(varchars));
+        Database.getCatalog().addTable(shf, "slotted");
+
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("string  HeapFile:        %6d pages, scan %10.0f rows/s%n",
+                    hf.numPages(), scanRowsPerSec(hf));
+            System.out.printf("varchar SlottedHeapFile: %6d pages, scan %10.0f rows/s%n",
+                    shf.numPages(), scanRowsPerSec(shf));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import simpledb.*;
+
+/**
+ * Scans a two column table whose first column increases with the row for
+ * ranges of that column of increasing width, once with a Filter over a
+ * SeqScan, which reads every page, and once with the predicate pushed into
+ * the SeqScan, which skips the pages its zone map rules out. Reports the
+ * time of each and the pages the pushed scan skipped.
+ * <p>
+ * Run with: java -cp bin/src:bin/test simpledb.bench.ZoneMapBenchmark [pages]
+ */
+public class ZoneMapBenchmark {
+
+    private static HeapFile sortedTable(File f, int pages) throws Exception {
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, "zonebench");
+        FileOutputStream out = new FileOutputStream(f);
+        int row = 0;
+        for (int pg = 0; pg < pages; pg++) {
+            HeapPage page = new HeapPage(new HeapPageId(hf.getId(), pg), HeapPage.createEmptyPageData());
+            while (page.getNumEmptySlots() > 0) {
+                page.insertTuple(Utility.getHeapTuple(new int[] { row, row % 1000 }));
+                row++;
+            }
+            out.write(page.getPageData());
+        }
+        out.close();
+        return hf;
+    }
+
+    /** @return the milliseconds taken to run op to its end */
+    private static double millis(OpIterator op) throws Exception {
+        Database.resetBufferPool(1000);
+        long start = System.nanoTime();
+        op.open();
+        while (op.hasNext())
+            op.next();
+        op.close();
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        File f = File.createTempFile("zonebench", ".dat");
+        f.deleteOnExit();
+        ZoneMap.fileFor(f).deleteOnExit();
+        HeapFile hf = sortedTable(f, pages);
+        int rows = pages * 504;
+        long start = System.nanoTime();
+        hf.iterator(new TransactionId(), new Predicate[] {
+                new Predicate(0, Predicate.Op.EQUALS, new IntField(-1)) }).open();
+        System.out.printf("%d rows; zone map built in %.1f ms%n", rows,
+                (System.nanoTime() - start) / 1e6);
+
+        for (int round = 0; round < 2; round++) {
+            for (double fraction : new double[] { 0.001, 0.01, 0.1, 1.0 }) {
+                Predicate p = new Predicate(0, Predicate.Op.LESS_THAN,
+                        new IntField((int) (rows * fraction)));
+                Filter filter = new Filter(p, new SeqScan(new TransactionId(), hf.getId(), "t"));
+                double all = millis(filter);
+                SeqScan pushed = new SeqScan(new TransactionId(), hf.getId(), "t");
+                pushed.addPredicate(p);
+                double skipping = millis(pushed);
+                System.out.printf("%6.1f%% of rows: Filter %8.1f ms, pushed %8.1f ms, %5d of %d pages skipped%n",
+                        fraction * 100, all, skipping, pushed.getPagesSkipped(), pages);
+            }
+        }
+    }
+}